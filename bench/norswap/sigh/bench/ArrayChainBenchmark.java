@@ -0,0 +1,89 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.bytecode.ByteArrayClassLoader;
+import norswap.sigh.bytecode.BytecodeCompiler;
+import norswap.sigh.bytecode.CompilationResult;
+import norswap.sigh.interpreter.Interpreter;
+import norswap.sigh.interpreter.exec.RootExec;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a chain of element-wise array operations ({@code a @(*) b @(+) c @(*) d}) on arrays
+ * below the parallel threshold, written in Sigh, in both backends, where it is fused into a single
+ * loop that only allocates the result array.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArrayChainBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Length of the arrays. */
+    @Param({"256", "2048"})
+    public int size;
+
+    private Interpreter interpreter;
+    private RootExec program;
+    private Class<?> compiled;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup ()
+    {
+        StringBuilder floats = new StringBuilder("[");
+        StringBuilder ints = new StringBuilder("[");
+        for (int i = 0; i < size; ++i) {
+            if (i > 0) { floats.append(", "); ints.append(", "); }
+            floats.append(i % 17).append(".5");
+            ints.append(i % 13);
+        }
+        floats.append("]");
+        ints.append("]");
+
+        // the loop is in a function, so that the JIT compiles it apart from the (huge) literals
+        Program chain = new Program(
+            "fun chain (a: Float[], b: Float[], c: Int[], d: Float[]): Float {\n" +
+            "    var t: Float = 0\n" +
+            "    var i: Int = 0\n" +
+            "    while (i < 100) {\n" +
+            "        var r: Float[] = a @(*) b @(+) c @(*) d\n" +
+            "        t = t + r[i]\n" +
+            "        i = i + 1\n" +
+            "    }\n" +
+            "    return t\n" +
+            "}\n" +
+            "var a: Float[] = " + floats + "\n" +
+            "var c: Int[] = " + ints + "\n" +
+            "var b: Float[] = a @(+) a\n" +
+            "return chain(a, b, c, b @(-) a)");
+
+        interpreter = new Interpreter(chain.reactor);
+        program = interpreter.prepare(chain.root);
+
+        CompilationResult result = new BytecodeCompiler(chain.reactor)
+            .compile("ArrayChainBenchmarkProgram", chain.root);
+        compiled = result.load(new ByteArrayClassLoader());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object interpreter () {
+        return interpreter.execute(program);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object compiler () {
+        return CompilationResult.callRun(compiled, new String[0]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,86 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.bytecode.ByteArrayClassLoader;
+import norswap.sigh.bytecode.BytecodeCompiler;
+import norswap.sigh.bytecode.CompilationResult;
+import norswap.sigh.interpreter.Interpreter;
+import norswap.sigh.interpreter.exec.RootExec;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a loop of element-wise array operations ({@code a @(op) b}) on arrays below the
+ * parallel threshold, written in Sigh, in both backends: arithmetic on {@code Float[]}, a mixed
+ * {@code Int[]} / {@code Float[]} operation, and a comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArrayOpBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Length of the arrays. */
+    @Param({"256"})
+    public int size;
+
+    private Interpreter interpreter;
+    private RootExec program;
+    private Class<?> compiled;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup ()
+    {
+        StringBuilder floats = new StringBuilder("[");
+        StringBuilder ints = new StringBuilder("[");
+        for (int i = 0; i < size; ++i) {
+            if (i > 0) { floats.append(", "); ints.append(", "); }
+            floats.append(i % 17).append(".5");
+            ints.append(i % 13);
+        }
+        floats.append("]");
+        ints.append("]");
+
+        Program ops = new Program(
+            "var a: Float[] = " + floats + "\n" +
+            "var b: Int[] = " + ints + "\n" +
+            "var t: Float = 0\n" +
+            "var i: Int = 0\n" +
+            "while (i < 1000) {\n" +
+            "    var c: Float[] = a @(*) a @(+) b\n" +
+            "    var d: Float[] = c @(-) a\n" +
+            "    var m: Bool[] = d @(<) a\n" +
+            "    if (m[i % " + size + "]) t = t + d[i % " + size + "]\n" +
+            "    i = i + 1\n" +
+            "}\n" +
+            "return t");
+
+        interpreter = new Interpreter(ops.reactor);
+        program = interpreter.prepare(ops.root);
+
+        CompilationResult result = new BytecodeCompiler(ops.reactor)
+            .compile("ArrayOpBenchmarkProgram", ops.root);
+        compiled = result.load(new ByteArrayClassLoader());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object interpreter () {
+        return interpreter.execute(program);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object compiler () {
+        return CompilationResult.callRun(compiled, new String[0]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,62 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.interpreter.Interpreter;
+import org.openjdk.jmh.annotations.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a script whose initialization (filling a lookup table) dominates its actual work, run
+ * in full or resumed from a checkpoint of its top-level variables taken after the initialization
+ * (held in memory, so this measures the decoding of the checkpoint, not the file system).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CheckpointBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param({"full", "resume"})
+    public String mode;
+
+    private Program program;
+    private Interpreter interpreter;
+    private byte[] checkpoint;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup(Level.Trial)
+    public void setup () throws IOException
+    {
+        program = new Program(
+            "var table: Int[] = [0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0]\n" +
+            "var round: Int = 0\n" +
+            "while (round < 2000) {\n" +
+            "    var i: Int = 0\n" +
+            "    while (i < 16) { table[i] = (table[i] * 31 + i + round) % 1000003 ; i = i + 1 }\n" +
+            "    round = round + 1\n" +
+            "}\n" +
+            "return table[3] + table[7]");
+        interpreter = new Interpreter(program.reactor);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        interpreter.checkpoint(program.root, 3, out);
+        checkpoint = out.toByteArray();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object run () throws IOException {
+        return mode.equals("full")
+            ? interpreter.interpret(program.root)
+            : interpreter.resume(program.root, new ByteArrayInputStream(checkpoint));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,57 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.interpreter.Interpreter;
+import norswap.sigh.interpreter.exec.RootExec;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of a single interpreter running the same prepared program from one
+ * thread, then from as many threads as there are available processors. With no shared mutable
+ * state in the hot path, the throughput should scale about linearly with the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentInterpreterBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private Interpreter interpreter;
+    private RootExec program;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup ()
+    {
+        Program fib = new Program(
+            "fun fib (n: Int): Int {\n" +
+            "    if (n < 2) return n\n" +
+            "    return fib(n - 1) + fib(n - 2)\n" +
+            "}\n" +
+            "return fib(20)");
+
+        interpreter = new Interpreter(fib.reactor);
+        program = interpreter.prepare(fib.root);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark @Threads(1)
+    public Object oneThread () {
+        return interpreter.execute(program);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark @Threads(Threads.MAX)
+    public Object allThreads () {
+        return interpreter.execute(program);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,50 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.interpreter.Interpreter;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the naive recursive Fibonacci function in the interpreter: a benchmark of function calls
+ * and returns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FibonacciBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param({"30"})
+    public int n;
+
+    private Interpreter interpreter;
+    private Program fib;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup ()
+    {
+        fib = new Program(
+            "fun fib (n: Int): Int {\n" +
+            "    if (n < 2) return n\n" +
+            "    return fib(n - 1) + fib(n - 2)\n" +
+            "}\n" +
+            "return fib(" + n + ")");
+
+        interpreter = new Interpreter(fib.reactor);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object fib () {
+        return interpreter.interpret(fib.root);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,65 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.bytecode.ByteArrayClassLoader;
+import norswap.sigh.bytecode.BytecodeCompiler;
+import norswap.sigh.bytecode.CompilationResult;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures calls in compiled Sigh code: direct calls to a function, calls through a function value
+ * ({@code (step)(i)}), and calls through a function value that captures a variable. Function values
+ * are created with {@code invokedynamic} and called with {@code invokeinterface}, which the JIT
+ * inlines: all three should run at the same speed and not allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionValueBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param({"direct", "value", "closure"})
+    public String call;
+
+    private Class<?> compiled;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup ()
+    {
+        String step = call.equals("closure")
+            ? "var k: Int = 3\nfun step (x: Int): Int { return x * k + 1 }\n"
+            : "fun step (x: Int): Int { return x * 3 + 1 }\n";
+        String callee = call.equals("direct") ? "step" : "(step)";
+
+        Program program = new Program(step +
+            "fun loop (): Int {\n" +
+            "    var t: Int = 0\n" +
+            "    var i: Int = 0\n" +
+            "    while (i < 100000) {\n" +
+            "        t = t + " + callee + "(i) % 7\n" +
+            "        i = i + 1\n" +
+            "    }\n" +
+            "    return t\n" +
+            "}\n" +
+            "return loop()");
+
+        CompilationResult result = new BytecodeCompiler(program.reactor)
+            .compile("FunctionValueBenchmarkProgram", program.root);
+        compiled = result.load(new ByteArrayClassLoader());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object compiler () {
+        return CompilationResult.callRun(compiled, new String[0]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
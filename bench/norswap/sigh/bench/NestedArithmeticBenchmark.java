@@ -0,0 +1,65 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.interpreter.Interpreter;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates a single, deeply nested arithmetic expression such as {@code ((((x + 1) * x) - 2) ...)}
+ * in the interpreter.
+ *
+ * <p>Each operator evaluates its operands exactly once, so the run time should be linear in
+ * {@link #depth}. (It used to double with every nesting level, as operands were evaluated a
+ * second time to determine their type.)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NestedArithmeticBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param({"4", "8", "16"})
+    public int depth;
+
+    /** Type of the variable used in the expression. */
+    @Param({"Int", "Float"})
+    public String type;
+
+    private Interpreter interpreter;
+    private Program program;
+
+    // ---------------------------------------------------------------------------------------------
+
+    static String expression (int depth)
+    {
+        String[] ops = { "+", "*", "-" };
+        String expr = "x";
+        for (int i = 0; i < depth; ++i)
+            expr = "(" + expr + " " + ops[i % ops.length] + " " + (i % 2 == 0 ? "x" : "1") + ")";
+        return expr;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup () {
+        String literal = type.equals("Int") ? "3" : "3.0";
+        program = new Program(
+            "var x: " + type + " = " + literal + "\n" +
+            "return " + expression(depth));
+        interpreter = new Interpreter(program.reactor);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object interpret () {
+        return interpreter.interpret(program.root);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,74 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.interpreter.Interpreter;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs numeric loops in the interpreter. Run with {@code -prof gc} to check the allocation rate:
+ * {@code Int}, {@code Float} and {@code Bool} values are not boxed in loops like these, so the
+ * allocation per operation should not depend on the number of iterations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumericLoopBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Type of the loop variables. */
+    @Param({"Int", "Float"})
+    public String type;
+
+    @Param({"10000"})
+    public int iterations;
+
+    private Interpreter countInterpreter, sumInterpreter;
+    private Program count, sum;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup ()
+    {
+        String zero = type.equals("Int") ? "0" : "0.0";
+
+        count = new Program(
+            "var x: " + type + " = " + zero + "\n" +
+            "while (x < " + iterations + ") x = x + 1\n" +
+            "return x");
+
+        sum = new Program(
+            "var i: " + type + " = " + zero + "\n" +
+            "var acc: " + type + " = " + zero + "\n" +
+            "while (i < " + iterations + ") {\n" +
+            "    acc = (acc * 3 + i) % 1000\n" +
+            "    i = i + 1\n" +
+            "}\n" +
+            "return acc");
+
+        countInterpreter = new Interpreter(count.reactor);
+        sumInterpreter = new Interpreter(sum.reactor);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** A loop whose body is a single assignment. */
+    @Benchmark
+    public Object count () {
+        return countInterpreter.interpret(count.root);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** A loop whose body is a block. */
+    @Benchmark
+    public Object sum () {
+        return sumInterpreter.interpret(sum.root);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,52 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.interpreter.Interpreter;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a script made of a single hot top-level loop, in the interpreter and in its tiered
+ * mode, where the loop gets compiled while it runs (on-stack replacement). Each iteration is a
+ * single run of the script on a fresh interpreter, including the compilation of the loop.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@Fork(1)
+public class OsrBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param({"interpreter", "tiered"})
+    public String mode;
+
+    private Program program;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup(Level.Trial)
+    public void setup ()
+    {
+        program = new Program(
+            "var total: Float = 0\n" +
+            "var i: Int = 0\n" +
+            "while (i < 1000000) {\n" +
+            "    if (i % 3 == 0) total = total + i / 2\n" +
+            "    else total = total - 1\n" +
+            "    i = i + 1\n" +
+            "}\n" +
+            "return total");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object run () {
+        return new Interpreter(program.reactor, mode.equals("tiered") ? 1000 : 0)
+            .interpret(program.root);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
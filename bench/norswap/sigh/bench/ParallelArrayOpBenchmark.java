@@ -0,0 +1,89 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.ast.BinaryOperator;
+import norswap.sigh.bytecode.SighRuntime;
+import norswap.sigh.interpreter.exec.ArrayKernel;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs an element-wise array multiplication ({@code a @(*) b} on {@code Float[]}) with the kernels
+ * of both backends, in a fork/join pool with the given parallelism: {@link ArrayKernel} for the
+ * interpreter and {@link SighRuntime} for the compiled code. Both use primitive arrays; the
+ * interpreter kernel adds the dispatch on the runtime representation of the operands.
+ *
+ * <p>Compare the scores for the same size across parallelism values to get the speedup. A
+ * parallelism of 1 runs the kernels sequentially. Arrays cannot be built from Sigh source at
+ * these sizes, so the kernels are called directly.
+ *
+ * <p>The arrays take about 2.4 GB at the largest size (with the result), hence the larger heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ParallelArrayOpBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param({"1000000", "10000000", "100000000"})
+    public int size;
+
+    /** Parallelism of the pool the kernels run in. */
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private ForkJoinPool pool;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup () {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown
+    public void tearDown () {
+        pool.shutdown();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @State(Scope.Benchmark)
+    public static class Primitive
+    {
+        double[] left, right;
+
+        @Setup
+        public void setup (ParallelArrayOpBenchmark benchmark)
+        {
+            left  = new double[benchmark.size];
+            right = new double[benchmark.size];
+            for (int i = 0; i < left.length; ++i) {
+                left[i]  = i;
+                right[i] = i * 7;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object interpreter (Primitive arrays) {
+        return pool.submit(() ->
+            ArrayKernel.FLOAT.apply(BinaryOperator.MULTIPLY, arrays.left, arrays.right)).join();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object compiled (Primitive arrays) {
+        return pool.submit(() ->
+            SighRuntime.arithmetic(arrays.left, arrays.right, BinaryOperator.MULTIPLY)).join();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,51 @@
+package norswap.sigh.bench;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.sigh.SemanticAnalysis;
+import norswap.sigh.SighGrammar;
+import norswap.sigh.ast.RootNode;
+import norswap.sigh.ast.SighNode;
+import norswap.uranium.Reactor;
+import norswap.utils.visitors.Walker;
+
+/**
+ * A parsed and analyzed Sigh program, ready to be handed to one of the backends.
+ */
+public final class Program
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final SighGrammar grammar = new SighGrammar();
+
+    private static final ParseOptions parseOptions = ParseOptions.builder()
+        .wellFormednessCheck(false)
+        .get();
+
+    // ---------------------------------------------------------------------------------------------
+
+    public final RootNode root;
+    public final Reactor reactor;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public Program (String source)
+    {
+        ParseResult result = Autumn.parse(grammar.root, source, parseOptions);
+        if (!result.fullMatch)
+            throw new IllegalArgumentException("parse error: " + result);
+
+        root = result.topValue();
+        reactor = new Reactor();
+        Walker<SighNode> walker = SemanticAnalysis.createWalker(reactor);
+        walker.walk(root);
+        reactor.run();
+
+        if (!reactor.errors().isEmpty())
+            throw new IllegalArgumentException(
+                "semantic errors: " + reactor.reportErrors(Object::toString));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,53 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.interpreter.Interpreter;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures recursive functions in the interpreter, in tree mode and in explicit-stack mode, where
+ * function activations live on the heap instead of the Java stack: a call-heavy {@code fib} and a
+ * linear (non-tail) recursion that is shallow enough for the tree mode (which already overflows
+ * the Java stack of the benchmark thread at a depth of 1000).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RecursionBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param({"tree", "stack"})
+    public String mode;
+
+    @Param({"fib", "sum"})
+    public String function;
+
+    private Program program;
+    private Interpreter interpreter;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup(Level.Trial)
+    public void setup ()
+    {
+        program = new Program(function.equals("fib")
+            ? "fun fib(n: Int): Int { if (n < 2) return n ; return fib(n - 1) + fib(n - 2) }\n" +
+              "return fib(20)"
+            : "fun sum(n: Int): Int { if (n == 0) return 0 ; return n + sum(n - 1) }\n" +
+              "return sum(200)");
+        interpreter = new Interpreter(program.reactor, 0, mode.equals("stack") ? 1_000_000 : 0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object run () {
+        return interpreter.interpret(program.root);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,70 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.bytecode.ByteArrayClassLoader;
+import norswap.sigh.bytecode.BytecodeCompiler;
+import norswap.sigh.bytecode.CompilationResult;
+import norswap.sigh.interpreter.Interpreter;
+import norswap.sigh.interpreter.exec.RootExec;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a loop that builds a string by appending to a variable ({@code s = s + x}), in both
+ * backends. Since such variables hold ropes, the time should grow about linearly with the number
+ * of appends, instead of quadratically.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringAppendBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param({"10000", "40000"})
+    public int size;
+
+    private Interpreter interpreter;
+    private RootExec program;
+    private Class<?> compiled;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup ()
+    {
+        Program append = new Program(
+            "var s: String = \"\"\n" +
+            "var i: Int = 0\n" +
+            "while (i < " + size + ") {\n" +
+            "    s = s + i + \",\"\n" +
+            "    i = i + 1\n" +
+            "}\n" +
+            "return s");
+
+        interpreter = new Interpreter(append.reactor);
+        program = interpreter.prepare(append.root);
+
+        CompilationResult result = new BytecodeCompiler(append.reactor)
+            .compile("StringAppendBenchmarkProgram", append.root);
+        compiled = result.load(new ByteArrayClassLoader());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object interpreter () {
+        return interpreter.execute(program);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object compiler () {
+        return CompilationResult.callRun(compiled, new String[0]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,54 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.interpreter.Interpreter;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocates small structures in a loop and reads and writes their fields in the interpreter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StructBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param({"10000"})
+    public int iterations;
+
+    private Interpreter interpreter;
+    private Program records;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup ()
+    {
+        records = new Program(
+            "struct Point { var x: Int; var y: Int; var z: Int }\n" +
+            "var i: Int = 0\n" +
+            "var acc: Int = 0\n" +
+            "while (i < " + iterations + ") {\n" +
+            "    var p: Point = $Point(i, i + 1, i + 2)\n" +
+            "    p.z = p.x + p.y\n" +
+            "    acc = (acc + p.z) % 1000\n" +
+            "    i = i + 1\n" +
+            "}\n" +
+            "return acc");
+
+        interpreter = new Interpreter(records.reactor);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object records () {
+        return interpreter.interpret(records.root);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,71 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.interpreter.Interpreter;
+import norswap.sigh.interpreter.exec.RootExec;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a loop made of the shapes that the interpreter fuses into superinstructions ({@code i < n},
+ * {@code i = i + 1}, {@code x = x + a[i]}, cf. {@link
+ * norswap.sigh.interpreter.exec.Superinstruction}) over arrays of each primitive type. Run with
+ * {@code -jvmArgs -Dsigh.quicken.stats=true} to measure the cost of the hit counters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SuperinstructionBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Component type of the array. */
+    @Param({"Int", "Float"})
+    public String type;
+
+    @Param({"1000"})
+    public int size;
+
+    private Interpreter interpreter;
+    private RootExec program;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup ()
+    {
+        StringBuilder array = new StringBuilder("[");
+        for (int i = 0; i < size; ++i)
+            array.append(i > 0 ? ", " : "").append(i).append(type.equals("Int") ? "" : ".5");
+        array.append("]");
+
+        Program sum = new Program(
+            "var a: " + type + "[] = " + array + "\n" +
+            "var n: Int = " + size + "\n" +
+            "var x: " + type + " = 0\n" +
+            "var k: Int = 0\n" +
+            "while (k < 100) {\n" +
+            "    var i: Int = 0\n" +
+            "    while (i < n) {\n" +
+            "        x = x + a[i]\n" +
+            "        i = i + 1\n" +
+            "    }\n" +
+            "    k = k + 1\n" +
+            "}\n" +
+            "return x");
+
+        interpreter = new Interpreter(sum.reactor);
+        program = interpreter.prepare(sum.root);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object sum () {
+        return interpreter.execute(program);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,70 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.bytecode.ByteArrayClassLoader;
+import norswap.sigh.bytecode.BytecodeCompiler;
+import norswap.sigh.bytecode.CompilationResult;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a numeric loop in compiled Sigh code, written as a template function instantiated for
+ * {@code Int} or {@code Float}, against the same loop written for that type. Each instantiation is
+ * compiled to its own method with primitive parameters and locals ({@code sum$Int}, {@code
+ * sum$Float}): both versions should run at the same speed and not allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param({"Int", "Float"})
+    public String type;
+
+    @Param({"template", "plain"})
+    public String function;
+
+    private Class<?> compiled;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup ()
+    {
+        boolean template = function.equals("template");
+        String t = template ? "T" : type;
+        String one = type.equals("Int") ? "1" : "1.0";
+
+        Program program = new Program(
+            (template ? "template <typename T> " : "") +
+            "fun sum (x: " + t + ", n: Int): " + t + " {\n" +
+            "    var y: " + t + " = x * 0\n" +
+            "    var i: Int = 0\n" +
+            "    while (i < n) {\n" +
+            "        var k: Int = i % 7\n" +
+            "        y = y + x * k\n" +
+            "        y = y - k\n" +
+            "        i = i + 1\n" +
+            "    }\n" +
+            "    return y\n" +
+            "}\n" +
+            "return sum" + (template ? "<" + type + ">" : "") + "(" + one + ", 100000)");
+
+        CompilationResult result = new BytecodeCompiler(program.reactor)
+            .compile("TemplateBenchmarkProgram", program.root);
+        compiled = result.load(new ByteArrayClassLoader());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object compiler () {
+        return CompilationResult.callRun(compiled, new String[0]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,81 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.bytecode.ByteArrayClassLoader;
+import norswap.sigh.bytecode.BytecodeCompiler;
+import norswap.sigh.bytecode.CompilationResult;
+import norswap.sigh.interpreter.Interpreter;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the warm-up curves of the interpreter, of the bytecode compiler, and of the tiered
+ * mode of the interpreter, which compiles hot functions.
+ *
+ * <p>Each iteration is a single run of the program, starting from a fresh backend in each fork,
+ * without warm-up: the per-iteration times are the warm-up curve. The first compiler iteration
+ * includes the compilation of the program, and the tiered iterations include the compilation of
+ * the hot functions once they reach the threshold.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 30)
+@Fork(3)
+public class TieredBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param({"interpreter", "compiler", "tiered"})
+    public String mode;
+
+    @Param({"1000"})
+    public int threshold;
+
+    private Program program;
+    private Interpreter interpreter;
+    private Class<?> compiled;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup(Level.Trial)
+    public void setup ()
+    {
+        program = new Program(
+            "fun fib (n: Int): Int {\n" +
+            "    if (n < 2) return n\n" +
+            "    return fib(n - 1) + fib(n - 2)\n" +
+            "}\n" +
+            "fun sum (n: Int): Float {\n" +
+            "    var s: Float = 0\n" +
+            "    var i: Int = 0\n" +
+            "    while (i < n) {\n" +
+            "        s = s + i / 2\n" +
+            "        i = i + 1\n" +
+            "    }\n" +
+            "    return s\n" +
+            "}\n" +
+            "return fib(20) + sum(20000)");
+
+        if (!mode.equals("compiler"))
+            interpreter = new Interpreter(program.reactor, mode.equals("tiered") ? threshold : 0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object run ()
+    {
+        if (interpreter != null)
+            return interpreter.interpret(program.root);
+
+        if (compiled == null) {
+            CompilationResult result = new BytecodeCompiler(program.reactor)
+                .compile("TieredBenchmarkProgram", program.root);
+            compiled = result.load(new ByteArrayClassLoader());
+        }
+        return CompilationResult.callRun(compiled, new String[0]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,85 @@
+package norswap.sigh.bench;
+
+import norswap.sigh.ast.BinaryOperator;
+import norswap.sigh.bytecode.NumericKernels;
+import norswap.sigh.bytecode.ScalarKernels;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the loops of numeric array operations on a single core: the scalar loops against the
+ * kernels picked by {@link NumericKernels#detect()} (the SIMD kernels, since the {@code jmh} task
+ * enables the Vector API module). The fork is restricted to AVX2 ({@code -XX:UseAVX=2}, 256-bit
+ * vectors), so that the numbers are those of a common desktop CPU; pass {@code -jvmArgsAppend
+ * -XX:UseAVX=3} to measure AVX-512.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-XX:UseAVX=2")
+public class VectorKernelBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param({"scalar", "detected"})
+    public String kernels;
+
+    @Param({"ADD", "MULTIPLY", "DIVIDE", "LOWER"})
+    public BinaryOperator op;
+
+    /** Length of the arrays. */
+    @Param({"1024", "65536"})
+    public int size;
+
+    private NumericKernels impl;
+    private long[] a, b, r;
+    private double[] x, y, s;
+    private boolean[] bools;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup ()
+    {
+        impl = kernels.equals("scalar") ? ScalarKernels.INSTANCE : NumericKernels.detect();
+        a = new long[size]; b = new long[size]; r = new long[size];
+        x = new double[size]; y = new double[size]; s = new double[size];
+        bools = new boolean[size];
+        for (int i = 0; i < size; ++i) {
+            a[i] = i;
+            b[i] = size - i;
+            x[i] = i * 0.5;
+            y[i] = (size - i) * 0.25;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object ints ()
+    {
+        if (op == BinaryOperator.LOWER) {
+            impl.comparison(a, b, bools, op, 0, size);
+            return bools;
+        }
+        impl.arithmetic(a, b, r, op, 0, size);
+        return r;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Object floats ()
+    {
+        if (op == BinaryOperator.LOWER) {
+            impl.comparison(x, y, bools, op, 0, size);
+            return bools;
+        }
+        impl.arithmetic(x, y, s, op, 0, size);
+        return s;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -71,4 +71,55 @@ dependencies {
     testImplementation("org.slf4j:slf4j-simple:1.7.36")
 }
 
+// === VECTOR KERNELS ==============================================================================
+
+// Optional SIMD kernels for numeric array operations, using the incubating Vector API (Java 16+),
+// in the "vector" directory. They are included in the jar, and picked at startup when the JVM runs
+// with `--add-modules jdk.incubator.vector` (cf. norswap.sigh.bytecode.NumericKernels). Without
+// the module, the scalar loops are used.
+
+val vector: SourceSet by sourceSets.creating {
+    java.srcDir("vector")
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+
+val vectorModule = listOf("--add-modules", "jdk.incubator.vector")
+
+tasks.named<JavaCompile>(vector.compileJavaTaskName) {
+    sourceCompatibility = "17"
+    targetCompatibility = "17"
+    options.compilerArgs.addAll(vectorModule)
+}
+
+tasks.jar.get().from(vector.output)
+
+sourceSets.test.get().runtimeClasspath += vector.output
+tasks.test.get().jvmArgs(vectorModule)
+
+// === BENCHMARKS ==================================================================================
+
+// JMH benchmarks live in the "bench" directory. Run them with `gradle jmh`, passing JMH options
+// through the "jmh" property, e.g. `gradle jmh -Pjmh="NestedArithmetic -prof gc"`.
+
+val bench: SourceSet by sourceSets.creating {
+    java.srcDir("bench")
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+    runtimeClasspath += sourceSets.main.get().output + sourceSets.main.get().runtimeClasspath +
+        vector.output
+}
+
+dependencies {
+    "benchImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "benchAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+}
+
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks."
+    classpath = bench.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    jvmArgs(vectorModule) // inherited by the forks
+    args = (project.findProperty("jmh") as String? ?: "").split(" ").filter { it.isNotEmpty() }
+}
+
 // =================================================================================================
\ No newline at end of file
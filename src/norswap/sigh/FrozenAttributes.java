@@ -0,0 +1,131 @@
+package norswap.sigh;
+
+import norswap.sigh.ast.*;
+import norswap.sigh.types.StringType;
+import norswap.uranium.Attribute;
+import norswap.uranium.Reactor;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import static norswap.utils.Util.cast;
+
+/**
+ * A read-only snapshot of the attributes computed by {@link SemanticAnalysis} that are needed by
+ * the backends ({@link norswap.sigh.interpreter.Interpreter} and {@link
+ * norswap.sigh.bytecode.BytecodeCompiler}).
+ *
+ * <p>Looking up an attribute in the {@link Reactor} allocates an {@link Attribute} key and hashes
+ * it. Here each attribute has its own identity map from node to value, so a lookup is a single
+ * identity hash lookup, without allocation.
+ *
+ * <p>The snapshot must be taken (with {@link #freeze}) after the reactor has been run. Changes
+ * made to the reactor afterwards are not reflected in the snapshot.
+ */
+public final class FrozenAttributes
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final IdentityHashMap<Object, Object> types    = new IdentityHashMap<>();
+    private final IdentityHashMap<Object, Object> decls    = new IdentityHashMap<>();
+    private final IdentityHashMap<Object, Object> scopes   = new IdentityHashMap<>();
+    private final IdentityHashMap<Object, Object> declared = new IdentityHashMap<>();
+    private final IdentityHashMap<Object, Integer> slots   = new IdentityHashMap<>();
+    private final Set<Object> tailCalls = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // ---------------------------------------------------------------------------------------------
+
+    private FrozenAttributes () {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Copies the relevant attributes out of the reactor, which must have been run.
+     */
+    public static FrozenAttributes freeze (Reactor reactor)
+    {
+        FrozenAttributes frozen = new FrozenAttributes();
+        for (Attribute attribute: reactor.getAttributes()) {
+            Object value = reactor.get(attribute);
+            switch (attribute.name) {
+                case "type":     frozen.types   .put(attribute.node, value); break;
+                case "decl":     frozen.decls   .put(attribute.node, value); break;
+                case "scope":    frozen.scopes  .put(attribute.node, value); break;
+                case "declared": frozen.declared.put(attribute.node, value); break;
+                case "slot":     frozen.slots   .put(attribute.node, (Integer) value); break;
+                case "tailCall": if ((Boolean) value) frozen.tailCalls.add(attribute.node); break;
+            }
+        }
+        return frozen;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The {@code type} attribute of the node: a {@link norswap.sigh.types.Type}, or a list of
+     * types for some nodes in template function calls. Null if missing.
+     */
+    public <T> T type (Object node) {
+        return cast(types.get(node));
+    }
+
+    /** The {@code decl} attribute of the node (a reference), or null if missing. */
+    public <T> T decl (Object node) {
+        return cast(decls.get(node));
+    }
+
+    /** The {@code scope} attribute of the node, or null if missing. */
+    public <T> T scope (Object node) {
+        return cast(scopes.get(node));
+    }
+
+    /** The {@code declared} attribute of the node (a type declaration), or null if missing. */
+    public <T> T declared (Object node) {
+        return cast(declared.get(node));
+    }
+
+    /** The {@code slot} attribute of the node (a variable or parameter declaration). */
+    public int slot (Object node) {
+        return slots.get(node);
+    }
+
+    /** The {@code tailCall} attribute of the node (a return statement), false if missing. */
+    public boolean tailCall (Object node) {
+        return tailCalls.contains(node);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If the assignment appends to a {@code String} variable, i.e. is of the form {@code s = s + a
+     * + b ...} where {@code s} is a local or top-level variable, returns the appended operands
+     * ({@code a}, {@code b}, ...) in order. Returns null otherwise.
+     *
+     * <p>Both backends hold such variables as a {@link Rope}, to which the operands are appended
+     * (after conversion to strings), instead of copying the string at each concatenation.
+     */
+    public List<ExpressionNode> appendedStrings (AssignmentNode node)
+    {
+        if (!(node.left instanceof ReferenceNode)) return null;
+        Object decl = decl(node.left);
+        if (!(decl instanceof VarDeclarationNode) || !(type(decl) instanceof StringType))
+            return null;
+
+        LinkedList<ExpressionNode> appended = new LinkedList<>();
+        ExpressionNode expr = node.right;
+        while (expr instanceof BinaryExpressionNode
+                && ((BinaryExpressionNode) expr).operator == BinaryOperator.ADD
+                && type(expr) instanceof StringType) {
+            appended.addFirst(((BinaryExpressionNode) expr).right);
+            expr = ((BinaryExpressionNode) expr).left;
+        }
+
+        return expr instanceof ReferenceNode && decl(expr) == decl && !appended.isEmpty()
+            ? appended
+            : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
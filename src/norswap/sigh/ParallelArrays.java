@@ -0,0 +1,120 @@
+package norswap.sigh;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits loops over large arrays across a {@link ForkJoinPool}. Used by both backends to run
+ * element-wise array operations ({@code a @(op) b}) in parallel: {@link
+ * norswap.sigh.interpreter.exec.ArrayKernel} for the interpreter and {@link
+ * norswap.sigh.bytecode.SighRuntime} for the compiled code.
+ *
+ * <p>Loops over fewer elements than the {@link #threshold()} run sequentially in the calling
+ * thread. Larger loops are split into chunks that are run in the pool of the calling thread if it
+ * is a fork/join worker, or in the common pool otherwise.
+ *
+ * <p>The threshold can be set with the {@code sigh.parallel.threshold} system property, or at
+ * runtime with {@link #setThreshold}. Setting it to {@link Integer#MAX_VALUE} disables
+ * parallelism.
+ */
+public final class ParallelArrays
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** The body of a loop, to run over the indices {@code from} (inclusive) to {@code to}. */
+    @FunctionalInterface
+    public interface Range {
+        void run (int from, int to);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Default value of the threshold: 64K elements. */
+    public static final int DEFAULT_THRESHOLD = 1 << 16;
+
+    /** Chunks are never smaller than this, whatever the parallelism. */
+    private static final int MIN_CHUNK = 1 << 12;
+
+    private static volatile int threshold =
+        Integer.getInteger("sigh.parallel.threshold", DEFAULT_THRESHOLD);
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ParallelArrays () {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The minimum length at which loops are run in parallel. */
+    public static int threshold () {
+        return threshold;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Sets the minimum length at which loops are run in parallel. */
+    public static void setThreshold (int threshold)
+    {
+        if (threshold < 0)
+            throw new IllegalArgumentException("negative threshold: " + threshold);
+        ParallelArrays.threshold = threshold;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs {@code body} over the indices from 0 to {@code length}, in parallel if {@code length}
+     * is at least the threshold.
+     *
+     * <p>{@code body} must only write to distinct array elements for distinct indices. If it
+     * throws, the exception is propagated to the caller once all chunks are done.
+     */
+    public static void forRange (int length, Range body)
+    {
+        if (length < threshold) {
+            body.run(0, length);
+            return;
+        }
+
+        ForkJoinPool pool = ForkJoinTask.getPool();
+        int parallelism = pool == null
+            ? ForkJoinPool.getCommonPoolParallelism()
+            : pool.getParallelism();
+
+        if (parallelism <= 1) {
+            body.run(0, length);
+            return;
+        }
+
+        // A few chunks per worker, to even out the load.
+        int chunk = Math.max(MIN_CHUNK, length / (parallelism * 4));
+        new Chunk(body, 0, length, chunk).invoke();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Chunk extends RecursiveAction
+    {
+        private final Range body;
+        private final int from, to, chunk;
+
+        Chunk (Range body, int from, int to, int chunk) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override protected void compute ()
+        {
+            if (to - from <= chunk) {
+                body.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Chunk(body, from, middle, chunk), new Chunk(body, middle, to, chunk));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,71 @@
+package norswap.sigh;
+
+/**
+ * A lazily flattened string, used by both backends to hold the value of string variables that are
+ * built by appending to themselves ({@code s = s + x}).
+ *
+ * <p>A rope is a prefix of a {@link StringBuilder} that can be shared between ropes. Appending to
+ * the rope that ends at the end of the builder (the common case in a loop) appends to the builder
+ * in place, in amortized constant time relative to the size of the rope. Appending to an older
+ * rope copies its prefix into a new builder, so that ropes behave as immutable values.
+ *
+ * <p>The rope is only flattened into a {@link String} when the variable is read (i.e. when its
+ * value is printed, compared, passed around...), and the flattened string is cached.
+ *
+ * <p>Ropes are not thread-safe, but they never escape the variable that holds them (reads
+ * flatten), and variables are never shared between threads.
+ */
+public final class Rope
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final StringBuilder buffer;
+    private final int length;
+    private String flat;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Rope (StringBuilder buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static Rope of (String string) {
+        Rope rope = new Rope(new StringBuilder(string), string.length());
+        rope.flat = string;
+        return rope;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Returns the rope for the concatenation of this rope and the given string. */
+    public Rope append (String string)
+    {
+        if (buffer.length() == length) {
+            buffer.append(string);
+            return new Rope(buffer, buffer.length());
+        }
+
+        StringBuilder copy = new StringBuilder(Math.max(16, 2 * (length + string.length())));
+        copy.append(buffer, 0, length).append(string);
+        return new Rope(copy, copy.length());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public int length () {
+        return length;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Returns the flattened string. */
+    @Override public String toString () {
+        if (flat == null) flat = buffer.substring(0, length);
+        return flat;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
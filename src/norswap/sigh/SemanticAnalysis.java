@@ -61,6 +61,12 @@ import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
  *     their {@code scope} attribute set to the scope in which they appear (this also speeds up the
  *     interpreter).</li>
  *
+ *     <li>{@link VarDeclarationNode} and {@link ParameterNode} (as well as the variables of the
+ *     {@link RootScope}) must have their {@code slot} attribute set to the index allocated to them
+ *     in their scope (see {@link Scope#allocateSlot()}, blocks allocate slots in the scope of the
+ *     enclosing function or in the root scope). Together with the depth of that scope, this gives
+ *     the (depth, slot) coordinate of the variable in the interpreter's frames.</li>
+ *
  *     <li>All statements introducing a new scope must have their {@code scope} attribute set to the
  *     corresponding {@link Scope} (only {@link RootNode}, {@link BlockNode} and {@link
  *     FunDeclarationNode} (for parameters)). These nodes must also update the {@code scope}
@@ -73,6 +79,11 @@ import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
  *     returns} attribute set to a boolean to indicate whether its execution causes
  *     unconditional exit from the surrounding function or main script.</li>
  *
+ *     <li>Every {@link ReturnNode} inside a function must have its {@code tailCall} attribute set
+ *     to a boolean to indicate whether it returns the result of a call to that same function
+ *     ({@code return f(...)} inside {@code f}), which the backends turn into a jump back to the
+ *     start of the function.</li>
+ *
  *     <li>Every {@link TemplateParameterNode} contains the name of the parameters given in the template statement (template<typename T>)</li>
  *
  *     <li>The rules check typing constraints: assignment of values to variables, of arguments to
@@ -1086,6 +1097,10 @@ public final class SemanticAnalysis
 
             }
         }
+        // Int[] @(op) Float[] promotes the elements to Float, like scalar arithmetic.
+        if (!temp && ((ArrayType) right).componentType instanceof FloatType
+                && ((ArrayType) left).componentType instanceof IntType)
+            left = right;
         set_array_type(r,node,left,temp, typeToSet);
     }
 
@@ -1366,6 +1381,7 @@ public final class SemanticAnalysis
         }
         scope.declare(node.name, node);
         R.set(node, "scope", scope);
+        R.set(node, "slot", scope.allocateSlot());
         R.rule(node, "type")
             .using(node.type, "value")
             .by(Rule::copyFirst);
@@ -1519,6 +1535,7 @@ public final class SemanticAnalysis
     private void parameter (ParameterNode node)
     {
         R.set(node, "scope", scope);
+        R.set(node, "slot", scope.allocateSlot());
         scope.declare(node.name, node); // scope pushed by FunDeclarationNode
         R.rule(node, "type")
             .using(node.type, "value")
@@ -1790,6 +1807,14 @@ public final class SemanticAnalysis
         if (scopeFunc == null) // top-level return
             return;
 
+        if (node.expression instanceof FunCallNode
+                && ((FunCallNode) node.expression).function instanceof ReferenceNode)
+            R.rule(node, "tailCall")
+                .using(((FunCallNode) node.expression).function, "decl")
+                .by(r -> r.set(0, r.get(0) == scopeFunc));
+        else
+            R.set(node, "tailCall", false);
+
         if (node.expression == null)
             R.rule()
                 .using(scopeFunc.returnType, "value")
@@ -6,11 +6,20 @@ import norswap.autumn.ParseResult;
 import norswap.sigh.ast.SighNode;
 import norswap.sigh.ast.RootNode;
 import norswap.sigh.interpreter.Interpreter;
+import norswap.sigh.interpreter.TieredCompiler;
+import norswap.sigh.interpreter.exec.Superinstruction;
 import norswap.uranium.AttributeTreeFormatter;
 import norswap.uranium.Reactor;
 import norswap.uranium.SemanticError;
 import norswap.utils.visitors.ReflectiveFieldWalker;
 import norswap.utils.visitors.Walker;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.ParseException;
 import java.util.Set;
 
@@ -31,8 +40,54 @@ public final class SighRunner
 
     public Object run(String input) {
         Reactor reactor = new Reactor();
+        Interpreter interpreter = new Interpreter(reactor,
+            TieredCompiler.configuredThreshold(), Interpreter.configuredMaxDepth());
+        RootNode root = analyze(input, reactor);
+
+        Object value = interpreter.interpret(root);
+        if (Superinstruction.COUNTING)
+            System.err.print(Superinstruction.report());
+        return value;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs the first {@code statements} top-level statements of the program, then saves its
+     * top-level variables to the given file (cf. {@link Interpreter#checkpoint}).
+     */
+    public void checkpoint(String input, int statements, Path file) throws IOException {
+        Reactor reactor = new Reactor();
+        Interpreter interpreter = new Interpreter(reactor, TieredCompiler.configuredThreshold());
+        RootNode root = analyze(input, reactor);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            interpreter.checkpoint(root, statements, out);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Restores the top-level variables of the program from the given file, written by {@link
+     * #checkpoint} for the same program, then runs the rest of the program (cf. {@link
+     * Interpreter#resume}).
+     */
+    public Object resume(String input, Path file) throws IOException {
+        Reactor reactor = new Reactor();
+        Interpreter interpreter = new Interpreter(reactor, TieredCompiler.configuredThreshold());
+        RootNode root = analyze(input, reactor);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            return interpreter.resume(root, in);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the program and runs the semantic analysis with the given reactor.
+     */
+    private RootNode analyze(String input, Reactor reactor) {
         Walker<SighNode> walker = SemanticAnalysis.createWalker(reactor);
-        Interpreter interpreter = new Interpreter(reactor);
 
         ParseResult result = Autumn.parse(grammar.root, input, parseOptions);
         if (!result.fullMatch) {
@@ -61,7 +116,7 @@ public final class SighRunner
             throw new AssertionError("semantic errors");
         }
 
-        return interpreter.interpret(root);
+        return root;
     }
 
     // ---------------------------------------------------------------------------------------------
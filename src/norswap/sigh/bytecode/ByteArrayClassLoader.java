@@ -29,4 +29,19 @@ public final class ByteArrayClassLoader extends ClassLoader
     }
 
     // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Like {@link #defineClass(String, byte[])}, but returns the class already loaded by this
+     * loader under the same name if there is one. Only valid for classes whose bytecode is fully
+     * determined by their name, like the interfaces for function types (cf. {@link
+     * TypeUtils#functionInterfaceName}).
+     */
+    public Class<?> defineClassIfAbsent (String binaryName, byte[] bytecode) {
+        synchronized (getClassLoadingLock(binaryName)) {
+            Class<?> loaded = findLoadedClass(binaryName);
+            return loaded != null ? loaded : defineClass(binaryName, bytecode);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
 }
\ No newline at end of file
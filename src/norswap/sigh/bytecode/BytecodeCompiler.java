@@ -1,23 +1,38 @@
 package norswap.sigh.bytecode;
 
+import norswap.sigh.FrozenAttributes;
+import norswap.sigh.ParallelArrays;
+import norswap.sigh.Rope;
 import norswap.sigh.ast.*;
-import norswap.sigh.interpreter.Constructor;
 import norswap.sigh.scopes.Scope;
 import norswap.sigh.scopes.SyntheticDeclarationNode;
 import norswap.sigh.types.*;
 import norswap.uranium.Reactor;
 import norswap.utils.Vanilla;
 import norswap.utils.data.wrappers.Pair;
+import norswap.utils.visitors.ReflectiveFieldWalker;
 import norswap.utils.visitors.ValuedVisitor;
+import norswap.utils.visitors.Walker;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
+import java.lang.invoke.LambdaMetafactory;
 import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static norswap.sigh.ast.BinaryOperator.*;
@@ -25,14 +40,33 @@ import static norswap.sigh.bytecode.AsmUtils.*;
 import static norswap.sigh.bytecode.TypeUtils.fieldDescriptor;
 import static norswap.sigh.bytecode.TypeUtils.methodDescriptor;
 import static norswap.sigh.bytecode.TypeUtils.*;
+import static norswap.utils.Util.cast;
+import static norswap.utils.visitors.WalkVisitType.POST_VISIT;
+import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
 import static org.objectweb.asm.Opcodes.*;
 
 /**
- * <h2>Limitations</h2>
- * <ul>
- *     <li>The compiled code currently doesn't support closures (using variables in functions that
- *     are declared in some surroudning scopes outside the function).</li>
- * </ul>
+ * <h2>Closures</h2>
+ * Functions may use the variables of the functions they are nested in, and top-level variables.
+ * These captured variables are passed to the method implementing the function as extra leading
+ * parameters, both when the function is called and when it is used as a value. A captured variable
+ * that is assigned after its declaration is held in a single-element array (a cell) shared by its
+ * declaring method and the functions capturing it; other captured variables are passed by value.
+ *
+ * <h2>Templates</h2>
+ * A template function is compiled to one method per distinct instantiation, named after the
+ * function and the template arguments (e.g. {@code max$Int} and {@code max$Float} for {@code
+ * max<Int>} and {@code max<Float>}), whose descriptor uses the representation of the arguments.
+ * The specialization is emitted when its first call is compiled. Its types are derived from the
+ * template arguments (cf. {@link #type}), since the type attributes of template function bodies
+ * do not belong to a single instantiation. Functions nested in a template function have one method
+ * per specialization too (e.g. {@code max$Int$helper}).
+ *
+ * <p>Template arguments other than {@code Int}, {@code Float}, {@code Bool} and {@code String} are
+ * erased to {@code Template}, so that they share a single specialization (e.g. {@code
+ * listTest2$Template}). Values of type {@code Template} are represented as objects (primitive
+ * values being boxed), and operators applied to them dispatch on their runtime class (cf. {@link
+ * SighRuntime#binary}). Converting an array to or from an array of {@code Template} copies it.
  *
  * <h2>Data Representation</h2>
  * <ul>
@@ -45,8 +79,12 @@ import static org.objectweb.asm.Opcodes.*;
  *     arrays, object arrays (e.g. {@code Object[][]}).</li>
  *     <li>Structs: A Java class encoding the structure, in the default package and using the
  *     structure's name.</li>
- *     <li>TODO: Functions: a {@link MethodHandle} to the method that implements the function in
- *     bytecode.</li>
+ *     <li>Functions: an instance of the functional interface generated for the function type (cf.
+ *     {@link TypeUtils#functionInterfaceName}), created with {@code invokedynamic} and {@link
+ *     LambdaMetafactory}, which binds the captured variables to the method implementing the
+ *     function. Calls through such values are {@code invokeinterface} calls. The values are
+ *     serializable, which gives access to the name of the method when converting them to strings
+ *     (cf. {@link SighRuntime#functionName}).</li>
  *     <li>Types: the {@link Class} object for the type representation. {@code Type} itself (the
  *     type of types) is represented by {@code Class.class}.</li>
  * </ul>
@@ -72,7 +110,6 @@ public class BytecodeCompiler
     // TODO: prune util classes?
     // TODO: add a top type, and make print take it and convert
     //       (further: is operator, casts, flow casts)
-    // TODO: function objects
     // TODO: simplify with https://asm.ow2.io/javadoc/org/objectweb/asm/commons/GeneratorAdapter.html ?
 
     // ---------------------------------------------------------------------------------------------
@@ -80,6 +117,16 @@ public class BytecodeCompiler
     private final ValuedVisitor<SighNode, Object> visitor = new ValuedVisitor<>();
     private final Reactor reactor;
 
+    /** Bootstrap method for the creation of function values. Function values are serializable,
+     * so that their name can be recovered (cf. {@link SighRuntime#functionName}). */
+    private static final Handle METAFACTORY = staticHandle(LambdaMetafactory.class,
+        "altMetafactory", MethodHandles.Lookup.class, String.class, MethodType.class,
+        Object[].class);
+
+    /** Attributes of the analysis, frozen at the start of {@link #compile} (or passed to {@link
+     * #compileFunctions}). */
+    private FrozenAttributes attributes;
+
     // ---------------------------------------------------------------------------------------------
 
     public BytecodeCompiler (Reactor reactor) {
@@ -105,7 +152,6 @@ public class BytecodeCompiler
         visitor.register(BlockNode.class,                this::block);
         visitor.register(VarDeclarationNode.class,       this::varDecl);
         visitor.register(FieldDeclarationNode.class,     this::fieldDecl);
-        visitor.register(ParameterNode.class,            this::parameter);
         visitor.register(FunDeclarationNode.class,       this::funDecl);
         visitor.register(StructDeclarationNode.class,    this::structDecl);
 
@@ -135,8 +181,8 @@ public class BytecodeCompiler
     /* MethodVisitor for current method. */
     private MethodVisitor method;
 
-    /** Maps variables in a scope to a variable index. */
-    private final HashMap<Pair<Scope, String>, Integer> variables = new HashMap<>();
+    /** Maps variables in a scope to a variable index, for the current method. */
+    private HashMap<Pair<Scope, String>, Integer> variables = new HashMap<>();
 
     /** Counter used to number variables in {@link #variables}. */
     private int variableCounter = 0;
@@ -144,6 +190,48 @@ public class BytecodeCompiler
     /** Whether we are in top-level code. */
     private boolean topLevel;
 
+    /** Label at the start of the current function, the target of self tail calls. */
+    private Label functionStart;
+
+    /** Variable indices of the parameters of the current function (excluding captured variables),
+     * which self tail calls overwrite. */
+    private int[] parameterSlots;
+
+    /** Name of the method of the current function. */
+    private String functionName;
+
+    /** Return type of the current function. */
+    private Type returnType;
+
+    /** Types bound to the template parameters of the template function being specialized, by
+     * name, or null outside template functions. */
+    private Map<String, Type> bindings;
+
+    /** The template function that each function nested in a template function is nested in. */
+    private final Map<FunDeclarationNode, FunDeclarationNode> templates = new IdentityHashMap<>();
+
+    /** Method names of the specializations of template functions that have been emitted. */
+    private final Set<String> specializations = new HashSet<>();
+
+    /** Variables that hold a {@link Rope} (cf. {@link FrozenAttributes#appendedStrings}). */
+    private final Set<DeclarationNode> ropes = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** The variables captured by each function, in the order of the leading parameters that
+     * receive them (cf. {@link #findCaptures}). */
+    private final Map<FunDeclarationNode, List<DeclarationNode>> captures = new IdentityHashMap<>();
+
+    /** All captured variables. */
+    private final List<DeclarationNode> captured = new ArrayList<>();
+
+    /** The function declaring each variable and parameter, null for top-level variables. */
+    private final Map<DeclarationNode, FunDeclarationNode> owners = new IdentityHashMap<>();
+
+    /** Captured variables that are held in a cell. */
+    private final Set<DeclarationNode> cells = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** Functional interfaces to generate for function types, by name. */
+    private final Map<String, FunType> functionInterfaces = new LinkedHashMap<>();
+
     // ---------------------------------------------------------------------------------------------
 
     /**
@@ -153,13 +241,233 @@ public class BytecodeCompiler
     public CompilationResult compile (String binaryName, SighNode root)
     {
         this.containerName = binaryName.replace('.', '/');
+        this.attributes = FrozenAttributes.freeze(reactor);
+        findRopes(root);
+        findCaptures(root);
         run(root);
         GeneratedClass mainClass = new GeneratedClass(containerName, container.toByteArray());
         List<GeneratedClass> structClasses = structs.stream()
             .map(it -> new GeneratedClass(it.a, it.b.toByteArray()))
             .collect(Collectors.toList());
 
-        return new CompilationResult(mainClass, structClasses);
+        return new CompilationResult(mainClass, structClasses, interfaceClasses());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles the given functions into a class whose (dot-separated) binary name is {@code
+     * binaryName}, holding one static method per function, named after the function. The
+     * resulting class has no {@code run} nor {@code main} method.
+     *
+     * <p>The functions may only call each other, and may not use top-level variables or
+     * structures (they have no representation in the generated class). This is used by the tiered
+     * mode of the interpreter (cf. {@link norswap.sigh.interpreter.TieredCompiler}), which passes
+     * its own attributes snapshot.
+     */
+    public CompilationResult compileFunctions (
+            String binaryName, FrozenAttributes attributes, Collection<FunDeclarationNode> functions)
+    {
+        this.containerName = binaryName.replace('.', '/');
+        this.attributes = attributes;
+        container = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        container.visit(V1_8, ACC_PUBLIC, containerName, null, "java/lang/Object", null);
+        functions.forEach(this::findRopes);
+        functions.forEach(this::findCaptures);
+        functions.forEach(this::run);
+        container.visitEnd();
+        GeneratedClass mainClass = new GeneratedClass(containerName, container.toByteArray());
+        return new CompilationResult(mainClass, Collections.emptyList(), interfaceClasses());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles the given while loop into a class whose (dot-separated) binary name is {@code
+     * binaryName}, holding a static method {@code loop(Object[])} that runs the loop, along with
+     * one static method per function in {@code functions} (cf. {@link #compileFunctions}).
+     *
+     * <p>The {@code live} variables are those used by the loop but declared outside of it. Their
+     * values are passed in the array, boxed (with {@code null} for null strings), at the index of
+     * the variable in {@code live}, and the method writes back their final values in the array.
+     * The loop may not contain return statements.
+     *
+     * <p>This is used for on-stack replacement in the tiered mode of the interpreter (cf. {@link
+     * norswap.sigh.interpreter.TieredCompiler#compileLoop}).
+     */
+    public CompilationResult compileLoop (String binaryName, FrozenAttributes attributes,
+            WhileNode loop, List<DeclarationNode> live, Collection<FunDeclarationNode> functions)
+    {
+        this.containerName = binaryName.replace('.', '/');
+        this.attributes = attributes;
+        container = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        container.visit(V1_8, ACC_PUBLIC, containerName, null, "java/lang/Object", null);
+        findRopes(loop);
+        functions.forEach(this::findRopes);
+        functions.forEach(this::findCaptures);
+        functions.forEach(this::run);
+
+        method = container.visitMethod(ACC_PUBLIC | ACC_STATIC, "loop",
+            "([Ljava/lang/Object;)V", null, null);
+        method.visitCode();
+        topLevel = true;
+        variableCounter = 1; // the state array
+
+        int[] indices = new int[live.size()];
+        for (int i = 0; i < indices.length; ++i) {
+            DeclarationNode decl = live.get(i);
+            Type type = type(decl);
+            method.visitVarInsn(ALOAD, 0);
+            loadConstant(method, i);
+            method.visitInsn(AALOAD);
+            unbox(type);
+            if (ropes.contains(decl))
+                invokeStatic(method, SighRuntime.class, "rope", String.class);
+            indices[i] = registerVariable(decl);
+            method.visitVarInsn(nodeAsmType(decl).getOpcode(ISTORE), indices[i]);
+        }
+
+        run(loop);
+
+        for (int i = 0; i < indices.length; ++i) {
+            DeclarationNode decl = live.get(i);
+            method.visitVarInsn(ALOAD, 0);
+            loadConstant(method, i);
+            method.visitVarInsn(nodeAsmType(decl).getOpcode(ILOAD), indices[i]);
+            if (ropes.contains(decl))
+                invokeStatic(method, SighRuntime.class, "flatten", Rope.class);
+            box(type(decl));
+            method.visitInsn(AASTORE);
+        }
+
+        method.visitInsn(RETURN);
+        method.visitEnd();
+        method.visitMaxs(-1, -1);
+        container.visitEnd();
+        GeneratedClass mainClass = new GeneratedClass(containerName, container.toByteArray());
+        return new CompilationResult(mainClass, Collections.emptyList(), interfaceClasses());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Adds the variables appended to in the given tree to {@link #ropes}. */
+    private void findRopes (SighNode tree)
+    {
+        Walker<SighNode> walker = new ReflectiveFieldWalker<>(SighNode.class, PRE_VISIT);
+        walker.register(AssignmentNode.class, PRE_VISIT, node -> {
+            if (attributes.appendedStrings(node) != null)
+                ropes.add(attributes.decl(node.left));
+        });
+        walker.registerFallback(PRE_VISIT, node -> {});
+        walker.walk(tree);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Computes the variables captured by the functions in the given tree ({@link #captures}), as
+     * well as {@link #owners} and {@link #cells}.
+     *
+     * <p>A function captures the variables declared outside of it that it uses, but also those
+     * captured by the functions it refers to (by calling them or using them as values) that it does
+     * not declare itself, since it must pass them along.
+     */
+    private void findCaptures (SighNode tree)
+    {
+        List<FunDeclarationNode> functions = new ArrayList<>();
+        ArrayDeque<FunDeclarationNode> enclosing = new ArrayDeque<>();
+        Map<FunDeclarationNode, List<DeclarationNode>> uses = new IdentityHashMap<>();
+        Map<FunDeclarationNode, List<FunDeclarationNode>> referred = new IdentityHashMap<>();
+        Set<DeclarationNode> assigned = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        Walker<SighNode> walker = new ReflectiveFieldWalker<>(SighNode.class, PRE_VISIT, POST_VISIT);
+        walker.register(FunDeclarationNode.class, PRE_VISIT, node -> {
+            functions.add(node);
+            for (FunDeclarationNode outer: enclosing)
+                if (outer.isTemplate) {
+                    templates.put(node, outer);
+                    break;
+                }
+            enclosing.push(node);
+            uses.put(node, new ArrayList<>());
+            referred.put(node, new ArrayList<>());
+        });
+        walker.register(FunDeclarationNode.class, POST_VISIT, node -> enclosing.pop());
+        walker.register(VarDeclarationNode.class, PRE_VISIT, node -> owners.put(node, enclosing.peek()));
+        walker.register(ParameterNode.class, PRE_VISIT, node -> owners.put(node, enclosing.peek()));
+        walker.register(ReferenceNode.class, PRE_VISIT, node -> {
+            if (enclosing.isEmpty()) return;
+            Object decl = attributes.decl(node);
+            if (decl instanceof VarDeclarationNode || decl instanceof ParameterNode)
+                addOnce(uses.get(enclosing.peek()), (DeclarationNode) decl);
+            else if (decl instanceof FunDeclarationNode)
+                addOnce(referred.get(enclosing.peek()), (FunDeclarationNode) decl);
+        });
+        walker.register(AssignmentNode.class, PRE_VISIT, node -> {
+            if (node.left instanceof ReferenceNode)
+                assigned.add(attributes.decl(node.left));
+        });
+        walker.registerFallback(PRE_VISIT, node -> {});
+        walker.registerFallback(POST_VISIT, node -> {});
+        walker.walk(tree);
+
+        for (FunDeclarationNode fun: functions)
+            captures.put(fun, new ArrayList<>());
+
+        // iterate until (mutually) recursive functions agree
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (FunDeclarationNode fun: functions) {
+                List<DeclarationNode> funCaptures = captures.get(fun);
+                for (DeclarationNode decl: uses.get(fun))
+                    if (owners.get(decl) != fun)
+                        changed |= addOnce(funCaptures, decl);
+                for (FunDeclarationNode callee: referred.get(fun))
+                    if (callee != fun && captures.containsKey(callee))
+                        for (DeclarationNode decl: captures.get(callee))
+                            if (owners.get(decl) != fun)
+                                changed |= addOnce(funCaptures, decl);
+            }
+        }
+
+        for (FunDeclarationNode fun: functions)
+            for (DeclarationNode decl: captures.get(fun))
+                if (addOnce(captured, decl) && assigned.contains(decl))
+                    cells.add(decl);
+
+        // appending to a rope in place is not visible through a captured copy of the rope
+        captured.forEach(ropes::remove);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Adds the item to the list unless it already contains it (by identity), returning true if
+     * it was added. */
+    private static <T> boolean addOnce (List<T> list, T item)
+    {
+        for (T it: list)
+            if (it == item) return false;
+        list.add(item);
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Generates the interfaces in {@link #functionInterfaces}. */
+    private List<GeneratedClass> interfaceClasses ()
+    {
+        List<GeneratedClass> classes = new ArrayList<>();
+        functionInterfaces.forEach((name, type) -> {
+            ClassWriter writer = new ClassWriter(0);
+            writer.visit(V1_8, ACC_PUBLIC | ACC_ABSTRACT | ACC_INTERFACE, name, null,
+                "java/lang/Object", null);
+            writer.visitMethod(ACC_PUBLIC | ACC_ABSTRACT, FUNCTION_METHOD, methodDescriptor(type),
+                null, null).visitEnd();
+            writer.visitEnd();
+            classes.add(new GeneratedClass(name, writer.toByteArray()));
+        });
+        return classes;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -180,6 +488,7 @@ public class BytecodeCompiler
             "([Ljava/lang/String;)Ljava/lang/Object;", null, null);
         method.visitCode();
         topLevel = true;
+        initCaptured(null);
         node.statements.forEach(this::run);
         // append "return null;" since we do not know if top-level code always returns
         loadConstant(method, null);
@@ -207,18 +516,73 @@ public class BytecodeCompiler
     // ---------------------------------------------------------------------------------------------
 
     private Object funDecl (FunDeclarationNode node)
+    {
+        // template functions are specialized when called (cf. specialization), functions nested
+        // in them are emitted with the specialization
+        if (!node.isTemplate)
+            function(node, methodName(node), bindings);
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the name of the method implementing the given function, which must not be a template
+     * function. This is its name, prefixed by the name of the specialization being emitted for
+     * functions nested in template functions.
+     */
+    private String methodName (FunDeclarationNode fun)
+    {
+        FunDeclarationNode template = templates.get(fun);
+        return template == null
+            ? fun.name
+            : specializationName(template, bindings) + "$" + fun.name;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Emits the method with the given name implementing the function, with the given template
+     * parameter bindings (null if not a template function).
+     */
+    private void function (FunDeclarationNode node, String name, Map<String, Type> bindings)
     {
         int surroundingVariableCounter = variableCounter;
+        HashMap<Pair<Scope, String>, Integer> surroundingVariables = variables;
         MethodVisitor surroundingMethod = method;
         boolean surroundingIsTopLevel = topLevel;
+        Label surroundingFunctionStart = functionStart;
+        int[] surroundingParameterSlots = parameterSlots;
+        String surroundingFunctionName = functionName;
+        Type surroundingReturnType = returnType;
+        Map<String, Type> surroundingBindings = this.bindings;
 
         variableCounter = 0;
+        variables = new HashMap<>();
         topLevel = false;
-        node.parameters.forEach(this::run);
+        functionName = name;
+        this.bindings = bindings;
+        FunType type = type(node);
+        returnType = type.returnType;
+
+        for (DeclarationNode decl: captures.get(node))
+            registerVariable(variableScope(decl), decl, capturedAsmType(decl));
+
+        // The scope attribute of parameters is not reliable (it is overwritten when analyzing
+        // calls), so use the scope of the function.
+        Scope scope = attributes.scope(node);
+        parameterSlots = new int[node.parameters.size()];
+        for (int i = 0; i < parameterSlots.length; ++i) {
+            ParameterNode param = node.parameters.get(i);
+            parameterSlots[i] = registerVariable(scope, param, nodeAsmType(param));
+        }
 
-        String descriptor = methodDescriptor(reactor.get(node, "type"));
-        method = container.visitMethod(ACC_PUBLIC | ACC_STATIC, node.name, descriptor, null, null);
+        String descriptor = functionDescriptor(node, type);
+        method = container.visitMethod(ACC_PUBLIC | ACC_STATIC, name, descriptor, null, null);
         method.visitCode();
+        functionStart = new Label();
+        method.visitLabel(functionStart);
+        initCaptured(node);
         run(node.block);
 
         // NOTE: The current semantic analysis check guarantee that there is we unconditionally
@@ -234,8 +598,89 @@ public class BytecodeCompiler
 
         method = surroundingMethod;
         variableCounter = surroundingVariableCounter;
+        variables = surroundingVariables;
         topLevel = surroundingIsTopLevel;
-        return null;
+        functionStart = surroundingFunctionStart;
+        parameterSlots = surroundingParameterSlots;
+        functionName = surroundingFunctionName;
+        returnType = surroundingReturnType;
+        this.bindings = surroundingBindings;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the bindings of the template parameters of the function for the given template
+     * arguments, which may refer to the template parameters of the function being specialized.
+     * Arguments other than {@code Int}, {@code Float}, {@code Bool} and {@code String} are erased
+     * to {@code Template}.
+     */
+    private Map<String, Type> bindings (FunDeclarationNode fun, List<TypeNode> arguments)
+    {
+        Map<String, Type> result = new HashMap<>();
+        for (int i = 0; i < fun.templateParameters.size(); ++i) {
+            Type type = resolve(arguments.get(i), null);
+            if (!(type instanceof IntType || type instanceof FloatType
+                    || type instanceof BoolType || type instanceof StringType))
+                type = TemplateType.INSTANCE;
+            result.put(fun.templateParameters.get(i).name, type);
+        }
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the name of the method implementing the template function for the given bindings.
+     */
+    private String specializationName (FunDeclarationNode fun, Map<String, Type> bindings)
+    {
+        StringBuilder b = new StringBuilder(fun.name);
+        for (TemplateParameterNode param: fun.templateParameters)
+            b.append('$').append(bindings.get(param.name).name());
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the name of the method implementing the template function for the given bindings,
+     * emitting it if it hasn't been yet.
+     */
+    private String specialization (FunDeclarationNode fun, Map<String, Type> bindings)
+    {
+        String name = specializationName(fun, bindings);
+        if (specializations.add(name))
+            function(fun, name, bindings);
+        return name;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the type of the template function for the given bindings.
+     */
+    private FunType specializedType (FunDeclarationNode fun, Map<String, Type> bindings)
+    {
+        Map<String, Type> surroundingBindings = this.bindings;
+        this.bindings = bindings;
+        FunType type = type(fun);
+        this.bindings = surroundingBindings;
+        return type;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the given call has template arguments and calls a template function.
+     */
+    private boolean templateCall (FunCallNode node)
+    {
+        if (node.templateArgs == null || node.templateArgs.isEmpty()
+                || !(node.function instanceof ReferenceNode))
+            return false;
+        Object decl = attributes.decl(node.function);
+        return decl instanceof FunDeclarationNode && ((FunDeclarationNode) decl).isTemplate;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -265,7 +710,7 @@ public class BytecodeCompiler
 
     private Object arrayLiteral (ArrayLiteralNode node)
     {
-        ArrayType type = reactor.get(node, "type");
+        ArrayType type = type(node);
         Type compType = type.componentType;
 
         method.visitLdcInsn(node.components.size());
@@ -279,13 +724,13 @@ public class BytecodeCompiler
             storeOpcode = DASTORE;
         } else if (compType instanceof BoolType) {
             method.visitIntInsn(NEWARRAY, T_BOOLEAN);
-            storeOpcode = IASTORE;
+            storeOpcode = BASTORE;
         } else if (compType instanceof StringType) {
             method.visitTypeInsn(ANEWARRAY, "java/lang/String");
         } else if (compType instanceof TypeType) {
             method.visitTypeInsn(ANEWARRAY, "norswap/sigh/types/TypeType");
         } else if (compType instanceof FunType) {
-            throw new UnsupportedOperationException("TODO"); // TODO
+            method.visitTypeInsn(ANEWARRAY, functionInterface((FunType) compType));
         } else if (compType instanceof NullType) {
             method.visitTypeInsn(ANEWARRAY, "norswap/sigh/bytecode/Null");
         } else if (compType instanceof VoidType || compType instanceof ArrayType) {
@@ -294,6 +739,8 @@ public class BytecodeCompiler
             method.visitTypeInsn(ANEWARRAY, "java/lang/Object");
         } else if (compType instanceof StructType) {
             method.visitTypeInsn(ANEWARRAY, structBinaryName((StructType) compType));
+        } else if (compType instanceof TemplateType) {
+            method.visitTypeInsn(ANEWARRAY, "java/lang/Object");
         }
 
         int i = 0;
@@ -301,6 +748,7 @@ public class BytecodeCompiler
             method.visitInsn(DUP); // duplicate the array
             loadConstant(method, i++);
             run(component);
+            implicitConversion(compType, type(component));
             method.visitInsn(storeOpcode);
         }
 
@@ -314,10 +762,17 @@ public class BytecodeCompiler
         if (isShortCircuit(node.operator))
             return shortCircuit(node);
 
-        run(node.left);
+        if (node.operator == ARRAY_OP)
+            return arrayOperation(node);
+
+        Type left  = type(node.left);
+        Type right = type(node.right);
 
-        Type left  = reactor.get(node.left, "type");
-        Type right = reactor.get(node.right, "type");
+        if ((left instanceof TemplateType || right instanceof TemplateType)
+                && !(type(node) instanceof StringType))
+            return dynamicOperation(node, left, right);
+
+        run(node.left);
 
         // promote long to double for mixed operations
         if (enablesPromotion(node.operator) && left instanceof IntType && right instanceof FloatType)
@@ -394,16 +849,388 @@ public class BytecodeCompiler
         int opcode = node.operator == AND ? IFEQ /* if 0 */ : /* OR */ IFNE /* if 1 */;
         Label endLabel = new Label();
         run(node.left);
+        implicitConversion(BoolType.INSTANCE, type(node.left));
         method.visitInsn(DUP);
         method.visitJumpInsn(opcode, endLabel);
         method.visitInsn(POP);
         run(node.right);
+        implicitConversion(BoolType.INSTANCE, type(node.right));
         method.visitLabel(endLabel);
         return null;
     }
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Compiles a binary operation with an operand of type {@code Template} to a call to {@link
+     * SighRuntime#binary}, which dispatches on the runtime class of the operands. The result is
+     * unboxed for comparisons, whose type is {@code Bool}.
+     */
+    private Object dynamicOperation (BinaryExpressionNode node, Type left, Type right)
+    {
+        run(node.left);
+        box(left);
+        run(node.right);
+        box(right);
+        method.visitFieldInsn(GETSTATIC, slashBinaryName(BinaryOperator.class),
+            node.operator.name(), AsmUtils.fieldDescriptor(BinaryOperator.class));
+        invokeStatic(method, SighRuntime.class, "binary",
+            Object.class, Object.class, BinaryOperator.class);
+        implicitConversion((Type) type(node), TemplateType.INSTANCE);
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles {@code a @(op) b} to a counted loop over the operand arrays, which are held in
+     * locals, as is the result array. The lengths are checked once before the loop, which has the
+     * canonical shape {@code for (i = 0; i < n; ++i) r[i] = a[i] op b[i]}, so that the JIT can
+     * remove the bounds checks and unroll (and for arithmetic, vectorize) it. {@code Int} elements
+     * are converted to {@code Float} in the loop for mixed operations.
+     *
+     * <p>Chains of array operations ({@code a @(*) b @(+) c}) are fused: the operand arrays at the
+     * leaves of the chain are evaluated from left to right, and the loop computes each element of
+     * the result from their elements, without temporary arrays.
+     *
+     * <p>Arrays of at least {@link ParallelArrays#threshold()} elements are instead handed to the
+     * array operation methods of {@link SighRuntime}, one operation at a time, which split the
+     * loop across cores. So are chains with an operation that has no loop (cf. {@link
+     * #arrayOperands}).
+     *
+     * <p>Operations on arrays whose components are of type {@code Template} (or of types that
+     * the loop does not handle) are compiled to a call to {@link SighRuntime#arrayOperation},
+     * whose result is an array of {@code Template}.
+     */
+    private Object arrayOperation (BinaryExpressionNode node)
+    {
+        Type result = ((ArrayType) type(node)).componentType;
+        if (result instanceof TemplateType) {
+            run(node.left);
+            run(node.right);
+            method.visitFieldInsn(GETSTATIC, slashBinaryName(BinaryOperator.class),
+                node.array_operator.name(), AsmUtils.fieldDescriptor(BinaryOperator.class));
+            invokeStatic(method, SighRuntime.class, "arrayOperation",
+                Object.class, Object.class, BinaryOperator.class);
+            return null;
+        }
+
+        List<SighNode> operands = new ArrayList<>();
+        boolean looped = arrayOperands(node, operands);
+
+        int[] arrays = new int[operands.size()];
+        int length = variableCounter++;
+        int resultArray = variableCounter++;
+        int index = variableCounter++;
+
+        for (int i = 0; i < arrays.length; ++i) {
+            arrays[i] = variableCounter++;
+            run(operands.get(i));
+            method.visitVarInsn(ASTORE, arrays[i]);
+            if (i == 0) {
+                method.visitVarInsn(ALOAD, arrays[0]);
+                method.visitInsn(ARRAYLENGTH);
+                method.visitVarInsn(ISTORE, length);
+            } else {
+                method.visitVarInsn(ILOAD, length);
+                method.visitVarInsn(ALOAD, arrays[i]);
+                method.visitInsn(ARRAYLENGTH);
+                invokeStatic(method, SighRuntime.class, "checkLengths", int.class, int.class);
+            }
+        }
+
+        if (!looped) {
+            // raises the same error as the interpreter
+            arrayOperationCalls(node, arrays, new int[1]);
+            return null;
+        }
+
+        Label sequential = new Label();
+        Label end = new Label();
+        method.visitVarInsn(ILOAD, length);
+        invokeStatic(method, ParallelArrays.class, "threshold");
+        method.visitJumpInsn(IF_ICMPLT, sequential);
+        arrayOperationCalls(node, arrays, new int[1]);
+        method.visitJumpInsn(GOTO, end);
+
+        method.visitLabel(sequential);
+        method.visitVarInsn(ILOAD, length);
+        int storeOpcode = newArray(result);
+        method.visitVarInsn(ASTORE, resultArray);
+
+        Label test = new Label();
+        Label body = new Label();
+        method.visitInsn(ICONST_0);
+        method.visitVarInsn(ISTORE, index);
+        method.visitJumpInsn(GOTO, test);
+        method.visitLabel(body);
+        method.visitVarInsn(ALOAD, resultArray);
+        method.visitVarInsn(ILOAD, index);
+        element(node, arrays, new int[1], index, false);
+        method.visitInsn(storeOpcode);
+        method.visitIincInsn(index, 1);
+        method.visitLabel(test);
+        method.visitVarInsn(ILOAD, index);
+        method.visitVarInsn(ILOAD, length);
+        method.visitJumpInsn(IF_ICMPLT, body);
+
+        method.visitVarInsn(ALOAD, resultArray);
+        method.visitLabel(end);
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the array operation that the given operand of an array operation is (possibly in
+     * parentheses), if it can be fused with it, or null.
+     */
+    private BinaryExpressionNode fusedOperation (SighNode node)
+    {
+        while (node instanceof ParenthesizedNode)
+            node = ((ParenthesizedNode) node).expression;
+        if (!(node instanceof BinaryExpressionNode)) return null;
+        BinaryExpressionNode binary = (BinaryExpressionNode) node;
+        return binary.operator == ARRAY_OP ? binary : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds the operand arrays at the leaves of the chain of array operations rooted at {@code
+     * node} to the list, from left to right. The components of the operands are numeric, strings
+     * or booleans: operations on other arrays have type {@code Template[]} (cf. {@link
+     * #binaryType}), and are not fused.
+     *
+     * <p>Returns false if an operation of the chain has no loop: {@code Bool} operators other than
+     * {@code &&} and {@code ||}, which are rejected by {@link SighRuntime#logic}.
+     */
+    private boolean arrayOperands (BinaryExpressionNode node, List<SighNode> operands)
+    {
+        Type left  = ((ArrayType) type(node.left)).componentType;
+        Type right = ((ArrayType) type(node.right)).componentType;
+        boolean bools = left instanceof BoolType && right instanceof BoolType;
+        boolean looped = !bools || node.array_operator == AND || node.array_operator == OR;
+        for (SighNode operand: Arrays.asList(node.left, node.right)) {
+            BinaryExpressionNode fused = fusedOperation(operand);
+            if (fused != null)
+                looped &= arrayOperands(fused, operands);
+            else
+                operands.add(operand);
+        }
+        return looped;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Pushes the element at the index in local {@code index} of the result of the chain of array
+     * operations rooted at {@code node}, whose operand arrays are in the locals {@code arrays}
+     * ({@code next[0]} being the position of the next leaf), converting it to a double if {@code
+     * floats} is set and it is a long.
+     */
+    private void element (SighNode node, int[] arrays, int[] next, int index, boolean floats)
+    {
+        Type component = ((ArrayType) type(node)).componentType;
+        BinaryExpressionNode fused = fusedOperation(node);
+        if (fused == null) {
+            loadElement(arrays[next[0]++], index, component, floats);
+            return;
+        }
+
+        Type left  = ((ArrayType) type(fused.left)).componentType;
+        Type right = ((ArrayType) type(fused.right)).componentType;
+        boolean numeric = isNumeric(left) && isNumeric(right);
+        boolean mixed   = numeric && (left instanceof FloatType || right instanceof FloatType);
+
+        element(fused.left, arrays, next, index, mixed);
+        element(fused.right, arrays, next, index, mixed);
+        elementOperation(fused.array_operator, mixed ? FloatType.INSTANCE : left);
+        if (floats && component instanceof IntType)
+            method.visitInsn(L2D);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Pushes the result of the chain of array operations rooted at {@code node}, whose operand
+     * arrays are in the locals {@code arrays}, computing each operation with {@link
+     * #arrayOperationCall}.
+     */
+    private void arrayOperationCalls (SighNode node, int[] arrays, int[] next)
+    {
+        BinaryExpressionNode fused = fusedOperation(node);
+        if (fused == null) {
+            method.visitVarInsn(ALOAD, arrays[next[0]++]);
+            return;
+        }
+        arrayOperationCalls(fused.left, arrays, next);
+        arrayOperationCalls(fused.right, arrays, next);
+        arrayOperationCall(fused.array_operator,
+            ((ArrayType) type(fused.left)).componentType,
+            ((ArrayType) type(fused.right)).componentType);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates an array with the given component type, whose length is on the stack, and returns
+     * the opcode that stores an element in it.
+     */
+    private int newArray (Type component)
+    {
+        if (component instanceof IntType) {
+            method.visitIntInsn(NEWARRAY, T_LONG);
+            return LASTORE;
+        } else if (component instanceof FloatType) {
+            method.visitIntInsn(NEWARRAY, T_DOUBLE);
+            return DASTORE;
+        } else if (component instanceof BoolType) {
+            method.visitIntInsn(NEWARRAY, T_BOOLEAN);
+            return BASTORE;
+        } else {
+            method.visitTypeInsn(ANEWARRAY, asmType(component).getInternalName());
+            return AASTORE;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Pushes the element of the array in local {@code array} at the index in local {@code index},
+     * converting it to a double if {@code floats} is set and it is a long.
+     */
+    private void loadElement (int array, int index, Type component, boolean floats)
+    {
+        method.visitVarInsn(ALOAD, array);
+        method.visitVarInsn(ILOAD, index);
+        method.visitInsn(component instanceof IntType   ? LALOAD
+                       : component instanceof FloatType ? DALOAD
+                       : component instanceof BoolType  ? BALOAD
+                       : AALOAD);
+        if (floats && component instanceof IntType)
+            method.visitInsn(L2D);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Applies the operator of an array operation to two elements of type {@code operands} at the
+     * top of the stack.
+     */
+    private void elementOperation (BinaryOperator op, Type operands)
+    {
+        if (operands instanceof BoolType) {
+            // both operands are evaluated already, so short-circuiting does not matter
+            // other operators are not compiled to loops (cf. arrayOperands)
+            method.visitInsn(op == AND ? IAND : IOR);
+        } else if (operands instanceof StringType) {
+            if (op == ADD) {
+                invokeStatic(method, SighRuntime.class, "concat", String.class, String.class);
+                return;
+            }
+            method.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "compareTo",
+                "(Ljava/lang/String;)I", false);
+            booleanOf(jumpOpcode(op));
+        } else {
+            switch (op) {
+                case ADD:       numOperation(LADD, DADD, operands, operands); break;
+                case SUBTRACT:  numOperation(LSUB, DSUB, operands, operands); break;
+                case MULTIPLY:  numOperation(LMUL, DMUL, operands, operands); break;
+                case DIVIDE:    numOperation(LDIV, DDIV, operands, operands); break;
+                case REMAINDER: numOperation(LREM, DREM, operands, operands); break;
+                default:
+                    comparison(op, jumpOpcode(op), -1, -1, operands, operands);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the opcode of the jump to take if the result of a three-way comparison (or of a
+     * {@code LCMP} or {@code DCMP} instruction) satisfies the given comparison operator.
+     */
+    private int jumpOpcode (BinaryOperator op)
+    {
+        switch (op) {
+            case GREATER:       return IFGT;
+            case GREATER_EQUAL: return IFGE;
+            case LOWER:         return IFLT;
+            case LOWER_EQUAL:   return IFLE;
+            case EQUALITY:      return IFEQ;
+            case NOT_EQUALS:    return IFNE;
+            default: throw new Error("not a comparison operator: " + op);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Replaces the int at the top of the stack by 1 if the given jump is taken, 0 otherwise.
+     */
+    private void booleanOf (int jumpOpcode)
+    {
+        Label trueLabel = new Label();
+        Label endLabel = new Label();
+        method.visitJumpInsn(jumpOpcode, trueLabel);
+        method.visitInsn(ICONST_0);
+        method.visitJumpInsn(GOTO, endLabel);
+        method.visitLabel(trueLabel);
+        method.visitInsn(ICONST_1);
+        method.visitLabel(endLabel);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Calls the array operation method of {@link SighRuntime} that applies {@code op} to the two
+     * arrays at the top of the stack (converting {@code Int} arrays for mixed operations).
+     */
+    private void arrayOperationCall (BinaryOperator op, Type left, Type right)
+    {
+        boolean numeric = isNumeric(left) && isNumeric(right);
+        boolean floats  = numeric && (left instanceof FloatType || right instanceof FloatType);
+
+        if (floats && right instanceof IntType)
+            invokeStatic(method, SighRuntime.class, "toFloats", long[].class);
+        if (floats && left instanceof IntType) {
+            method.visitInsn(SWAP);
+            invokeStatic(method, SighRuntime.class, "toFloats", long[].class);
+            method.visitInsn(SWAP);
+        }
+
+        if (left instanceof StringType && right instanceof StringType && op == ADD) {
+            invokeStatic(method, SighRuntime.class, "concat", String[].class, String[].class);
+            return;
+        }
+
+        Class<?> array;
+        String name;
+        if (numeric) {
+            array = floats ? double[].class : long[].class;
+            name  = isArithmetic(op) ? "arithmetic" : "comparison";
+        } else if (left instanceof StringType) {
+            array = String[].class;
+            name  = "comparison";
+        } else {
+            array = boolean[].class;
+            name  = "logic";
+        }
+
+        method.visitFieldInsn(GETSTATIC, slashBinaryName(BinaryOperator.class), op.name(),
+            AsmUtils.fieldDescriptor(BinaryOperator.class));
+        invokeStatic(method, SighRuntime.class, name, array, array, BinaryOperator.class);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static boolean isNumeric (Type type) {
+        return type instanceof IntType || type instanceof FloatType;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @SuppressWarnings("StatementWithEmptyBody")
     private void convertToString (Type type)
     {
@@ -428,10 +1255,12 @@ public class BytecodeCompiler
             // String.valueOf -> Type#toString -> Type#name
             invokeStatic(method, String.class, "valueOf", Object.class);
         } else if (type instanceof FunType) {
-            throw new UnsupportedOperationException("TODO"); // TODO
+            invokeStatic(method, SighRuntime.class, "functionName", Object.class);
         } else if (type instanceof StructType) {
             // String.valueOf -> Object#toString (or override)
             invokeStatic(method, String.class, "valueOf", Object.class);
+        } else if (type instanceof TemplateType) {
+            invokeStatic(method, SighRuntime.class, "toString", Object.class);
         } else {
             throw new Error("unexpected type: " + type);
         }
@@ -502,6 +1331,7 @@ public class BytecodeCompiler
         assert node.operator == UnaryOperator.NOT;
 
         run(node.operand);
+        implicitConversion(BoolType.INSTANCE, type(node.operand));
         Label falseLabel = new Label();
         Label endLabel = new Label();
         method.visitJumpInsn(IF_ZERO, falseLabel);
@@ -519,6 +1349,7 @@ public class BytecodeCompiler
     {
         run(node.array);
         run(node.index);
+        implicitConversion(IntType.INSTANCE, type(node.index));
         method.visitInsn(L2I); // indices must be 32-bit int
         method.visitInsn(nodeAsmType(node).getOpcode(IALOAD));
         return null;
@@ -528,48 +1359,60 @@ public class BytecodeCompiler
 
     private Object funCall (FunCallNode node)
     {
-        FunType funType = reactor.get(node.function, "type");
+        FunType funType = type(node.function);
 
-        // The function part can either be a reference, in which case we emit a call,
-        // or a more complex expression, which will evaluate to a lambda.
+        // The function part can either be a reference to a function or a constructor, in which
+        // case we emit a call, or a more complex expression, which will evaluate to a function
+        // value, whose interface method we call.
 
         if (node.function instanceof ReferenceNode) {
-            DeclarationNode decl = reactor.get(node.function, "decl");
+            DeclarationNode decl = attributes.decl(node.function);
             if (decl instanceof SyntheticDeclarationNode) {
-                return builtin(funType, decl.name(), node.arguments);
+                return builtin(decl.name(), node.arguments);
             }
             else if (decl instanceof FunDeclarationNode) {
+                FunDeclarationNode fun = (FunDeclarationNode) decl;
+                String name = fun.isTemplate ? fun.name : methodName(fun);
+                if (templateCall(node)) {
+                    Map<String, Type> callBindings = bindings(fun, node.templateArgs);
+                    name = specialization(fun, callBindings);
+                    funType = specializedType(fun, callBindings);
+                }
+                loadCaptures(fun);
                 runArguments(funType, node.arguments);
                 method.visitMethodInsn(INVOKESTATIC, containerName,
-                    decl.name(), methodDescriptor(funType), false);
-            }
-            else { // TODO
-                throw new UnsupportedOperationException("variables or parameters containing a function value");
+                    name, functionDescriptor(fun, funType), false);
+                return null;
             }
         }
         else if (node.function instanceof ConstructorNode) {
-            StructDeclarationNode decl = reactor.get(((ConstructorNode) node.function).ref, "decl");
-            String binaryName = structBinaryName(reactor.get(decl, "declared"));
+            StructDeclarationNode decl = attributes.decl(((ConstructorNode) node.function).ref);
+            String binaryName = structBinaryName(attributes.declared(decl));
             method.visitTypeInsn(NEW, binaryName);
             method.visitInsn(DUP);
             runArguments(funType, node.arguments);
             String descriptor = methodDescriptor(VoidType.INSTANCE, funType.paramTypes);
             method.visitMethodInsn(INVOKESPECIAL, binaryName, "<init>", descriptor, false);
+            return null;
         }
-        else
-            throw new UnsupportedOperationException("complex expression evaluating to a function value");
 
+        run(node.function);
+        runArguments(funType, node.arguments);
+        method.visitMethodInsn(INVOKEINTERFACE, functionInterface(funType),
+            FUNCTION_METHOD, methodDescriptor(funType), true);
         return null;
     }
 
     // ---------------------------------------------------------------------------------------------
 
-    private Object builtin (FunType funType, String name, List<ExpressionNode> arguments)
+    private Object builtin (String name, List<ExpressionNode> arguments)
     {
         assert name.equals("print"); // only one at the moment
         method.visitFieldInsn(GETSTATIC, "java/lang/System", "out",
             "Ljava/io/PrintStream;");
-        runArguments(funType, arguments);
+        // template values may be printed directly
+        run(arguments.get(0));
+        convertToString(type(arguments.get(0)));
         method.visitInsn(DUP_X1); // we return the printed string!
         method.visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println",
             "(Ljava/lang/String;)V", false);
@@ -586,18 +1429,25 @@ public class BytecodeCompiler
     {
         Vanilla.forEachIndexed(arguments, (i, arg) -> {
             run(arg);
-            implicitConversion(funType.paramTypes[i], reactor.get(arg, "type"));
+            implicitConversion(funType.paramTypes[i], type(arg));
         });
     }
 
     // ---------------------------------------------------------------------------------------------
 
-    private Object expressionStmt (ExpressionStatementNode node) {
+    private Object expressionStmt (ExpressionStatementNode node)
+    {
+        // appending to a rope: skip flattening the value of the assignment
+        if (node.expression instanceof AssignmentNode && appends((AssignmentNode) node.expression)) {
+            append((AssignmentNode) node.expression);
+            return null;
+        }
+
         run(node.expression);
         if (node.expression instanceof AssignmentNode)
-            pop(reactor.get(node.expression, "type"));
+            pop(type(node.expression));
         else if (node.expression instanceof FunCallNode) {
-            Type type = reactor.get(node.expression, "type");
+            Type type = type(node.expression);
             if (!(type instanceof VoidType)) pop(type);
         }
         return null;
@@ -606,6 +1456,9 @@ public class BytecodeCompiler
     // ---------------------------------------------------------------------------------------------
 
     private Object returnStmt (ReturnNode node) {
+        if (!topLevel && attributes.tailCall(node) && selfCall((FunCallNode) node.expression))
+            return tailCall((FunCallNode) node.expression);
+
         if (node.expression == null) {
             if (topLevel) {
                 loadConstant(method, null);
@@ -619,16 +1472,11 @@ public class BytecodeCompiler
         run(node.expression);
 
         if (topLevel) {
-            Type type = reactor.get(node.expression, "type");
-            if (type instanceof IntType)
-                invokeStatic(method, Long.class, "valueOf", long.class);
-            else if (type instanceof FloatType)
-                invokeStatic(method, Double.class, "valueOf", double.class);
-            else if (type instanceof BoolType)
-                invokeStatic(method, Boolean.class, "valueOf", boolean.class);
+            box(type(node.expression));
             method.visitInsn(ARETURN);
         } else {
-            method.visitInsn(nodeAsmType(node.expression).getOpcode(IRETURN));
+            implicitConversion(returnType, type(node.expression));
+            method.visitInsn(asmType(returnType).getOpcode(IRETURN));
         }
 
         return null;
@@ -636,6 +1484,42 @@ public class BytecodeCompiler
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Whether the call (which is known to call the current function) calls the method being
+     * emitted, i.e. the same specialization if the function is a template.
+     */
+    private boolean selfCall (FunCallNode node)
+    {
+        FunDeclarationNode fun = attributes.decl(node.function);
+        return !templateCall(node)
+            || specializationName(fun, bindings(fun, node.templateArgs)).equals(functionName);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles {@code return f(...)} within {@code f} by storing the arguments in the parameters
+     * and jumping back to the start of the method, so that the recursion does not consume stack.
+     */
+    private Object tailCall (FunCallNode node)
+    {
+        FunDeclarationNode decl = attributes.decl(node.function);
+        FunType funType = decl.isTemplate ? type(decl) : type(node.function);
+        runArguments(funType, node.arguments);
+
+        // all arguments are evaluated before any parameter is overwritten
+        // (the captured variables are the same for the recursive call)
+        for (int i = decl.parameters.size() - 1; i >= 0; --i) {
+            ParameterNode param = decl.parameters.get(i);
+            method.visitVarInsn(nodeAsmType(param).getOpcode(ISTORE), parameterSlots[i]);
+        }
+
+        method.visitJumpInsn(GOTO, functionStart);
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     private Object block (BlockNode node) {
         node.statements.forEach(this::run);
         return null;
@@ -649,6 +1533,7 @@ public class BytecodeCompiler
         Label endLabel = new Label();
         boolean hasElse = node.falseStatement != null;
         run(node.condition);
+        implicitConversion(BoolType.INSTANCE, type(node.condition));
         method.visitJumpInsn(IFEQ, hasElse ? elseLabel : endLabel);
         run(node.trueStatement);
         if (hasElse) {
@@ -668,6 +1553,7 @@ public class BytecodeCompiler
         Label endLabel = new Label();
         method.visitLabel(startLabel);
         run(node.condition);
+        implicitConversion(BoolType.INSTANCE, type(node.condition));
         method.visitJumpInsn(IFEQ, endLabel);
         run(node.body);
         method.visitJumpInsn(GOTO, startLabel);
@@ -679,27 +1565,32 @@ public class BytecodeCompiler
 
     private Object reference (ReferenceNode node)
     {
-        DeclarationNode decl = reactor.get(node, "decl");
+        DeclarationNode decl = attributes.decl(node);
 
-        // TODO distinguish local variables from closures
         if (decl instanceof VarDeclarationNode || decl instanceof ParameterNode) {
+            if (cells.contains(decl)) {
+                method.visitVarInsn(ALOAD, varIndex(node));
+                loadConstant(method, 0);
+                method.visitInsn(nodeAsmType(node).getOpcode(IALOAD));
+                return null;
+            }
             method.visitVarInsn(nodeAsmType(node).getOpcode(ILOAD), varIndex(node));
+            if (ropes.contains(decl))
+                invokeStatic(method, SighRuntime.class, "flatten", Rope.class);
         }
         else if (decl instanceof StructDeclarationNode) {
             // NOTE: This is not used when the reference is part of a constructor call, the
             // resolution is handled in #funCall.
-            org.objectweb.asm.Type asmType = asmType(reactor.get(decl, "declared"));
+            org.objectweb.asm.Type asmType = asmType(attributes.declared(decl));
             method.visitLdcInsn(asmType); // class constant for emitted type
         }
         else if (decl instanceof FunDeclarationNode) {
             // NOTE: This is not used when the reference is part of a function call, the resolution
             // is handled in #funCall.
-
-            // TODO proper handling/representation of function object
-            //  For now I use a method handle. There is no way to use it in the language however.
-            method.visitLdcInsn(new Handle(
-                H_INVOKESTATIC, containerName, decl.name(),
-                methodDescriptor(reactor.get(decl, "type")), false));
+            FunDeclarationNode fun = (FunDeclarationNode) decl;
+            loadCaptures(fun);
+            functionValue(type(node), captures.get(fun), new Handle(
+                H_INVOKESTATIC, containerName, methodName(fun), functionDescriptor(fun), false));
         }
         else if (decl instanceof SyntheticDeclarationNode) {
             switch (decl.name()) {
@@ -722,8 +1613,8 @@ public class BytecodeCompiler
                     method.visitLdcInsn(org.objectweb.asm.Type.getType(Class.class));
                     break;
                 case "print":
-                    // TODO cf FunDeclarationNode case above
-                    method.visitLdcInsn(staticHandle(SighRuntime.class, "print", String.class));
+                    functionValue(type(node), Collections.emptyList(),
+                        staticHandle(SighRuntime.class, "print", String.class));
                     break;
                 case "true":  loadConstant(method, 1);      break;
                 case "false": loadConstant(method, 0);      break;
@@ -740,9 +1631,22 @@ public class BytecodeCompiler
     private Object varDecl (VarDeclarationNode node)
     {
         org.objectweb.asm.Type type = nodeAsmType(node);
-        int index = registerVariable(node, type);
+        if (cells.contains(node)) {
+            method.visitVarInsn(ALOAD, variableIndex(node));
+            loadConstant(method, 0);
+            run(node.initializer);
+            implicitConversion(node, node.initializer);
+            method.visitInsn(type.getOpcode(IASTORE));
+            return null;
+        }
+
+        // captured variables are registered at the start of the method (cf. initCaptured)
+        Integer captured = variables.get(new Pair<>(variableScope(node), node.name));
+        int index = captured != null ? captured : registerVariable(node, type);
         run(node.initializer);
         implicitConversion(node, node.initializer);
+        if (ropes.contains(node))
+            invokeStatic(method, SighRuntime.class, "rope", String.class);
         method.visitVarInsn(type.getOpcode(ISTORE), index);
         // LATER: method.visitLocalVariable for debug information
         // https://stackoverflow.com/questions/28633731
@@ -751,26 +1655,36 @@ public class BytecodeCompiler
 
     // ---------------------------------------------------------------------------------------------
 
-    private Object parameter (ParameterNode node) {
-        registerVariable(node);
-        return null;
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
     public Object assignment (AssignmentNode node)
     {
         if (node.left instanceof ReferenceNode) {
             ReferenceNode left = (ReferenceNode) node.left;
+            if (appends(node)) {
+                append(node);
+                method.visitVarInsn(ALOAD, varIndex(left));
+                invokeStatic(method, SighRuntime.class, "flatten", Rope.class);
+                return null;
+            }
+            if (cells.contains(attributes.decl(left))) {
+                method.visitVarInsn(ALOAD, varIndex(left));
+                loadConstant(method, 0);
+                run(node.right);
+                dup_x2(implicitConversion(node, node.right));
+                method.visitInsn(nodeAsmType(node).getOpcode(IASTORE));
+                return null;
+            }
             run(node.right);
             Type type = implicitConversion(node, node.right);
             dup(type);
+            if (ropes.contains(attributes.decl(left)))
+                invokeStatic(method, SighRuntime.class, "rope", String.class);
             method.visitVarInsn(nodeAsmType(node).getOpcode(ISTORE), varIndex(left));
         }
         else if (node.left instanceof ArrayAccessNode) {
             ArrayAccessNode left = (ArrayAccessNode) node.left;
             run(left.array);
             run(left.index);
+            implicitConversion(IntType.INSTANCE, type(left.index));
             method.visitInsn(L2I);
             run(node.right);
             Type type = implicitConversion(node, node.right);
@@ -783,8 +1697,8 @@ public class BytecodeCompiler
             run(node.right);
             Type type = implicitConversion(node, node.right);
             dup_x1(type);
-            StructType structType = reactor.get(left.stem, "type");
-            Type fieldType = reactor.get(node, "type");
+            StructType structType = type(left.stem);
+            Type fieldType = type(node);
             method.visitFieldInsn(PUTFIELD, structBinaryName(structType), left.fieldName,
                 fieldDescriptor(fieldType));
         }
@@ -793,6 +1707,36 @@ public class BytecodeCompiler
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Whether the assignment appends to a variable that holds a rope (cf. {@link
+     * FrozenAttributes#appendedStrings}).
+     */
+    private boolean appends (AssignmentNode node) {
+        return attributes.appendedStrings(node) != null
+            && ropes.contains(attributes.decl(node.left));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Emits an assignment of the form {@code s = s + a + b ...} (cf. {@link
+     * FrozenAttributes#appendedStrings}), which appends the operands to the rope held by the
+     * variable, leaving nothing on the stack.
+     */
+    private void append (AssignmentNode node)
+    {
+        int index = varIndex((ReferenceNode) node.left);
+        method.visitVarInsn(ALOAD, index);
+        for (ExpressionNode operand: attributes.appendedStrings(node)) {
+            run(operand);
+            convertToString(type(operand));
+            invokeStatic(method, SighRuntime.class, "append", Rope.class, String.class);
+        }
+        method.visitVarInsn(ASTORE, index);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     private Object structDecl (StructDeclarationNode node)
     {
         String binaryName = node.name;
@@ -802,7 +1746,7 @@ public class BytecodeCompiler
 
         // generate constructor
         Type[] paramTypes =
-            node.fields.stream().map(f -> (Type) reactor.get(f, "type")).toArray(Type[]::new);
+            node.fields.stream().map(f -> (Type) type(f)).toArray(Type[]::new);
         String descriptor = methodDescriptor(VoidType.INSTANCE, paramTypes);
         MethodVisitor init = struct.visitMethod(ACC_PUBLIC, "<init>", descriptor, null, null);
         init.visitCode();
@@ -838,15 +1782,22 @@ public class BytecodeCompiler
 
     private Object fieldAccess (FieldAccessNode node) {
         run(node.stem);
-        String binaryName = asmType(reactor.get(node.stem, "type")).getClassName();
+        String binaryName = asmType(type(node.stem)).getClassName();
         method.visitFieldInsn(GETFIELD, binaryName, node.fieldName, nodeFieldDescriptor(node));
         return null;
     }
 
     // ---------------------------------------------------------------------------------------------
 
-    private Constructor constructor (ConstructorNode node) {
-        // not needed - handled in funCall instead
+    private Object constructor (ConstructorNode node)
+    {
+        // NOTE: This is not used when the constructor is called, the call is handled in #funCall.
+        StructDeclarationNode decl = attributes.decl(node.ref);
+        String binaryName = structBinaryName(attributes.declared(decl));
+        FunType type = type(node);
+        String descriptor = methodDescriptor(VoidType.INSTANCE, type.paramTypes);
+        functionValue(type, Collections.emptyList(),
+            new Handle(H_NEWINVOKESPECIAL, binaryName, "<init>", descriptor, false));
         return null;
     }
 
@@ -854,12 +1805,199 @@ public class BytecodeCompiler
     // region [Utilities]
     // =============================================================================================
 
+    /**
+     * Returns the type of the given node. This is its {@code type} attribute, unless the node
+     * belongs to the specialization of a template function, or its type attribute depends on
+     * template parameters (e.g. the call of a template function), in which case the type is derived
+     * from the types of its children, the template arguments, and the declared types of
+     * variables.
+     *
+     * <p>The type of operations, assignments and array accesses is always derived, as their
+     * operands may be of type {@code Template} even if their type attribute is concrete (e.g.
+     * {@code a @(>) b} is a {@code Bool[]} for the semantic analysis, even if {@code a} and {@code
+     * b} are {@code Template[]}).
+     */
+    private <T> T type (SighNode node)
+    {
+        Object type = attributes.type(node);
+        return bindings == null && concrete(type) && !derived(node)
+            ? cast(type)
+            : cast(specializedType(node, type));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the type of the given node is always derived from the types of its children (cf.
+     * {@link #type}).
+     */
+    private static boolean derived (SighNode node)
+    {
+        return node instanceof BinaryExpressionNode
+            || node instanceof AssignmentNode
+            || node instanceof ArrayAccessNode
+            || node instanceof ParenthesizedNode;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the given type attribute is a type that does not depend on template parameters.
+     */
+    private static boolean concrete (Object type)
+    {
+        if (type instanceof ArrayType)
+            return concrete(((ArrayType) type).componentType);
+        if (type instanceof FunType) {
+            FunType funType = (FunType) type;
+            return concrete(funType.returnType)
+                && Arrays.stream(funType.paramTypes).allMatch(BytecodeCompiler::concrete);
+        }
+        return type instanceof Type && !(type instanceof TemplateType);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Derives the type of the given node, whose type attribute ({@code attribute}) may depend on
+     * template parameters, cf. {@link #type}.
+     */
+    private Type specializedType (SighNode node, Object attribute)
+    {
+        if (node instanceof VarDeclarationNode)
+            return resolve(((VarDeclarationNode) node).type, attribute);
+        if (node instanceof ParameterNode)
+            return resolve(((ParameterNode) node).type, attribute);
+        if (node instanceof FunDeclarationNode) {
+            FunDeclarationNode fun = (FunDeclarationNode) node;
+            Type[] params = fun.parameters.stream().map(p -> (Type) type(p)).toArray(Type[]::new);
+            Type ret = resolve(fun.returnType,
+                attribute instanceof FunType ? ((FunType) attribute).returnType : null);
+            return new FunType(ret, params);
+        }
+        if (node instanceof ReferenceNode) {
+            Object decl = attributes.decl(node);
+            return decl instanceof VarDeclarationNode || decl instanceof ParameterNode
+                ? type((SighNode) decl)
+                : cast(attribute);
+        }
+        if (node instanceof ParenthesizedNode)
+            return type(((ParenthesizedNode) node).expression);
+        if (node instanceof AssignmentNode)
+            return type(((AssignmentNode) node).left);
+        if (node instanceof UnaryExpressionNode)
+            return BoolType.INSTANCE; // NOT
+        if (node instanceof ArrayAccessNode)
+            return ((ArrayType) type(((ArrayAccessNode) node).array)).componentType;
+        if (node instanceof ArrayLiteralNode && !concrete(attribute))
+            return new ArrayType(componentType((ArrayLiteralNode) node), null);
+        if (node instanceof FunCallNode) {
+            FunCallNode call = (FunCallNode) node;
+            if (templateCall(call)) {
+                FunDeclarationNode fun = attributes.decl(call.function);
+                return specializedType(fun, bindings(fun, call.templateArgs)).returnType;
+            }
+            Object funType = type(call.function);
+            return funType instanceof FunType ? ((FunType) funType).returnType : cast(attribute);
+        }
+        if (node instanceof BinaryExpressionNode) {
+            BinaryExpressionNode binary = (BinaryExpressionNode) node;
+            return binaryType(binary.operator, binary.array_operator,
+                type(binary.left), type(binary.right));
+        }
+        return cast(attribute);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the component type of the given array literal: the type of its components if they
+     * all have the same type, {@code Float} if they are all numeric, and {@code Template} otherwise
+     * (e.g. {@code [1.0, "Hello"]}).
+     */
+    private Type componentType (ArrayLiteralNode node)
+    {
+        Type result = type(node.components.get(0));
+        for (ExpressionNode component: node.components) {
+            Type type = type(component);
+            if (type.equals(result))
+                continue;
+            result = isNumeric(type) && isNumeric(result)
+                ? FloatType.INSTANCE
+                : TemplateType.INSTANCE;
+        }
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the type of a binary operation ({@code arrayOp} is the element-wise operator of
+     * {@code ARRAY_OP}), as assigned by the semantic analysis, except that arithmetic on {@code
+     * Template} values is of type {@code Template}, and that array operations not handled by
+     * compiled loops (cf. {@link #arrayOperation}) are of type {@code Template[]}.
+     */
+    private static Type binaryType (BinaryOperator op, BinaryOperator arrayOp, Type left, Type right)
+    {
+        if (op == ARRAY_OP) {
+            Type l = ((ArrayType) left).componentType;
+            Type r = ((ArrayType) right).componentType;
+            boolean typed = isNumeric(l) && isNumeric(r)
+                || l instanceof StringType && r instanceof StringType
+                || l instanceof BoolType && r instanceof BoolType;
+            return new ArrayType(typed ? binaryType(arrayOp, null, l, r) : TemplateType.INSTANCE,
+                null);
+        }
+        if (op == ADD && (left instanceof StringType || right instanceof StringType))
+            return StringType.INSTANCE;
+        if (op == ADD || op == SUBTRACT || op == MULTIPLY || op == DIVIDE || op == REMAINDER)
+            return left instanceof TemplateType || right instanceof TemplateType
+                ? TemplateType.INSTANCE
+                : left instanceof FloatType || right instanceof FloatType
+                ? FloatType.INSTANCE
+                : IntType.INSTANCE;
+        return BoolType.INSTANCE;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the type denoted by the given type node, taking the current template {@link
+     * #bindings} into account. Types other than template parameters are taken from {@code
+     * attribute} if it is a concrete type (cf. {@link #concrete}), or else resolved by name
+     * (only for the primitive types and {@code String}).
+     */
+    private Type resolve (TypeNode node, Object attribute)
+    {
+        if (node instanceof ArrayTypeNode) {
+            Type component = resolve(((ArrayTypeNode) node).componentType,
+                attribute instanceof ArrayType ? ((ArrayType) attribute).componentType : null);
+            return new ArrayType(component, null);
+        }
+        String name = ((SimpleTypeNode) node).name;
+        if (bindings != null && bindings.containsKey(name))
+            return bindings.get(name);
+        if (concrete(attribute))
+            return (Type) attribute;
+        switch (name) {
+            case "Int":     return IntType.INSTANCE;
+            case "Float":   return FloatType.INSTANCE;
+            case "Bool":    return BoolType.INSTANCE;
+            case "String":  return StringType.INSTANCE;
+            case "Void":    return VoidType.INSTANCE;
+            case "Template":return TemplateType.INSTANCE;
+            default:        return cast(attribute);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns the {@link org.objectweb.asm.Type ASM Type} for the {@code type} attribute of the
      * given node.
      */
     private org.objectweb.asm.Type nodeAsmType (SighNode node) {
-        return asmType(reactor.get(node, "type"));
+        return asmType(type(node));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -868,7 +2006,7 @@ public class BytecodeCompiler
      * Return the JVM field descriptor for the given node, which must have a {@code type} attribute.
      */
     private String nodeFieldDescriptor (SighNode node) {
-        return fieldDescriptor(reactor.get(node, "type"));
+        return fieldDescriptor(type(node));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -889,9 +2027,18 @@ public class BytecodeCompiler
      * to compute faster in case it is already available.
      */
     private int registerVariable (DeclarationNode node, org.objectweb.asm.Type type) {
+        return registerVariable(attributes.scope(node), node, type);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * See {@link #registerVariable(DeclarationNode)}. Registers the variable in the given scope.
+     */
+    private int registerVariable (Scope scope, DeclarationNode node, org.objectweb.asm.Type type) {
         int index = variableCounter;
         variableCounter += type.getSize();
-        variables.put(new Pair<>(reactor.get(node, "scope"), node.name()), index);
+        variables.put(new Pair<>(scope, node.name()), index);
         return index;
     }
 
@@ -901,7 +2048,143 @@ public class BytecodeCompiler
      * Returns the variable index for the given reference, which must be a reference to a variable.
      */
     private int varIndex (ReferenceNode node) {
-        return variables.get(new Pair<>((Scope) reactor.get(node, "scope"), node.name));
+        return variables.get(new Pair<>((Scope) attributes.scope(node), node.name));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the variable index for the given variable or parameter declaration.
+     */
+    private int variableIndex (DeclarationNode decl) {
+        return variables.get(new Pair<>(variableScope(decl), decl.name()));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the scope under which the given variable or parameter declaration is registered.
+     */
+    private Scope variableScope (DeclarationNode decl) {
+        // cf. funDecl for parameters
+        return decl instanceof ParameterNode
+            ? attributes.scope(owners.get(decl))
+            : attributes.scope(decl);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the ASM type of the JVM variable holding the given variable or parameter, which is
+     * the type of its cell if it has one.
+     */
+    private org.objectweb.asm.Type capturedAsmType (DeclarationNode decl) {
+        return cells.contains(decl)
+            ? org.objectweb.asm.Type.getType("[" + nodeFieldDescriptor(decl))
+            : nodeAsmType(decl);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Registers the captured variables declared by the given function (or by top-level code if
+     * null) at the start of its method. Their cells are created, and the values of parameters moved
+     * into them. Other variables are zeroed, since the functions capturing them may be called
+     * before the declaration is executed.
+     */
+    private void initCaptured (FunDeclarationNode owner)
+    {
+        for (DeclarationNode decl: captured) {
+            if (owners.get(decl) != owner) continue;
+            Type type = type(decl);
+            if (cells.contains(decl)) {
+                loadConstant(method, 1);
+                int storeOpcode = newArray(type);
+                if (decl instanceof ParameterNode) {
+                    method.visitInsn(DUP);
+                    loadConstant(method, 0);
+                    method.visitVarInsn(asmType(type).getOpcode(ILOAD), variableIndex(decl));
+                    method.visitInsn(storeOpcode);
+                }
+            }
+            else if (decl instanceof ParameterNode)
+                continue;
+            else
+                loadConstant(method, type instanceof IntType   ? (Object) 0L
+                                   : type instanceof FloatType ? (Object) 0.0
+                                   : type instanceof BoolType  ? (Object) 0
+                                   : null);
+
+            org.objectweb.asm.Type asmType = capturedAsmType(decl);
+            int index = registerVariable(variableScope(decl), decl, asmType);
+            method.visitVarInsn(asmType.getOpcode(ISTORE), index);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Pushes the variables captured by the given function (their value, or their cell).
+     */
+    private void loadCaptures (FunDeclarationNode fun) {
+        for (DeclarationNode decl: captures.get(fun))
+            method.visitVarInsn(capturedAsmType(decl).getOpcode(ILOAD), variableIndex(decl));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the descriptor of the method implementing the given function, whose parameters are
+     * the variables it captures followed by its own parameters.
+     */
+    private String functionDescriptor (FunDeclarationNode fun) {
+        return functionDescriptor(fun, type(fun));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * See {@link #functionDescriptor(FunDeclarationNode)}, using the given function type (that of
+     * a specialization, for template functions).
+     */
+    private String functionDescriptor (FunDeclarationNode fun, FunType type)
+    {
+        StringBuilder b = new StringBuilder("(");
+        for (DeclarationNode decl: captures.get(fun))
+            b.append(capturedAsmType(decl).getDescriptor());
+        return b.append(methodDescriptor(type).substring(1)).toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the name of the functional interface for the given function type, and records that
+     * it must be generated.
+     */
+    private String functionInterface (FunType type)
+    {
+        String name = functionInterfaceName(type);
+        functionInterfaces.putIfAbsent(name, type);
+        return name;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Pushes a function value of the given type, obtained from {@link LambdaMetafactory}, which
+     * calls {@code implementation} with the given captured variables (whose values or cells must
+     * be on the stack) followed by its own arguments.
+     */
+    private void functionValue (FunType type, List<DeclarationNode> captured, Handle implementation)
+    {
+        StringBuilder factory = new StringBuilder("(");
+        for (DeclarationNode decl: captured)
+            factory.append(capturedAsmType(decl).getDescriptor());
+        factory.append(")L").append(functionInterface(type)).append(';');
+        org.objectweb.asm.Type signature =
+            org.objectweb.asm.Type.getMethodType(methodDescriptor(type));
+        method.visitInvokeDynamicInsn(FUNCTION_METHOD, factory.toString(), METAFACTORY,
+            signature, implementation, signature, LambdaMetafactory.FLAG_SERIALIZABLE);
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -910,22 +2193,82 @@ public class BytecodeCompiler
      * Implicitly converts the value at the top of the stack (of type {@code right}) to the type
      * {@code left} if compatible, in which case {@code left} is returned. Otherwise returns {@code
      * right}.
+     *
+     * <p>Values are boxed when converted to {@code Template}, and unboxed (or cast) when
+     * converted from it. Arrays converted to or from arrays of {@code Template} are copied, and so
+     * are arrays with {@code Int} elements converted to arrays with {@code Float} elements.
      */
-    private Type implicitConversion (Type left, Type right) {
+    private Type implicitConversion (Type left, Type right)
+    {
         if (left instanceof FloatType && right instanceof IntType) {
             method.visitInsn(L2D);
             return left;
         }
+        if (left instanceof TemplateType && !(right instanceof TemplateType)) {
+            box(right);
+            return left;
+        }
+        if (right instanceof TemplateType && !(left instanceof TemplateType)) {
+            if (left instanceof IntType || left instanceof FloatType) {
+                method.visitTypeInsn(CHECKCAST, "java/lang/Number");
+                method.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Number",
+                    left instanceof IntType ? "longValue" : "doubleValue",
+                    left instanceof IntType ? "()J" : "()D", false);
+            }
+            else if (left instanceof BoolType)
+                unbox(left);
+            else if (!(left instanceof NullType || left instanceof VoidType))
+                method.visitTypeInsn(CHECKCAST, asmType(left).getInternalName());
+            return left;
+        }
+        if (left instanceof ArrayType && right instanceof ArrayType) {
+            Type leftComponent  = ((ArrayType) left).componentType;
+            Type rightComponent = ((ArrayType) right).componentType;
+            boolean leftErased  = leftComponent instanceof TemplateType;
+            boolean rightErased = rightComponent instanceof TemplateType;
+            if (leftErased && !rightErased) {
+                invokeStatic(method, SighRuntime.class, "boxed", Object.class);
+                return left;
+            }
+            if (rightErased && !leftErased && leftComponent != null) {
+                loadClass(leftComponent);
+                invokeStatic(method, SighRuntime.class, "unboxed", Object[].class, Class.class);
+                method.visitTypeInsn(CHECKCAST, asmType(left).getInternalName());
+                return left;
+            }
+            if (widens(right, left)) {
+                loadClass(left);
+                invokeStatic(method, SighRuntime.class, "widened", Object.class, Class.class);
+                method.visitTypeInsn(CHECKCAST, asmType(left).getInternalName());
+                return left;
+            }
+        }
         return right;
     }
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Whether {@code type} and {@code target} are array types with the same number of dimensions,
+     * whose innermost elements are respectively of type {@code Int} and {@code Float}.
+     */
+    private static boolean widens (Type type, Type target)
+    {
+        if (!(type instanceof ArrayType && target instanceof ArrayType))
+            return false;
+        Type component = ((ArrayType) type).componentType;
+        Type targetComponent = ((ArrayType) target).componentType;
+        return component instanceof IntType && targetComponent instanceof FloatType
+            || widens(component, targetComponent);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Like {@link #implicitConversion(Type, Type)}, using the type attributes of the passed nodes.
      */
     private Type implicitConversion (SighNode left, SighNode right) {
-        return implicitConversion((Type) reactor.get(left,  "type"), reactor.get(right, "type"));
+        return implicitConversion((Type) type(left), type(right));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -969,6 +2312,59 @@ public class BytecodeCompiler
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Boxes the value at the top of the stack, of type {@code type}, if it is a primitive.
+     */
+    private void box (Type type) {
+        if (type instanceof IntType)
+            invokeStatic(method, Long.class, "valueOf", long.class);
+        else if (type instanceof FloatType)
+            invokeStatic(method, Double.class, "valueOf", double.class);
+        else if (type instanceof BoolType)
+            invokeStatic(method, Boolean.class, "valueOf", boolean.class);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Casts the object at the top of the stack to the representation of {@code type}, unboxing it
+     * if it is a primitive.
+     */
+    private void unbox (Type type)
+    {
+        String owner = slashBinaryName(
+              type instanceof IntType   ? Long.class
+            : type instanceof FloatType ? Double.class
+            : type instanceof BoolType  ? Boolean.class
+            : String.class);
+        method.visitTypeInsn(CHECKCAST, owner);
+        if (type instanceof IntType)
+            method.visitMethodInsn(INVOKEVIRTUAL, owner, "longValue", "()J", false);
+        else if (type instanceof FloatType)
+            method.visitMethodInsn(INVOKEVIRTUAL, owner, "doubleValue", "()D", false);
+        else if (type instanceof BoolType)
+            method.visitMethodInsn(INVOKEVIRTUAL, owner, "booleanValue", "()Z", false);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Pushes the {@link Class} object for the representation of {@code type}.
+     */
+    private void loadClass (Type type)
+    {
+        if (type.isPrimitive()) {
+            Class<?> box = type instanceof IntType   ? Long.class
+                         : type instanceof FloatType ? Double.class
+                         : Boolean.class;
+            method.visitFieldInsn(GETSTATIC, slashBinaryName(box), "TYPE", "Ljava/lang/Class;");
+        } else {
+            method.visitLdcInsn(asmType(type));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Calls the right pop instruction depending on {@code type}, the type of the value at the top
      * of the stack.
@@ -28,9 +28,19 @@ public final class CompilationResult
 
     // ---------------------------------------------------------------------------------------------
 
-    public CompilationResult (GeneratedClass mainClass, List<GeneratedClass> structures) {
+    /**
+     * The generated functional interfaces for the function types used as values in the source unit
+     * (cf. {@link TypeUtils#functionInterfaceName}).
+     */
+    public final List<GeneratedClass> functionInterfaces;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public CompilationResult (GeneratedClass mainClass, List<GeneratedClass> structures,
+                              List<GeneratedClass> functionInterfaces) {
         this.mainClass = mainClass;
         this.structures = structures;
+        this.functionInterfaces = functionInterfaces;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -38,8 +48,12 @@ public final class CompilationResult
     /**
      * Load this class in the current JVM using the given class loader and return the
      * {@link Class} object for {@link #mainClass}.
+     *
+     * <p>The function interfaces are shared with the other compilation results loaded by the same
+     * loader.
      */
     public Class<?> load (ByteArrayClassLoader loader) {
+        functionInterfaces.forEach(it -> it.loadIfAbsent(loader));
         structures.forEach(it -> it.load(loader));
         return mainClass.load(loader);
     }
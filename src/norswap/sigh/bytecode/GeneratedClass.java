@@ -41,6 +41,16 @@ public final class GeneratedClass
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Like {@link #load}, but reuses the class if the loader already loaded a class with the same
+     * name (cf. {@link ByteArrayClassLoader#defineClassIfAbsent}).
+     */
+    public Class<?> loadIfAbsent (ByteArrayClassLoader loader) {
+        return loader.defineClassIfAbsent(binaryName(), bytes);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns the dot-separated binary name of the class.
      */
@@ -0,0 +1,53 @@
+package norswap.sigh.bytecode;
+
+import norswap.sigh.ast.BinaryOperator;
+
+/**
+ * Loops that apply an element-wise array operator ({@code a @(op) b}) to a range of indices of
+ * numeric arrays, writing into a result array, used by the array operation methods of {@link
+ * SighRuntime}.
+ *
+ * <p>{@link #detect()} picks the implementation once, at startup: the SIMD kernels of the
+ * optional {@code norswap.sigh.vector} library, which uses the incubating Vector API
+ * ({@code jdk.incubator.vector}), if it is on the class path, the JVM runs with {@code
+ * --add-modules jdk.incubator.vector}, the hardware has vectors of at least two 64-bit lanes, and
+ * the {@code sigh.vector} system property isn't {@code false}. Otherwise, the plain loops of
+ * {@link ScalarKernels}.
+ */
+public interface NumericKernels
+{
+    // ---------------------------------------------------------------------------------------------
+
+    void arithmetic (long[] left, long[] right, long[] result, BinaryOperator op, int from, int to);
+
+    void arithmetic (double[] left, double[] right, double[] result, BinaryOperator op,
+                     int from, int to);
+
+    void comparison (long[] left, long[] right, boolean[] result, BinaryOperator op,
+                     int from, int to);
+
+    void comparison (double[] left, double[] right, boolean[] result, BinaryOperator op,
+                     int from, int to);
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Name of the class implementing the SIMD kernels. */
+    String VECTOR_KERNELS = "norswap.sigh.vector.VectorKernels";
+
+    /**
+     * Returns the best kernels available on this JVM and hardware (see the class documentation).
+     */
+    static NumericKernels detect ()
+    {
+        if (!Boolean.parseBoolean(System.getProperty("sigh.vector", "true")))
+            return ScalarKernels.INSTANCE;
+        try {
+            return (NumericKernels) Class.forName(VECTOR_KERNELS).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+            // library absent, module not enabled, or no SIMD support
+            return ScalarKernels.INSTANCE;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,119 @@
+package norswap.sigh.bytecode;
+
+import norswap.sigh.ast.BinaryOperator;
+
+import static java.lang.String.format;
+
+/**
+ * The plain loops implementing {@link NumericKernels}. The operator is dispatched upon once per
+ * range, not once per element. Supports all operators (throwing an {@link Error} for operators
+ * that do not apply to the type), which makes it the fallback of the SIMD kernels too.
+ */
+public final class ScalarKernels implements NumericKernels
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public static final ScalarKernels INSTANCE = new ScalarKernels();
+
+    private ScalarKernels () {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override
+    public void arithmetic (long[] left, long[] right, long[] result, BinaryOperator op,
+                            int from, int to)
+    {
+        switch (op) {
+            case ADD:
+                for (int i = from; i < to; ++i) result[i] = left[i] + right[i]; break;
+            case SUBTRACT:
+                for (int i = from; i < to; ++i) result[i] = left[i] - right[i]; break;
+            case MULTIPLY:
+                for (int i = from; i < to; ++i) result[i] = left[i] * right[i]; break;
+            case DIVIDE:
+                for (int i = from; i < to; ++i) result[i] = left[i] / right[i]; break;
+            case REMAINDER:
+                for (int i = from; i < to; ++i) result[i] = left[i] % right[i]; break;
+            default:
+                throw unsupported(op, "Int");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override
+    public void arithmetic (double[] left, double[] right, double[] result, BinaryOperator op,
+                            int from, int to)
+    {
+        switch (op) {
+            case ADD:
+                for (int i = from; i < to; ++i) result[i] = left[i] + right[i]; break;
+            case SUBTRACT:
+                for (int i = from; i < to; ++i) result[i] = left[i] - right[i]; break;
+            case MULTIPLY:
+                for (int i = from; i < to; ++i) result[i] = left[i] * right[i]; break;
+            case DIVIDE:
+                for (int i = from; i < to; ++i) result[i] = left[i] / right[i]; break;
+            case REMAINDER:
+                for (int i = from; i < to; ++i) result[i] = left[i] % right[i]; break;
+            default:
+                throw unsupported(op, "Float");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override
+    public void comparison (long[] left, long[] right, boolean[] result, BinaryOperator op,
+                            int from, int to)
+    {
+        switch (op) {
+            case GREATER:
+                for (int i = from; i < to; ++i) result[i] = left[i] >  right[i]; break;
+            case GREATER_EQUAL:
+                for (int i = from; i < to; ++i) result[i] = left[i] >= right[i]; break;
+            case LOWER:
+                for (int i = from; i < to; ++i) result[i] = left[i] <  right[i]; break;
+            case LOWER_EQUAL:
+                for (int i = from; i < to; ++i) result[i] = left[i] <= right[i]; break;
+            case EQUALITY:
+                for (int i = from; i < to; ++i) result[i] = left[i] == right[i]; break;
+            case NOT_EQUALS:
+                for (int i = from; i < to; ++i) result[i] = left[i] != right[i]; break;
+            default:
+                throw unsupported(op, "Int");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override
+    public void comparison (double[] left, double[] right, boolean[] result, BinaryOperator op,
+                            int from, int to)
+    {
+        switch (op) {
+            case GREATER:
+                for (int i = from; i < to; ++i) result[i] = left[i] >  right[i]; break;
+            case GREATER_EQUAL:
+                for (int i = from; i < to; ++i) result[i] = left[i] >= right[i]; break;
+            case LOWER:
+                for (int i = from; i < to; ++i) result[i] = left[i] <  right[i]; break;
+            case LOWER_EQUAL:
+                for (int i = from; i < to; ++i) result[i] = left[i] <= right[i]; break;
+            case EQUALITY:
+                for (int i = from; i < to; ++i) result[i] = left[i] == right[i]; break;
+            case NOT_EQUALS:
+                for (int i = from; i < to; ++i) result[i] = left[i] != right[i]; break;
+            default:
+                throw unsupported(op, "Float");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    static Error unsupported (BinaryOperator op, String type) {
+        return new Error(format("trying to use @(%s) between arrays of type %s", op, type));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -1,5 +1,15 @@
 package norswap.sigh.bytecode;
 
+import norswap.sigh.ParallelArrays;
+import norswap.sigh.Rope;
+import norswap.sigh.ast.BinaryOperator;
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import static java.lang.String.format;
+
 public final class SighRuntime
 {
     /**
@@ -22,4 +32,396 @@ public final class SighRuntime
         System.out.println(string);
         return string;
     }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the string representation of a function value, which is the same as in the
+     * interpreter: the name of the function, {@code $S} for the constructor of structure {@code S}.
+     *
+     * <p>The name is that of the method implementing the function, recovered from the {@link
+     * SerializedLambda} of the function value (cf. {@link BytecodeCompiler}), without the prefix
+     * added to the methods of nested functions in template functions.
+     */
+    public static String functionName (Object function)
+    {
+        if (function == null)
+            return "null";
+        SerializedLambda lambda;
+        try {
+            Method writeReplace = function.getClass().getDeclaredMethod("writeReplace");
+            writeReplace.setAccessible(true);
+            lambda = (SerializedLambda) writeReplace.invoke(function);
+        } catch (ReflectiveOperationException e) {
+            return String.valueOf(function);
+        }
+        String name = lambda.getImplMethodName();
+        if (name.equals("<init>"))
+            return "$" + lambda.getImplClass();
+        if (lambda.getImplClass().equals(SighRuntime.class.getName().replace('.', '/')))
+            return "SyntheticDeclaration(" + name + ")"; // print
+        return name.substring(name.lastIndexOf('$') + 1);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // String variables built by appending to themselves (s = s + x) are held as ropes (cf. Rope
+    // and FrozenAttributes#appendedStrings). Null strings are held as null.
+    // ---------------------------------------------------------------------------------------------
+
+    /** Converts a string assigned to a rope variable. */
+    public static Rope rope (String string) {
+        return string == null ? null : Rope.of(string);
+    }
+
+    /** Appends a string to the value of a rope variable. */
+    public static Rope append (Rope rope, String string) {
+        return (rope == null ? Rope.of("null") : rope).append(string);
+    }
+
+    /** Returns the value of a rope variable as a string. */
+    public static String flatten (Rope rope) {
+        return rope == null ? null : rope.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Element-wise array operations (a @(op) b).
+    //
+    // Each method checks that the arrays have the same length, then runs a loop over the elements,
+    // split across cores for large arrays (cf. ParallelArrays). The operator is dispatched upon
+    // once per chunk, not once per element. Numeric loops are run by the kernels detected at
+    // startup, which use SIMD instructions if available (cf. NumericKernels).
+    // ---------------------------------------------------------------------------------------------
+
+    /** The kernels that run the loops of numeric array operations. */
+    public static final NumericKernels KERNELS = NumericKernels.detect();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Converts an {@code Int[]} operand to {@code Float[]}, for mixed operations. */
+    public static double[] toFloats (long[] array)
+    {
+        double[] result = new double[array.length];
+        for (int i = 0; i < array.length; ++i)
+            result[i] = array[i];
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static long[] arithmetic (long[] left, long[] right, BinaryOperator op)
+    {
+        checkLengths(left.length, right.length);
+        long[] result = new long[left.length];
+        ParallelArrays.forRange(result.length, (from, to) ->
+            KERNELS.arithmetic(left, right, result, op, from, to));
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static double[] arithmetic (double[] left, double[] right, BinaryOperator op)
+    {
+        checkLengths(left.length, right.length);
+        double[] result = new double[left.length];
+        ParallelArrays.forRange(result.length, (from, to) ->
+            KERNELS.arithmetic(left, right, result, op, from, to));
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static boolean[] comparison (long[] left, long[] right, BinaryOperator op)
+    {
+        checkLengths(left.length, right.length);
+        boolean[] result = new boolean[left.length];
+        ParallelArrays.forRange(result.length, (from, to) ->
+            KERNELS.comparison(left, right, result, op, from, to));
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static boolean[] comparison (double[] left, double[] right, BinaryOperator op)
+    {
+        checkLengths(left.length, right.length);
+        boolean[] result = new boolean[left.length];
+        ParallelArrays.forRange(result.length, (from, to) ->
+            KERNELS.comparison(left, right, result, op, from, to));
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static boolean[] comparison (String[] left, String[] right, BinaryOperator op)
+    {
+        checkLengths(left.length, right.length);
+        boolean[] result = new boolean[left.length];
+        ParallelArrays.forRange(result.length, (from, to) -> {
+            for (int i = from; i < to; ++i) {
+                int cmp = left[i].compareTo(right[i]);
+                switch (op) {
+                    case GREATER:       result[i] = cmp >  0; break;
+                    case GREATER_EQUAL: result[i] = cmp >= 0; break;
+                    case LOWER:         result[i] = cmp <  0; break;
+                    case LOWER_EQUAL:   result[i] = cmp <= 0; break;
+                    case EQUALITY:      result[i] = cmp == 0; break;
+                    case NOT_EQUALS:    result[i] = cmp != 0; break;
+                    default:            throw ScalarKernels.unsupported(op, "String");
+                }
+            }
+        });
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static String[] concat (String[] left, String[] right)
+    {
+        checkLengths(left.length, right.length);
+        String[] result = new String[left.length];
+        ParallelArrays.forRange(result.length, (from, to) -> {
+            for (int i = from; i < to; ++i)
+                result[i] = left[i] + right[i];
+        });
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static boolean[] logic (boolean[] left, boolean[] right, BinaryOperator op)
+    {
+        checkLengths(left.length, right.length);
+        boolean[] result = new boolean[left.length];
+        ParallelArrays.forRange(result.length, (from, to) -> {
+            switch (op) {
+                case AND:
+                    for (int i = from; i < to; ++i) result[i] = left[i] && right[i]; break;
+                case OR:
+                    for (int i = from; i < to; ++i) result[i] = left[i] || right[i]; break;
+                default:
+                    throw ScalarKernels.unsupported(op, "Bool");
+            }
+        });
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Checks that the operands of an array operation have the same length. */
+    public static void checkLengths (int left, int right)
+    {
+        if (left != right)
+            throw new Error(format(
+                "Operation between arrays of different length: %d and %d", left, right));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Values whose type is not known statically (Template, and the type parameters of template
+    // functions instantiated with a type other than Int, Float, Bool or String) are held as
+    // objects, primitive values being boxed (Long, Double, Boolean). Operations on them dispatch on
+    // the runtime class of the values, as in the interpreter.
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Applies a binary operator to two boxed values: strings are concatenated or compared if
+     * either value is a string, numbers are promoted to Float if either is a Float.
+     */
+    public static Object binary (Object left, Object right, BinaryOperator op)
+    {
+        if (left instanceof String || right instanceof String) {
+            String l = toString(left);
+            String r = toString(right);
+            switch (op) {
+                case ADD:           return l + r;
+                case GREATER:       return l.compareTo(r) >  0;
+                case GREATER_EQUAL: return l.compareTo(r) >= 0;
+                case LOWER:         return l.compareTo(r) <  0;
+                case LOWER_EQUAL:   return l.compareTo(r) <= 0;
+                case EQUALITY:      return l.compareTo(r) == 0;
+                case NOT_EQUALS:    return l.compareTo(r) != 0;
+            }
+        }
+        else if (left instanceof Double && right instanceof Number
+                || left instanceof Number && right instanceof Double) {
+            double l = ((Number) left).doubleValue();
+            double r = ((Number) right).doubleValue();
+            switch (op) {
+                case ADD:           return l + r;
+                case SUBTRACT:      return l - r;
+                case MULTIPLY:      return l * r;
+                case DIVIDE:        return l / r;
+                case REMAINDER:     return l % r;
+                case GREATER:       return l >  r;
+                case GREATER_EQUAL: return l >= r;
+                case LOWER:         return l <  r;
+                case LOWER_EQUAL:   return l <= r;
+                case EQUALITY:      return l == r;
+                case NOT_EQUALS:    return l != r;
+            }
+        }
+        else if (left instanceof Number && right instanceof Number) {
+            long l = ((Number) left).longValue();
+            long r = ((Number) right).longValue();
+            switch (op) {
+                case ADD:           return l + r;
+                case SUBTRACT:      return l - r;
+                case MULTIPLY:      return l * r;
+                case DIVIDE:        return l / r;
+                case REMAINDER:     return l % r;
+                case GREATER:       return l >  r;
+                case GREATER_EQUAL: return l >= r;
+                case LOWER:         return l <  r;
+                case LOWER_EQUAL:   return l <= r;
+                case EQUALITY:      return l == r;
+                case NOT_EQUALS:    return l != r;
+            }
+        }
+        else if (left instanceof Boolean && right instanceof Boolean) {
+            boolean l = (Boolean) left;
+            boolean r = (Boolean) right;
+            switch (op) {
+                case AND:           return l && r;
+                case OR:            return l || r;
+                case EQUALITY:      return l == r;
+                case NOT_EQUALS:    return l != r;
+            }
+        }
+        else if (op == BinaryOperator.EQUALITY)
+            return left == right;
+        else if (op == BinaryOperator.NOT_EQUALS)
+            return left != right;
+
+        throw new Error(format("trying to use %s between values %s and %s",
+            op, toString(left), toString(right)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Applies a binary operator element-wise to two arrays, whose elements are boxed. Used when
+     * the component types of the arrays are not handled by the other array operations (e.g.
+     * {@code Template}). The elements must be numbers or strings, or booleans for {@code &&} and
+     * {@code ||}, as in the interpreter.
+     */
+    public static Object[] arrayOperation (Object left, Object right, BinaryOperator op)
+    {
+        Object[] l = boxed(left);
+        Object[] r = boxed(right);
+        checkLengths(l.length, r.length);
+        Object[] result = new Object[l.length];
+        ParallelArrays.forRange(result.length, (from, to) -> {
+            for (int i = from; i < to; ++i)
+                result[i] = element(l[i], r[i], op);
+        });
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static Object element (Object left, Object right, BinaryOperator op)
+    {
+        switch (op) {
+            case AND:
+            case OR:
+                if (left instanceof Boolean && right instanceof Boolean)
+                    return binary(left, right, op);
+                throw new Error(format(
+                    "using  boolean operator @(%s) between non boolean array elements : %s and %s",
+                    op, toString(left), toString(right)));
+
+            case GREATER:
+            case GREATER_EQUAL:
+            case LOWER:
+            case LOWER_EQUAL:
+            case EQUALITY:
+            case NOT_EQUALS:
+                if (left instanceof String || right instanceof String
+                        || left instanceof Number && right instanceof Number)
+                    return binary(left, right, op);
+                break;
+
+            default:
+                if (left instanceof Number && right instanceof Number)
+                    return binary(left, right, op);
+                if (left instanceof String && right instanceof String) {
+                    if (op != BinaryOperator.ADD)
+                        throw new Error(format(
+                            "trying to use %s between array elements of type string", op));
+                    return binary(left, right, op);
+                }
+        }
+
+        throw new Error(format(
+            "trying to use @(%s) between array elements of incompatible types : %s and %s",
+            op, toString(left), toString(right)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Converts an array to an array of objects (boxing primitive elements), for an array assigned
+     * to a location whose component type is not known statically (e.g. {@code Template[]}).
+     * Arrays of references are copied too, since the location may hold values of other classes.
+     */
+    public static Object[] boxed (Object array)
+    {
+        if (array == null)
+            return null;
+        Object[] result = new Object[Array.getLength(array)];
+        for (int i = 0; i < result.length; ++i)
+            result[i] = Array.get(array, i);
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Converts an array of objects to an array whose component class is {@code component}
+     * (unboxing and widening primitive elements), for an array whose component type is not known
+     * statically assigned to a location whose component type is.
+     */
+    public static Object unboxed (Object[] array, Class<?> component)
+    {
+        if (array == null)
+            return null;
+        Object result = Array.newInstance(component, array.length);
+        for (int i = 0; i < array.length; ++i)
+            Array.set(result, i, array[i]);
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Converts an array whose innermost elements are {@code Int} to a copy of class {@code type},
+     * whose innermost elements are {@code Float}, for an array assigned to a location of the
+     * latter type (e.g. {@code Float[][]}).
+     */
+    public static Object widened (Object array, Class<?> type)
+    {
+        if (array == null)
+            return null;
+        if (array instanceof long[])
+            return toFloats((long[]) array);
+        Object[] arrays = (Object[]) array;
+        Class<?> component = type.getComponentType();
+        Object[] result = (Object[]) Array.newInstance(component, arrays.length);
+        for (int i = 0; i < arrays.length; ++i)
+            result[i] = widened(arrays[i], component);
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Converts a value (possibly an array, or null) to a string. */
+    public static String toString (Object value)
+    {
+        if (value instanceof long[])    return Arrays.toString((long[]) value);
+        if (value instanceof double[])  return Arrays.toString((double[]) value);
+        if (value instanceof boolean[]) return Arrays.toString((boolean[]) value);
+        if (value instanceof Object[])  return Arrays.deepToString((Object[]) value);
+        return String.valueOf(value);
+    }
+
+    // ---------------------------------------------------------------------------------------------
 }
@@ -21,12 +21,50 @@ public final class TypeUtils {
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Returns the slash-separated binary type name for the functional interface implemented by the
+     * runtime representation of values of the given function type. The interface has a single
+     * method, {@link #FUNCTION_METHOD}, whose descriptor is {@link #methodDescriptor(FunType)}.
+     *
+     * <p>The name is derived from that descriptor, so that every compilation unit uses the same
+     * interface for the same function type: {@code (Int, String) -> Bool} is implemented by {@code
+     * Function$JLjava_lang_String_2$Z}. The descriptor characters that cannot appear in a class
+     * name are escaped as in JNI symbols.
+     */
+    public static String functionInterfaceName (FunType type)
+    {
+        StringBuilder b = new StringBuilder("Function$");
+        for (Type paramType: type.paramTypes)
+            mangle(b, fieldDescriptor(paramType));
+        b.append('$');
+        mangle(b, fieldDescriptor(type.returnType));
+        return b.toString();
+    }
+
+    /** Name of the single method of the interfaces named by {@link #functionInterfaceName}. */
+    public static final String FUNCTION_METHOD = "call";
+
+    private static void mangle (StringBuilder b, String descriptor)
+    {
+        for (char c: descriptor.toCharArray()) {
+            switch (c) {
+                case '_': b.append("_1"); break;
+                case ';': b.append("_2"); break;
+                case '[': b.append("_3"); break;
+                case '/': b.append('_');  break;
+                default:  b.append(c);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns a java {@link Class} used for the runtime representation of the given Sigh {@link
      * Type}.
      *
-     * <p>This is fragile when structure types are involved, since they have no compile-time {@link
-     * Class} representation ({@code Object.class} is returned).
+     * <p>This is fragile when structure or function types are involved, since they have no
+     * compile-time {@link Class} representation ({@code Object.class} is returned).
      */
     static Class<?> javaClass (Type type)
     {
@@ -46,10 +84,10 @@ public final class TypeUtils {
             return javaArrayClass(((ArrayType) type).componentType);
         else if (type instanceof TypeType)
             return Type.class;
-        else if (type instanceof FunType)
-            throw new UnsupportedOperationException(); // TODO
-        else if (type instanceof StructType)
+        else if (type instanceof FunType || type instanceof StructType)
             return Object.class; // the proper class type is not available at compile time
+        else if (type instanceof TemplateType)
+            return Object.class; // boxed if primitive
         else
             throw new Error("unreachable");
     }
@@ -60,8 +98,8 @@ public final class TypeUtils {
      * Returns a java {@link Class} used for the runtime representation of the array whose
      * components is the given Sigh {@link Type}.
      *
-     * <p>This is fragile when structure types are involved, since they have no compile-time {@link
-     * Class} representation ({@code Object[].class} is returned).
+     * <p>This is fragile when structure or function types are involved, since they have no
+     * compile-time {@link Class} representation ({@code Object[].class} is returned).
      */
     public static Class<?> javaArrayClass (Type type)
     {
@@ -81,10 +119,10 @@ public final class TypeUtils {
             return Array.newInstance(javaClass(((ArrayType) type).componentType)).getClass();
         else if (type instanceof TypeType)
             return Type[].class;
-        else if (type instanceof FunType)
-            throw new UnsupportedOperationException(); // TODO
-        else if (type instanceof StructType)
+        else if (type instanceof FunType || type instanceof StructType)
             return Object[].class; // the proper class type is not available at compile time
+        else if (type instanceof TemplateType)
+            return Object[].class; // boxed if primitive
         else
             throw new Error("unreachable");
     }
@@ -113,9 +151,11 @@ public final class TypeUtils {
         else if (type instanceof TypeType)
             return "Lnorswap/sigh/types/Type;";
         else if (type instanceof FunType)
-            throw new UnsupportedOperationException(); // TODO
+            return "L" + functionInterfaceName((FunType) type) + ";";
         else if (type instanceof StructType)
             return "L" + structBinaryName((StructType) type) + ";";
+        else if (type instanceof TemplateType)
+            return "Ljava/lang/Object;"; // boxed if primitive
         else
             throw new Error("unreachable");
     }
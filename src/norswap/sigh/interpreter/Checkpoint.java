@@ -0,0 +1,369 @@
+package norswap.sigh.interpreter;
+
+import norswap.sigh.FrozenAttributes;
+import norswap.sigh.Rope;
+import norswap.sigh.ast.*;
+import norswap.sigh.interpreter.exec.SlotKind;
+import norswap.sigh.scopes.RootScope;
+import norswap.sigh.scopes.Scope;
+import norswap.utils.visitors.ReflectiveFieldWalker;
+import norswap.utils.visitors.Walker;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
+
+/**
+ * Writes and reads the values of the top-level variables of a program (the root frame, which
+ * also holds the variables of top-level blocks, cf. {@link Scope#frame}) to and from a compact
+ * binary format, used by {@link Interpreter#checkpoint} and {@link Interpreter#resume}.
+ *
+ * <p>The format starts with a header (magic number, version, a signature of the program, and
+ * the number of top-level statements that were executed), followed by the value of each variable
+ * in slot order. {@code Int}, {@code Float} and {@code Bool} variables are written as their raw
+ * 8-byte slot. Other values are tagged: arrays and structures are written once, and referred to by
+ * index afterwards, so that sharing and cycles are preserved. Ropes (cf. {@link Rope}) are
+ * flattened to strings. Functions, types and constructors are written as the index of their
+ * declaration in the program.
+ *
+ * <p>A checkpoint can only be read for the program it was written for: the signature, which covers
+ * the top-level variables and declarations as well as the structure of the whole program
+ * (statements, expressions and names, but not positions), is checked.
+ */
+final class Checkpoint
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final int MAGIC = 0x53494748; // "SIGH"
+    private static final byte VERSION = 1;
+
+    private static final byte
+        ABSENT = 0, NULL = 1, INT = 2, FLOAT = 3, TRUE = 4, FALSE = 5, STRING = 6,
+        LONGS = 7, DOUBLES = 8, BOOLEANS = 9, OBJECTS = 10, STRUCT = 11, REFERENCE = 12,
+        DECLARATION = 13, CONSTRUCTOR = 14;
+
+    /** Order in which the fields of nodes are hashed, cf. {@link #structure}. */
+    private static final Comparator<Field> FIELD_ORDER = Comparator
+        .comparing(Field::getName)
+        .thenComparing((Field field) -> field.getDeclaringClass().getName());
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The variables of the root frame, in slot order. */
+    private final List<VarDeclarationNode> variables = new ArrayList<>();
+    private final int[] slots;
+    private final SlotKind[] kinds;
+
+    /** Declarations that can be values: functions, structures, and the builtin declarations. */
+    private final List<DeclarationNode> declarations = new ArrayList<>();
+    private final Map<DeclarationNode, Integer> declarationIndices = new IdentityHashMap<>();
+
+    /** Layouts of the structures, shared with the prepared program. */
+    private final Map<DeclarationNode, StructLayout> layouts = new IdentityHashMap<>();
+
+    /** Hash of the structure of the program, cf. {@link #structure}. */
+    private final int structure;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a checkpoint writer and reader for the given program, using the preparer that
+     * prepared it for slot kinds and structure layouts.
+     */
+    Checkpoint (FrozenAttributes attributes, Preparer preparer, RootNode root)
+    {
+        Walker<SighNode> walker = new ReflectiveFieldWalker<>(SighNode.class, PRE_VISIT);
+        walker.register(VarDeclarationNode.class, PRE_VISIT, node -> {
+            Scope scope = attributes.scope(node);
+            if (scope.frame instanceof RootScope) variables.add(node);
+        });
+        walker.register(FunDeclarationNode.class, PRE_VISIT, declarations::add);
+        walker.register(StructDeclarationNode.class, PRE_VISIT, node -> {
+            declarations.add(node);
+            layouts.put(node, preparer.layout(node));
+        });
+        walker.registerFallback(PRE_VISIT, node -> {});
+        walker.walk(root);
+        structure = structure(root);
+
+        RootScope scope = attributes.scope(root);
+        scope.declarations.values().stream()
+            .sorted(Comparator.comparing(DeclarationNode::name))
+            .forEach(declarations::add);
+        for (int i = 0; i < declarations.size(); ++i)
+            declarationIndices.putIfAbsent(declarations.get(i), i);
+
+        variables.sort(Comparator.comparingInt(attributes::slot));
+        slots = new int[variables.size()];
+        kinds = new SlotKind[variables.size()];
+        for (int i = 0; i < slots.length; ++i) {
+            slots[i] = attributes.slot(variables.get(i));
+            kinds[i] = preparer.slotKind(variables.get(i));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Hashes the structure of the given program: the class of its nodes in walk order, and the
+     * values of their fields that are not nodes (names, literals, operators), but not their
+     * position in the source. The hash does not depend on the run (e.g. enums are hashed by name,
+     * and fields are visited by name, as the order of reflected fields is unspecified), since the
+     * checkpoint may be read by another process.
+     */
+    private static int structure (RootNode root)
+    {
+        int[] hash = { root.statements.size() };
+        Walker<SighNode> walker = new ReflectiveFieldWalker<>(SighNode.class, PRE_VISIT);
+        walker.registerFallback(PRE_VISIT, node -> {
+            hash[0] = 31 * hash[0] + node.getClass().getSimpleName().hashCode();
+            Field[] fields = node.getClass().getFields();
+            Arrays.sort(fields, FIELD_ORDER);
+            for (Field field: fields) {
+                Object value;
+                try {
+                    value = field.get(node);
+                } catch (IllegalAccessException e) {
+                    throw new Error(e); // public field
+                }
+                if (value instanceof Enum)
+                    hash[0] = 31 * hash[0] + ((Enum<?>) value).name().hashCode();
+                else if (value instanceof String || value instanceof Number
+                        || value instanceof Boolean)
+                    hash[0] = 31 * hash[0] + value.hashCode();
+            }
+        });
+        walker.walk(root);
+        return hash[0];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Identifies the top-level variables (name, slot and kind), the declarations and the structure
+     * of the program, so that a checkpoint is not read for another program.
+     */
+    private int signature ()
+    {
+        int hash = structure;
+        for (int i = 0; i < slots.length; ++i)
+            hash = 31 * (31 * (31 * hash + variables.get(i).name.hashCode()) + slots[i])
+                + kinds[i].ordinal();
+        for (DeclarationNode decl: declarations)
+            hash = 31 * hash + decl.name().hashCode();
+        return hash;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Writes the values of the variables in the given root frame, after the execution of the
+     * given number of top-level statements.
+     */
+    void write (Frame frame, int statements, DataOutputStream out) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(signature());
+        out.writeInt(statements);
+
+        Map<Object, Integer> written = new IdentityHashMap<>();
+        for (int i = 0; i < slots.length; ++i) {
+            if (kinds[i] == SlotKind.OBJECT)
+                write(frame.values[slots[i]], out, written);
+            else
+                out.writeLong(frame.primitives[slots[i]]);
+        }
+        out.flush();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void write (Object value, DataOutputStream out, Map<Object, Integer> written)
+            throws IOException
+    {
+        if (value == null)
+            out.writeByte(ABSENT); // variable not yet initialized
+        else if (value == Null.INSTANCE)
+            out.writeByte(NULL);
+        else if (value instanceof Long) {
+            out.writeByte(INT);
+            out.writeLong((long) value);
+        }
+        else if (value instanceof Double) {
+            out.writeByte(FLOAT);
+            out.writeDouble((double) value);
+        }
+        else if (value instanceof Boolean)
+            out.writeByte((boolean) value ? TRUE : FALSE);
+        else if (value instanceof String || value instanceof Rope) {
+            byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+            out.writeByte(STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        else if (value instanceof DeclarationNode) {
+            out.writeByte(DECLARATION);
+            out.writeInt(index((DeclarationNode) value));
+        }
+        else if (value instanceof Constructor) {
+            out.writeByte(CONSTRUCTOR);
+            out.writeInt(index(((Constructor) value).declaration));
+        }
+        else {
+            Integer reference = written.get(value);
+            if (reference != null) {
+                out.writeByte(REFERENCE);
+                out.writeInt(reference);
+                return;
+            }
+            written.put(value, written.size());
+
+            if (value instanceof long[]) {
+                long[] array = (long[]) value;
+                out.writeByte(LONGS);
+                out.writeInt(array.length);
+                for (long x: array) out.writeLong(x);
+            }
+            else if (value instanceof double[]) {
+                double[] array = (double[]) value;
+                out.writeByte(DOUBLES);
+                out.writeInt(array.length);
+                for (double x: array) out.writeDouble(x);
+            }
+            else if (value instanceof boolean[]) {
+                boolean[] array = (boolean[]) value;
+                out.writeByte(BOOLEANS);
+                out.writeInt(array.length);
+                for (boolean x: array) out.writeBoolean(x);
+            }
+            else if (value instanceof Object[]) {
+                Object[] array = (Object[]) value;
+                out.writeByte(OBJECTS);
+                out.writeInt(array.length);
+                for (Object x: array) write(x, out, written);
+            }
+            else if (value instanceof Struct) {
+                Struct struct = (Struct) value;
+                out.writeByte(STRUCT);
+                out.writeInt(index(struct.layout.declaration));
+                for (Object x: struct.fields) write(x, out, written);
+            }
+            else
+                throw new IllegalArgumentException("cannot checkpoint value: " + value);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int index (DeclarationNode decl)
+    {
+        Integer index = declarationIndices.get(decl);
+        if (index == null)
+            throw new IllegalArgumentException("cannot checkpoint declaration: " + decl);
+        return index;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Reads the values of the variables into the given root frame, returning the number of
+     * top-level statements that were executed before the checkpoint was written.
+     */
+    int read (Frame frame, DataInputStream in) throws IOException
+    {
+        if (in.readInt() != MAGIC || in.readByte() != VERSION)
+            throw new IOException("not a checkpoint, or a checkpoint of an unsupported version");
+        if (in.readInt() != signature())
+            throw new IOException("the checkpoint was written for another program");
+        int statements = in.readInt();
+
+        List<Object> read = new ArrayList<>();
+        for (int i = 0; i < slots.length; ++i) {
+            if (kinds[i] == SlotKind.OBJECT)
+                frame.values[slots[i]] = read(in, read);
+            else
+                frame.primitives[slots[i]] = in.readLong();
+        }
+        return statements;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Object read (DataInputStream in, List<Object> read) throws IOException
+    {
+        byte tag = in.readByte();
+        switch (tag) {
+            case ABSENT:    return null;
+            case NULL:      return Null.INSTANCE;
+            case INT:       return in.readLong();
+            case FLOAT:     return in.readDouble();
+            case TRUE:      return true;
+            case FALSE:     return false;
+            case REFERENCE: return read.get(in.readInt());
+
+            case STRING: {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            case DECLARATION:
+                return declarations.get(in.readInt());
+
+            case CONSTRUCTOR:
+                return new Constructor(layouts.get(declarations.get(in.readInt())));
+
+            case LONGS: {
+                long[] array = new long[in.readInt()];
+                read.add(array);
+                for (int i = 0; i < array.length; ++i) array[i] = in.readLong();
+                return array;
+            }
+
+            case DOUBLES: {
+                double[] array = new double[in.readInt()];
+                read.add(array);
+                for (int i = 0; i < array.length; ++i) array[i] = in.readDouble();
+                return array;
+            }
+
+            case BOOLEANS: {
+                boolean[] array = new boolean[in.readInt()];
+                read.add(array);
+                for (int i = 0; i < array.length; ++i) array[i] = in.readBoolean();
+                return array;
+            }
+
+            case OBJECTS: {
+                Object[] array = new Object[in.readInt()];
+                read.add(array);
+                for (int i = 0; i < array.length; ++i) array[i] = read(in, read);
+                return array;
+            }
+
+            case STRUCT: {
+                StructLayout layout = layouts.get(declarations.get(in.readInt()));
+                Struct struct = new Struct(layout, new Object[layout.size()]);
+                read.add(struct);
+                for (int i = 0; i < struct.fields.length; ++i)
+                    struct.fields[i] = read(in, read);
+                return struct;
+            }
+
+            default:
+                throw new IOException("corrupted checkpoint: unknown tag " + tag);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -3,16 +3,18 @@ package norswap.sigh.interpreter;
 import norswap.sigh.ast.StructDeclarationNode;
 
 /**
- * Class representing structure constructors in the interpreter, simply wrapping the declaration
- * node. Such a wrapper is necessary, because the node is already used to represent the structure
- * type.
+ * Class representing structure constructors in the interpreter, wrapping the declaration node
+ * and the layout of the instances. Such a wrapper is necessary, because the node is already used
+ * to represent the structure type.
  */
 public final class Constructor
 {
     public final StructDeclarationNode declaration;
+    public final StructLayout layout;
 
-    public Constructor (StructDeclarationNode declaration) {
-        this.declaration = declaration;
+    public Constructor (StructLayout layout) {
+        this.declaration = layout.declaration;
+        this.layout = layout;
     }
 
     @Override public int hashCode () {
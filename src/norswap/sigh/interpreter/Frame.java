@@ -0,0 +1,196 @@
+package norswap.sigh.interpreter;
+
+import norswap.sigh.FrozenAttributes;
+import norswap.sigh.scopes.RootScope;
+import norswap.sigh.scopes.Scope;
+import java.util.Arrays;
+
+/**
+ * The concrete instantiation of a {@link Scope} at runtime.
+ *
+ * <p>The scope itself cannot be used directly, as many "copies" of the scope will be needed
+ * at runtime (for instance, one for each function invocation), sometimes at the same type,
+ * in the presence of recursion.
+ *
+ * <p>Only the root scope and the scopes of functions get frames: blocks store their variables in
+ * the frame of the enclosing function or of the root scope (cf. {@link Scope#frame}), so a call
+ * allocates a single frame, and running a block allocates nothing.
+ *
+ * <p>Variables are stored in an array, at the slot index that semantic analysis assigned to them
+ * (the {@code slot} attribute of their declaration). A variable is thus identified by a (depth,
+ * slot) coordinate, where the depth is that of the frame scope of the scope declaring the
+ * variable. The {@link #parent} of a frame is always the frame of the lexically enclosing frame
+ * scope, so the frame holding a variable is found by walking up the parent chain until reaching
+ * its depth.
+ *
+ * <p>Variables whose static type is {@code Int}, {@code Float} or {@code Bool} are stored unboxed
+ * in {@link #primitives} instead (cf. {@link norswap.sigh.interpreter.exec.SlotKind}), so that
+ * writing them does not allocate.
+ */
+public final class Frame
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public final Frame parent;
+
+    /** The frame of the root scope, i.e. the frame holding the top-level variables. */
+    public final Frame root;
+
+    /** Depth of the scope this frame instantiates (cf. {@link Scope#depth}). */
+    public final int depth;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public final Object[] values;
+
+    /** Storage for the slots of primitive variables: longs, double bits, or 0/1 for booleans. */
+    public final long[] primitives;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Only used on {@link #root} frames: set by a return statement to signal that the enclosing
+     * statements must stop executing, until the function call (or the program) completes.
+     */
+    public boolean returning;
+
+    /** Only used on {@link #root} frames: the value of the pending return, cf. {@link #returning}. */
+    public Object returnValue;
+
+    /**
+     * Only used on {@link #root} frames: whether the pending return is a self tail call, in which
+     * case {@link #returnValue} holds the arguments of the call (cf. {@link #startTailCall}).
+     */
+    public boolean tailCall;
+
+    /**
+     * Only used in the explicit-stack mode of the interpreter: temporary values of the function
+     * activation this frame belongs to (cf. {@link StackMachine}).
+     */
+    public Object[] temps;
+
+    /**
+     * Only set on frames of calls to template functions with explicit template arguments: whether
+     * each template parameter of the function is bound to {@code Float} in this call (cf. {@link
+     * norswap.sigh.interpreter.exec.TemplateToFloatExec}).
+     */
+    public boolean[] floatBindings;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public Frame (Scope scope, Frame parent) {
+        assert scope.frame == scope : "blocks do not have frames";
+        this.parent = parent;
+        this.root = parent == null ? this : parent.root;
+        this.depth = scope.depth;
+        this.values = new Object[scope.slotCount()];
+        this.primitives = new long[scope.slotCount()];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the {@link #returning} flag of the root frame, with the given return value.
+     */
+    public void startReturn (Object value) {
+        root.returning = true;
+        root.returnValue = value;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the {@link #returning} and {@link #tailCall} flags of the root frame, to signal that
+     * the current function must be restarted with the given arguments.
+     */
+    public void startTailCall (Object[] args) {
+        root.returning = true;
+        root.tailCall = true;
+        root.returnValue = args;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Clears the {@link #returning} and {@link #tailCall} flags of the root frame, and returns the
+     * return value (or tail call arguments), or null if no return statement was executed.
+     */
+    public Object completeReturn ()
+    {
+        Frame root = this.root;
+        if (!root.returning) return null;
+        Object value = root.returnValue;
+        root.returning = false;
+        root.tailCall = false;
+        root.returnValue = null;
+        return value;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the frame at the given depth, which should be this frame or one of its ancestors.
+     */
+    public Frame ancestor (int depth)
+    {
+        Frame frame = this;
+        while (frame.depth > depth)
+            frame = frame.parent;
+        if (frame.depth != depth)
+            throw new Error("[implementation bug] no frame at depth: " + depth);
+        return frame;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the frame at the given depth, which should be this frame or one of its ancestors.
+     * Unlike {@link #ancestor}, directly returns {@link #root} for depth 0.
+     */
+    public Frame at (int depth) {
+        return depth == 0 ? root : ancestor(depth);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the value of the (non-primitive) variable at the given (depth, slot) coordinate
+     * (determined by semantic analysis), which should be in this frame or one of its ancestors.
+     */
+    public Object get (int depth, int slot) {
+        return at(depth).values[slot];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the value of the (non-primitive) variable at the given (depth, slot) coordinate
+     * (determined by semantic analysis), which should be in this frame or one of its ancestors.
+     */
+    public void set (int depth, int slot, Object value) {
+        at(depth).values[slot] = value;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * To be called on the root frame to initialize its variables.
+     */
+    void initRoot (RootScope root, FrozenAttributes attributes)
+    {
+        values[attributes.slot(root._true)]  = true;
+        values[attributes.slot(root._false)] = false;
+        values[attributes.slot(root._null)]  = Null.INSTANCE;
+
+        // Function and types are not assigned values in frames - instead they derive
+        // their runtime value values from the corresponding DeclarationNode.
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString() {
+        return "Frame " + Arrays.toString(values) + " " + Arrays.toString(primitives);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
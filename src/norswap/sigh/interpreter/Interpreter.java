@@ -1,38 +1,57 @@
 package norswap.sigh.interpreter;
 
+import norswap.sigh.FrozenAttributes;
 import norswap.sigh.ast.*;
-import norswap.sigh.scopes.DeclarationKind;
+import norswap.sigh.interpreter.exec.ArrayValues;
+import norswap.sigh.interpreter.exec.CallTarget;
+import norswap.sigh.interpreter.exec.ExecNode;
+import norswap.sigh.interpreter.exec.FunCallExec;
+import norswap.sigh.interpreter.exec.RootExec;
 import norswap.sigh.scopes.RootScope;
-import norswap.sigh.scopes.Scope;
 import norswap.sigh.scopes.SyntheticDeclarationNode;
-import norswap.sigh.types.*;
 import norswap.uranium.Reactor;
-import norswap.utils.Util;
 import norswap.utils.exceptions.Exceptions;
-import norswap.utils.exceptions.NoStackException;
-import norswap.utils.visitors.ValuedVisitor;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
-
-import static java.lang.String.format;
-import static norswap.sigh.ast.BinaryOperator.*;
-import static norswap.sigh.ast.BinaryOperator.LOWER_EQUAL;
-import static norswap.utils.Util.cast;
-import static norswap.utils.Vanilla.coIterate;
-import static norswap.utils.Vanilla.map;
 
 /**
- * Implements a simple but inefficient interpreter for Sigh.
+ * Implements a simple interpreter for Sigh.
+ *
+ * <p>Programs are first prepared (cf. {@link Preparer}): the analyzed AST is turned into a tree of
+ * {@link ExecNode}, which is then executed. The prepared form of a program is cached, so that it
+ * can be run repeatedly at no additional preparation cost.
+ *
+ * <p>In tiered mode, functions that are called or loop often enough are compiled to bytecode and
+ * run as such from then on (cf. {@link TieredCompiler}).
+ *
+ * <p>In explicit-stack mode, Sigh function calls do not nest on the Java stack, so that deep
+ * recursion does not overflow it: the program is compiled to instructions (cf. {@link
+ * StackCompiler}) run by a loop that keeps function activations on the heap (cf. {@link
+ * StackMachine}), up to a configurable depth. Tiering is disabled in this mode.
+ *
+ * <p>The top-level variables of a program can be saved after its initialization, and restored to
+ * run the rest of the program without running the initialization again (cf. {@link #checkpoint}
+ * and {@link #resume}).
+ *
+ * <p>The interpreter is reentrant and thread-safe: a prepared program is never modified by its
+ * executions (beyond the caches and counters described in {@link FunCallExec} and {@link
+ * CallTarget}, which tolerate races). All the state of an execution lives in its {@link Frame}s,
+ * created by {@link #execute}. Hence the same program can be run by many threads at once, from
+ * the same interpreter. Preparation is synchronized: to avoid the lock altogether, prepare the
+ * program once, then call {@link #execute} from each thread.
  *
  * <h2>Limitations</h2>
  * <ul>
- *     <li>The compiled code currently doesn't support closures (using variables in functions that
- *     are declared in some surroudning scopes outside the function). The top scope is supported.
- *     </li>
+ *     <li>In tiered mode, only functions and top-level loops that manipulate {@code Int}, {@code
+ *     Float}, {@code Bool} and {@code String} values are compiled: code using arrays, structures,
+ *     function values, string comparisons, nested function declarations or template functions
+ *     stays interpreted, as do functions using variables declared outside of them (cf. {@link
+ *     TieredCompiler}). Top-level loops containing return statements are not compiled.</li>
  * </ul>
  *
  * <p>Runtime value representation:
@@ -40,8 +59,10 @@ import static norswap.utils.Vanilla.map;
  *     <li>{@code Int}, {@code Float}, {@code Bool}: {@link Long}, {@link Double}, {@link Boolean}</li>
  *     <li>{@code String}: {@link String}</li>
  *     <li>{@code null}: {@link Null#INSTANCE}</li>
- *     <li>Arrays: {@code Object[]}</li>
- *     <li>Structs: {@code HashMap<String, Object>}</li>
+ *     <li>Arrays: {@code long[]}, {@code double[]} and {@code boolean[]} for arrays whose static
+ *     component type is respectively {@code Int}, {@code Float} and {@code Bool}; {@code
+ *     Object[]} otherwise (cf. {@link ArrayValues})</li>
+ *     <li>Structs: {@link Struct}, whose fields are laid out by a {@link StructLayout}</li>
  *     <li>Functions: the corresponding {@link DeclarationNode} ({@link FunDeclarationNode} or
  *     {@link SyntheticDeclarationNode}), excepted structure constructors, which are
  *     represented by {@link Constructor}</li>
@@ -52,812 +73,194 @@ public final class Interpreter
 {
     // ---------------------------------------------------------------------------------------------
 
-    private final ValuedVisitor<SighNode, Object> visitor = new ValuedVisitor<>();
     private final Reactor reactor;
-    private ScopeStorage storage = null;
-    private RootScope rootScope;
-    private ScopeStorage rootStorage;
-
-    //Template arrays
-    private  String currentFunctionName=null;
-    private List<ExpressionNode> currentArguments =null;
-    private Return currentFunctionValue = null;
+    private final int tierThreshold;
+    private final int maxDepth;
+    private volatile FrozenAttributes attributes;
+    private Preparer preparer;
+    private final Map<SighNode, RootExec> prepared = new IdentityHashMap<>();
+    private StackCompiler stackCompiler;
+    private final Map<SighNode, StackCode> stackCodes = new IdentityHashMap<>();
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Creates an interpreter for programs analyzed with the given reactor. The reactor must have
+     * been run before the first program is prepared, at which point the attributes are frozen
+     * (cf. {@link FrozenAttributes}): the interpreter never reads nor writes the reactor again.
+     */
     public Interpreter (Reactor reactor) {
-        this.reactor = reactor;
-
-        // expressions
-        visitor.register(IntLiteralNode.class,           this::intLiteral);
-        visitor.register(FloatLiteralNode.class,         this::floatLiteral);
-        visitor.register(StringLiteralNode.class,        this::stringLiteral);
-        visitor.register(ReferenceNode.class,            this::reference);
-        visitor.register(ConstructorNode.class,          this::constructor);
-        visitor.register(ArrayLiteralNode.class,         this::arrayLiteral);
-        visitor.register(ParenthesizedNode.class,        this::parenthesized);
-        visitor.register(FieldAccessNode.class,          this::fieldAccess);
-        visitor.register(ArrayAccessNode.class,          this::arrayAccess);
-        visitor.register(FunCallNode.class,              this::funCall);
-        visitor.register(UnaryExpressionNode.class,      this::unaryExpression);
-        visitor.register(BinaryExpressionNode.class,     this::binaryExpression);
-        visitor.register(AssignmentNode.class,           this::assignment);
-
-        // statement groups & declarations
-        visitor.register(RootNode.class,                 this::root);
-        visitor.register(BlockNode.class,                this::block);
-        visitor.register(VarDeclarationNode.class,       this::varDecl);
-        // no need to visitor other declarations! (use fallback)
-
-        // statements
-        visitor.register(ExpressionStatementNode.class,  this::expressionStmt);
-        visitor.register(IfNode.class,                   this::ifStmt);
-        visitor.register(WhileNode.class,                this::whileStmt);
-        visitor.register(ReturnNode.class,               this::returnStmt);
-
-        visitor.registerFallback(node -> null);
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    public Object interpret (SighNode root) {
-        try {
-            return run(root);
-        } catch (PassthroughException e) {
-            throw Exceptions.runtime(e.getCause());
-        }
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    private Object run (SighNode node) {
-        try {
-            return visitor.apply(node);
-        } catch (InterpreterException | Return | PassthroughException e) {
-            throw e;
-        } catch (RuntimeException e) {
-            throw new InterpreterException("exception while executing " + node, e);
-        }
+        this(reactor, 0);
     }
 
     // ---------------------------------------------------------------------------------------------
 
     /**
-     * Used to implement the control flow of the return statement.
+     * Creates an interpreter for programs analyzed with the given reactor (cf. {@link
+     * #Interpreter(Reactor)}), in tiered mode if {@code tierThreshold} is positive: a function gets
+     * compiled once the sum of its invocations and loop back-edges reaches the threshold.
      */
-    private static class Return extends NoStackException {
-        final Object value;
-        private Return (Object value) {
-            this.value = value;
-        }
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    private <T> T get(SighNode node) {
-        return cast(run(node));
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    private Long intLiteral (IntLiteralNode node) {
-        return node.value;
-    }
-
-    private Double floatLiteral (FloatLiteralNode node) {
-        return node.value;
-    }
-
-    private String stringLiteral (StringLiteralNode node) {
-        return node.value;
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    private Object parenthesized (ParenthesizedNode node) {
-        reactor.set(node,"scope",rootScope);
-
-        return get(node.expression);
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    private Object[] arrayLiteral (ArrayLiteralNode node) {
-        return map(node.components, new Object[0], visitor);
-    }
-
-    // ---------------------------------------------------------------------------------------------
-    //Returns an array with the types of the left and right nodes
-    private Type[] returnType(BinaryExpressionNode node){
-        Type leftType=null;
-        Type rightType=null;
-        try{
-            List<Type> left  = reactor.get(node.left, "type");
-            leftType = left.get(0);
-        }catch (Exception e){
-            leftType  = reactor.get(node.left, "type");
-        }
-        try{
-            List<Type> right  = reactor.get(node.left, "type");
-            rightType = right.get(0);
-        }catch (Exception e){
-            rightType  = reactor.get(node.left, "type");
-        }
-        Object left  = get(node.left);
-        Object right = get(node.right);
-        try{
-            double test = (double) right;
-            rightType = FloatType.INSTANCE;
-        }catch (Exception e){}
-        try{
-            double test = (double) left;
-            leftType = FloatType.INSTANCE;
-        }catch (Exception e){}
-        try{
-            String test = (String) left;
-            leftType = StringType.INSTANCE;
-        }catch (Exception e){}
-        try{
-            String test = (String) right;
-            rightType = StringType.INSTANCE;
-        }catch (Exception e){}
-
-        return new Type[]{leftType,rightType};
-
-    }
-    private Boolean isFloat(Type leftType,Type rightType){
-        return (leftType instanceof FloatType || rightType instanceof FloatType) &&(!(leftType instanceof  StringType) &&!(rightType instanceof  StringType));
-    }
-
-    //Binary expression for non array types
-    private Object literalBinaryExpression(BinaryExpressionNode node){
-        /*Type leftType  = reactor.get(node.left, "type");
-        Type rightType = reactor.get(node.right, "type");*/
-
-        // Cases where both operands should not be evaluated.
-        switch (node.operator) {
-            case OR:  return booleanOp(node, false);
-            case AND: return booleanOp(node, true);
-        }
-        Object left  = get(node.left);
-        Object right = get(node.right);
-        /*try{
-            double test = (double) right;
-            rightType = FloatType.INSTANCE;
-        }catch (Exception e){}
-        try{
-            double test = (double) left;
-            leftType = FloatType.INSTANCE;
-        }catch (Exception e){}
-        try{
-            String test = (String) left;
-            leftType = StringType.INSTANCE;
-        }catch (Exception e){}
-        try{
-            String test = (String) right;
-            rightType = StringType.INSTANCE;
-        }catch (Exception e){}
-        */
-        Type[] ret_types = returnType(node);
-        Type leftType = ret_types[0];
-        Type rightType = ret_types[1];
-        if (//node.operator == BinaryOperator.ADD &&
-            (leftType instanceof StringType || rightType instanceof StringType)){
-            switch (node.operator){
-                case ADD:
-                    return convertToString(left) + convertToString(right);
-                case GREATER:
-                    return convertToString(left).compareTo( convertToString(right)) >0;
-                case GREATER_EQUAL:
-                    return convertToString(left).compareTo( convertToString(right)) >=0;
-                case LOWER:
-                    return convertToString(left).compareTo( convertToString(right)) <0;
-                case LOWER_EQUAL:
-                    return convertToString(left).compareTo( convertToString(right)) <=0;
-                case EQUALITY:
-                    return convertToString(left).compareTo( convertToString(right)) ==0;
-                case NOT_EQUALS:
-                    return convertToString(left).compareTo( convertToString(right)) !=0;
-                default:
-                    throw new Error("should not reach here");
-            }
-        }
-
-        boolean floating = leftType instanceof FloatType || rightType instanceof FloatType;
-        boolean numeric  = floating || leftType instanceof IntType || leftType instanceof TemplateType || rightType instanceof TemplateType;
-
-        if (numeric)
-            return numericOp(node, floating, (Number) left, (Number) right);
-
-        switch (node.operator) {
-            case EQUALITY:
-                return  leftType.isPrimitive() ? left.equals(right) : left == right;
-            case NOT_EQUALS:
-                return  leftType.isPrimitive() ? !left.equals(right) : left != right;
-        }
-
-        throw new Error("should not reach here");
-    }
-    //Template[]
-    private boolean isComparison (BinaryOperator op) {
-        return op == GREATER || op == GREATER_EQUAL || op == LOWER || op == LOWER_EQUAL;
-    }
-    private Object binaryExpression (BinaryExpressionNode node)
-    {
-        // Normal Binary expression
-        if (!(node.operator.equals(BinaryOperator.ARRAY_OP))){
-            return literalBinaryExpression(node);
-        }
-
-        //Object right = get(node.right);
-
-
-
-        // Array Binary expression
-        Scope scope = reactor.get(node.left, "scope");
-        Scope scoper = reactor.get(node.right, "scope");
-        //HashMap<String,DeclarationNode> scope = null;
-        HashMap<String,DeclarationNode> mapr = null;
-        if (scoper!= null){
-            for(Entry<String, DeclarationNode> decl : scoper.declarations.entrySet()){
-                scope.declare(decl.getKey(),decl.getValue());
-            }
-        }
-
-        // TODO merge les deux scope pour etre sur de ne rater aucune var ?
-        /*String left_name = ((ReferenceNode) node.left).name;
-        String right_name =((ReferenceNode) node.right).name;*/
-        String left_name = null;
-        String right_name = null;
-        if (node.left instanceof ReferenceNode){
-            left_name=((ReferenceNode) node.left).name;
-        }
-        if (node.right instanceof ReferenceNode){
-            right_name=((ReferenceNode) node.right).name;
-        }
-
-        ArrayLiteralNode left_arr = null; // retrieve left anr right arrays
-        ArrayLiteralNode right_arr = null;
-        try{
-            if(get(node.left) instanceof ArrayLiteralNode){
-                left_arr= get(node.left);
-            }
-        }catch (Exception e){
-            System.out.println("exception");
-        }
-        try{
-            if(get(node.left) instanceof ArrayLiteralNode){
-                right_arr= get(node.left);
-            }
-        }catch (Exception e){
-            System.out.println("exception");
-        }
-        /*if (node.left instanceof  ParenthesizedNode){
-            ArrayLiteralNode result = (ArrayLiteralNode) binaryExpression((BinaryExpressionNode) ((ParenthesizedNode) node.left).expression);
-            left_arr = result;
-        }
-        if (node.left instanceof BinaryExpressionNode){
-            left_arr = (ArrayLiteralNode) binaryExpression((BinaryExpressionNode) node.left);
-        }
-        if (node.right instanceof  ParenthesizedNode){
-            ArrayLiteralNode result = (ArrayLiteralNode) binaryExpression((BinaryExpressionNode) ((ParenthesizedNode) node.right).expression);
-            right_arr = result;
-        }
-        if (node.right instanceof BinaryExpressionNode){
-            right_arr = (ArrayLiteralNode) binaryExpression((BinaryExpressionNode) node.right);
-        }*/
-        FunDeclarationNode currFunction = null;//(FunDeclarationNode) scope.lookup(currentFunctionName).declaration;//(FunDeclarationNode) curr_scope.declarations.get(currentFunctionName);
-        Scope curr_scope =null;//(Scope)reactor.get(scope.declarations.get(left_name),"scope");
-        ArrayLiteralNode[] parameter_arrays = new ArrayLiteralNode[2]; //store left and right arrays
-        if (scope != null && currentFunctionName != null) {
-            //TODO
-            if (scope.lookup(currentFunctionName).declaration instanceof FunDeclarationNode) {
-                currFunction = (FunDeclarationNode) scope.lookup(currentFunctionName).declaration;//(FunDeclarationNode) curr_scope.declarations.get(currentFunctionName);
-
-            }if (scope.declarations.get(left_name) != null)
-                curr_scope= reactor.get(scope.declarations.get(left_name), "scope");
-            if (scope.declarations.get(right_name) != null){
-                 Scope curr_scoper= reactor.get(scope.declarations.get(right_name), "scope");
-                 if (curr_scope==null){
-                     curr_scope = curr_scoper;
-                 }else if (curr_scoper!=null){
-                     for (Entry<String , DeclarationNode> e : curr_scoper.declarations.entrySet()){
-                         curr_scope.declare(e.getKey(),e.getValue());
-                     }
-                 }
-            }
-        }
-        if (currFunction != null) {
-            int param_index = 0;
-            for (ParameterNode p : currFunction.parameters) {
-                if (node.left instanceof  ReferenceNode && p.name.equals(((ReferenceNode) node.left).name)) {
-                    if (currentArguments.get(param_index) instanceof ArrayLiteralNode) {
-                        parameter_arrays[0] = (ArrayLiteralNode) currentArguments.get(param_index);
-                    } else if (currentArguments.get(param_index) instanceof ReferenceNode) {
-                        String param_name = ((ReferenceNode) currentArguments.get(param_index)).name;
-                        VarDeclarationNode array_decl =null;
-                        if (curr_scope==null){
-                            Scope s= ((Scope)reactor.get(currFunction,"scope")).parent;
-                            array_decl = (VarDeclarationNode) s.declarations.get(param_name);
-                        }else {
-                            array_decl = (VarDeclarationNode) (curr_scope.declarations.get(param_name));
-                        }                        if (array_decl.initializer instanceof FunCallNode){
-                            parameter_arrays[0] = (ArrayLiteralNode) currentFunctionValue.value;
-                        }
-                        else {
-                            parameter_arrays[0] = (ArrayLiteralNode) (array_decl.initializer);
-                        }
-
-                    } else System.out.println("unknown parameter type array operation");
-                }
-                if (node.right instanceof ReferenceNode && p.name.equals(((ReferenceNode) node.right).name)) {
-                    if (currentArguments.get(param_index) instanceof ArrayLiteralNode) {
-                        parameter_arrays[1] = (ArrayLiteralNode) currentArguments.get(param_index);
-                    } else if (currentArguments.get(param_index) instanceof ReferenceNode) {
-                        String param_name = ((ReferenceNode) currentArguments.get(param_index)).name;
-                        VarDeclarationNode array_decl =null;
-                        if (curr_scope==null){
-                            Scope s= ((Scope)reactor.get(currFunction,"scope")).parent;
-                            array_decl = (VarDeclarationNode) s.declarations.get(param_name);
-                        }else {
-                            array_decl = (VarDeclarationNode) (curr_scope.declarations.get(param_name));
-                        }
-                        if (array_decl != null){
-                            if (array_decl.initializer instanceof FunCallNode){
-                                parameter_arrays[1] = (ArrayLiteralNode) currentFunctionValue.value;
-                            }
-                            else {
-                                parameter_arrays[1] = (ArrayLiteralNode) (array_decl.initializer);
-                            }
-                        }
-                    }
-                }
-                param_index++;
-            }
-        }
-        /*if (currFunction == null){
-            if (curr_scope.declarations.get("print") instanceof  FunDeclarationNode){
-            currFunction=(FunDeclarationNode) curr_scope.declarations.get("print");
-            }
-        }*/
-        if (node.left instanceof ReferenceNode){
-            left_arr = parameter_arrays[0];//(ArrayLiteralNode) (((VarDeclarationNode) scope.declarations.get(left_name)).initializer);
-
-            if (left_arr == null) { //array declared not a reference but a declaration
-                left_arr = (ArrayLiteralNode) (((VarDeclarationNode) scope.declarations.get(left_name)).initializer);
-            }
-        }
-        if (node.left instanceof ArrayLiteralNode){
-            left_arr = (ArrayLiteralNode) node.left;
-        }
-        if (node.right instanceof ReferenceNode) {
-            right_arr = parameter_arrays[1];//(ArrayLiteralNode) (((VarDeclarationNode) scope.declarations.get(right_name)).initializer);
-
-            if (right_arr == null) { // arrays is a declaration
-                SighNode n = scope.declarations.get(right_name);
-                if (n instanceof VarDeclarationNode){
-                    right_arr = (ArrayLiteralNode) (((VarDeclarationNode) scope.declarations.get(right_name)).initializer);
-                }
-
-            }
-        }
-        if (node.right instanceof ArrayLiteralNode){
-            right_arr = (ArrayLiteralNode) node.right;
-        }
-        //}
-        //TODO check span
-
-        //type check
-        if (left_arr.components.size() != right_arr.components.size()){
-
-            throw  new Error(format(" Operation between arrays of different length: %s (%d) and %s (%d)", left_arr.components, left_arr.components.size(), right_arr.components,right_arr.components.size()));
-        }
-
-
-        //result computation
-        List<ExpressionNode> result = new ArrayList<>();
-        int len = left_arr.components.size();
-        for (int i=0; i< len;i++){
-            BinaryExpressionNode new_node = new BinaryExpressionNode(null,left_arr.components.get(i),node.array_operator,right_arr.components.get(i),null);
-            if(isComparison(node.array_operator)){
-                result.add(new ReferenceNode(null, String.valueOf(literalBinaryExpression(new_node))));
-            }else {
-                Type[] ret_types=returnType(new_node); //deduce the types of the nodes
-                boolean floating = isFloat(ret_types[0],ret_types[1]);
-                switch (node.array_operator) {
-                    case OR:
-                        if (!(ret_types[0] instanceof BoolType)||!(ret_types[1] instanceof BoolType)){
-                            throw new Error(format("using  boolean operator @(%s) between non boolean array elements : %s and %s",
-                                node.array_operator, new_node.left, new_node.right ));
-                        }
-                        result.add(new ReferenceNode(null, String.valueOf(booleanOp(new_node, false))));
-                        break;
-                    case AND:
-                        if (!(ret_types[0] instanceof BoolType)||!(ret_types[1] instanceof BoolType)){
-                            throw new Error(format("using  boolean operator @(%s) between non boolean array elements : %s and %s",
-                                node.array_operator, new_node.left,new_node.right ));
-                        }
-                        result.add(new ReferenceNode(null, String.valueOf(booleanOp(new_node, true))));
-                        break;
-                    case GREATER :
-                    case GREATER_EQUAL:
-                    case LOWER:
-                    case LOWER_EQUAL:
-                    case EQUALITY:
-                    case NOT_EQUALS:
-                        result.add(new ReferenceNode(null, String.valueOf(literalBinaryExpression(new_node))));
-                        break;
-                    default:
-                        if (floating){
-                            result.add(new FloatLiteralNode(null, ((Double) literalBinaryExpression(new_node))));
-                        }else if( ret_types[0]==StringType.INSTANCE && ret_types[1]==StringType.INSTANCE){
-                            if (node.array_operator != ADD){
-                                throw  new Error(format("trying to use %s between array elements of type string", node.operator));
-                            }
-                            result.add(new StringLiteralNode(null, (String) literalBinaryExpression(new_node)));
-                        }
-                        else if(ret_types[0] instanceof IntType && ret_types[1] instanceof  IntType) {
-                            IntLiteralNode toAdd =new IntLiteralNode(null, (long) literalBinaryExpression(new_node));
-                            result.add(toAdd);
-                            reactor.set(toAdd,"type",IntType.INSTANCE);
-                        }
-                        else {
-                            throw new Error(format("trying to use @ between array elements of incompatible types : %s and %s", ret_types[0].name(),ret_types[1].name()));
-                        }
-                }
-
-            }
-
-
-
-        }//TODO Span
-        return new ArrayLiteralNode(null,result);
-
-
-
+    public Interpreter (Reactor reactor, int tierThreshold) {
+        this(reactor, tierThreshold, 0);
     }
 
     // ---------------------------------------------------------------------------------------------
 
-    private boolean booleanOp (BinaryExpressionNode node, boolean isAnd)
-    {
-        boolean left = get(node.left);
-        return isAnd
-                ? left && (boolean) get(node.right)
-                : left || (boolean) get(node.right);
+    /**
+     * Creates an interpreter for programs analyzed with the given reactor (cf. {@link
+     * #Interpreter(Reactor, int)}), in explicit-stack mode if {@code maxDepth} is positive: {@link
+     * #interpret} then allows up to {@code maxDepth} nested function calls, and throws a {@link
+     * StackOverflowError} beyond that. The tier threshold is ignored in explicit-stack mode.
+     */
+    public Interpreter (Reactor reactor, int tierThreshold, int maxDepth) {
+        this.reactor = reactor;
+        this.tierThreshold = tierThreshold;
+        this.maxDepth = maxDepth;
     }
 
     // ---------------------------------------------------------------------------------------------
 
-    private Object numericOp
-            (BinaryExpressionNode node, boolean floating, Number left, Number right)
-    {
-        long ileft, iright;
-        double fleft, fright;
-
-        if (floating) {
-            fleft  = left.doubleValue();
-            fright = right.doubleValue();
-            ileft = iright = 0;
-        } else {
-            ileft  = left.longValue();
-            iright = right.longValue();
-            fleft = fright = 0;
-        }
-
-        Object result;
-        if (floating)
-            switch (node.operator) {
-                case MULTIPLY:      return fleft *  fright;
-                case DIVIDE:        return fleft /  fright;
-                case REMAINDER:     return fleft %  fright;
-                case ADD:           return fleft +  fright;
-                case SUBTRACT:      return fleft -  fright;
-                case GREATER:       return fleft >  fright;
-                case LOWER:         return fleft <  fright;
-                case GREATER_EQUAL: return fleft >= fright;
-                case LOWER_EQUAL:   return fleft <= fright;
-                case EQUALITY:      return fleft == fright;
-                case NOT_EQUALS:    return fleft != fright;
-                default:
-                    throw new Error("should not reach here");
-            }
-        else
-            switch (node.operator) {
-                case MULTIPLY:      return ileft *  iright;
-                case DIVIDE:        return ileft /  iright;
-                case REMAINDER:     return ileft %  iright;
-                case ADD:           return ileft +  iright;
-                case SUBTRACT:      return ileft -  iright;
-                case GREATER:       return ileft >  iright;
-                case LOWER:         return ileft <  iright;
-                case GREATER_EQUAL: return ileft >= iright;
-                case LOWER_EQUAL:   return ileft <= iright;
-                case EQUALITY:      return ileft == iright;
-                case NOT_EQUALS:    return ileft != iright;
-                default:
-                    throw new Error("should not reach here");
-            }
+    /**
+     * Returns the maximum call depth for the explicit-stack mode configured by the {@code
+     * sigh.stack.depth} system property, or 0 (tree mode) if it is not set.
+     */
+    public static int configuredMaxDepth () {
+        return Integer.getInteger("sigh.stack.depth", 0);
     }
 
     // ---------------------------------------------------------------------------------------------
 
-    public Object assignment (AssignmentNode node)
+    /**
+     * Returns the prepared form of the given program, which must be a {@link RootNode} that was
+     * successfully analyzed with the reactor passed to the constructor.
+     */
+    public synchronized RootExec prepare (SighNode root)
     {
-        if (node.left instanceof ReferenceNode) {
-            Scope scope = reactor.get(node.left, "scope");
-            String name = ((ReferenceNode) node.left).name;
-            Object rvalue = get(node.right);
-            assign(scope, name, rvalue, reactor.get(node, "type"));
-            return rvalue;
+        if (preparer == null) {
+            freeze();
+            preparer = new Preparer(attributes, tierThreshold > 0
+                ? new TieredCompiler(attributes, tierThreshold)
+                : null);
         }
-
-        if (node.left instanceof ArrayAccessNode) {
-            ArrayAccessNode arrayAccess = (ArrayAccessNode) node.left;
-            Object[] array = getNonNullArray(arrayAccess.array);
-            int index = getIndex(arrayAccess.index);
-            try {
-                return array[index] = get(node.right);
-            } catch (ArrayIndexOutOfBoundsException e) {
-                throw new PassthroughException(e);
-            }
-        }
-
-        if (node.left instanceof FieldAccessNode) {
-            FieldAccessNode fieldAccess = (FieldAccessNode) node.left;
-            Object object = get(fieldAccess.stem);
-            if (object == Null.INSTANCE)
-                throw new PassthroughException(
-                    new NullPointerException("accessing field of null object"));
-            Map<String, Object> struct = cast(object);
-            Object right = get(node.right);
-            struct.put(fieldAccess.fieldName, right);
-            return right;
-        }
-
-        throw new Error("should not reach here");
+        return prepared.computeIfAbsent(root, it -> preparer.prepare((RootNode) it));
     }
 
     // ---------------------------------------------------------------------------------------------
 
-    private int getIndex (ExpressionNode node)
-    {
-        long index = get(node);
-        if (index < 0)
-            throw new ArrayIndexOutOfBoundsException("Negative index: " + index);
-        if (index >= Integer.MAX_VALUE - 1)
-            throw new ArrayIndexOutOfBoundsException("Index exceeds max array index (2ˆ31 - 2): " + index);
-        return (int) index;
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    private Object[] getNonNullArray (ExpressionNode node)
-    {
-        Object object = get(node);
-        if (object == Null.INSTANCE)
-            throw new PassthroughException(new NullPointerException("indexing null array"));
-        return (Object[]) object;
+    private void freeze () {
+        if (attributes == null)
+            attributes = FrozenAttributes.freeze(reactor);
     }
 
     // ---------------------------------------------------------------------------------------------
 
-    private Object unaryExpression (UnaryExpressionNode node)
-    {
-        // there is only NOT
-        assert node.operator == UnaryOperator.NOT;
-        return ! (boolean) get(node.operand);
+    /**
+     * Runs the given program (cf. {@link #prepare}), in explicit-stack mode if enabled.
+     */
+    public Object interpret (SighNode root) {
+        return maxDepth > 0
+            ? executeStack(root)
+            : execute(prepare(root));
     }
 
     // ---------------------------------------------------------------------------------------------
 
-    private Object arrayAccess (ArrayAccessNode node)
+    private Object executeStack (SighNode root)
     {
-        Object[] array = getNonNullArray(node.array);
-        try {
-            return array[getIndex(node.index)];
-        } catch (ArrayIndexOutOfBoundsException e) {
-            throw new PassthroughException(e);
+        StackCode code;
+        synchronized (this) {
+            freeze();
+            if (stackCompiler == null)
+                stackCompiler = new StackCompiler(attributes);
+            code = stackCodes.computeIfAbsent(root, it -> stackCompiler.compile((RootNode) it));
         }
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    private Object root (RootNode node)
-    {
-        assert storage == null;
-        rootScope = reactor.get(node, "scope");
-        storage = rootStorage = new ScopeStorage(rootScope, null);
-        storage.initRoot(rootScope);
 
+        RootScope scope = attributes.scope(root);
+        Frame frame = new Frame(scope, null);
+        frame.initRoot(scope, attributes);
         try {
-            node.statements.forEach(this::run);
-        } catch (Return r) {
-            return r.value;
-            // allow returning from the main script
-        } finally {
-            storage = null;
+            return new StackMachine(stackCompiler, maxDepth).run(code, frame);
+        } catch (PassthroughException e) {
+            throw Exceptions.runtime(e.getCause());
         }
-        return null;
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    private Void block (BlockNode node) {
-        Scope scope = reactor.get(node, "scope");
-        storage = new ScopeStorage(scope, storage);
-        node.statements.forEach(this::run);
-        storage = storage.parent;
-        return null;
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    private Constructor constructor (ConstructorNode node) {
-        // guaranteed safe by semantic analysis
-        return new Constructor(get(node.ref));
     }
 
     // ---------------------------------------------------------------------------------------------
 
-    private Object expressionStmt (ExpressionStatementNode node) {
-        get(node.expression);
-        return null;  // discard value
+    /**
+     * Runs the given prepared program, returning the value returned by its top-level return
+     * statement, if any. Can be called concurrently from multiple threads.
+     */
+    public Object execute (RootExec program) {
+        return execute(program, newRootFrame(program), 0, program.statementCount());
     }
 
     // ---------------------------------------------------------------------------------------------
 
-    private Object fieldAccess (FieldAccessNode node)
-    {
-        Object stem = get(node.stem);
-        if (stem == Null.INSTANCE)
-            throw new PassthroughException(
-                new NullPointerException("accessing field of null object"));
-        return stem instanceof Map
-                ? Util.<Map<String, Object>>cast(stem).get(node.fieldName)
-                : (long) ((Object[]) stem).length; // only field on arrays
+    private Frame newRootFrame (RootExec program) {
+        Frame frame = new Frame(program.scope, null);
+        frame.initRoot(program.scope, attributes);
+        return frame;
     }
 
     // ---------------------------------------------------------------------------------------------
 
-    private Object funCall (FunCallNode node)
+    private Object execute (RootExec program, Frame frame, int from, int to)
     {
-        currentFunctionName=node.function.contents();
-        currentArguments =node.arguments;
-        //reactor.set(node,"scope",reactor.get(node,"scope"));
-        Object decl = get(node.function);
-        node.arguments.forEach(this::run);
-        Object[] args = map(node.arguments, new Object[0], visitor);
-
-        if (decl == Null.INSTANCE)
-            throw new PassthroughException(new NullPointerException("calling a null function"));
-
-        if (decl instanceof SyntheticDeclarationNode)
-            return builtin(((SyntheticDeclarationNode) decl).name(), args);
-
-        if (decl instanceof Constructor)
-            return buildStruct(((Constructor) decl).declaration, args);
-
-        ScopeStorage oldStorage = storage;
-        Scope scope = reactor.get(decl, "scope");
-        storage = new ScopeStorage(scope, storage);
-
-        FunDeclarationNode funDecl = (FunDeclarationNode) decl;
-        coIterate(args, funDecl.parameters,
-                (arg, param) -> storage.set(scope, param.name, arg));
-
         try {
-            get(funDecl.block);
-        } catch (Return r) {
-            return r.value;
-        } finally {
-            storage = oldStorage;
+            return program.execute(frame, from, to);
+        } catch (PassthroughException e) {
+            throw Exceptions.runtime(e.getCause());
         }
-        return null;
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    private Object builtin (String name, Object[] args)
-    {
-        assert name.equals("print"); // only one at the moment
-        String out = convertToString(args[0]);
-        System.out.println(out);
-        return out;
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    private String convertToString (Object arg)
-    {
-        if (arg == Null.INSTANCE)
-            return "null";
-        else if (arg instanceof Object[])
-            return Arrays.deepToString((Object[]) arg);
-        else if (arg instanceof FunDeclarationNode)
-            return ((FunDeclarationNode) arg).name;
-        else if (arg instanceof StructDeclarationNode)
-            return ((StructDeclarationNode) arg).name;
-        else if (arg instanceof Constructor)
-            return "$" + ((Constructor) arg).declaration.name;
-        else
-            return arg.toString();
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    private HashMap<String, Object> buildStruct (StructDeclarationNode node, Object[] args)
-    {
-        HashMap<String, Object> struct = new HashMap<>();
-        for (int i = 0; i < node.fields.size(); ++i)
-            struct.put(node.fields.get(i).name, args[i]);
-        return struct;
     }
 
     // ---------------------------------------------------------------------------------------------
 
-    private Void ifStmt (IfNode node)
-    {
-        if (get(node.condition))
-            get(node.trueStatement);
-        else if (node.falseStatement != null)
-            get(node.falseStatement);
-        return null;
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    private Void whileStmt (WhileNode node)
-    {
-        while (get(node.condition))
-            get(node.body);
-        return null;
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    private Object reference (ReferenceNode node)
+    /**
+     * Runs the first {@code statements} top-level statements of the given program (cf. {@link
+     * #prepare}), which must not return, then writes the values of its top-level variables
+     * (including arrays and structures they reference) to the output stream, in a compact binary
+     * format (cf. {@link Checkpoint}). The stream is flushed but not closed.
+     *
+     * <p>Always runs in tree mode.
+     */
+    public void checkpoint (SighNode root, int statements, OutputStream out) throws IOException
     {
-        Scope scope = reactor.get(node, "scope");
-        DeclarationNode decl = reactor.get(node, "decl");
-
-        if (decl instanceof VarDeclarationNode
-        || decl instanceof ParameterNode
-        || decl instanceof SyntheticDeclarationNode
-                && ((SyntheticDeclarationNode) decl).kind() == DeclarationKind.VARIABLE)
-            return scope == rootScope
-                ? rootStorage.get(scope, node.name)
-                : storage.get(scope, node.name);
-
-        return decl; // structure or function
-    }
+        RootExec program = prepare(root);
+        if (statements < 0 || statements > program.statementCount())
+            throw new IllegalArgumentException("no top-level statement at index " + statements);
 
-    // ---------------------------------------------------------------------------------------------
+        Frame frame = newRootFrame(program);
+        if (execute(program, frame, 0, statements) != null)
+            throw new IllegalStateException("the program returned before the checkpoint");
 
-    private Void returnStmt (ReturnNode node) {
-        Return r = new Return(node.expression == null ? null : get(node.expression));
-        currentFunctionValue = r;
-        throw r ;
+        checkpointer(root).write(frame, statements, new DataOutputStream(out));
     }
 
     // ---------------------------------------------------------------------------------------------
 
-    private Void varDecl (VarDeclarationNode node)
+    /**
+     * Restores the top-level variables of the given program from a checkpoint read from the input
+     * stream (cf. {@link #checkpoint}), which must have been written for the same program, then
+     * runs the top-level statements that follow the checkpoint. Returns the value returned by the
+     * program, if any.
+     *
+     * <p>Always runs in tree mode.
+     */
+    public Object resume (SighNode root, InputStream in) throws IOException
     {
-        Scope scope = reactor.get(node, "scope");
-        assign(scope, node.name, get(node.initializer), reactor.get(node, "type"));
-        reactor.set(node.initializer,"context",node.name);
-        //reactor.set(context,node.na);
-        return null;
+        RootExec program = prepare(root);
+        Frame frame = newRootFrame(program);
+        int statements = checkpointer(root).read(frame, new DataInputStream(in));
+        if (statements > program.statementCount())
+            throw new IOException("the checkpoint was written for another program");
+        return execute(program, frame, statements, program.statementCount());
     }
 
     // ---------------------------------------------------------------------------------------------
 
-    private void assign (Scope scope, String name, Object value, Type targetType)
-    {
-        if (value instanceof Long && targetType instanceof FloatType)
-            value = ((Long) value).doubleValue();
-        storage.set(scope, name, value);
+    private synchronized Checkpoint checkpointer (SighNode root) {
+        return new Checkpoint(attributes, preparer, (RootNode) root);
     }
 
     // ---------------------------------------------------------------------------------------------
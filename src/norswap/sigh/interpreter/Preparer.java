@@ -0,0 +1,869 @@
+package norswap.sigh.interpreter;
+
+import norswap.sigh.FrozenAttributes;
+import norswap.sigh.ast.*;
+import norswap.sigh.interpreter.exec.*;
+import norswap.sigh.scopes.DeclarationKind;
+import norswap.sigh.scopes.RootScope;
+import norswap.sigh.scopes.Scope;
+import norswap.sigh.scopes.SyntheticDeclarationNode;
+import norswap.sigh.types.*;
+import norswap.utils.visitors.ValuedVisitor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static norswap.sigh.ast.BinaryOperator.*;
+
+/**
+ * Implements the "prepare" phase of the {@link Interpreter}, which turns an analyzed AST into a
+ * tree of {@link ExecNode}.
+ *
+ * <p>All the information derived from the semantic analysis that the interpreter needs is looked
+ * up from the {@link FrozenAttributes} at this stage, and baked into the executable nodes. The
+ * preparation is a one-time cost: the resulting tree can be executed any number of times.
+ *
+ * <p>Declarations of functions and structures do not result in executable nodes. Instead,
+ * function declarations are turned into {@link CallTarget}, which are retrieved at call time from
+ * the function declarations (their runtime values), and each structure declaration gets a single
+ * {@link StructLayout}, which is used to resolve field accesses to indices.
+ *
+ * <p>A few common shapes of expressions over variables are fused into a single node (cf. {@link
+ * Superinstruction}): {@code i = i + k}, comparisons between {@code Int} variables, {@code a[i]}
+ * and {@code x = x + a[i]}.
+ *
+ * <p>An array with {@code Int} elements stored in a location whose type has {@code Float}
+ * elements (variable, parameter, field, array element or return value) is converted to a new
+ * {@code Float} array (cf. {@link #assigned}). The two arrays are not aliased: writes through one
+ * of them are not visible through the other. This matches the compiled code, where the two types
+ * have distinct representations ({@code long[]} and {@code double[]}).
+ */
+public final class Preparer
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final ValuedVisitor<SighNode, ExecNode> visitor = new ValuedVisitor<>();
+    private final FrozenAttributes attributes;
+    private final Map<FunDeclarationNode, CallTarget> targets = new IdentityHashMap<>();
+
+    /**
+     * Immutable copy of {@link #targets}, replaced whenever a target is added. Read by prepared
+     * code at run time ({@link FunCallExec}), possibly while another program is being prepared.
+     */
+    private volatile Map<FunDeclarationNode, CallTarget> publishedTargets =
+        Collections.emptyMap();
+    private final Map<StructDeclarationNode, StructLayout> layouts = new IdentityHashMap<>();
+
+    /** Compiler for hot functions and loops, or null if not in tiered mode. */
+    private final TieredCompiler compiler;
+
+    /** Call target of the function being prepared, or null in top-level code. */
+    private CallTarget function;
+
+    /**
+     * Executable nodes to use in place of the prepared form of some AST nodes: used by the {@link
+     * StackCompiler} to substitute reads of temporary values for operands it evaluated earlier.
+     */
+    final Map<SighNode, ExecNode> substitutions = new IdentityHashMap<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a preparer that uses the given attributes. If {@code compiler} isn't null, functions
+     * and top-level loops get compiled once hot (cf. {@link TieredCompiler}).
+     */
+    public Preparer (FrozenAttributes attributes, TieredCompiler compiler) {
+        this.attributes = attributes;
+        this.compiler = compiler;
+
+        // expressions
+        visitor.register(IntLiteralNode.class,           this::intLiteral);
+        visitor.register(FloatLiteralNode.class,         this::floatLiteral);
+        visitor.register(StringLiteralNode.class,        this::stringLiteral);
+        visitor.register(ReferenceNode.class,            this::reference);
+        visitor.register(ConstructorNode.class,          this::constructor);
+        visitor.register(ArrayLiteralNode.class,         this::arrayLiteral);
+        visitor.register(ParenthesizedNode.class,        this::parenthesized);
+        visitor.register(FieldAccessNode.class,          this::fieldAccess);
+        visitor.register(ArrayAccessNode.class,          this::arrayAccess);
+        visitor.register(FunCallNode.class,              this::funCall);
+        visitor.register(UnaryExpressionNode.class,      this::unaryExpression);
+        visitor.register(BinaryExpressionNode.class,     this::binaryExpression);
+        visitor.register(AssignmentNode.class,           this::assignment);
+
+        // statement groups & declarations
+        visitor.register(BlockNode.class,                this::block);
+        visitor.register(VarDeclarationNode.class,       this::varDecl);
+        visitor.register(FunDeclarationNode.class,       this::funDecl);
+        // no need to visitor other declarations! (use fallback)
+
+        // statements
+        visitor.register(ExpressionStatementNode.class,  this::expressionStmt);
+        visitor.register(IfNode.class,                   this::ifStmt);
+        visitor.register(WhileNode.class,                this::whileStmt);
+        visitor.register(ReturnNode.class,               this::returnStmt);
+
+        visitor.registerFallback(node -> null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Prepares the given program, which must have been successfully analyzed, with the results of
+     * the analysis captured in the attributes passed to the constructor.
+     */
+    public RootExec prepare (RootNode node)
+    {
+        RootScope scope = attributes.scope(node);
+        List<ExecNode> statements = new ArrayList<>(node.statements.size());
+        int[] positions = new int[node.statements.size() + 1];
+        for (int i = 0; i < node.statements.size(); ++i) {
+            positions[i] = statements.size();
+            ExecNode exec = get(node.statements.get(i));
+            if (exec != null) statements.add(exec);
+        }
+        positions[node.statements.size()] = statements.size();
+        return new RootExec(node, scope, statements.toArray(new ExecNode[0]), positions);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Prepares the given node, or returns its substitute (cf. {@link #substitutions}). Returns
+     * null for declarations that do not need to be executed.
+     */
+    ExecNode get (SighNode node) {
+        ExecNode substitute = substitutions.get(node);
+        return substitute != null ? substitute : visitor.apply(node);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode[] expressions (List<? extends SighNode> nodes)
+    {
+        ExecNode[] result = new ExecNode[nodes.size()];
+        for (int i = 0; i < result.length; ++i)
+            result[i] = get(nodes.get(i));
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Prepares the given statements, omitting declarations that do not need to be executed.
+     */
+    private ExecNode[] statements (List<? extends SighNode> nodes)
+    {
+        List<ExecNode> result = new ArrayList<>(nodes.size());
+        for (SighNode node: nodes) {
+            ExecNode exec = get(node);
+            if (exec != null) result.add(exec);
+        }
+        return result.toArray(new ExecNode[0]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Prepares a statement, substituting a no-op for declarations.
+     */
+    private ExecNode statement (SighNode node) {
+        ExecNode exec = get(node);
+        return exec != null ? exec : new ConstantExec(node, null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the static type of the node, or null if it is missing. For template function calls,
+     * semantic analysis assigns a list of types to some nodes: null is also returned in this case,
+     * as the type of the node is not uniquely known.
+     */
+    private Type type (SighNode node)
+    {
+        Object type = attributes.type(node);
+        return type instanceof Type ? (Type) type : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Returns the component type of the node's array type, or null if not statically known. */
+    private Type componentType (SighNode node)
+    {
+        Type type = type(node);
+        return type instanceof ArrayType ? ((ArrayType) type).componentType : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode intLiteral (IntLiteralNode node) {
+        return new ConstantExec(node, node.value);
+    }
+
+    private ExecNode floatLiteral (FloatLiteralNode node) {
+        return new ConstantExec(node, node.value);
+    }
+
+    private ExecNode stringLiteral (StringLiteralNode node) {
+        return new ConstantExec(node, node.value);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode parenthesized (ParenthesizedNode node) {
+        return get(node.expression);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode arrayLiteral (ArrayLiteralNode node) {
+        return arrayLiteral(node, type(node));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Prepares an array literal that evaluates to an array of the given type, which is either the
+     * type of the literal or a type it can be assigned to (cf. {@link #assigned}).
+     */
+    private ExecNode arrayLiteral (ArrayLiteralNode node, Type type)
+    {
+        Type component = type instanceof ArrayType ? ((ArrayType) type).componentType : null;
+        ExecNode[] components = new ExecNode[node.components.size()];
+        for (int i = 0; i < components.length; ++i)
+            components[i] = assigned(node.components.get(i), component);
+        return new ArrayLiteralExec(node, SlotKind.of(component), components);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode binaryExpression (BinaryExpressionNode node)
+    {
+        if (node.operator == ARRAY_OP)
+            return arrayOperation(node);
+
+        ExecNode left  = get(node.left);
+        ExecNode right = get(node.right);
+
+        switch (node.operator) {
+            case AND:      return new AndExec(node, left, right);
+            case OR:       return new OrExec(node, left, right);
+        }
+
+        Type leftType  = type(node.left);
+        Type rightType = type(node.right);
+        BinaryOperator op = node.operator;
+        boolean comparison = op != MULTIPLY && op != DIVIDE && op != REMAINDER
+                          && op != ADD && op != SUBTRACT;
+        boolean equality = op == EQUALITY || op == NOT_EQUALS;
+
+        if (leftType instanceof StringType || rightType instanceof StringType)
+            return op == ADD
+                ? new StringConcatExec(node, left, right)
+                : new StringComparisonExec(node, op, left, right);
+
+        if (leftType instanceof IntType && rightType instanceof IntType) {
+            if (comparison && isVariable(node.left) && isVariable(node.right)) {
+                ReferenceNode l = (ReferenceNode) node.left, r = (ReferenceNode) node.right;
+                return new CompareVariablesExec(node, op,
+                    depth(l), attributes.slot(attributes.decl(l)),
+                    depth(r), attributes.slot(attributes.decl(r)));
+            }
+            return comparison
+                ? new IntComparisonExec(node, op, left, right)
+                : new IntArithmeticExec(node, op, left, right);
+        }
+
+        if (isNumeric(leftType) && isNumeric(rightType))
+            return comparison
+                ? new FloatComparisonExec(node, op, left, right)
+                : new FloatArithmeticExec(node, op, left, right);
+
+        if (equality && leftType instanceof BoolType && rightType instanceof BoolType)
+            return new BoolEqualityExec(node, op == NOT_EQUALS, left, right);
+
+        // The types are not statically known (e.g. templates), or the operator is an equality
+        // between references: dispatch on the runtime values.
+        return new BinaryExec(node, op, left, right);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Prepares {@code a @(op) b}. If an operand is itself an array operation that can be fused
+     * with this one (cf. {@link ArrayChain}), the whole chain is evaluated by a single {@link
+     * FusedArrayOpExec}.
+     */
+    private ExecNode arrayOperation (BinaryExpressionNode node)
+    {
+        ArrayKernel kernel = kernel(node);
+        if (fusible(node, kernel)
+                && (fusible(fusedOperand(node.left)) || fusible(fusedOperand(node.right)))) {
+            List<ExecNode> operands = new ArrayList<>();
+            ArrayChain chain = chain(node, operands);
+            return new FusedArrayOpExec(node, chain, operands.toArray(new ExecNode[0]));
+        }
+        return new ArrayOpExec(node, node.array_operator, kernel, get(node.left), get(node.right));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ArrayKernel kernel (BinaryExpressionNode node) {
+        return ArrayKernel.select(componentType(node.left), componentType(node.right));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the node is an array operation on primitive arrays, which can be part of an {@link
+     * ArrayChain}.
+     */
+    private boolean fusible (SighNode node)
+    {
+        if (!(node instanceof BinaryExpressionNode)) return false;
+        BinaryExpressionNode binary = (BinaryExpressionNode) node;
+        return binary.operator == ARRAY_OP && fusible(binary, kernel(binary));
+    }
+
+    private boolean fusible (BinaryExpressionNode node, ArrayKernel kernel)
+    {
+        BinaryOperator op = node.array_operator;
+        boolean logic = op == AND || op == OR;
+        switch (kernel) {
+            case INT: case FLOAT: return !logic;
+            case BOOL:            return logic;
+            default:              return false;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the node to fuse for the given operand: the operand itself, or the expression it
+     * parenthesizes. Operands substituted by the {@link StackCompiler} are not fused.
+     */
+    private SighNode fusedOperand (SighNode node)
+    {
+        while (node instanceof ParenthesizedNode && !substitutions.containsKey(node))
+            node = ((ParenthesizedNode) node).expression;
+        return substitutions.containsKey(node) ? null : node;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Builds the chain of fused operations rooted at {@code node}, preparing the operand arrays at
+     * its leaves, from left to right, into {@code operands}.
+     */
+    private ArrayChain chain (SighNode node, List<ExecNode> operands)
+    {
+        SighNode fused = fusedOperand(node);
+        if (!fusible(fused)) {
+            operands.add(get(node));
+            return ArrayChain.leaf(operands.size() - 1, SlotKind.of(componentType(node)));
+        }
+
+        BinaryExpressionNode binary = (BinaryExpressionNode) fused;
+        ArrayKernel kernel = kernel(binary);
+        ArrayChain left  = chain(binary.left, operands);
+        ArrayChain right = chain(binary.right, operands);
+        if (kernel == ArrayKernel.FLOAT) {
+            if (left.kind  == SlotKind.INT) left  = ArrayChain.toFloat(left);
+            if (right.kind == SlotKind.INT) right = ArrayChain.toFloat(right);
+        }
+        return ArrayChain.operation(binary.array_operator, kernel, left, right);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static boolean isNumeric (Type type) {
+        return type instanceof IntType || type instanceof FloatType;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode assignment (AssignmentNode node)
+    {
+        if (node.left instanceof ReferenceNode) {
+            Scope scope = attributes.scope(node.left);
+            DeclarationNode decl = attributes.decl(node.left);
+            List<ExpressionNode> appended = attributes.appendedStrings(node);
+            if (appended != null)
+                return new StringAppendExec(node, scope.frame.depth, attributes.slot(decl),
+                    expressions(appended));
+            ExecNode fused = fusedAssignment(node, scope, decl);
+            return fused != null
+                ? fused
+                : write(node, scope, decl, assigned(node.right, type(decl)));
+        }
+
+        if (node.left instanceof ArrayAccessNode) {
+            ArrayAccessNode arrayAccess = (ArrayAccessNode) node.left;
+            return new ArrayStoreExec(node, SlotKind.of(componentType(arrayAccess.array)),
+                get(arrayAccess.array), get(arrayAccess.index),
+                assigned(node.right, type(node.left)));
+        }
+
+        if (node.left instanceof FieldAccessNode) {
+            FieldAccessNode fieldAccess = (FieldAccessNode) node.left;
+            return new FieldStoreExec(node, get(fieldAccess.stem), fieldAccess.fieldName,
+                stemLayout(fieldAccess.stem), assigned(node.right, type(node.left)));
+        }
+
+        throw new Error("should not reach here");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a fused node for an assignment of the form {@code i = i + k}, {@code i = i - k} or
+     * {@code x = x + a[i]} to the given variable (cf. {@link Superinstruction}), or null if the
+     * assignment does not have one of these forms.
+     */
+    private ExecNode fusedAssignment (AssignmentNode node, Scope scope, DeclarationNode decl)
+    {
+        if (!(node.right instanceof BinaryExpressionNode)) return null;
+        BinaryExpressionNode right = (BinaryExpressionNode) node.right;
+        SlotKind kind = slotKind(decl);
+        int slot = attributes.slot(decl);
+
+        boolean add = right.operator == ADD;
+        if (kind == SlotKind.INT && (add || right.operator == SUBTRACT)) {
+            if (isReferenceTo(right.left, decl) && right.right instanceof IntLiteralNode) {
+                long k = ((IntLiteralNode) right.right).value;
+                return new IncrementExec(node, scope.frame.depth, slot, add ? k : -k);
+            }
+            if (add && isReferenceTo(right.right, decl) && right.left instanceof IntLiteralNode)
+                return new IncrementExec(node, scope.frame.depth, slot,
+                    ((IntLiteralNode) right.left).value);
+        }
+
+        if ((kind == SlotKind.INT || kind == SlotKind.FLOAT) && add
+                && isReferenceTo(right.left, decl)
+                && right.right instanceof ArrayAccessNode
+                && (kind == SlotKind.FLOAT || type(right.right) instanceof IntType)) {
+            LoadElementExec element = loadElement((ArrayAccessNode) right.right);
+            if (element != null)
+                return new AddElementExec(node, scope.frame.depth, slot,
+                    kind == SlotKind.FLOAT, element);
+        }
+
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the node is a reference to a (non-synthetic) variable or parameter.
+     */
+    private boolean isVariable (ExpressionNode node)
+    {
+        if (!(node instanceof ReferenceNode)) return false;
+        Object decl = attributes.decl(node);
+        return decl instanceof VarDeclarationNode || decl instanceof ParameterNode;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private boolean isReferenceTo (ExpressionNode node, DeclarationNode decl) {
+        return node instanceof ReferenceNode && attributes.decl(node) == decl;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Returns the depth of the frame holding the variable the reference refers to. */
+    private int depth (ReferenceNode node) {
+        Scope scope = attributes.scope(node);
+        return scope.frame.depth;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a fused node for the given array access if both the array and the index are
+     * variables (cf. {@link Superinstruction#LOAD_ELEMENT}), or null otherwise.
+     */
+    private LoadElementExec loadElement (ArrayAccessNode node)
+    {
+        if (!isVariable(node.array) || !isVariable(node.index)
+                || !(type(node.index) instanceof IntType)
+                || slotKind(attributes.decl(node.array)) != SlotKind.OBJECT)
+            return null;
+        ReferenceNode array = (ReferenceNode) node.array, index = (ReferenceNode) node.index;
+        return new LoadElementExec(node,
+            depth(array), attributes.slot(attributes.decl(array)),
+            depth(index), attributes.slot(attributes.decl(index)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode unaryExpression (UnaryExpressionNode node)
+    {
+        // there is only NOT
+        assert node.operator == UnaryOperator.NOT;
+        return new NotExec(node, get(node.operand));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode arrayAccess (ArrayAccessNode node) {
+        LoadElementExec fused = loadElement(node);
+        return fused != null ? fused : new ArrayAccessExec(node, get(node.array), get(node.index));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode block (BlockNode node) {
+        // the variables of the block live in the frame of the enclosing function (cf. Scope#frame)
+        return new BlockExec(node, statements(node.statements));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode constructor (ConstructorNode node) {
+        // guaranteed safe by semantic analysis
+        return new ConstantExec(node, new Constructor(layout(attributes.decl(node.ref))));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode expressionStmt (ExpressionStatementNode node) {
+        return get(node.expression); // value is discarded
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode fieldAccess (FieldAccessNode node) {
+        return new FieldAccessExec(node, get(node.stem), node.fieldName, stemLayout(node.stem));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Returns the layout of the structure declared by the given node. */
+    StructLayout layout (StructDeclarationNode decl) {
+        return layouts.computeIfAbsent(decl, StructLayout::new);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the layout of the structure type of a field access stem, or null if the stem
+     * does not have a statically known structure type.
+     */
+    private StructLayout stemLayout (ExpressionNode stem) {
+        Type type = type(stem);
+        return type instanceof StructType ? layout(((StructType) type).node) : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode funCall (FunCallNode node)
+    {
+        ExecNode[] arguments = arguments(node);
+
+        if (node.function instanceof ReferenceNode) {
+            Object decl = attributes.decl(node.function);
+            if (decl instanceof FunDeclarationNode)
+                return new DirectCallExec(node, target((FunDeclarationNode) decl), arguments,
+                    floatBindings(node, (FunDeclarationNode) decl));
+        }
+
+        if (node.function instanceof ConstructorNode) {
+            StructDeclarationNode decl = attributes.decl(((ConstructorNode) node.function).ref);
+            return new NewStructExec(node, layout(decl), arguments);
+        }
+
+        return new FunCallExec(node, get(node.function), arguments, this::publishedTarget);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode funDecl (FunDeclarationNode node)
+    {
+        CallTarget surrounding = function;
+        function = target(node);
+        function.setBody(get(node.block));
+        function = surrounding;
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the call target for the given function, creating it if needed. Its body is only set
+     * when the declaration is prepared, which can happen after the preparation of calls to it.
+     */
+    CallTarget target (FunDeclarationNode node)
+    {
+        CallTarget target = targets.get(node);
+        if (target != null) return target;
+
+        Scope scope = attributes.scope(node);
+        int[] slots = new int[node.parameters.size()];
+        SlotKind[] kinds = new SlotKind[slots.length];
+        int[] bindings = new int[slots.length];
+        boolean bound = false;
+        for (int i = 0; i < slots.length; ++i) {
+            slots[i] = attributes.slot(node.parameters.get(i));
+            kinds[i] = slotKind(node.parameters.get(i));
+            bindings[i] = templateParameter(node, node.parameters.get(i).type);
+            bound |= bindings[i] >= 0;
+        }
+
+        target = new CallTarget(node, scope, slots, kinds, bound ? bindings : null, compiler);
+        targets.put(node, target);
+        publishedTargets = Collections.unmodifiableMap(new IdentityHashMap<>(targets));
+        return target;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the call target for the given function, which must have been prepared. Unlike
+     * {@link #target}, this can be called concurrently with preparation.
+     */
+    private CallTarget publishedTarget (FunDeclarationNode node) {
+        return publishedTargets.get(node);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode ifStmt (IfNode node) {
+        return new IfExec(node,
+            get(node.condition),
+            statement(node.trueStatement),
+            node.falseStatement == null ? null : statement(node.falseStatement));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode whileStmt (WhileNode node) {
+        return new WhileExec(node, get(node.condition), statement(node.body), function, compiler);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode reference (ReferenceNode node)
+    {
+        Scope scope = attributes.scope(node);
+        DeclarationNode decl = attributes.decl(node);
+
+        if (decl instanceof VarDeclarationNode
+        || decl instanceof ParameterNode
+        || decl instanceof SyntheticDeclarationNode
+                && ((SyntheticDeclarationNode) decl).kind() == DeclarationKind.VARIABLE)
+        {
+            int slot = attributes.slot(decl);
+            switch (slotKind(decl)) {
+                case INT:   return new IntReadExec(node, scope.frame.depth, slot);
+                case FLOAT: return new FloatReadExec(node, scope.frame.depth, slot);
+                case BOOL:  return new BoolReadExec(node, scope.frame.depth, slot);
+                default:
+                    return type(decl) instanceof StringType
+                        ? new StringReadExec(node, scope.frame.depth, slot)
+                        : new ReadExec(node, scope.frame.depth, slot);
+            }
+        }
+
+        return new ConstantExec(node, decl); // structure or function
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Prepares an expression whose value is stored in a location (variable, parameter, field,
+     * array element or return value) of the given type (null if unknown). This differs from
+     * {@link #get} when an array with {@code Int} elements is stored in a location whose type has
+     * {@code Float} elements: an array literal then directly allocates a {@code Float} array,
+     * while other values are converted to a copy (cf. {@link #widened}).
+     */
+    ExecNode assigned (ExpressionNode node, Type target)
+    {
+        if (node instanceof ArrayLiteralNode && !substitutions.containsKey(node)
+                && widens(type(node), target))
+            return arrayLiteral((ArrayLiteralNode) node, target);
+        return widened(node, get(node), target);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a node converting {@code value}, the prepared form of {@code node}, to an array
+     * with {@code Float} elements if {@code node} is an array with {@code Int} elements stored in
+     * a location of such a type ({@code target}), or {@code value} otherwise.
+     */
+    ExecNode widened (ExpressionNode node, ExecNode value, Type target) {
+        return widens(type(node), target) ? new ToFloatArrayExec(node, value) : value;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether {@code type} and {@code target} are array types with the same number of dimensions,
+     * whose innermost elements are respectively of type {@code Int} and {@code Float}.
+     */
+    private static boolean widens (Type type, Type target)
+    {
+        if (!(type instanceof ArrayType && target instanceof ArrayType))
+            return false;
+        Type component = ((ArrayType) type).componentType;
+        Type targetComponent = ((ArrayType) target).componentType;
+        return component instanceof IntType && targetComponent instanceof FloatType
+            || widens(component, targetComponent);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Prepares the arguments of the given call, as stored in the parameters of the called
+     * function (cf. {@link #assigned}).
+     */
+    private ExecNode[] arguments (FunCallNode node)
+    {
+        Type[] params = parameterTypes(node);
+        ExecNode[] result = new ExecNode[node.arguments.size()];
+        for (int i = 0; i < result.length; ++i)
+            result[i] = assigned(node.arguments.get(i), params == null ? null : params[i]);
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the parameter types of the function called by the given call, or null if they are
+     * not known.
+     */
+    Type[] parameterTypes (FunCallNode node)
+    {
+        Type type = type(node.function);
+        return type instanceof FunType
+                && ((FunType) type).paramTypes.length == node.arguments.size()
+            ? ((FunType) type).paramTypes
+            : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode returnStmt (ReturnNode node)
+    {
+        if (attributes.tailCall(node))
+            return new TailCallExec(node, arguments((FunCallNode) node.expression));
+        return new ReturnExec(node, node.expression == null
+            ? null
+            : returned(function == null ? null : function.declaration, node, get(node.expression)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the node evaluating the value returned by the given return statement from the given
+     * function (null in top-level code), given the node evaluating its expression: {@code Int}
+     * values returned from a function whose return type is {@code Float} are converted, as in
+     * compiled code, and so are arrays (cf. {@link #widened}). This includes functions whose
+     * return type is a template parameter bound to {@code Float} (cf. {@link TemplateToFloatExec}).
+     */
+    ExecNode returned (FunDeclarationNode fun, ReturnNode node, ExecNode value)
+    {
+        if (fun == null) return value;
+        int parameter = templateParameter(fun, fun.returnType);
+        if (parameter >= 0) {
+            Scope scope = attributes.scope(fun);
+            return new TemplateToFloatExec(node, scope.depth, parameter, value);
+        }
+        FunType type = attributes.type(fun);
+        if (type.returnType instanceof FloatType
+                && !(attributes.type(node.expression) instanceof FloatType))
+            return new ToFloatExec(node, value);
+        return widened(node.expression, value, type.returnType);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode varDecl (VarDeclarationNode node) {
+        Scope scope = attributes.scope(node);
+        return write(node, scope, node, assigned(node.initializer, type(node)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a node writing the given value to the given variable or parameter, declared in the
+     * given scope. If the type of the variable is a template parameter of the function declaring
+     * it, {@code Int} values are converted when it is bound to {@code Float} (cf. {@link
+     * TemplateToFloatExec}).
+     */
+    private ExecNode write (SighNode node, Scope scope, DeclarationNode decl, ExecNode value)
+    {
+        if (scope.frame.node instanceof FunDeclarationNode) {
+            FunDeclarationNode fun = (FunDeclarationNode) scope.frame.node;
+            int parameter = templateParameter(fun, typeNode(decl));
+            if (parameter >= 0)
+                value = new TemplateToFloatExec(node, scope.frame.depth, parameter, value);
+        }
+        int slot = attributes.slot(decl);
+        switch (slotKind(decl)) {
+            case INT:   return new IntWriteExec(node, scope.frame.depth, slot, value);
+            case FLOAT: return new FloatWriteExec(node, scope.frame.depth, slot, value);
+            case BOOL:  return new BoolWriteExec(node, scope.frame.depth, slot, value);
+            default:    return new WriteExec(node, scope.frame.depth, slot, value);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the bindings of the template parameters of the given function for the given call
+     * (cf. {@link Frame#floatBindings}), or null if the call has no template arguments.
+     */
+    boolean[] floatBindings (FunCallNode node, FunDeclarationNode fun)
+    {
+        if (node.templateArgs == null || node.templateArgs.isEmpty()
+                || fun.templateParameters == null)
+            return null;
+        boolean[] result = new boolean[fun.templateParameters.size()];
+        for (int i = 0; i < result.length && i < node.templateArgs.size(); ++i)
+            result[i] = node.templateArgs.get(i).contents().equals("Float");
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the index of the template parameter of the given function that the given type node
+     * (possibly null) denotes, or -1 if it does not denote one.
+     */
+    private static int templateParameter (FunDeclarationNode fun, TypeNode type)
+    {
+        if (fun.templateParameters == null || !(type instanceof SimpleTypeNode))
+            return -1;
+        for (int i = 0; i < fun.templateParameters.size(); ++i)
+            if (fun.templateParameters.get(i).name.equals(((SimpleTypeNode) type).name))
+                return i;
+        return -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Returns the declared type of the variable or parameter, or null if it has none. */
+    private static TypeNode typeNode (DeclarationNode decl) {
+        return decl instanceof VarDeclarationNode ? ((VarDeclarationNode) decl).type
+             : decl instanceof ParameterNode      ? ((ParameterNode) decl).type
+             : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the kind of slot used to store the given variable or parameter. Synthetic variables
+     * ({@code true}, {@code false}, {@code null}) are always stored as objects.
+     */
+    SlotKind slotKind (DeclarationNode decl) {
+        return decl instanceof SyntheticDeclarationNode
+            ? SlotKind.OBJECT
+            : SlotKind.of(type(decl));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,32 @@
+package norswap.sigh.interpreter;
+
+import norswap.sigh.interpreter.exec.CallTarget;
+
+/**
+ * The code of a function (or of the top-level code of a program) for the explicit-stack mode of
+ * the interpreter (cf. {@link StackMachine}).
+ */
+final class StackCode
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Target of the function, used to create and fill frames, or null for top-level code. */
+    final CallTarget target;
+
+    StackInstruction[] instructions;
+
+    /** Number of temporary values used by the code (cf. {@link Frame#temps}). */
+    int temps;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates code for the given target, whose instructions are set separately, as they may
+     * contain calls to the function itself.
+     */
+    StackCode (CallTarget target) {
+        this.target = target;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
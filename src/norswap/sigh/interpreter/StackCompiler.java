@@ -0,0 +1,398 @@
+package norswap.sigh.interpreter;
+
+import norswap.sigh.FrozenAttributes;
+import norswap.sigh.ast.*;
+import norswap.sigh.interpreter.exec.ExecNode;
+import norswap.sigh.interpreter.exec.NotExec;
+import norswap.sigh.interpreter.exec.TempReadExec;
+import norswap.sigh.scopes.SyntheticDeclarationNode;
+import norswap.sigh.types.Type;
+import norswap.utils.visitors.ReflectiveFieldWalker;
+import norswap.utils.visitors.Walker;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static norswap.sigh.ast.BinaryOperator.AND;
+import static norswap.sigh.ast.BinaryOperator.OR;
+import static norswap.utils.visitors.WalkVisitType.POST_VISIT;
+import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
+
+/**
+ * Compiles the functions and the top-level code of a program into {@link StackCode} for the
+ * explicit-stack mode of the interpreter (cf. {@link StackMachine}).
+ *
+ * <p>Statements are turned into instructions (jumps for {@code if} and {@code while}, returns,
+ * calls, ...), but code that does not call functions is prepared as usual by a {@link Preparer},
+ * as it does not nest on the Java stack. In an expression that contains function calls, the
+ * operands that are evaluated before the last call are evaluated by earlier instructions into
+ * temporaries, which the prepared form of the expression then reads (cf. {@link
+ * Preparer#substitutions}). This preserves the evaluation order. Short-circuiting operators whose
+ * right operand calls a function are compiled to jumps.
+ *
+ * <p>Calls to builtins and structure constructors do not count as function calls: they never
+ * nest.
+ */
+final class StackCompiler
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final FrozenAttributes attributes;
+    private final Preparer preparer;
+    private final Map<FunDeclarationNode, StackCode> codes = new IdentityHashMap<>();
+
+    /** The nodes that contain (or are) function calls, cf. {@link #isCall}. */
+    private final Set<SighNode> callers = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Instructions of the code being compiled. */
+    private List<StackInstruction> instructions;
+
+    /** Number of temporaries allocated in the code being compiled. */
+    private int temps;
+
+    /** The function being compiled, or null for top-level code. */
+    private FunDeclarationNode function;
+
+    // ---------------------------------------------------------------------------------------------
+
+    StackCompiler (FrozenAttributes attributes) {
+        this.attributes = attributes;
+        this.preparer = new Preparer(attributes, null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles the given program, and returns the code for its top-level statements. The code
+     * of its functions is available through {@link #code}.
+     */
+    StackCode compile (RootNode root)
+    {
+        List<FunDeclarationNode> functions = new ArrayList<>();
+        Deque<SighNode> enclosing = new ArrayDeque<>();
+
+        Walker<SighNode> walker = new ReflectiveFieldWalker<>(SighNode.class, PRE_VISIT, POST_VISIT);
+        walker.registerFallback(PRE_VISIT, node -> {
+            enclosing.push(node);
+            if (node instanceof FunDeclarationNode)
+                functions.add((FunDeclarationNode) node);
+            if (isCall(node))
+                for (SighNode it: enclosing) {
+                    if (it instanceof FunDeclarationNode) break;
+                    callers.add(it);
+                }
+        });
+        walker.registerFallback(POST_VISIT, node -> enclosing.pop());
+        walker.walk(root);
+
+        for (FunDeclarationNode fun: functions) {
+            StackCode code = code(fun);
+            compile(code, fun, fun.block);
+        }
+
+        StackCode code = new StackCode(null);
+        compile(code, null, new BlockNode(root.span, root.statements));
+        return code;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the code of the given function, creating it if needed.
+     */
+    StackCode code (FunDeclarationNode decl) {
+        return codes.computeIfAbsent(decl, it -> new StackCode(preparer.target(it)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void compile (StackCode code, FunDeclarationNode function, SighNode body)
+    {
+        this.instructions = new ArrayList<>();
+        this.temps = 0;
+        this.function = function;
+        statement(body);
+        code.instructions = instructions.toArray(new StackInstruction[0]);
+        code.temps = temps;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the node is a call to a function, excluding calls to builtins and constructors.
+     */
+    private boolean isCall (SighNode node)
+    {
+        if (!(node instanceof FunCallNode)) return false;
+        ExpressionNode function = ((FunCallNode) node).function;
+        return !(function instanceof ConstructorNode)
+            && !(function instanceof ReferenceNode
+                && attributes.decl(function) instanceof SyntheticDeclarationNode);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private StackInstruction emit (StackInstruction instruction) {
+        instructions.add(instruction);
+        return instruction;
+    }
+
+    /** Index of the next instruction, the target of jumps to the current position. */
+    private int here () {
+        return instructions.size();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void statement (SighNode node)
+    {
+        if (node instanceof BlockNode)
+            ((BlockNode) node).statements.forEach(this::statement);
+        else if (node instanceof IfNode)
+            ifStmt((IfNode) node);
+        else if (node instanceof WhileNode)
+            whileStmt((WhileNode) node);
+        else if (node instanceof ReturnNode)
+            returnStmt((ReturnNode) node);
+        else if (node instanceof ExpressionStatementNode) {
+            ExpressionNode expression = ((ExpressionStatementNode) node).expression;
+            if (isCall(expression))
+                call((FunCallNode) expression, -1);
+            else
+                emit(StackInstruction.eval(node, value(expression), -1));
+        }
+        else if (node instanceof VarDeclarationNode) {
+            VarDeclarationNode decl = (VarDeclarationNode) node;
+            operands(Collections.singletonList(decl.initializer));
+            emit(StackInstruction.eval(node, preparer.get(node), -1));
+        }
+        // other declarations are not executed
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void ifStmt (IfNode node)
+    {
+        StackInstruction skip = emit(StackInstruction.jumpIfFalse(node, value(node.condition)));
+        statement(node.trueStatement);
+        if (node.falseStatement == null) {
+            skip.target = here();
+            return;
+        }
+        StackInstruction end = emit(StackInstruction.jump(node));
+        skip.target = here();
+        statement(node.falseStatement);
+        end.target = here();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void whileStmt (WhileNode node)
+    {
+        int start = here();
+        StackInstruction exit = emit(StackInstruction.jumpIfFalse(node, value(node.condition)));
+        statement(node.body);
+        emit(StackInstruction.jump(node)).target = start;
+        exit.target = here();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void returnStmt (ReturnNode node)
+    {
+        if (node.expression == null)
+            emit(StackInstruction.ret(node, null));
+        else if (function != null && attributes.tailCall(node))
+            emit(StackInstruction.tailCall(node, hoistArguments((FunCallNode) node.expression)));
+        else
+            emit(StackInstruction.ret(node,
+                preparer.returned(function, node, value(node.expression))));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Emits instructions for the calls in the given expression, and returns an executable node
+     * (which does not call functions) that evaluates to the value of the expression after these
+     * instructions have run.
+     */
+    private ExecNode value (ExpressionNode node)
+    {
+        if (!callers.contains(node))
+            return preparer.get(node);
+
+        if (node instanceof ParenthesizedNode)
+            return value(((ParenthesizedNode) node).expression);
+
+        if (isCall(node)) {
+            int temp = temps++;
+            call((FunCallNode) node, temp);
+            return new TempReadExec(node, temp);
+        }
+
+        if (node instanceof BinaryExpressionNode) {
+            BinaryExpressionNode binary = (BinaryExpressionNode) node;
+            if (binary.operator == AND || binary.operator == OR)
+                return shortCircuit(binary);
+        }
+
+        operands(operands(node));
+        return preparer.get(node);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ExecNode shortCircuit (BinaryExpressionNode node)
+    {
+        int temp = temps++;
+        ExecNode result = new TempReadExec(node, temp);
+        emit(StackInstruction.eval(node.left, value(node.left), temp));
+        ExecNode skipIfFalse = node.operator == AND ? result : new NotExec(node, result);
+        StackInstruction skip = emit(StackInstruction.jumpIfFalse(node, skipIfFalse));
+        emit(StackInstruction.eval(node.right, value(node.right), temp));
+        skip.target = here();
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Emits a call instruction for the given function call, whose result is to be stored in the
+     * given temporary (or discarded if it is negative).
+     */
+    private void call (FunCallNode node, int temp)
+    {
+        Object decl = node.function instanceof ReferenceNode
+            ? attributes.decl(node.function)
+            : null;
+
+        if (decl instanceof FunDeclarationNode) {
+            int[] arguments = hoistArguments(node);
+            emit(StackInstruction.call(node, code((FunDeclarationNode) decl), -1, arguments,
+                null, temp, preparer.floatBindings(node, (FunDeclarationNode) decl)));
+        } else {
+            int function = hoist(node.function);
+            int[] arguments = hoistAll(node.arguments);
+            emit(StackInstruction.call(node, null, function, arguments, preparer.get(node), temp,
+                null));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the direct operands of the given expression (and declaration), in evaluation order.
+     */
+    private List<ExpressionNode> operands (SighNode node)
+    {
+        if (node instanceof BinaryExpressionNode) {
+            BinaryExpressionNode binary = (BinaryExpressionNode) node;
+            return Arrays.asList(binary.left, binary.right);
+        }
+        if (node instanceof UnaryExpressionNode)
+            return Collections.singletonList(((UnaryExpressionNode) node).operand);
+        if (node instanceof ArrayLiteralNode)
+            return ((ArrayLiteralNode) node).components;
+        if (node instanceof ArrayAccessNode) {
+            ArrayAccessNode access = (ArrayAccessNode) node;
+            return Arrays.asList(access.array, access.index);
+        }
+        if (node instanceof FieldAccessNode)
+            return Collections.singletonList(((FieldAccessNode) node).stem);
+        if (node instanceof FunCallNode) // constructors and builtins
+            return ((FunCallNode) node).arguments;
+        if (node instanceof AssignmentNode) {
+            AssignmentNode assignment = (AssignmentNode) node;
+            if (assignment.left instanceof ArrayAccessNode) {
+                ArrayAccessNode left = (ArrayAccessNode) assignment.left;
+                return Arrays.asList(left.array, left.index, assignment.right);
+            }
+            if (assignment.left instanceof FieldAccessNode)
+                return Arrays.asList(((FieldAccessNode) assignment.left).stem, assignment.right);
+            List<ExpressionNode> appended = attributes.appendedStrings(assignment);
+            return appended != null ? appended : Collections.singletonList(assignment.right);
+        }
+        return Collections.emptyList();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Hoists the given operands into temporaries, up to the last one that contains function calls.
+     * The following operands are evaluated by the prepared form of the enclosing expression.
+     */
+    private void operands (List<ExpressionNode> operands)
+    {
+        int last = -1;
+        for (int i = 0; i < operands.size(); ++i)
+            if (callers.contains(operands.get(i))) last = i;
+        for (int i = 0; i <= last; ++i)
+            hoist(operands.get(i));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int[] hoistAll (List<ExpressionNode> nodes)
+    {
+        int[] result = new int[nodes.size()];
+        for (int i = 0; i < result.length; ++i)
+            result[i] = hoist(nodes.get(i));
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Like {@link #hoistAll}, for the arguments of a call to a declared function, which are
+     * converted to the types of its parameters (cf. {@link Preparer#widened}).
+     */
+    private int[] hoistArguments (FunCallNode node)
+    {
+        Type[] params = preparer.parameterTypes(node);
+        int[] result = new int[node.arguments.size()];
+        for (int i = 0; i < result.length; ++i)
+            result[i] = hoist(node.arguments.get(i), params == null ? null : params[i]);
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Emits instructions that evaluate the given expression into a temporary, whose index is
+     * returned, and substitutes a read of the temporary for the expression in the preparer.
+     */
+    private int hoist (ExpressionNode node) {
+        return hoist(node, null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Like {@link #hoist(ExpressionNode)}, for an expression whose value is stored in a location of
+     * the given type (null if unknown), cf. {@link Preparer#widened}.
+     */
+    private int hoist (ExpressionNode node, Type target)
+    {
+        ExecNode value = preparer.widened(node, value(node), target);
+        int temp;
+        if (value instanceof TempReadExec)
+            temp = ((TempReadExec) value).index;
+        else {
+            temp = temps++;
+            emit(StackInstruction.eval(node, value, temp));
+            value = new TempReadExec(node, temp);
+        }
+        preparer.substitutions.put(node, value);
+        return temp;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,116 @@
+package norswap.sigh.interpreter;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.exec.ExecNode;
+
+/**
+ * An instruction of the code run by the explicit-stack mode of the interpreter (cf. {@link
+ * StackMachine}), produced by the {@link StackCompiler}.
+ *
+ * <p>Only control flow and calls to functions are instructions: the rest of the code is made of
+ * executable nodes that do not call functions (and hence do not nest on the Java stack), which
+ * may read operands that were evaluated by previous instructions into temporary values (cf.
+ * {@link norswap.sigh.interpreter.exec.TempReadExec}).
+ */
+final class StackInstruction
+{
+    // ---------------------------------------------------------------------------------------------
+
+    enum Op
+    {
+        /** Executes {@link #node}, storing its value in temporary {@link #temp} (if >= 0). */
+        EVAL,
+
+        /** Jumps to {@link #target}. */
+        JUMP,
+
+        /** Jumps to {@link #target} if the {@code Bool} value of {@link #node} is false. */
+        JUMP_IF_FALSE,
+
+        /**
+         * Calls the function {@link #callee} with the temporaries {@link #arguments} as arguments,
+         * storing its result in temporary {@link #temp} (if >= 0).
+         *
+         * <p>If {@link #callee} is null, the callee is the value of temporary {@link #function}.
+         * If that value isn't a function declaration (a constructor or a builtin), the call does
+         * not nest and {@link #node} (the regular prepared form of the call) is executed instead.
+         * The callee's frame gets {@link #floatBindings} as its template bindings.
+         */
+        CALL,
+
+        /** Restarts the current function, with the temporaries {@link #arguments} as arguments. */
+        TAIL_CALL,
+
+        /** Returns the value of {@link #node} (or null if it is null) from the current function. */
+        RETURN
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    final Op op;
+
+    /** The AST node this instruction was derived from, used for error reporting. */
+    final SighNode source;
+
+    final ExecNode node;
+    final int temp;
+    final int[] arguments;
+    final StackCode callee;
+    final int function;
+
+    /** Cf. {@link Frame#floatBindings}, null if not a call to a template function. */
+    final boolean[] floatBindings;
+
+    /** Set after creation for jumps, as they may jump forward. */
+    int target;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private StackInstruction (Op op, SighNode source, ExecNode node, int temp, int[] arguments,
+                              StackCode callee, int function, boolean[] floatBindings) {
+        this.op = op;
+        this.source = source;
+        this.node = node;
+        this.temp = temp;
+        this.arguments = arguments;
+        this.callee = callee;
+        this.function = function;
+        this.floatBindings = floatBindings;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    static StackInstruction eval (SighNode source, ExecNode node, int temp) {
+        return new StackInstruction(Op.EVAL, source, node, temp, null, null, -1, null);
+    }
+
+    static StackInstruction jump (SighNode source) {
+        return new StackInstruction(Op.JUMP, source, null, -1, null, null, -1, null);
+    }
+
+    static StackInstruction jumpIfFalse (SighNode source, ExecNode condition) {
+        return new StackInstruction(Op.JUMP_IF_FALSE, source, condition, -1, null, null, -1, null);
+    }
+
+    static StackInstruction call (SighNode source, StackCode callee, int function, int[] arguments,
+                                  ExecNode node, int temp, boolean[] floatBindings) {
+        return new StackInstruction(Op.CALL, source, node, temp, arguments, callee, function,
+            floatBindings);
+    }
+
+    static StackInstruction tailCall (SighNode source, int[] arguments) {
+        return new StackInstruction(Op.TAIL_CALL, source, null, -1, arguments, null, -1, null);
+    }
+
+    static StackInstruction ret (SighNode source, ExecNode value) {
+        return new StackInstruction(Op.RETURN, source, value, -1, null, null, -1, null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString () {
+        return op + "(" + source + ")";
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
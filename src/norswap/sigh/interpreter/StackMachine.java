@@ -0,0 +1,164 @@
+package norswap.sigh.interpreter;
+
+import norswap.sigh.ast.FunDeclarationNode;
+import norswap.sigh.interpreter.exec.CallTarget;
+import java.util.Arrays;
+
+/**
+ * Runs {@link StackCode} in the explicit-stack mode of the interpreter.
+ *
+ * <p>Function calls do not nest on the Java stack: the machine keeps the activations of Sigh
+ * functions (code, frame, program counter) in growable arrays, and runs the code of the current
+ * activation from a single loop. The depth of Sigh recursion is hence only limited by {@link
+ * #maxDepth}, and not by the size of the Java thread stack.
+ *
+ * <p>Compiled code (cf. {@link TieredCompiler}) is not used in this mode.
+ */
+final class StackMachine
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final StackCompiler compiler;
+
+    /** Maximum number of nested function activations. */
+    private final int maxDepth;
+
+    // ---------------------------------------------------------------------------------------------
+
+    StackMachine (StackCompiler compiler, int maxDepth) {
+        this.compiler = compiler;
+        this.maxDepth = maxDepth;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs the given top-level code in the given root frame, returning the value returned by its
+     * top-level return statement, if any. Wraps unexpected exceptions into an {@link
+     * InterpreterException} that indicates the failing instruction.
+     */
+    Object run (StackCode main, Frame root)
+    {
+        int capacity = Math.min(maxDepth, 64);
+        StackCode[] codes = new StackCode[capacity];
+        Frame[] frames = new Frame[capacity];
+        int[] pcs = new int[capacity];
+        int[] results = new int[capacity];
+        int sp = 0;
+
+        StackCode code = main;
+        Frame frame = root;
+        frame.temps = new Object[code.temps];
+        int pc = 0;
+        StackInstruction instruction = null;
+
+        try {
+            while (true) {
+                Object value = null;
+
+                if (pc < code.instructions.length) {
+                    instruction = code.instructions[pc++];
+                    switch (instruction.op) {
+                        case EVAL:
+                            if (instruction.temp < 0)
+                                instruction.node.executeVoid(frame);
+                            else
+                                frame.temps[instruction.temp] = instruction.node.execute(frame);
+                            continue;
+
+                        case JUMP:
+                            pc = instruction.target;
+                            continue;
+
+                        case JUMP_IF_FALSE:
+                            if (!instruction.node.executeBoolean(frame))
+                                pc = instruction.target;
+                            continue;
+
+                        case CALL:
+                            StackCode callee = instruction.callee;
+                            if (callee == null) {
+                                Object function = frame.temps[instruction.function];
+                                if (!(function instanceof FunDeclarationNode)) {
+                                    // constructor or builtin: does not nest
+                                    Object result = instruction.node.execute(frame);
+                                    if (instruction.temp >= 0)
+                                        frame.temps[instruction.temp] = result;
+                                    continue;
+                                }
+                                callee = compiler.code((FunDeclarationNode) function);
+                            }
+
+                            if (sp == maxDepth)
+                                throw new StackOverflowError(
+                                    "more than " + maxDepth + " nested function calls");
+
+                            if (sp == frames.length) {
+                                int size = (int) Math.min((long) maxDepth, 2L * sp);
+                                codes   = Arrays.copyOf(codes, size);
+                                frames  = Arrays.copyOf(frames, size);
+                                pcs     = Arrays.copyOf(pcs, size);
+                                results = Arrays.copyOf(results, size);
+                            }
+
+                            codes[sp] = code;
+                            frames[sp] = frame;
+                            pcs[sp] = pc;
+                            results[sp] = instruction.temp;
+                            ++sp;
+
+                            CallTarget target = callee.target;
+                            Frame calleeFrame = target.newFrame(frame);
+                            calleeFrame.floatBindings = instruction.floatBindings;
+                            target.bind(calleeFrame, arguments(frame, instruction.arguments));
+                            calleeFrame.temps = new Object[callee.temps];
+                            code = callee;
+                            frame = calleeFrame;
+                            pc = 0;
+                            continue;
+
+                        case TAIL_CALL:
+                            code.target.bind(frame, arguments(frame, instruction.arguments));
+                            pc = 0;
+                            continue;
+
+                        case RETURN:
+                            if (instruction.node != null)
+                                value = instruction.node.execute(frame);
+                            break;
+
+                        default:
+                            throw new Error("should not reach here");
+                    }
+                }
+
+                // return from the current activation
+                if (sp == 0) return value;
+                --sp;
+                code = codes[sp];
+                frame = frames[sp];
+                pc = pcs[sp];
+                codes[sp] = null;
+                frames[sp] = null;
+                if (results[sp] >= 0)
+                    frame.temps[results[sp]] = value;
+            }
+        } catch (InterpreterException | PassthroughException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new InterpreterException("exception while executing " + instruction.source, e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static Object[] arguments (Frame frame, int[] temps)
+    {
+        Object[] args = new Object[temps.length];
+        for (int i = 0; i < args.length; ++i)
+            args[i] = frame.temps[temps[i]];
+        return args;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
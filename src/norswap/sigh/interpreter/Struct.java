@@ -0,0 +1,62 @@
+package norswap.sigh.interpreter;
+
+/**
+ * A structure instance: an array of field values, laid out as described by its {@link
+ * StructLayout}.
+ *
+ * <p>Field accesses are normally resolved to an index during preparation, when the structure
+ * type is statically known. {@link #get(String)} and {@link #set(String, Object)} support the other
+ * cases (e.g. a template-typed value).
+ */
+public final class Struct
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public final StructLayout layout;
+
+    /** Field values, indexed as specified by {@link #layout}. */
+    public final Object[] fields;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new instance with the given field values, which is used directly (not copied).
+     */
+    public Struct (StructLayout layout, Object[] fields) {
+        this.layout = layout;
+        this.fields = fields;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Returns the value of the field with the given name, or null if there is no such field. */
+    public Object get (String name) {
+        int index = layout.indexOf(name);
+        return index < 0 ? null : fields[index];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Sets the value of the field with the given name, which must exist. */
+    public void set (String name, Object value)
+    {
+        int index = layout.indexOf(name);
+        if (index < 0)
+            throw new Error("no field " + name + " in structure " + layout.declaration.name);
+        fields[index] = value;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString ()
+    {
+        StringBuilder b = new StringBuilder("{");
+        for (int i = 0; i < fields.length; ++i) {
+            if (i > 0) b.append(", ");
+            b.append(layout.name(i)).append("=").append(fields[i]);
+        }
+        return b.append("}").toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
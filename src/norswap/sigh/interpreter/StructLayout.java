@@ -0,0 +1,67 @@
+package norswap.sigh.interpreter;
+
+import norswap.sigh.ast.FieldDeclarationNode;
+import norswap.sigh.ast.StructDeclarationNode;
+import java.util.HashMap;
+
+/**
+ * The layout of the instances ({@link Struct}) of a structure: the index of each field in the
+ * instances' field array, which is the position of the field in the declaration.
+ *
+ * <p>There is a single layout per structure declaration, so that checking whether an instance has
+ * the expected layout is a reference comparison.
+ */
+public final class StructLayout
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public final StructDeclarationNode declaration;
+
+    /** Field names, in index order. */
+    private final String[] names;
+
+    private final HashMap<String, Integer> indices = new HashMap<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    public StructLayout (StructDeclarationNode declaration)
+    {
+        this.declaration = declaration;
+        this.names = new String[declaration.fields.size()];
+        for (int i = 0; i < names.length; ++i) {
+            FieldDeclarationNode field = declaration.fields.get(i);
+            names[i] = field.name;
+            indices.put(field.name, i);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Number of fields. */
+    public int size () {
+        return names.length;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Name of the field at the given index. */
+    public String name (int index) {
+        return names[index];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Index of the field with the given name, or -1 if there is no such field. */
+    public int indexOf (String name) {
+        Integer index = indices.get(name);
+        return index == null ? -1 : index;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString () {
+        return "StructLayout(" + declaration.name + ")";
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
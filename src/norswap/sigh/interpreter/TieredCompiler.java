@@ -0,0 +1,358 @@
+package norswap.sigh.interpreter;
+
+import norswap.sigh.FrozenAttributes;
+import norswap.sigh.ast.*;
+import norswap.sigh.bytecode.ByteArrayClassLoader;
+import norswap.sigh.bytecode.BytecodeCompiler;
+import norswap.sigh.interpreter.exec.CallTarget;
+import norswap.sigh.interpreter.exec.CompiledLoop;
+import norswap.sigh.interpreter.exec.SlotKind;
+import norswap.sigh.scopes.Scope;
+import norswap.sigh.scopes.SyntheticDeclarationNode;
+import norswap.sigh.types.*;
+import norswap.utils.visitors.ReflectiveFieldWalker;
+import norswap.utils.visitors.Walker;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static norswap.sigh.ast.BinaryOperator.ADD;
+import static norswap.utils.visitors.WalkVisitType.PRE_VISIT;
+
+/**
+ * Implements the tiered mode of the {@link Interpreter}: functions that become hot while being
+ * interpreted are compiled to bytecode with the {@link BytecodeCompiler}.
+ *
+ * <p>Each {@link CallTarget} counts its invocations and the loop back-edges taken in its body.
+ * When the count passes the {@link #threshold}, the target asks {@link #compile} for a {@link
+ * MethodHandle} to the compiled function, which it then calls instead of interpreting the body.
+ *
+ * <p>Only a subset of the language can be compiled this way: the function (and the functions it
+ * calls, which are compiled along with it) may only manipulate values of type {@code Int}, {@code
+ * Float}, {@code Bool} and {@code String}, and may only use its own parameters and local
+ * variables. This excludes arrays and structures, whose interpreter representation differs from
+ * the compiled one, and top-level variables, which live in the root frame of the interpreter.
+ * Other functions stay interpreted.
+ *
+ * <p>The handles returned by {@link #compile} take the arguments as an {@code Object[]} holding
+ * their interpreter representation and return the result in that representation: the conversion
+ * between boxed and primitive values is performed by the handle.
+ *
+ * <p>Top-level loops, which do not belong to any function, count their own back-edges (cf. {@link
+ * norswap.sigh.interpreter.exec.WhileExec}). Once hot, they are compiled by {@link #compileLoop}
+ * and execution continues in the compiled loop (on-stack replacement). The same restrictions
+ * apply, except that the loop may also use variables declared outside of it, which are moved
+ * into the compiled code and back (cf. {@link CompiledLoop}). It may not contain return
+ * statements.
+ */
+public final class TieredCompiler
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of invocations plus back-edges after which a function gets compiled, or number of
+     * back-edges after which a top-level loop gets compiled.
+     */
+    public final int threshold;
+
+    private final FrozenAttributes attributes;
+
+    private static final AtomicInteger classCounter = new AtomicInteger();
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final MethodHandle TO_DOUBLE, UNWRAP_NULL, WRAP_NULL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            TO_DOUBLE = lookup.findStatic(TieredCompiler.class, "toDouble",
+                MethodType.methodType(double.class, Object.class));
+            UNWRAP_NULL = lookup.findStatic(TieredCompiler.class, "unwrapNull",
+                MethodType.methodType(String.class, Object.class));
+            WRAP_NULL = lookup.findStatic(TieredCompiler.class, "wrapNull",
+                MethodType.methodType(Object.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new Error(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public TieredCompiler (FrozenAttributes attributes, int threshold) {
+        this.attributes = attributes;
+        this.threshold = threshold;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the threshold set by the {@code sigh.tier.threshold} system property, or 0 (tiered
+     * mode disabled) if it isn't set.
+     */
+    public static int configuredThreshold () {
+        return Integer.getInteger("sigh.tier.threshold", 0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles the given function, returning a handle of type {@code (Object[]) -> Object} that
+     * calls it, or null if the function cannot be compiled.
+     */
+    public MethodHandle compile (FunDeclarationNode function)
+    {
+        List<FunDeclarationNode> functions = compilable(function, null);
+        if (functions == null) return null;
+
+        String binaryName = "SighTier" + classCounter.incrementAndGet() + "$" + function.name;
+        Class<?> klass = new BytecodeCompiler(null)
+            .compileFunctions(binaryName, attributes, functions)
+            .load(new ByteArrayClassLoader());
+
+        FunType type = attributes.type(function);
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().findStatic(klass, function.name, methodType(type));
+        } catch (ReflectiveOperationException e) {
+            throw new Error(e);
+        }
+
+        for (int i = 0; i < type.paramTypes.length; ++i) {
+            Type param = type.paramTypes[i];
+            if (param instanceof FloatType)
+                handle = MethodHandles.filterArguments(handle, i, TO_DOUBLE);
+            else if (param instanceof StringType)
+                handle = MethodHandles.filterArguments(handle, i, UNWRAP_NULL);
+        }
+        if (type.returnType instanceof StringType)
+            handle = MethodHandles.filterReturnValue(handle, WRAP_NULL);
+
+        int arity = type.paramTypes.length;
+        return handle
+            .asType(MethodType.genericMethodType(arity))
+            .asSpreader(Object[].class, arity);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles the given top-level loop, returning the compiled loop or null if the loop cannot be
+     * compiled.
+     */
+    public CompiledLoop compileLoop (WhileNode loop)
+    {
+        List<DeclarationNode> live = new ArrayList<>();
+        List<FunDeclarationNode> functions = compilable(loop, live);
+        if (functions == null) return null;
+
+        String binaryName = "SighTier" + classCounter.incrementAndGet() + "$loop";
+        Class<?> klass = new BytecodeCompiler(null)
+            .compileLoop(binaryName, attributes, loop, live, functions)
+            .load(new ByteArrayClassLoader());
+
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().findStatic(klass, "loop",
+                MethodType.methodType(void.class, Object[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new Error(e);
+        }
+
+        int[] depths = new int[live.size()];
+        int[] slots = new int[depths.length];
+        SlotKind[] kinds = new SlotKind[depths.length];
+        for (int i = 0; i < depths.length; ++i) {
+            DeclarationNode decl = live.get(i);
+            Scope scope = attributes.scope(decl);
+            depths[i] = scope.frame.depth;
+            slots[i] = attributes.slot(decl);
+            kinds[i] = SlotKind.of(attributes.type(decl));
+        }
+        return new CompiledLoop(handle, depths, slots, kinds);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the list of functions to compile in order to compile the given code, which is either
+     * a function or a top-level loop: the function itself followed by the functions it calls,
+     * transitively, or the functions called by the loop. Returns null if any of the code cannot be
+     * compiled.
+     *
+     * <p>If {@code live} isn't null, the code is a loop, and the variables it uses that are
+     * declared outside of it are added to {@code live}.
+     */
+    private List<FunDeclarationNode> compilable (SighNode code, List<DeclarationNode> live)
+    {
+        List<FunDeclarationNode> functions = new ArrayList<>();
+        Set<SighNode> locals = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<SighNode> callees = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<String> names = new HashSet<>();
+        boolean[] ok = { true };
+        boolean[] inLoop = { false };
+
+        Walker<SighNode> walker = new ReflectiveFieldWalker<>(SighNode.class, PRE_VISIT);
+        walker.registerFallback(PRE_VISIT, node -> {
+            if (ok[0] && !supported(node, functions, locals, callees, inLoop[0] ? live : null))
+                ok[0] = false;
+        });
+
+        if (code instanceof FunDeclarationNode)
+            functions.add((FunDeclarationNode) code);
+        else {
+            inLoop[0] = true;
+            walker.walk(code);
+            inLoop[0] = false;
+        }
+
+        // the list grows as calls to other functions are encountered
+        for (int i = 0; i < functions.size() && ok[0]; ++i) {
+            FunDeclarationNode fun = functions.get(i);
+            FunType type = attributes.type(fun);
+            if (fun.templateParameters != null && !fun.templateParameters.isEmpty()
+                    || !names.add(fun.name)
+                    || !(type.returnType instanceof VoidType) && !representable(type.returnType))
+                return null;
+            for (Type param: type.paramTypes)
+                if (!representable(param)) return null;
+            locals.addAll(fun.parameters);
+            walker.walk(fun.block);
+        }
+
+        return ok[0] ? functions : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Checks whether the given node, part of one of the {@code functions} or of a top-level loop,
+     * can be compiled. Parameters and variables declared in the functions are added to {@code
+     * locals}, the callees of function calls to {@code callees}, and called functions to {@code
+     * functions}. {@code live} is only non-null for nodes of a top-level loop, and receives the
+     * variables that are declared outside of the loop.
+     */
+    private boolean supported (SighNode node, List<FunDeclarationNode> functions,
+                               Set<SighNode> locals, Set<SighNode> callees,
+                               List<DeclarationNode> live)
+    {
+        // the compiled loop has nowhere to return to
+        if (node instanceof ReturnNode && live != null)
+            return false;
+
+        if (node instanceof ArrayLiteralNode
+                || node instanceof ArrayAccessNode
+                || node instanceof FieldAccessNode
+                || node instanceof ConstructorNode
+                || node instanceof FunDeclarationNode
+                || node instanceof StructDeclarationNode)
+            return false;
+
+        if (node instanceof VarDeclarationNode) {
+            locals.add(node);
+            return representable(attributes.type(node));
+        }
+
+        if (node instanceof FunCallNode)
+            callees.add(((FunCallNode) node).function);
+
+        // string comparisons are by reference in compiled code, but by value in the interpreter
+        if (node instanceof BinaryExpressionNode) {
+            BinaryExpressionNode binary = (BinaryExpressionNode) node;
+            if (binary.operator != ADD
+                    && (attributes.type(binary.left) instanceof StringType
+                        || attributes.type(binary.right) instanceof StringType))
+                return false;
+        }
+
+        if (node instanceof ReferenceNode) {
+            Object decl = attributes.decl(node);
+            if (decl instanceof VarDeclarationNode || decl instanceof ParameterNode) {
+                if (locals.contains(decl)) return true;
+                if (live == null || !(decl instanceof VarDeclarationNode)) return false;
+                if (!live.contains(decl)) live.add((VarDeclarationNode) decl);
+                return representable(attributes.type(decl));
+            }
+            if (decl instanceof FunDeclarationNode) {
+                if (!callees.contains(node)) return false;
+                if (!functions.contains(decl)) functions.add((FunDeclarationNode) decl);
+                return true;
+            }
+            if (decl instanceof SyntheticDeclarationNode) {
+                String name = ((SyntheticDeclarationNode) decl).name();
+                return name.equals("true") || name.equals("false")
+                    || name.equals("print") && callees.contains(node);
+            }
+            return false;
+        }
+
+        if (node instanceof ExpressionNode) {
+            Object type = attributes.type(node);
+            return type instanceof VoidType
+                || type instanceof FunType && callees.contains(node)
+                || type instanceof Type && representable((Type) type);
+        }
+
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether values of this type have a compiled representation that can be converted from and to
+     * their interpreter representation.
+     */
+    private static boolean representable (Object type) {
+        return type instanceof IntType
+            || type instanceof FloatType
+            || type instanceof BoolType
+            || type instanceof StringType;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static MethodType methodType (FunType type)
+    {
+        Class<?>[] params = new Class<?>[type.paramTypes.length];
+        for (int i = 0; i < params.length; ++i)
+            params[i] = javaClass(type.paramTypes[i]);
+        return MethodType.methodType(javaClass(type.returnType), params);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static Class<?> javaClass (Type type)
+    {
+        if (type instanceof IntType)    return long.class;
+        if (type instanceof FloatType)  return double.class;
+        if (type instanceof BoolType)   return boolean.class;
+        if (type instanceof StringType) return String.class;
+        return void.class;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Converts an argument for a {@code Float} parameter, which may be a {@link Long}. */
+    private static double toDouble (Object value) {
+        return ((Number) value).doubleValue();
+    }
+
+    /** Converts an argument for a {@code String} parameter, which may be {@link Null#INSTANCE}. */
+    private static String unwrapNull (Object value) {
+        return value == Null.INSTANCE ? null : (String) value;
+    }
+
+    /** Converts a {@code String} result, which may be {@code null}. */
+    private static Object wrapNull (String value) {
+        return value == null ? Null.INSTANCE : value;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,56 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Adds an array element to the {@code Int} or {@code Float} variable at the given (depth, slot)
+ * coordinate: the fused form of {@code x = x + a[i]}, where {@code a} and {@code i} are variables
+ * (cf. {@link Superinstruction#ADD_ELEMENT}). Evaluates to the new value.
+ */
+public final class AddElementExec extends ExecNode
+{
+    public final int depth, slot;
+
+    /** Whether the variable is a {@code Float} variable (an {@code Int} one otherwise). */
+    private final boolean isFloat;
+
+    private final LoadElementExec element;
+
+    public AddElementExec (SighNode source, int depth, int slot, boolean isFloat,
+                           LoadElementExec element) {
+        super(source);
+        this.depth = depth;
+        this.slot = slot;
+        this.isFloat = isFloat;
+        this.element = element;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return isFloat ? (Object) executeDouble(frame) : (Object) executeLong(frame);
+    }
+
+    @Override public void executeVoid (Frame frame) {
+        if (isFloat) executeDouble(frame);
+        else executeLong(frame);
+    }
+
+    @Override public long executeLong (Frame frame)
+    {
+        Superinstruction.ADD_ELEMENT.hit();
+        long[] primitives = frame.at(depth).primitives;
+        long value = primitives[slot] + element.loadLong(frame);
+        primitives[slot] = value;
+        return value;
+    }
+
+    @Override public double executeDouble (Frame frame)
+    {
+        if (!isFloat) return executeLong(frame);
+        Superinstruction.ADD_ELEMENT.hit();
+        long[] primitives = frame.at(depth).primitives;
+        double value = Double.longBitsToDouble(primitives[slot]) + element.loadDouble(frame);
+        primitives[slot] = SlotKind.bits(value);
+        return value;
+    }
+}
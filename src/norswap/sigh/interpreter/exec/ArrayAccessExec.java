@@ -0,0 +1,90 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+import norswap.sigh.interpreter.Null;
+import norswap.sigh.interpreter.PassthroughException;
+
+/**
+ * Reads an array element. The primitive entry points read primitive arrays without boxing, and
+ * fall back on {@link ArrayValues#get} for other representations.
+ */
+public final class ArrayAccessExec extends ExecNode
+{
+    private final ExecNode array, index;
+
+    public ArrayAccessExec (SighNode source, ExecNode array, ExecNode index) {
+        super(source);
+        this.array = array;
+        this.index = index;
+    }
+
+    @Override public Object execute (Frame frame)
+    {
+        Object array = nonNullArray(this.array.execute(frame));
+        try {
+            return ArrayValues.get(array, index(index.executeLong(frame)));
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new PassthroughException(e);
+        }
+    }
+
+    @Override public long executeLong (Frame frame)
+    {
+        Object array = nonNullArray(this.array.execute(frame));
+        try {
+            int index = index(this.index.executeLong(frame));
+            return array instanceof long[]
+                ? ((long[]) array)[index]
+                : (long) ArrayValues.get(array, index);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new PassthroughException(e);
+        }
+    }
+
+    @Override public double executeDouble (Frame frame)
+    {
+        Object array = nonNullArray(this.array.execute(frame));
+        try {
+            int index = index(this.index.executeLong(frame));
+            if (array instanceof double[]) return ((double[]) array)[index];
+            if (array instanceof long[])   return ((long[]) array)[index];
+            return ((Number) ArrayValues.get(array, index)).doubleValue();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new PassthroughException(e);
+        }
+    }
+
+    @Override public boolean executeBoolean (Frame frame)
+    {
+        Object array = nonNullArray(this.array.execute(frame));
+        try {
+            int index = index(this.index.executeLong(frame));
+            return array instanceof boolean[]
+                ? ((boolean[]) array)[index]
+                : (boolean) ArrayValues.get(array, index);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new PassthroughException(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    static Object nonNullArray (Object object)
+    {
+        if (object == Null.INSTANCE)
+            throw new PassthroughException(new NullPointerException("indexing null array"));
+        return object;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    static int index (long index)
+    {
+        if (index < 0)
+            throw new ArrayIndexOutOfBoundsException("Negative index: " + index);
+        if (index >= Integer.MAX_VALUE - 1)
+            throw new ArrayIndexOutOfBoundsException("Index exceeds max array index (2ˆ31 - 2): " + index);
+        return (int) index;
+    }
+}
@@ -0,0 +1,375 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.BinaryOperator;
+import java.util.List;
+
+/**
+ * A tree of element-wise array operations ({@code a @(op) b @(op) c ...}) that is evaluated in a
+ * single pass over the elements by {@link FusedArrayOpExec}, instead of one pass (and one
+ * temporary array) per operator.
+ *
+ * <p>The leaves of the tree are the operand arrays, which are evaluated beforehand (cf. {@link
+ * #leaf}). The elements are processed one chunk of at most {@link #CHUNK} indices at a time: each
+ * inner operation computes its chunk into a small scratch array, which stays in cache for its
+ * parent operation, and the root operation writes directly into the result array. The operator of
+ * each operation is dispatched upon once per chunk.
+ *
+ * <p>Only operations that have primitive operands and result are fused: {@code Int} and {@code
+ * Float} arithmetic and comparisons, and {@code Bool} logic. {@code Int} operands of {@code Float}
+ * operations are converted by a dedicated node (cf. {@link #toFloat}).
+ */
+public abstract class ArrayChain
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Maximum number of elements processed at once by each operation. */
+    public static final int CHUNK = 256;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Kind of the elements of the arrays produced by this node: {@code long[]} for {@link
+     * SlotKind#INT}, {@code double[]} for {@link SlotKind#FLOAT} and {@code boolean[]} for {@link
+     * SlotKind#BOOL}.
+     */
+    public final SlotKind kind;
+
+    /** Index of the scratch array of this node (unused for the root), or -1 for leaves. */
+    int scratch = -1;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ArrayChain (SlotKind kind) {
+        this.kind = kind;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** An operand array: the leaf at the given index, whose elements are of the given kind. */
+    public static ArrayChain leaf (int index, SlotKind kind) {
+        return new Leaf(index, kind);
+    }
+
+    /** Converts the {@code Int} elements of the operand to {@code Float}. */
+    public static ArrayChain toFloat (ArrayChain operand) {
+        return new ToFloat(operand);
+    }
+
+    /**
+     * Applies {@code op} to the elements of the operands, which must have the same kind. The
+     * kernel is used when the leaves do not have the expected representation (cf. {@link
+     * #unfused}).
+     */
+    public static ArrayChain operation (BinaryOperator op, ArrayKernel kernel,
+                                        ArrayChain left, ArrayChain right)
+    {
+        boolean logic = op == BinaryOperator.AND || op == BinaryOperator.OR;
+        boolean arithmetic = !logic && op.compareTo(BinaryOperator.SUBTRACT) <= 0;
+        return new Operation(op, kernel, arithmetic ? left.kind : SlotKind.BOOL, left, right);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Computes the elements {@code [from, from + length)} of this node's array into {@code out},
+     * starting at index {@code offset}.
+     */
+    abstract void compute (Object[] leaves, Object[] scratch, int from, int length,
+                           Object out, int offset);
+
+    /**
+     * Returns an array holding the elements {@code [from, from + length)} of this node's array,
+     * starting at index {@link #offset offset(from)}.
+     */
+    Object chunk (Object[] leaves, Object[] scratch, int from, int length)
+    {
+        Object out = scratch[this.scratch];
+        compute(leaves, scratch, from, length, out, 0);
+        return out;
+    }
+
+    /** The index at which {@link #chunk} places the element at index {@code from}. */
+    int offset (int from) {
+        return 0;
+    }
+
+    /** Whether the leaves are the primitive arrays expected by the fused loops. */
+    abstract boolean accepts (Object[] leaves);
+
+    /**
+     * Computes the operations one at a time with their kernels, for leaves whose representation
+     * does not match their static type (cf. {@link ArrayValues}).
+     */
+    abstract Object unfused (Object[] leaves);
+
+    /** Assigns scratch indices to the inner nodes of the tree, and adds them to the list. */
+    abstract void collect (List<ArrayChain> inner);
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Creates an array of the given length, whose elements are of the given kind. */
+    static Object newArray (SlotKind kind, int length)
+    {
+        switch (kind) {
+            case INT:   return new long[length];
+            case FLOAT: return new double[length];
+            case BOOL:  return new boolean[length];
+            default:    throw new Error("should not reach here");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Leaf extends ArrayChain
+    {
+        private final int index;
+
+        Leaf (int index, SlotKind kind) {
+            super(kind);
+            this.index = index;
+        }
+
+        @Override void compute (Object[] leaves, Object[] scratch, int from, int length,
+                                Object out, int offset) {
+            System.arraycopy(leaves[index], from, out, offset, length);
+        }
+
+        @Override Object chunk (Object[] leaves, Object[] scratch, int from, int length) {
+            return leaves[index];
+        }
+
+        @Override int offset (int from) {
+            return from;
+        }
+
+        @Override boolean accepts (Object[] leaves) {
+            Object leaf = leaves[index];
+            switch (kind) {
+                case INT:   return leaf instanceof long[];
+                case FLOAT: return leaf instanceof double[];
+                case BOOL:  return leaf instanceof boolean[];
+                default:    return false;
+            }
+        }
+
+        @Override Object unfused (Object[] leaves) {
+            return leaves[index];
+        }
+
+        @Override void collect (List<ArrayChain> inner) {}
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class ToFloat extends ArrayChain
+    {
+        private final ArrayChain operand;
+
+        ToFloat (ArrayChain operand) {
+            super(SlotKind.FLOAT);
+            this.operand = operand;
+        }
+
+        @Override void compute (Object[] leaves, Object[] scratch, int from, int length,
+                                Object out, int offset)
+        {
+            long[] in = (long[]) operand.chunk(leaves, scratch, from, length);
+            int start = operand.offset(from);
+            double[] result = (double[]) out;
+            for (int i = 0; i < length; ++i)
+                result[offset + i] = in[start + i];
+        }
+
+        @Override boolean accepts (Object[] leaves) {
+            return operand.accepts(leaves);
+        }
+
+        @Override Object unfused (Object[] leaves) {
+            return operand.unfused(leaves); // converted by the FLOAT kernel
+        }
+
+        @Override void collect (List<ArrayChain> inner) {
+            scratch = inner.size();
+            inner.add(this);
+            operand.collect(inner);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Operation extends ArrayChain
+    {
+        private final BinaryOperator op;
+        private final ArrayKernel kernel;
+        private final ArrayChain left, right;
+
+        Operation (BinaryOperator op, ArrayKernel kernel, SlotKind kind,
+                   ArrayChain left, ArrayChain right) {
+            super(kind);
+            this.op = op;
+            this.kernel = kernel;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override void compute (Object[] leaves, Object[] scratch, int from, int length,
+                                Object out, int offset)
+        {
+            Object l = left.chunk(leaves, scratch, from, length);
+            Object r = right.chunk(leaves, scratch, from, length);
+            int lo = left.offset(from);
+            int ro = right.offset(from);
+
+            switch (left.kind) {
+                case INT:
+                    if (kind == SlotKind.INT)
+                        arithmetic(op, (long[]) l, lo, (long[]) r, ro, (long[]) out, offset,
+                            length);
+                    else
+                        comparison(op, (long[]) l, lo, (long[]) r, ro, (boolean[]) out, offset,
+                            length);
+                    break;
+                case FLOAT:
+                    if (kind == SlotKind.FLOAT)
+                        arithmetic(op, (double[]) l, lo, (double[]) r, ro, (double[]) out, offset,
+                            length);
+                    else
+                        comparison(op, (double[]) l, lo, (double[]) r, ro, (boolean[]) out, offset,
+                            length);
+                    break;
+                case BOOL:
+                    logic(op, (boolean[]) l, lo, (boolean[]) r, ro, (boolean[]) out, offset,
+                        length);
+                    break;
+                default:
+                    throw new Error("should not reach here");
+            }
+        }
+
+        @Override boolean accepts (Object[] leaves) {
+            return left.accepts(leaves) && right.accepts(leaves);
+        }
+
+        @Override Object unfused (Object[] leaves)
+        {
+            Object l = left.unfused(leaves);
+            Object r = right.unfused(leaves);
+            try {
+                return kernel.apply(op, l, r);
+            } catch (ClassCastException e) {
+                return ArrayKernel.GENERIC.apply(op, l, r);
+            }
+        }
+
+        @Override void collect (List<ArrayChain> inner) {
+            scratch = inner.size();
+            inner.add(this);
+            left.collect(inner);
+            right.collect(inner);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Loops over a chunk of elements. Each array has its own start index: leaves are read in
+    // place, while inner results are in scratch arrays.
+    // ---------------------------------------------------------------------------------------------
+
+    private static void arithmetic (BinaryOperator op, long[] l, int lo, long[] r, int ro,
+                                    long[] out, int offset, int length)
+    {
+        switch (op) {
+            case ADD:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] + r[ro + i]; break;
+            case SUBTRACT:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] - r[ro + i]; break;
+            case MULTIPLY:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] * r[ro + i]; break;
+            case DIVIDE:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] / r[ro + i]; break;
+            case REMAINDER:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] % r[ro + i]; break;
+            default:
+                throw new Error("should not reach here");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void arithmetic (BinaryOperator op, double[] l, int lo, double[] r, int ro,
+                                    double[] out, int offset, int length)
+    {
+        switch (op) {
+            case ADD:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] + r[ro + i]; break;
+            case SUBTRACT:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] - r[ro + i]; break;
+            case MULTIPLY:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] * r[ro + i]; break;
+            case DIVIDE:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] / r[ro + i]; break;
+            case REMAINDER:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] % r[ro + i]; break;
+            default:
+                throw new Error("should not reach here");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void comparison (BinaryOperator op, long[] l, int lo, long[] r, int ro,
+                                    boolean[] out, int offset, int length)
+    {
+        switch (op) {
+            case GREATER:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] >  r[ro + i]; break;
+            case GREATER_EQUAL:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] >= r[ro + i]; break;
+            case LOWER:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] <  r[ro + i]; break;
+            case LOWER_EQUAL:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] <= r[ro + i]; break;
+            case EQUALITY:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] == r[ro + i]; break;
+            case NOT_EQUALS:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] != r[ro + i]; break;
+            default:
+                throw new Error("should not reach here");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void comparison (BinaryOperator op, double[] l, int lo, double[] r, int ro,
+                                    boolean[] out, int offset, int length)
+    {
+        switch (op) {
+            case GREATER:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] >  r[ro + i]; break;
+            case GREATER_EQUAL:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] >= r[ro + i]; break;
+            case LOWER:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] <  r[ro + i]; break;
+            case LOWER_EQUAL:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] <= r[ro + i]; break;
+            case EQUALITY:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] == r[ro + i]; break;
+            case NOT_EQUALS:
+                for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] != r[ro + i]; break;
+            default:
+                throw new Error("should not reach here");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void logic (BinaryOperator op, boolean[] l, int lo, boolean[] r, int ro,
+                               boolean[] out, int offset, int length)
+    {
+        if (op == BinaryOperator.AND)
+            for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] && r[ro + i];
+        else
+            for (int i = 0; i < length; ++i) out[offset + i] = l[lo + i] || r[ro + i];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,229 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ParallelArrays;
+import norswap.sigh.ast.BinaryOperator;
+import norswap.sigh.bytecode.SighRuntime;
+import norswap.sigh.types.*;
+
+import static java.lang.String.format;
+import static norswap.sigh.ast.BinaryOperator.*;
+
+/**
+ * Implementations of the element-wise array operators ({@code a @(op) b}), selected from the
+ * static component types of the operands (cf. {@link #select}).
+ *
+ * <p>Each kernel takes two arrays of the same length and returns a new array holding the result
+ * of applying the operator to each pair of elements. The operator is dispatched upon once per
+ * array, not once per element: each case is a tight loop over the element values.
+ *
+ * <p>Arrays of primitives are processed by the same loops as in compiled code (cf. {@link
+ * SighRuntime}), and produce primitive arrays. Kernels fall back on {@link #GENERIC} when the
+ * representation of the operands does not match their static types.
+ */
+public enum ArrayKernel
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Both component types are {@code Int}. */
+    INT {
+        @Override public Object apply (BinaryOperator op, Object left, Object right)
+        {
+            if (left instanceof long[] && right instanceof long[]) {
+                if (isArithmetic(op))
+                    return SighRuntime.arithmetic((long[]) left, (long[]) right, op);
+                if (isComparison(op))
+                    return SighRuntime.comparison((long[]) left, (long[]) right, op);
+            }
+            return GENERIC.apply(op, left, right);
+        }
+    },
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Both component types are numeric, at least one of them being {@code Float}. */
+    FLOAT {
+        @Override public Object apply (BinaryOperator op, Object left, Object right)
+        {
+            if (isNumericArray(left) && isNumericArray(right)) {
+                double[] l = ArrayValues.doubles(left);
+                double[] r = ArrayValues.doubles(right);
+                if (isArithmetic(op))
+                    return SighRuntime.arithmetic(l, r, op);
+                if (isComparison(op))
+                    return SighRuntime.comparison(l, r, op);
+            }
+            return GENERIC.apply(op, left, right);
+        }
+    },
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Both component types are {@code Bool}. */
+    BOOL {
+        @Override public Object apply (BinaryOperator op, Object left, Object right)
+        {
+            if (left instanceof boolean[] && right instanceof boolean[] && (op == AND || op == OR))
+                return SighRuntime.logic((boolean[]) left, (boolean[]) right, op);
+            return GENERIC.apply(op, left, right);
+        }
+    },
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Both component types are {@code String}. */
+    STRING {
+        @Override public Object apply (BinaryOperator op, Object left, Object right)
+        {
+            if (!(left instanceof Object[]) || !(right instanceof Object[]))
+                return GENERIC.apply(op, left, right);
+            Object[] l = (Object[]) left;
+            Object[] r = (Object[]) right;
+
+            if (op == ADD) {
+                Object[] result = new Object[l.length];
+                ParallelArrays.forRange(result.length, (from, to) -> {
+                    for (int i = from; i < to; ++i)
+                        result[i] = (String) l[i] + (String) r[i];
+                });
+                return result;
+            }
+            if (!isComparison(op))
+                return GENERIC.apply(op, left, right);
+
+            boolean[] result = new boolean[l.length];
+            ParallelArrays.forRange(result.length, (from, to) -> {
+                for (int i = from; i < to; ++i) {
+                    int cmp = ((String) l[i]).compareTo((String) r[i]);
+                    switch (op) {
+                        case GREATER:       result[i] = cmp >  0; break;
+                        case GREATER_EQUAL: result[i] = cmp >= 0; break;
+                        case LOWER:         result[i] = cmp <  0; break;
+                        case LOWER_EQUAL:   result[i] = cmp <= 0; break;
+                        case EQUALITY:      result[i] = cmp == 0; break;
+                        case NOT_EQUALS:    result[i] = cmp != 0; break;
+                    }
+                }
+            });
+            return result;
+        }
+    },
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Used when the component types are not statically known (e.g. {@code Template[]}), or when
+     * the representation of the arrays does not match their static types: the operation is
+     * selected from the runtime class of each pair of elements, and the result is an {@code
+     * Object[]}.
+     */
+    GENERIC {
+        @Override public Object apply (BinaryOperator op, Object left, Object right)
+        {
+            Object[] l = ArrayValues.boxed(left);
+            Object[] r = ArrayValues.boxed(right);
+            Object[] result = new Object[l.length];
+            ParallelArrays.forRange(result.length, (from, to) -> {
+                for (int i = from; i < to; ++i)
+                    result[i] = elementOp(op, l[i], r[i]);
+            });
+            return result;
+        }
+    };
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Applies the operator element-wise to the two arrays, which must have the same length, and
+     * returns the array of results (cf. {@link ArrayValues} for the representation of arrays).
+     * Large arrays are processed in parallel (cf. {@link ParallelArrays}).
+     */
+    public abstract Object apply (BinaryOperator op, Object left, Object right);
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Selects the kernel for arrays with the given component types (which may be null if
+     * unknown).
+     */
+    public static ArrayKernel select (Type left, Type right)
+    {
+        if (left instanceof IntType && right instanceof IntType)
+            return INT;
+        if (isNumeric(left) && isNumeric(right))
+            return FLOAT;
+        if (left instanceof BoolType && right instanceof BoolType)
+            return BOOL;
+        if (left instanceof StringType && right instanceof StringType)
+            return STRING;
+        return GENERIC;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static boolean isNumeric (Type type) {
+        return type instanceof IntType || type instanceof FloatType;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static boolean isNumericArray (Object array) {
+        return array instanceof long[] || array instanceof double[];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static boolean isArithmetic (BinaryOperator op) {
+        return op == ADD || op == SUBTRACT || op == MULTIPLY || op == DIVIDE || op == REMAINDER;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static boolean isComparison (BinaryOperator op) {
+        return op == GREATER || op == GREATER_EQUAL || op == LOWER || op == LOWER_EQUAL
+            || op == EQUALITY || op == NOT_EQUALS;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static Object elementOp (BinaryOperator op, Object left, Object right)
+    {
+        switch (op) {
+            case AND:
+            case OR:
+                if (!(left instanceof Boolean) || !(right instanceof Boolean))
+                    throw new Error(format(
+                        "using  boolean operator @(%s) between non boolean array elements : %s and %s",
+                        op, left, right));
+                return op == AND
+                    ? (boolean) left && (boolean) right
+                    : (boolean) left || (boolean) right;
+
+            case GREATER:
+            case GREATER_EQUAL:
+            case LOWER:
+            case LOWER_EQUAL:
+            case EQUALITY:
+            case NOT_EQUALS:
+                if (left instanceof String || right instanceof String
+                        || left instanceof Number && right instanceof Number)
+                    return Operations.binary(op, left, right);
+                break;
+
+            default:
+                if (left instanceof Number && right instanceof Number)
+                    return Operations.binary(op, left, right);
+                if (left instanceof String && right instanceof String) {
+                    if (op != ADD)
+                        throw new Error(format(
+                            "trying to use %s between array elements of type string", op));
+                    return left + (String) right;
+                }
+        }
+
+        throw new Error(format(
+            "trying to use @(%s) between array elements of incompatible types : %s and %s",
+            op, left, right));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
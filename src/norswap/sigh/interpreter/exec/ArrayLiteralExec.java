@@ -0,0 +1,50 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * An array literal, which allocates a primitive array if its static component type is primitive
+ * (cf. {@link ArrayValues}).
+ */
+public final class ArrayLiteralExec extends ExecNode
+{
+    private final SlotKind kind;
+    private final ExecNode[] components;
+
+    public ArrayLiteralExec (SighNode source, SlotKind kind, ExecNode[] components) {
+        super(source);
+        this.kind = kind;
+        this.components = components;
+    }
+
+    @Override public Object execute (Frame frame)
+    {
+        switch (kind) {
+            case INT: {
+                long[] array = new long[components.length];
+                for (int i = 0; i < components.length; ++i)
+                    array[i] = components[i].executeLong(frame);
+                return array;
+            }
+            case FLOAT: {
+                double[] array = new double[components.length];
+                for (int i = 0; i < components.length; ++i)
+                    array[i] = components[i].executeDouble(frame);
+                return array;
+            }
+            case BOOL: {
+                boolean[] array = new boolean[components.length];
+                for (int i = 0; i < components.length; ++i)
+                    array[i] = components[i].executeBoolean(frame);
+                return array;
+            }
+            default: {
+                Object[] array = new Object[components.length];
+                for (int i = 0; i < components.length; ++i)
+                    array[i] = components[i].execute(frame);
+                return array;
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.BinaryOperator;
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+import norswap.sigh.interpreter.Null;
+import norswap.sigh.interpreter.PassthroughException;
+
+import static java.lang.String.format;
+
+/**
+ * An element-wise array operation ({@code a @(op) b}), whose result is a new array.
+ *
+ * <p>The lengths of the operands are checked once, then the whole operation is delegated to an
+ * {@link ArrayKernel} selected at preparation from the static types of the operands.
+ */
+public final class ArrayOpExec extends ExecNode
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final BinaryOperator operator;
+    private final ArrayKernel kernel;
+    private final ExecNode left, right;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public ArrayOpExec (SighNode source, BinaryOperator operator, ArrayKernel kernel,
+                        ExecNode left, ExecNode right) {
+        super(source);
+        this.operator = operator;
+        this.kernel = kernel;
+        this.left = left;
+        this.right = right;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Object execute (Frame frame)
+    {
+        Object left  = operand(this.left.execute(frame));
+        Object right = operand(this.right.execute(frame));
+        checkLengths(left, right);
+
+        try {
+            return kernel.apply(operator, left, right);
+        } catch (ClassCastException e) {
+            // The static types can be imprecise (e.g. a template array assigned to an Int[]).
+            return ArrayKernel.GENERIC.apply(operator, left, right);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Checks that an operand is not null, and returns it. */
+    static Object operand (Object array)
+    {
+        if (array == Null.INSTANCE)
+            throw new PassthroughException(
+                new NullPointerException("array operation on null array"));
+        return array;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Checks that the operands have the same length, and returns it. */
+    static int checkLengths (Object left, Object right)
+    {
+        int leftLength  = ArrayValues.length(left);
+        int rightLength = ArrayValues.length(right);
+
+        if (leftLength != rightLength)
+            throw new Error(format(" Operation between arrays of different length: %s (%d) and %s (%d)",
+                Operations.convertToString(left), leftLength,
+                Operations.convertToString(right), rightLength));
+
+        return leftLength;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
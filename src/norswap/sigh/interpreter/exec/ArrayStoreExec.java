@@ -0,0 +1,72 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+import norswap.sigh.interpreter.PassthroughException;
+
+import static norswap.sigh.interpreter.exec.ArrayAccessExec.index;
+import static norswap.sigh.interpreter.exec.ArrayAccessExec.nonNullArray;
+
+/**
+ * Assignment to an array element. The value is evaluated as a primitive if the static component
+ * type of the array is primitive (given by {@link #kind}), and stored without boxing into arrays
+ * of the matching primitive type.
+ */
+public final class ArrayStoreExec extends ExecNode
+{
+    private final SlotKind kind;
+    private final ExecNode array, index, value;
+
+    public ArrayStoreExec (SighNode source, SlotKind kind, ExecNode array, ExecNode index,
+                           ExecNode value) {
+        super(source);
+        this.kind = kind;
+        this.array = array;
+        this.index = index;
+        this.value = value;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return store(frame, true);
+    }
+
+    @Override public void executeVoid (Frame frame) {
+        store(frame, false);
+    }
+
+    /** Performs the assignment, returning the assigned value if {@code boxed}, or null. */
+    private Object store (Frame frame, boolean boxed)
+    {
+        Object array = nonNullArray(this.array.execute(frame));
+        int index = index(this.index.executeLong(frame));
+        try {
+            switch (kind) {
+                case INT: {
+                    long value = this.value.executeLong(frame);
+                    if (array instanceof long[]) ((long[]) array)[index] = value;
+                    else ArrayValues.set(array, index, value);
+                    return boxed ? (Object) value : null;
+                }
+                case FLOAT: {
+                    double value = this.value.executeDouble(frame);
+                    if (array instanceof double[]) ((double[]) array)[index] = value;
+                    else ArrayValues.set(array, index, value);
+                    return boxed ? (Object) value : null;
+                }
+                case BOOL: {
+                    boolean value = this.value.executeBoolean(frame);
+                    if (array instanceof boolean[]) ((boolean[]) array)[index] = value;
+                    else ArrayValues.set(array, index, value);
+                    return boxed ? (Object) value : null;
+                }
+                default: {
+                    Object value = this.value.execute(frame);
+                    ArrayValues.set(array, index, value);
+                    return value;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new PassthroughException(e);
+        }
+    }
+}
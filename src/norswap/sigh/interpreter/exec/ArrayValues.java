@@ -0,0 +1,143 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.bytecode.SighRuntime;
+import java.util.Arrays;
+
+/**
+ * Operations over the runtime representation of arrays, which depends on the static component
+ * type of the array when it was created: {@code long[]} for {@code Int}, {@code double[]} for
+ * {@code Float}, {@code boolean[]} for {@code Bool}, and {@code Object[]} otherwise.
+ *
+ * <p>Nodes that know the static type of an array first check for the matching primitive array,
+ * and only use these (boxing) methods otherwise. This is necessary because static types can be
+ * imprecise: a template array (an {@code Object[]}) can be assigned to an {@code Int[]} variable,
+ * for instance.
+ */
+public final class ArrayValues
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private ArrayValues () {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Whether the object is an array value. */
+    public static boolean isArray (Object object) {
+        return object instanceof Object[]
+            || object instanceof long[]
+            || object instanceof double[]
+            || object instanceof boolean[];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static int length (Object array)
+    {
+        if (array instanceof long[])    return ((long[]) array).length;
+        if (array instanceof double[])  return ((double[]) array).length;
+        if (array instanceof boolean[]) return ((boolean[]) array).length;
+        return ((Object[]) array).length;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Returns the element of the array at the given index, boxed if needed. */
+    public static Object get (Object array, int index)
+    {
+        if (array instanceof long[])    return ((long[]) array)[index];
+        if (array instanceof double[])  return ((double[]) array)[index];
+        if (array instanceof boolean[]) return ((boolean[]) array)[index];
+        return ((Object[]) array)[index];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the element of the array at the given index, unboxing the value if needed. An {@code
+     * Int} value stored in a {@code double[]} is converted.
+     */
+    public static void set (Object array, int index, Object value)
+    {
+        if (array instanceof long[])
+            ((long[]) array)[index] = (long) value;
+        else if (array instanceof double[])
+            ((double[]) array)[index] = ((Number) value).doubleValue();
+        else if (array instanceof boolean[])
+            ((boolean[]) array)[index] = (boolean) value;
+        else
+            ((Object[]) array)[index] = value;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Returns the array itself if it is an {@code Object[]}, or a boxed copy otherwise. */
+    public static Object[] boxed (Object array)
+    {
+        if (array instanceof Object[])
+            return (Object[]) array;
+        Object[] result = new Object[length(array)];
+        for (int i = 0; i < result.length; ++i)
+            result[i] = get(array, i);
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns an array of doubles with the values of the given array of numbers, which is
+     * the array itself if it is a {@code double[]}.
+     */
+    public static double[] doubles (Object array)
+    {
+        if (array instanceof double[])
+            return (double[]) array;
+        if (array instanceof long[])
+            return SighRuntime.toFloats((long[]) array);
+        double[] result = new double[length(array)];
+        for (int i = 0; i < result.length; ++i)
+            result[i] = ((Number) get(array, i)).doubleValue();
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static String toString (Object array)
+    {
+        if (array instanceof long[])    return Arrays.toString((long[]) array);
+        if (array instanceof double[])  return Arrays.toString((double[]) array);
+        if (array instanceof boolean[]) return Arrays.toString((boolean[]) array);
+        return Arrays.deepToString((Object[]) array);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Converts the {@code Int} arrays ({@code long[]}) in the given value, which may be nested in
+     * other arrays, to {@code Float} arrays ({@code double[]}), for a value stored in a location
+     * whose type is an array type with {@code Float} elements (e.g. {@code Float[][]}). Arrays that
+     * do not need to be converted are returned as is.
+     */
+    public static Object toFloat (Object value)
+    {
+        if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            double[] result = new double[array.length];
+            for (int i = 0; i < array.length; ++i) result[i] = array[i];
+            return result;
+        }
+        if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            Object[] result = array;
+            for (int i = 0; i < array.length; ++i) {
+                Object element = toFloat(array[i]);
+                if (element == array[i]) continue;
+                if (result == array) result = array.clone();
+                result[i] = element;
+            }
+            return result;
+        }
+        return value;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,31 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.BinaryOperator;
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * A binary operator (other than {@code &&}, {@code ||} and array operators), whose behaviour
+ * is selected from the runtime class of the operands (cf. {@link Operations#binary}).
+ *
+ * <p>This is only used when the static types of the operands do not allow selecting a
+ * specialized node (e.g. {@link IntArithmeticExec}), typically because they involve templates.
+ */
+public final class BinaryExec extends ExecNode
+{
+    private final BinaryOperator operator;
+    private final ExecNode left, right;
+
+    public BinaryExec (SighNode source, BinaryOperator operator, ExecNode left, ExecNode right) {
+        super(source);
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override public Object execute (Frame frame) {
+        Object left = this.left.execute(frame);
+        Object right = this.right.execute(frame);
+        return Operations.binary(operator, left, right);
+    }
+}
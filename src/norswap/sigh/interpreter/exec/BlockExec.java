@@ -0,0 +1,23 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * A block, which runs its statements in the frame of the enclosing function (or in the root
+ * frame): blocks do not get frames of their own (cf. {@link norswap.sigh.scopes.Scope#frame}).
+ */
+public final class BlockExec extends ExecNode
+{
+    private final ExecNode[] statements;
+
+    public BlockExec (SighNode source, ExecNode[] statements) {
+        super(source);
+        this.statements = statements;
+    }
+
+    @Override public Object execute (Frame frame) {
+        executeAll(statements, frame);
+        return null;
+    }
+}
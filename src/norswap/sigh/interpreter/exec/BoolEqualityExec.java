@@ -0,0 +1,30 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * The {@code ==} or {@code !=} operator when both operands are statically known to be
+ * {@code Bool}.
+ */
+public final class BoolEqualityExec extends ExecNode
+{
+    private final boolean negated;
+    private final ExecNode left, right;
+
+    public BoolEqualityExec (SighNode source, boolean negated, ExecNode left, ExecNode right) {
+        super(source);
+        this.negated = negated;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeBoolean(frame);
+    }
+
+    @Override public boolean executeBoolean (Frame frame) {
+        boolean left = this.left.executeBoolean(frame);
+        return (left == right.executeBoolean(frame)) != negated;
+    }
+}
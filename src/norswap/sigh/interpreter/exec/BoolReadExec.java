@@ -0,0 +1,26 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Reads the {@code Bool} variable at the given (depth, slot) coordinate (cf. {@link Frame}).
+ */
+public final class BoolReadExec extends ExecNode
+{
+    public final int depth, slot;
+
+    public BoolReadExec (SighNode source, int depth, int slot) {
+        super(source);
+        this.depth = depth;
+        this.slot = slot;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeBoolean(frame);
+    }
+
+    @Override public boolean executeBoolean (Frame frame) {
+        return frame.at(depth).primitives[slot] != 0;
+    }
+}
@@ -0,0 +1,35 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Writes to the {@code Bool} variable at the given (depth, slot) coordinate (cf. {@link Frame}).
+ * Evaluates to the written value.
+ */
+public final class BoolWriteExec extends ExecNode
+{
+    public final int depth, slot;
+    private final ExecNode value;
+
+    public BoolWriteExec (SighNode source, int depth, int slot, ExecNode value) {
+        super(source);
+        this.depth = depth;
+        this.slot = slot;
+        this.value = value;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeBoolean(frame);
+    }
+
+    @Override public void executeVoid (Frame frame) {
+        executeBoolean(frame);
+    }
+
+    @Override public boolean executeBoolean (Frame frame) {
+        boolean value = this.value.executeBoolean(frame);
+        frame.at(depth).primitives[slot] = value ? 1 : 0;
+        return value;
+    }
+}
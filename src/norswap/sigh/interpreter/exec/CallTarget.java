@@ -0,0 +1,195 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.FunDeclarationNode;
+import norswap.sigh.interpreter.Frame;
+import norswap.sigh.interpreter.TieredCompiler;
+import norswap.sigh.scopes.Scope;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * The prepared form of a function declaration: everything required to invoke the function.
+ *
+ * <p>In tiered mode (cf. {@link TieredCompiler}), the target counts invocations and loop
+ * back-edges (cf. {@link #backEdge}). Past the compiler's threshold, the function is compiled to
+ * bytecode, and later calls go through the compiled code instead of the body.
+ *
+ * <p>A call target is shared by all executions of the program, which may run concurrently. Each
+ * call gets its own frame. The counters are updated without synchronization: lost updates only
+ * delay the compilation. The function can be compiled more than once if several threads pass the
+ * threshold at the same time, in which case one of the handles is retained.
+ */
+public final class CallTarget
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public final FunDeclarationNode declaration;
+
+    /** The scope holding the function parameters. */
+    public final Scope scope;
+
+    /** The slots of the parameters in {@link #scope}. */
+    private final int[] parameterSlots;
+
+    /** The kinds of the slots of the parameters. */
+    private final SlotKind[] parameterKinds;
+
+    /**
+     * For each parameter, the index of the template parameter that is its type, or -1. Null if
+     * the function has no such parameter.
+     */
+    private final int[] parameterBindings;
+
+    private ExecNode body;
+
+    /** The compiler used once the function is hot, or null if not tiered or no longer counting. */
+    private volatile TieredCompiler compiler;
+
+    /** Number of invocations and loop back-edges so far, while {@link #compiler} is set. */
+    private int hotness;
+
+    /** Handle to the compiled function (cf. {@link TieredCompiler#compile}), or null. */
+    private volatile MethodHandle compiled;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new call target, which will get compiled once hot if {@code compiler} isn't null.
+     */
+    public CallTarget (FunDeclarationNode declaration, Scope scope, int[] parameterSlots,
+                       SlotKind[] parameterKinds, int[] parameterBindings,
+                       TieredCompiler compiler) {
+        this.declaration = declaration;
+        this.scope = scope;
+        this.parameterSlots = parameterSlots;
+        this.parameterKinds = parameterKinds;
+        this.parameterBindings = parameterBindings;
+        this.compiler = compiler;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the function body. This is done separately from the construction, as the body
+     * may contain calls to the function itself.
+     */
+    public void setBody (ExecNode body) {
+        this.body = body;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Calls the function from the given frame, with the given arguments.
+     *
+     * <p>Self tail calls ({@link TailCallExec}) do not nest: they return to this method, which runs
+     * the body again in the same frame, with the new arguments. The parameters are all
+     * overwritten, and the other variables in the frame (declared in the body) are always
+     * initialized by their declaration before being used.
+     */
+    public Object call (Frame caller, Object[] args) {
+        return call(caller, args, null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Calls the function from the given frame, with the given arguments and the given bindings of
+     * its template parameters (cf. {@link Frame#floatBindings}, null if not a template call).
+     */
+    public Object call (Frame caller, Object[] args, boolean[] floatBindings)
+    {
+        TieredCompiler compiler = this.compiler;
+        if (compiler != null && ++hotness >= compiler.threshold)
+            promote(compiler);
+        MethodHandle compiled = this.compiled;
+        if (compiled != null)
+            return callCompiled(compiled, args);
+
+        Frame frame = newFrame(caller);
+        frame.floatBindings = floatBindings;
+        Frame root = frame.root;
+        while (true) {
+            bind(frame, args);
+            body.executeVoid(frame);
+            if (!root.tailCall)
+                return frame.completeReturn();
+            args = (Object[]) frame.completeReturn();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a frame for a call of the function from the given frame.
+     */
+    public Frame newFrame (Frame caller) {
+        // the parent is the frame of the scope in which the function is declared
+        return new Frame(scope, caller.ancestor(scope.parent.frame.depth));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Stores the given arguments in the parameters of the given frame for a call of the function.
+     * The {@link Frame#floatBindings} of the frame must already be set.
+     */
+    public void bind (Frame frame, Object[] args)
+    {
+        int[] bindings = parameterBindings;
+        for (int i = 0; i < parameterSlots.length; ++i) {
+            Object arg = bindings == null || bindings[i] < 0
+                ? args[i]
+                : TemplateToFloatExec.convert(frame.floatBindings, bindings[i], args[i]);
+            parameterKinds[i].store(frame, parameterSlots[i], arg);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records that a loop in the body of the function has taken a back-edge.
+     */
+    public void backEdge () {
+        if (compiler != null) ++hotness;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the function has been compiled, and calls now run the compiled code.
+     */
+    public boolean isCompiled () {
+        return compiled != null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void promote (TieredCompiler compiler)
+    {
+        MethodHandle handle = compiler.compile(declaration);
+        // compiled or not compilable: stop counting either way
+        this.compiler = null;
+        if (handle != null) compiled = handle;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static Object callCompiled (MethodHandle compiled, Object[] args)
+    {
+        try {
+            return (Object) compiled.invokeExact(args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new Error(t); // the compiled code does not throw checked exceptions
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString () {
+        return "CallTarget(" + declaration.name + ")";
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,46 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.BinaryOperator;
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * A comparison or equality operator between two {@code Int} variables, read directly from their
+ * (depth, slot) coordinates (cf. {@link Superinstruction#COMPARE_VARIABLES}).
+ */
+public final class CompareVariablesExec extends ExecNode
+{
+    private final BinaryOperator operator;
+    private final int leftDepth, leftSlot, rightDepth, rightSlot;
+
+    public CompareVariablesExec (SighNode source, BinaryOperator operator,
+                                 int leftDepth, int leftSlot, int rightDepth, int rightSlot) {
+        super(source);
+        this.operator = operator;
+        this.leftDepth = leftDepth;
+        this.leftSlot = leftSlot;
+        this.rightDepth = rightDepth;
+        this.rightSlot = rightSlot;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeBoolean(frame);
+    }
+
+    @Override public boolean executeBoolean (Frame frame)
+    {
+        Superinstruction.COMPARE_VARIABLES.hit();
+        long left  = frame.at(leftDepth).primitives[leftSlot];
+        long right = frame.at(rightDepth).primitives[rightSlot];
+        switch (operator) {
+            case GREATER:       return left >  right;
+            case LOWER:         return left <  right;
+            case GREATER_EQUAL: return left >= right;
+            case LOWER_EQUAL:   return left <= right;
+            case EQUALITY:      return left == right;
+            case NOT_EQUALS:    return left != right;
+            default:
+                throw new Error("should not reach here");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.Rope;
+import norswap.sigh.interpreter.Frame;
+import norswap.sigh.interpreter.Null;
+import norswap.sigh.interpreter.TieredCompiler;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A top-level while loop compiled to bytecode for on-stack replacement (cf. {@link
+ * TieredCompiler#compileLoop}), along with the coordinates of its live variables: the variables
+ * it uses that are declared outside of it.
+ *
+ * <p>Running the loop moves the values of the live variables out of the frames into an array,
+ * converted to their compiled representation, runs the compiled loop on this array, then moves the
+ * final values back into the frames.
+ */
+public final class CompiledLoop
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Handle of type {@code (Object[]) -> void} to the compiled loop. */
+    private final MethodHandle handle;
+
+    /** The (depth, slot) coordinates and the slot kinds of the live variables. */
+    private final int[] depths, slots;
+    private final SlotKind[] kinds;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public CompiledLoop (MethodHandle handle, int[] depths, int[] slots, SlotKind[] kinds) {
+        this.handle = handle;
+        this.depths = depths;
+        this.slots = slots;
+        this.kinds = kinds;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs the loop from its condition, with the variables of the given frame and its ancestors.
+     */
+    public void run (Frame frame)
+    {
+        Object[] state = new Object[slots.length];
+        for (int i = 0; i < state.length; ++i) {
+            Object value = kinds[i].load(frame.at(depths[i]), slots[i]);
+            state[i] = value == Null.INSTANCE ? null
+                : value instanceof Rope ? value.toString()
+                : value;
+        }
+
+        try {
+            handle.invokeExact(state);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new Error(t); // the compiled code does not throw checked exceptions
+        }
+
+        for (int i = 0; i < state.length; ++i) {
+            Object value = state[i];
+            kinds[i].store(frame.at(depths[i]), slots[i], value == null ? Null.INSTANCE : value);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
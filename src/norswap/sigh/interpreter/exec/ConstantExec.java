@@ -0,0 +1,22 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * A node whose value is known before execution: literals, as well as references to functions
+ * and structures (whose values are their declarations).
+ */
+public final class ConstantExec extends ExecNode
+{
+    public final Object value;
+
+    public ConstantExec (SighNode source, Object value) {
+        super(source);
+        this.value = value;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return value;
+    }
+}
@@ -0,0 +1,29 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * A call whose callee is a reference to a declared function: the call target is bound during
+ * preparation, so that calling does not require evaluating or checking the callee.
+ */
+public final class DirectCallExec extends ExecNode
+{
+    private final CallTarget target;
+    private final ExecNode[] arguments;
+
+    /** Cf. {@link Frame#floatBindings}, null if not a template call. */
+    private final boolean[] floatBindings;
+
+    public DirectCallExec (SighNode source, CallTarget target, ExecNode[] arguments,
+                           boolean[] floatBindings) {
+        super(source);
+        this.target = target;
+        this.arguments = arguments;
+        this.floatBindings = floatBindings;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return target.call(frame, FunCallExec.evaluate(arguments, frame), floatBindings);
+    }
+}
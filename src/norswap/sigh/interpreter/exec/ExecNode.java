@@ -0,0 +1,122 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+import norswap.sigh.interpreter.InterpreterException;
+import norswap.sigh.interpreter.PassthroughException;
+
+/**
+ * Base class for the nodes of the executable tree that the {@link
+ * norswap.sigh.interpreter.Preparer} derives from an analyzed AST.
+ *
+ * <p>Each node has its children already linked and everything that can be known before running
+ * the program (variable coordinates, declarations, operators, ...) already resolved, so that
+ * evaluating a node is a simple virtual call to {@link #execute}.
+ *
+ * <p>Nodes whose value has a primitive static type ({@code Int}, {@code Float}, {@code Bool}) may
+ * override {@link #executeLong}, {@link #executeDouble} or {@link #executeBoolean} to produce their
+ * value without boxing it, and parents that expect a primitive value call these methods instead of
+ * {@link #execute}. Similarly, {@link #executeVoid} is called when the value is discarded. Values
+ * are only boxed when they need to be stored as objects (in arrays, structures, or when passed
+ * to functions).
+ */
+public abstract class ExecNode
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** The AST node this node was derived from, used for error reporting. */
+    public final SighNode source;
+
+    // ---------------------------------------------------------------------------------------------
+
+    protected ExecNode (SighNode source) {
+        this.source = source;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Evaluates the node in the given frame and returns its value, or {@code null} for
+     * statements (cf. {@link norswap.sigh.interpreter.Interpreter} for the representation of
+     * values).
+     */
+    public abstract Object execute (Frame frame);
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Evaluates a node whose static type is {@code Int}.
+     */
+    public long executeLong (Frame frame) {
+        return (long) execute(frame);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Evaluates a node whose static type is {@code Float}, or {@code Int} (in which case the
+     * value is converted).
+     */
+    public double executeDouble (Frame frame) {
+        return ((Number) execute(frame)).doubleValue();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Evaluates a node whose static type is {@code Bool}.
+     */
+    public boolean executeBoolean (Frame frame) {
+        return (boolean) execute(frame);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Evaluates a node for its side effects only, discarding its value.
+     */
+    public void executeVoid (Frame frame) {
+        execute(frame);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Executes the given statements in order, until a return statement is executed (cf. {@link
+     * ReturnExec}). Wraps unexpected exceptions into an {@link InterpreterException} that indicates
+     * the failing statement.
+     */
+    public static void executeAll (ExecNode[] statements, Frame frame) {
+        executeAll(statements, 0, statements.length, frame);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Like {@link #executeAll(ExecNode[], Frame)}, but only executes the statements from index
+     * {@code from} (inclusive) to index {@code to} (exclusive).
+     */
+    public static void executeAll (ExecNode[] statements, int from, int to, Frame frame)
+    {
+        Frame root = frame.root;
+        int i = from;
+        try {
+            for (; i < to; ++i) {
+                statements[i].executeVoid(frame);
+                if (root.returning) return;
+            }
+        } catch (InterpreterException | PassthroughException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new InterpreterException("exception while executing " + statements[i].source, e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString () {
+        return getClass().getSimpleName() + "(" + source + ")";
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,50 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+import norswap.sigh.interpreter.Null;
+import norswap.sigh.interpreter.PassthroughException;
+import norswap.sigh.interpreter.Struct;
+import norswap.sigh.interpreter.StructLayout;
+
+/**
+ * Access to a structure field, or to the length of an array.
+ *
+ * <p>When the structure type of the stem is statically known, the field index is resolved during
+ * preparation, and the access is a single array load for instances with the expected layout.
+ * Other instances (e.g. reached through a template-typed value) look up the field by name.
+ */
+public final class FieldAccessExec extends ExecNode
+{
+    private final ExecNode stem;
+    private final String fieldName;
+
+    /** Expected layout of the stem, or null if not statically known. */
+    private final StructLayout layout;
+
+    /** Index of the field in {@link #layout}, if not null. */
+    private final int index;
+
+    public FieldAccessExec (SighNode source, ExecNode stem, String fieldName, StructLayout layout) {
+        super(source);
+        this.stem = stem;
+        this.fieldName = fieldName;
+        this.layout = layout;
+        this.index = layout == null ? -1 : layout.indexOf(fieldName);
+    }
+
+    @Override public Object execute (Frame frame)
+    {
+        Object stem = this.stem.execute(frame);
+        if (stem == Null.INSTANCE)
+            throw new PassthroughException(
+                new NullPointerException("accessing field of null object"));
+        if (stem instanceof Struct) {
+            Struct struct = (Struct) stem;
+            return struct.layout == layout
+                ? struct.fields[index]
+                : struct.get(fieldName);
+        }
+        return (long) ArrayValues.length(stem); // only field on arrays
+    }
+}
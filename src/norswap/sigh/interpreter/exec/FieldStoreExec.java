@@ -0,0 +1,49 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+import norswap.sigh.interpreter.Null;
+import norswap.sigh.interpreter.PassthroughException;
+import norswap.sigh.interpreter.Struct;
+import norswap.sigh.interpreter.StructLayout;
+
+/**
+ * Assignment to a structure field. The field index is resolved during preparation, as for
+ * {@link FieldAccessExec}.
+ */
+public final class FieldStoreExec extends ExecNode
+{
+    private final ExecNode stem, value;
+    private final String fieldName;
+
+    /** Expected layout of the stem, or null if not statically known. */
+    private final StructLayout layout;
+
+    /** Index of the field in {@link #layout}, if not null. */
+    private final int index;
+
+    public FieldStoreExec (SighNode source, ExecNode stem, String fieldName, StructLayout layout,
+                           ExecNode value) {
+        super(source);
+        this.stem = stem;
+        this.fieldName = fieldName;
+        this.layout = layout;
+        this.index = layout == null ? -1 : layout.indexOf(fieldName);
+        this.value = value;
+    }
+
+    @Override public Object execute (Frame frame)
+    {
+        Object object = stem.execute(frame);
+        if (object == Null.INSTANCE)
+            throw new PassthroughException(
+                new NullPointerException("accessing field of null object"));
+        Struct struct = (Struct) object;
+        Object value = this.value.execute(frame);
+        if (struct.layout == layout)
+            struct.fields[index] = value;
+        else
+            struct.set(fieldName, value);
+        return value;
+    }
+}
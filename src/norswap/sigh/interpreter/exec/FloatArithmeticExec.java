@@ -0,0 +1,42 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.BinaryOperator;
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * An arithmetic operator whose operands are statically known to be numeric, at least one of them
+ * being a {@code Float}.
+ */
+public final class FloatArithmeticExec extends ExecNode
+{
+    private final BinaryOperator operator;
+    private final ExecNode left, right;
+
+    public FloatArithmeticExec (SighNode source, BinaryOperator operator, ExecNode left,
+                                ExecNode right) {
+        super(source);
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeDouble(frame);
+    }
+
+    @Override public double executeDouble (Frame frame)
+    {
+        double left  = this.left.executeDouble(frame);
+        double right = this.right.executeDouble(frame);
+        switch (operator) {
+            case MULTIPLY:  return left * right;
+            case DIVIDE:    return left / right;
+            case REMAINDER: return left % right;
+            case ADD:       return left + right;
+            case SUBTRACT:  return left - right;
+            default:
+                throw new Error("should not reach here");
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.BinaryOperator;
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * A comparison or equality operator whose operands are statically known to be numeric, at least
+ * one of them being a {@code Float}.
+ */
+public final class FloatComparisonExec extends ExecNode
+{
+    private final BinaryOperator operator;
+    private final ExecNode left, right;
+
+    public FloatComparisonExec (SighNode source, BinaryOperator operator, ExecNode left,
+                                ExecNode right) {
+        super(source);
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeBoolean(frame);
+    }
+
+    @Override public boolean executeBoolean (Frame frame)
+    {
+        double left  = this.left.executeDouble(frame);
+        double right = this.right.executeDouble(frame);
+        switch (operator) {
+            case GREATER:       return left >  right;
+            case LOWER:         return left <  right;
+            case GREATER_EQUAL: return left >= right;
+            case LOWER_EQUAL:   return left <= right;
+            case EQUALITY:      return left == right;
+            case NOT_EQUALS:    return left != right;
+            default:
+                throw new Error("should not reach here");
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Reads the {@code Float} variable at the given (depth, slot) coordinate (cf. {@link Frame}).
+ */
+public final class FloatReadExec extends ExecNode
+{
+    public final int depth, slot;
+
+    public FloatReadExec (SighNode source, int depth, int slot) {
+        super(source);
+        this.depth = depth;
+        this.slot = slot;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeDouble(frame);
+    }
+
+    @Override public double executeDouble (Frame frame) {
+        return Double.longBitsToDouble(frame.at(depth).primitives[slot]);
+    }
+}
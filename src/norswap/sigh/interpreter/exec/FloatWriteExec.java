@@ -0,0 +1,35 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Writes to the {@code Float} variable at the given (depth, slot) coordinate (cf. {@link Frame}),
+ * converting {@code Int} values. Evaluates to the written value.
+ */
+public final class FloatWriteExec extends ExecNode
+{
+    public final int depth, slot;
+    private final ExecNode value;
+
+    public FloatWriteExec (SighNode source, int depth, int slot, ExecNode value) {
+        super(source);
+        this.depth = depth;
+        this.slot = slot;
+        this.value = value;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeDouble(frame);
+    }
+
+    @Override public void executeVoid (Frame frame) {
+        executeDouble(frame);
+    }
+
+    @Override public double executeDouble (Frame frame) {
+        double value = this.value.executeDouble(frame);
+        frame.at(depth).primitives[slot] = SlotKind.bits(value);
+        return value;
+    }
+}
@@ -0,0 +1,96 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.FunDeclarationNode;
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Constructor;
+import norswap.sigh.interpreter.Frame;
+import norswap.sigh.interpreter.Null;
+import norswap.sigh.interpreter.PassthroughException;
+import norswap.sigh.interpreter.Struct;
+import norswap.sigh.scopes.SyntheticDeclarationNode;
+import java.util.function.Function;
+
+/**
+ * A call through a function value, i.e. a call whose callee is not statically known (calls to
+ * declared functions and structure constructors are prepared as {@link DirectCallExec} and
+ * {@link NewStructExec} instead).
+ *
+ * <p>The call target of the first function called from this site is cached, and reused for as
+ * long as the callee stays the same, guarded by a reference comparison. Other callees are looked
+ * up through the {@link #targets} function, which reads an immutable map and is safe to call while
+ * other programs are being prepared. Concurrent executions may race to fill the cache, which is
+ * harmless: any cached target is checked before use.
+ */
+public final class FunCallExec extends ExecNode
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final ExecNode function;
+    private final ExecNode[] arguments;
+
+    /** Maps function declarations (the runtime value of functions) to their call target. */
+    private final Function<FunDeclarationNode, CallTarget> targets;
+
+    /** Target of the first function called from this site, or null. */
+    private CallTarget cached;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public FunCallExec (SighNode source, ExecNode function, ExecNode[] arguments,
+                        Function<FunDeclarationNode, CallTarget> targets) {
+        super(source);
+        this.function = function;
+        this.arguments = arguments;
+        this.targets = targets;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Object execute (Frame frame)
+    {
+        Object function = this.function.execute(frame);
+        Object[] args = evaluate(arguments, frame);
+
+        CallTarget target = cached;
+        if (target != null && target.declaration == function)
+            return target.call(frame, args);
+
+        if (function == Null.INSTANCE)
+            throw new PassthroughException(new NullPointerException("calling a null function"));
+
+        if (function instanceof SyntheticDeclarationNode)
+            return builtin(((SyntheticDeclarationNode) function).name(), args);
+
+        if (function instanceof Constructor)
+            return new Struct(((Constructor) function).layout, args);
+
+        target = targets.apply((FunDeclarationNode) function);
+        if (cached == null) cached = target;
+        return target.call(frame, args);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Evaluates the given arguments, in order, into a new array.
+     */
+    static Object[] evaluate (ExecNode[] arguments, Frame frame)
+    {
+        Object[] args = new Object[arguments.length];
+        for (int i = 0; i < args.length; ++i)
+            args[i] = arguments[i].execute(frame);
+        return args;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static Object builtin (String name, Object[] args)
+    {
+        assert name.equals("print"); // only one at the moment
+        String out = Operations.convertToString(args[0]);
+        System.out.println(out);
+        return out;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,70 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ParallelArrays;
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A chain of element-wise array operations ({@code a @(*) b @(+) c}), evaluated in a single pass
+ * over the elements that allocates only the result array (cf. {@link ArrayChain}).
+ *
+ * <p>The operand arrays are evaluated from left to right, and their lengths checked as they are
+ * evaluated, as for a sequence of {@link ArrayOpExec}. Large arrays are processed in parallel (cf.
+ * {@link ParallelArrays}), each task using its own scratch arrays.
+ */
+public final class FusedArrayOpExec extends ExecNode
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final ArrayChain chain;
+    private final ExecNode[] operands;
+
+    /** Inner nodes of the chain, indexed by their scratch index (the root, at 0, has none). */
+    private final ArrayChain[] inner;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a node evaluating the given chain, whose leaves are the values of {@code operands}
+     * (cf. {@link ArrayChain#leaf}).
+     */
+    public FusedArrayOpExec (SighNode source, ArrayChain chain, ExecNode[] operands)
+    {
+        super(source);
+        this.chain = chain;
+        this.operands = operands;
+        List<ArrayChain> inner = new ArrayList<>();
+        chain.collect(inner);
+        this.inner = inner.toArray(new ArrayChain[0]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Object execute (Frame frame)
+    {
+        Object[] leaves = new Object[operands.length];
+        for (int i = 0; i < leaves.length; ++i) {
+            leaves[i] = ArrayOpExec.operand(operands[i].execute(frame));
+            if (i > 0) ArrayOpExec.checkLengths(leaves[0], leaves[i]);
+        }
+
+        if (!chain.accepts(leaves))
+            return chain.unfused(leaves);
+
+        int length = ArrayValues.length(leaves[0]);
+        Object result = ArrayChain.newArray(chain.kind, length);
+        ParallelArrays.forRange(length, (from, to) -> {
+            Object[] scratch = new Object[inner.length];
+            for (int i = 1; i < inner.length; ++i)
+                scratch[i] = ArrayChain.newArray(inner[i].kind,
+                    Math.min(ArrayChain.CHUNK, to - from));
+            for (int i = from; i < to; i += ArrayChain.CHUNK)
+                chain.compute(leaves, scratch, i, Math.min(ArrayChain.CHUNK, to - i), result, i);
+        });
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,27 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+public final class IfExec extends ExecNode
+{
+    private final ExecNode condition, trueStatement, falseStatement;
+
+    /** {@code falseStatement} may be null. */
+    public IfExec (SighNode source, ExecNode condition, ExecNode trueStatement,
+                   ExecNode falseStatement) {
+        super(source);
+        this.condition = condition;
+        this.trueStatement = trueStatement;
+        this.falseStatement = falseStatement;
+    }
+
+    @Override public Object execute (Frame frame)
+    {
+        if (condition.executeBoolean(frame))
+            trueStatement.executeVoid(frame);
+        else if (falseStatement != null)
+            falseStatement.executeVoid(frame);
+        return null;
+    }
+}
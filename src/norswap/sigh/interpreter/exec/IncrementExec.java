@@ -0,0 +1,39 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Adds a constant to the {@code Int} variable at the given (depth, slot) coordinate: the fused form
+ * of {@code i = i + k} and {@code i = i - k} (cf. {@link Superinstruction#INCREMENT}). Evaluates
+ * to the new value.
+ */
+public final class IncrementExec extends ExecNode
+{
+    public final int depth, slot;
+    private final long delta;
+
+    public IncrementExec (SighNode source, int depth, int slot, long delta) {
+        super(source);
+        this.depth = depth;
+        this.slot = slot;
+        this.delta = delta;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeLong(frame);
+    }
+
+    @Override public void executeVoid (Frame frame) {
+        executeLong(frame);
+    }
+
+    @Override public long executeLong (Frame frame) {
+        Superinstruction.INCREMENT.hit();
+        return frame.at(depth).primitives[slot] += delta;
+    }
+
+    @Override public double executeDouble (Frame frame) {
+        return executeLong(frame);
+    }
+}
@@ -0,0 +1,45 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.BinaryOperator;
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * An arithmetic operator whose operands are both statically known to be {@code Int}.
+ */
+public final class IntArithmeticExec extends ExecNode
+{
+    private final BinaryOperator operator;
+    private final ExecNode left, right;
+
+    public IntArithmeticExec (SighNode source, BinaryOperator operator, ExecNode left,
+                              ExecNode right) {
+        super(source);
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeLong(frame);
+    }
+
+    @Override public double executeDouble (Frame frame) {
+        return executeLong(frame);
+    }
+
+    @Override public long executeLong (Frame frame)
+    {
+        long left  = this.left.executeLong(frame);
+        long right = this.right.executeLong(frame);
+        switch (operator) {
+            case MULTIPLY:  return left * right;
+            case DIVIDE:    return left / right;
+            case REMAINDER: return left % right;
+            case ADD:       return left + right;
+            case SUBTRACT:  return left - right;
+            default:
+                throw new Error("should not reach here");
+        }
+    }
+}
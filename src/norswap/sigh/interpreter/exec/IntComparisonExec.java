@@ -0,0 +1,42 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.BinaryOperator;
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * A comparison or equality operator whose operands are both statically known to be {@code Int}.
+ */
+public final class IntComparisonExec extends ExecNode
+{
+    private final BinaryOperator operator;
+    private final ExecNode left, right;
+
+    public IntComparisonExec (SighNode source, BinaryOperator operator, ExecNode left,
+                              ExecNode right) {
+        super(source);
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeBoolean(frame);
+    }
+
+    @Override public boolean executeBoolean (Frame frame)
+    {
+        long left  = this.left.executeLong(frame);
+        long right = this.right.executeLong(frame);
+        switch (operator) {
+            case GREATER:       return left >  right;
+            case LOWER:         return left <  right;
+            case GREATER_EQUAL: return left >= right;
+            case LOWER_EQUAL:   return left <= right;
+            case EQUALITY:      return left == right;
+            case NOT_EQUALS:    return left != right;
+            default:
+                throw new Error("should not reach here");
+        }
+    }
+}
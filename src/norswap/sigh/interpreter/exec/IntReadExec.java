@@ -0,0 +1,30 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Reads the {@code Int} variable at the given (depth, slot) coordinate (cf. {@link Frame}).
+ */
+public final class IntReadExec extends ExecNode
+{
+    public final int depth, slot;
+
+    public IntReadExec (SighNode source, int depth, int slot) {
+        super(source);
+        this.depth = depth;
+        this.slot = slot;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeLong(frame);
+    }
+
+    @Override public long executeLong (Frame frame) {
+        return frame.at(depth).primitives[slot];
+    }
+
+    @Override public double executeDouble (Frame frame) {
+        return executeLong(frame);
+    }
+}
@@ -0,0 +1,35 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Writes to the {@code Int} variable at the given (depth, slot) coordinate (cf. {@link Frame}).
+ * Evaluates to the written value.
+ */
+public final class IntWriteExec extends ExecNode
+{
+    public final int depth, slot;
+    private final ExecNode value;
+
+    public IntWriteExec (SighNode source, int depth, int slot, ExecNode value) {
+        super(source);
+        this.depth = depth;
+        this.slot = slot;
+        this.value = value;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeLong(frame);
+    }
+
+    @Override public void executeVoid (Frame frame) {
+        executeLong(frame);
+    }
+
+    @Override public long executeLong (Frame frame) {
+        long value = this.value.executeLong(frame);
+        frame.at(depth).primitives[slot] = value;
+        return value;
+    }
+}
@@ -0,0 +1,146 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+import norswap.sigh.interpreter.PassthroughException;
+
+import static norswap.sigh.interpreter.exec.ArrayAccessExec.nonNullArray;
+
+/**
+ * Reads {@code a[i]}, where {@code a} is an array variable and {@code i} an {@code Int} variable,
+ * both read directly from their (depth, slot) coordinates (cf. {@link
+ * Superinstruction#LOAD_ELEMENT}).
+ *
+ * <p>The node quickens itself on its first execution: it specializes for the representation of
+ * the array it sees then (cf. {@link ArrayValues}), which it checks with a single type test on
+ * later executions. If it later sees another representation, it counts a miss and reverts to the
+ * generic (boxing) access for good. The state is updated without synchronization: a lost update
+ * only results in a needless generic access.
+ */
+public final class LoadElementExec extends ExecNode
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final int UNINITIALIZED = 0, LONGS = 1, DOUBLES = 2, BOOLEANS = 3, GENERIC = 4;
+
+    private final int arrayDepth, arraySlot, indexDepth, indexSlot;
+
+    /** The representation this node is specialized for. */
+    private int state = UNINITIALIZED;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public LoadElementExec (SighNode source, int arrayDepth, int arraySlot,
+                            int indexDepth, int indexSlot) {
+        super(source);
+        this.arrayDepth = arrayDepth;
+        this.arraySlot = arraySlot;
+        this.indexDepth = indexDepth;
+        this.indexSlot = indexSlot;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Object execute (Frame frame) {
+        Superinstruction.LOAD_ELEMENT.hit();
+        Object array = array(frame);
+        return generic(array, index(frame));
+    }
+
+    @Override public long executeLong (Frame frame) {
+        Superinstruction.LOAD_ELEMENT.hit();
+        return loadLong(frame);
+    }
+
+    @Override public double executeDouble (Frame frame) {
+        Superinstruction.LOAD_ELEMENT.hit();
+        return loadDouble(frame);
+    }
+
+    @Override public boolean executeBoolean (Frame frame)
+    {
+        Superinstruction.LOAD_ELEMENT.hit();
+        Object array = array(frame);
+        int index = index(frame);
+        try {
+            if (state == BOOLEANS && array instanceof boolean[])
+                return ((boolean[]) array)[index];
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new PassthroughException(e);
+        }
+        return (boolean) generic(array, index);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Like {@link #executeLong}, without counting a hit. */
+    long loadLong (Frame frame)
+    {
+        Object array = array(frame);
+        int index = index(frame);
+        try {
+            if (state == LONGS && array instanceof long[])
+                return ((long[]) array)[index];
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new PassthroughException(e);
+        }
+        return (long) generic(array, index);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Like {@link #executeDouble}, without counting a hit. */
+    double loadDouble (Frame frame)
+    {
+        Object array = array(frame);
+        int index = index(frame);
+        try {
+            if (state == DOUBLES && array instanceof double[])
+                return ((double[]) array)[index];
+            if (state == LONGS && array instanceof long[])
+                return ((long[]) array)[index];
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new PassthroughException(e);
+        }
+        return ((Number) generic(array, index)).doubleValue();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Object array (Frame frame) {
+        return nonNullArray(frame.at(arrayDepth).values[arraySlot]);
+    }
+
+    private int index (Frame frame) {
+        return ArrayAccessExec.index(frame.at(indexDepth).primitives[indexSlot]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Reads the element without specialization, after quickening the node to the representation
+     * of the array if this is its first execution, or reverting it to the generic state if it was
+     * specialized for another representation.
+     */
+    private Object generic (Object array, int index)
+    {
+        int seen = array instanceof long[]    ? LONGS
+                 : array instanceof double[]  ? DOUBLES
+                 : array instanceof boolean[] ? BOOLEANS
+                 : GENERIC;
+        if (state == UNINITIALIZED)
+            state = seen;
+        else if (state != seen && state != GENERIC) {
+            Superinstruction.LOAD_ELEMENT.miss();
+            state = GENERIC;
+        }
+
+        try {
+            return ArrayValues.get(array, index);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new PassthroughException(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,26 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+import norswap.sigh.interpreter.Struct;
+import norswap.sigh.interpreter.StructLayout;
+
+/**
+ * A direct call to a structure constructor ({@code $S(...)}), whose layout is bound during
+ * preparation.
+ */
+public final class NewStructExec extends ExecNode
+{
+    private final StructLayout layout;
+    private final ExecNode[] arguments;
+
+    public NewStructExec (SighNode source, StructLayout layout, ExecNode[] arguments) {
+        super(source);
+        this.layout = layout;
+        this.arguments = arguments;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return new Struct(layout, FunCallExec.evaluate(arguments, frame));
+    }
+}
@@ -0,0 +1,22 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+public final class NotExec extends ExecNode
+{
+    private final ExecNode operand;
+
+    public NotExec (SighNode source, ExecNode operand) {
+        super(source);
+        this.operand = operand;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeBoolean(frame);
+    }
+
+    @Override public boolean executeBoolean (Frame frame) {
+        return !operand.executeBoolean(frame);
+    }
+}
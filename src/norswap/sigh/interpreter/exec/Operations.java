@@ -0,0 +1,122 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.BinaryOperator;
+import norswap.sigh.ast.FunDeclarationNode;
+import norswap.sigh.ast.StructDeclarationNode;
+import norswap.sigh.interpreter.Constructor;
+import norswap.sigh.interpreter.Null;
+
+/**
+ * Implementations of the operators on runtime values, shared between the nodes that need them.
+ */
+public final class Operations
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private Operations () {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Applies a binary operator (other than the short-circuiting {@code &&} and {@code ||}) to the
+     * given values, dispatching on their runtime class.
+     */
+    public static Object binary (BinaryOperator op, Object left, Object right)
+    {
+        if (left instanceof String || right instanceof String)
+            return stringOp(op, convertToString(left), convertToString(right));
+
+        if (left instanceof Number && right instanceof Number)
+            return left instanceof Double || right instanceof Double
+                ? floatOp(op, ((Number) left).doubleValue(), ((Number) right).doubleValue())
+                : intOp(op, ((Number) left).longValue(), ((Number) right).longValue());
+
+        switch (op) {
+            case EQUALITY:
+                return left instanceof Boolean ? left.equals(right) : left == right;
+            case NOT_EQUALS:
+                return left instanceof Boolean ? !left.equals(right) : left != right;
+            default:
+                throw new Error("should not reach here");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static Object intOp (BinaryOperator op, long left, long right)
+    {
+        switch (op) {
+            case MULTIPLY:      return left *  right;
+            case DIVIDE:        return left /  right;
+            case REMAINDER:     return left %  right;
+            case ADD:           return left +  right;
+            case SUBTRACT:      return left -  right;
+            case GREATER:       return left >  right;
+            case LOWER:         return left <  right;
+            case GREATER_EQUAL: return left >= right;
+            case LOWER_EQUAL:   return left <= right;
+            case EQUALITY:      return left == right;
+            case NOT_EQUALS:    return left != right;
+            default:
+                throw new Error("should not reach here");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static Object floatOp (BinaryOperator op, double left, double right)
+    {
+        switch (op) {
+            case MULTIPLY:      return left *  right;
+            case DIVIDE:        return left /  right;
+            case REMAINDER:     return left %  right;
+            case ADD:           return left +  right;
+            case SUBTRACT:      return left -  right;
+            case GREATER:       return left >  right;
+            case LOWER:         return left <  right;
+            case GREATER_EQUAL: return left >= right;
+            case LOWER_EQUAL:   return left <= right;
+            case EQUALITY:      return left == right;
+            case NOT_EQUALS:    return left != right;
+            default:
+                throw new Error("should not reach here");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static Object stringOp (BinaryOperator op, String left, String right)
+    {
+        switch (op) {
+            case ADD:           return left + right;
+            case GREATER:       return left.compareTo(right) >  0;
+            case GREATER_EQUAL: return left.compareTo(right) >= 0;
+            case LOWER:         return left.compareTo(right) <  0;
+            case LOWER_EQUAL:   return left.compareTo(right) <= 0;
+            case EQUALITY:      return left.compareTo(right) == 0;
+            case NOT_EQUALS:    return left.compareTo(right) != 0;
+            default:
+                throw new Error("should not reach here");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static String convertToString (Object arg)
+    {
+        if (arg == Null.INSTANCE)
+            return "null";
+        else if (ArrayValues.isArray(arg))
+            return ArrayValues.toString(arg);
+        else if (arg instanceof FunDeclarationNode)
+            return ((FunDeclarationNode) arg).name;
+        else if (arg instanceof StructDeclarationNode)
+            return ((StructDeclarationNode) arg).name;
+        else if (arg instanceof Constructor)
+            return "$" + ((Constructor) arg).declaration.name;
+        else
+            return arg.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,26 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Short-circuiting boolean disjunction.
+ */
+public final class OrExec extends ExecNode
+{
+    private final ExecNode left, right;
+
+    public OrExec (SighNode source, ExecNode left, ExecNode right) {
+        super(source);
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeBoolean(frame);
+    }
+
+    @Override public boolean executeBoolean (Frame frame) {
+        return left.executeBoolean(frame) || right.executeBoolean(frame);
+    }
+}
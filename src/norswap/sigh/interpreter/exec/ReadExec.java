@@ -0,0 +1,22 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Reads the variable at the given (depth, slot) coordinate (cf. {@link Frame}).
+ */
+public final class ReadExec extends ExecNode
+{
+    public final int depth, slot;
+
+    public ReadExec (SighNode source, int depth, int slot) {
+        super(source);
+        this.depth = depth;
+        this.slot = slot;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return frame.get(depth, slot);
+    }
+}
@@ -0,0 +1,25 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * A return statement. Sets the {@link Frame#returning} flag, which causes the enclosing statements
+ * to stop executing (cf. {@link ExecNode#executeAll} and {@link WhileExec}) until the flag is
+ * cleared by the function call ({@link CallTarget}) or the program ({@link RootExec}).
+ */
+public final class ReturnExec extends ExecNode
+{
+    /** May be null. */
+    private final ExecNode expression;
+
+    public ReturnExec (SighNode source, ExecNode expression) {
+        super(source);
+        this.expression = expression;
+    }
+
+    @Override public Object execute (Frame frame) {
+        frame.startReturn(expression == null ? null : expression.execute(frame));
+        return null;
+    }
+}
@@ -0,0 +1,49 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+import norswap.sigh.scopes.RootScope;
+
+/**
+ * The prepared form of a whole program, to be executed in a frame for {@link #scope}.
+ * Evaluates to the value returned by the top-level return statement, if any.
+ */
+public final class RootExec extends ExecNode
+{
+    public final RootScope scope;
+    private final ExecNode[] statements;
+
+    /**
+     * For each top-level statement of the program, the index of its prepared form in {@link
+     * #statements} (or of the next prepared statement, for declarations, which are not executed),
+     * followed by the number of prepared statements.
+     */
+    private final int[] positions;
+
+    public RootExec (SighNode source, RootScope scope, ExecNode[] statements, int[] positions) {
+        super(source);
+        this.scope = scope;
+        this.statements = statements;
+        this.positions = positions;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return execute(frame, 0, statementCount());
+    }
+
+    /** Number of top-level statements in the program, including declarations. */
+    public int statementCount () {
+        return positions.length - 1;
+    }
+
+    /**
+     * Executes the top-level statements of the program from index {@code from} (inclusive) to
+     * index {@code to} (exclusive), evaluating to the value returned by one of them, if any.
+     */
+    public Object execute (Frame frame, int from, int to)
+    {
+        executeAll(statements, positions[from], positions[to], frame);
+        // allow returning from the main script
+        return frame.completeReturn();
+    }
+}
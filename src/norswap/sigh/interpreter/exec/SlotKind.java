@@ -0,0 +1,71 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.interpreter.Frame;
+import norswap.sigh.types.BoolType;
+import norswap.sigh.types.FloatType;
+import norswap.sigh.types.IntType;
+import norswap.sigh.types.Type;
+
+/**
+ * Indicates how a variable is stored in a {@link Frame}: boxed in {@link Frame#values}, or
+ * unboxed in {@link Frame#primitives}.
+ */
+public enum SlotKind
+{
+    // ---------------------------------------------------------------------------------------------
+
+    OBJECT, INT, FLOAT, BOOL;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the kind of slot used for variables of the given static type (which may be null
+     * if unknown).
+     */
+    public static SlotKind of (Type type) {
+        return type instanceof IntType   ? INT
+             : type instanceof FloatType ? FLOAT
+             : type instanceof BoolType  ? BOOL
+             : OBJECT;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Stores a boxed value into the given slot of the frame, unboxing it if required. {@code Int}
+     * values are converted when stored into a {@code FLOAT} slot.
+     */
+    public void store (Frame frame, int slot, Object value)
+    {
+        switch (this) {
+            case OBJECT: frame.values[slot] = value; break;
+            case INT:    frame.primitives[slot] = (long) value; break;
+            case FLOAT:  frame.primitives[slot] = bits(((Number) value).doubleValue()); break;
+            case BOOL:   frame.primitives[slot] = (boolean) value ? 1 : 0; break;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Loads the value in the given slot of the frame, boxing it if required.
+     */
+    public Object load (Frame frame, int slot)
+    {
+        switch (this) {
+            case OBJECT: return frame.values[slot];
+            case INT:    return frame.primitives[slot];
+            case FLOAT:  return Double.longBitsToDouble(frame.primitives[slot]);
+            case BOOL:   return frame.primitives[slot] != 0;
+            default:     throw new Error("should not reach here");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    static long bits (double value) {
+        return Double.doubleToRawLongBits(value);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
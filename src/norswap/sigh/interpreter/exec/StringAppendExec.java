@@ -0,0 +1,49 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.Rope;
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+import norswap.sigh.interpreter.Null;
+
+import static norswap.sigh.interpreter.exec.Operations.convertToString;
+
+/**
+ * An assignment of the form {@code s = s + a + b ...} to the {@code String} variable at the given
+ * (depth, slot) coordinate (cf. {@link norswap.sigh.FrozenAttributes#appendedStrings}).
+ *
+ * <p>The operands are appended to a {@link Rope} stored in the variable, so that building a
+ * string in a loop takes linear time. The rope is flattened when the variable is read (cf. {@link
+ * StringReadExec}), or when the value of the assignment is used.
+ */
+public final class StringAppendExec extends ExecNode
+{
+    public final int depth, slot;
+    private final ExecNode[] appended;
+
+    public StringAppendExec (SighNode source, int depth, int slot, ExecNode[] appended) {
+        super(source);
+        this.depth = depth;
+        this.slot = slot;
+        this.appended = appended;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return append(frame).toString();
+    }
+
+    @Override public void executeVoid (Frame frame) {
+        append(frame);
+    }
+
+    private Rope append (Frame frame)
+    {
+        Object value = frame.get(depth, slot);
+        Rope rope = value instanceof Rope
+            ? (Rope) value
+            : Rope.of(value == Null.INSTANCE ? "null" : (String) value);
+        for (ExecNode node: appended)
+            rope = rope.append(convertToString(node.execute(frame)));
+        frame.set(depth, slot, rope);
+        return rope;
+    }
+}
@@ -0,0 +1,45 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.BinaryOperator;
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+import static norswap.sigh.interpreter.exec.Operations.convertToString;
+
+/**
+ * A comparison or equality operator when at least one of its operands is statically known to be
+ * a {@code String}, the other operand being converted to a string.
+ */
+public final class StringComparisonExec extends ExecNode
+{
+    private final BinaryOperator operator;
+    private final ExecNode left, right;
+
+    public StringComparisonExec (SighNode source, BinaryOperator operator, ExecNode left,
+                                 ExecNode right) {
+        super(source);
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeBoolean(frame);
+    }
+
+    @Override public boolean executeBoolean (Frame frame)
+    {
+        String left = convertToString(this.left.execute(frame));
+        int cmp = left.compareTo(convertToString(right.execute(frame)));
+        switch (operator) {
+            case GREATER:       return cmp >  0;
+            case LOWER:         return cmp <  0;
+            case GREATER_EQUAL: return cmp >= 0;
+            case LOWER_EQUAL:   return cmp <= 0;
+            case EQUALITY:      return cmp == 0;
+            case NOT_EQUALS:    return cmp != 0;
+            default:
+                throw new Error("should not reach here");
+        }
+    }
+}
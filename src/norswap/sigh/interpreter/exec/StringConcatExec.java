@@ -0,0 +1,26 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+import static norswap.sigh.interpreter.exec.Operations.convertToString;
+
+/**
+ * The {@code +} operator when at least one of its operands is statically known to be a
+ * {@code String}, the other operand being converted to a string.
+ */
+public final class StringConcatExec extends ExecNode
+{
+    private final ExecNode left, right;
+
+    public StringConcatExec (SighNode source, ExecNode left, ExecNode right) {
+        super(source);
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override public Object execute (Frame frame) {
+        String left = convertToString(this.left.execute(frame));
+        return left + convertToString(right.execute(frame));
+    }
+}
@@ -0,0 +1,25 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.Rope;
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Reads the {@code String} variable at the given (depth, slot) coordinate (cf. {@link Frame}),
+ * flattening its value if it is a {@link Rope} (cf. {@link StringAppendExec}).
+ */
+public final class StringReadExec extends ExecNode
+{
+    public final int depth, slot;
+
+    public StringReadExec (SighNode source, int depth, int slot) {
+        super(source);
+        this.depth = depth;
+        this.slot = slot;
+    }
+
+    @Override public Object execute (Frame frame) {
+        Object value = frame.get(depth, slot);
+        return value instanceof Rope ? value.toString() : value;
+    }
+}
@@ -0,0 +1,82 @@
+package norswap.sigh.interpreter.exec;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The patterns that the {@link norswap.sigh.interpreter.Preparer} fuses into a single node
+ * (superinstructions), along with counters that record how often each fused node runs.
+ *
+ * <p>Counting is disabled unless the {@code sigh.quicken.stats} system property is set to {@code
+ * true}, in which case {@link #report()} tells which fusions pay off. A hit is an execution of a
+ * fused node. A miss is an execution where a node that quickened itself on its first execution
+ * (cf. {@link LoadElementExec}) saw a value it was not specialized for, and fell back to its
+ * generic form for good.
+ */
+public enum Superinstruction
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** {@code i = i + k} or {@code i = i - k}, where {@code i} is an {@code Int} variable. */
+    INCREMENT,
+
+    /** {@code i < n} (or another comparison) between two {@code Int} variables. */
+    COMPARE_VARIABLES,
+
+    /** {@code a[i]}, where {@code a} and {@code i} are variables. */
+    LOAD_ELEMENT,
+
+    /** {@code x = x + a[i]}, where {@code x}, {@code a} and {@code i} are variables. */
+    ADD_ELEMENT;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Whether the counters are updated, cf. {@link Superinstruction}. */
+    public static final boolean COUNTING = Boolean.getBoolean("sigh.quicken.stats");
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // ---------------------------------------------------------------------------------------------
+
+    void hit () {
+        if (COUNTING) hits.increment();
+    }
+
+    void miss () {
+        if (COUNTING) misses.increment();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public long hits () {
+        return hits.sum();
+    }
+
+    public long misses () {
+        return misses.sum();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Resets the counters of all patterns. */
+    public static void reset () {
+        for (Superinstruction pattern: values()) {
+            pattern.hits.reset();
+            pattern.misses.reset();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Returns a report of the counters of all patterns, one per line. */
+    public static String report ()
+    {
+        StringBuilder b = new StringBuilder();
+        for (Superinstruction pattern: values())
+            b.append(String.format("%-18s hits: %12d  misses: %8d%n",
+                pattern, pattern.hits(), pattern.misses()));
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
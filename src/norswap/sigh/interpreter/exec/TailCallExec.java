@@ -0,0 +1,25 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * A return statement returning the result of a call to the function it appears in ({@code return
+ * f(...)} in {@code f}). Instead of calling the function, evaluates the arguments and signals the
+ * {@link CallTarget} to restart the function with them (cf. {@link Frame#startTailCall}), so that
+ * the recursion does not consume stack.
+ */
+public final class TailCallExec extends ExecNode
+{
+    private final ExecNode[] arguments;
+
+    public TailCallExec (SighNode source, ExecNode[] arguments) {
+        super(source);
+        this.arguments = arguments;
+    }
+
+    @Override public Object execute (Frame frame) {
+        frame.startTailCall(FunCallExec.evaluate(arguments, frame));
+        return null;
+    }
+}
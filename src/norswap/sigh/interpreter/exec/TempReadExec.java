@@ -0,0 +1,22 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Reads a temporary value of the current function activation in the explicit-stack mode of the
+ * interpreter (cf. {@link Frame#temps}), standing for an operand that was evaluated beforehand.
+ */
+public final class TempReadExec extends ExecNode
+{
+    public final int index;
+
+    public TempReadExec (SighNode source, int index) {
+        super(source);
+        this.index = index;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return frame.temps[index];
+    }
+}
@@ -0,0 +1,44 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Converts an {@code Int} value to {@code Float} when it is stored in a location (variable,
+ * parameter or return value) whose type is a template parameter that is bound to {@code Float} in
+ * the call of the template function (cf. {@link Frame#floatBindings}). The body of a template
+ * function is prepared once for all its instantiations, so this can only be decided at run time.
+ */
+public final class TemplateToFloatExec extends ExecNode
+{
+    private final int depth, parameter;
+    private final ExecNode operand;
+
+    /**
+     * Creates a node converting the value of {@code operand}, stored in a location whose type is
+     * the template parameter at index {@code parameter} of the function whose frame is at the
+     * given depth.
+     */
+    public TemplateToFloatExec (SighNode source, int depth, int parameter, ExecNode operand) {
+        super(source);
+        this.depth = depth;
+        this.parameter = parameter;
+        this.operand = operand;
+    }
+
+    @Override public Object execute (Frame frame) {
+        Object value = operand.execute(frame);
+        return convert(frame.at(depth).floatBindings, parameter, value);
+    }
+
+    /**
+     * Returns {@code value} converted to {@code Float} if it is an {@code Int} and the template
+     * parameter at index {@code parameter} is bound to {@code Float} according to {@code
+     * floatBindings} (possibly null), or {@code value} otherwise.
+     */
+    public static Object convert (boolean[] floatBindings, int parameter, Object value) {
+        return value instanceof Long && floatBindings != null && floatBindings[parameter]
+            ? (Object) ((Long) value).doubleValue()
+            : value;
+    }
+}
@@ -0,0 +1,23 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Converts an array whose elements are {@code Int} (or arrays of {@code Int}, ...) to the
+ * representation of an array with {@code Float} elements (cf. {@link ArrayValues#toFloat}), when
+ * it is stored in a location of the latter type. The converted array is a copy.
+ */
+public final class ToFloatArrayExec extends ExecNode
+{
+    private final ExecNode operand;
+
+    public ToFloatArrayExec (SighNode source, ExecNode operand) {
+        super(source);
+        this.operand = operand;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return ArrayValues.toFloat(operand.execute(frame));
+    }
+}
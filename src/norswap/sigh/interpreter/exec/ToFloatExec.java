@@ -0,0 +1,26 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Converts the value of an expression to {@code Float}, e.g. an {@code Int} value returned from a
+ * function whose return type is {@code Float}.
+ */
+public final class ToFloatExec extends ExecNode
+{
+    private final ExecNode operand;
+
+    public ToFloatExec (SighNode source, ExecNode operand) {
+        super(source);
+        this.operand = operand;
+    }
+
+    @Override public Object execute (Frame frame) {
+        return executeDouble(frame);
+    }
+
+    @Override public double executeDouble (Frame frame) {
+        return operand.executeDouble(frame);
+    }
+}
@@ -0,0 +1,89 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.ast.WhileNode;
+import norswap.sigh.interpreter.Frame;
+import norswap.sigh.interpreter.TieredCompiler;
+
+/**
+ * A while loop. Inside a function, each iteration is reported to the function's call target as a
+ * back-edge (cf. {@link CallTarget#backEdge}), so that functions with hot loops get compiled in
+ * tiered mode.
+ *
+ * <p>Top-level loops count their own back-edges in tiered mode. Once past the compiler's
+ * threshold, the loop is compiled (cf. {@link TieredCompiler#compileLoop}), and the current
+ * iteration continues in the compiled code, which then also runs later executions of the loop
+ * (on-stack replacement). Like {@link CallTarget}, the counter is updated without
+ * synchronization.
+ */
+public final class WhileExec extends ExecNode
+{
+    private final ExecNode condition, body;
+
+    /** Target of the function containing the loop, or null for top-level loops. */
+    private final CallTarget function;
+
+    /** Compiler for top-level loops in tiered mode, or null if not (or no longer) counting. */
+    private volatile TieredCompiler compiler;
+
+    /** Number of back-edges so far, while {@link #compiler} is set. */
+    private int hotness;
+
+    /** The compiled loop, or null. */
+    private volatile CompiledLoop compiled;
+
+    /**
+     * Creates a new loop, to be compiled once hot if it is a top-level loop ({@code function} is
+     * null) and {@code compiler} isn't null.
+     */
+    public WhileExec (SighNode source, ExecNode condition, ExecNode body, CallTarget function,
+                      TieredCompiler compiler) {
+        super(source);
+        this.condition = condition;
+        this.body = body;
+        this.function = function;
+        this.compiler = function == null ? compiler : null;
+    }
+
+    @Override public Object execute (Frame frame)
+    {
+        CompiledLoop compiled = this.compiled;
+        if (compiled != null) {
+            compiled.run(frame);
+            return null;
+        }
+
+        Frame root = frame.root;
+        while (condition.executeBoolean(frame)) {
+            body.executeVoid(frame);
+            if (root.returning) break;
+            if (function != null) {
+                function.backEdge();
+                continue;
+            }
+            TieredCompiler compiler = this.compiler;
+            if (compiler != null && ++hotness >= compiler.threshold) {
+                compiled = promote(compiler);
+                if (compiled != null) {
+                    compiled.run(frame);
+                    break;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Whether the loop has been compiled, and now runs as compiled code. */
+    public boolean isCompiled () {
+        return compiled != null;
+    }
+
+    private CompiledLoop promote (TieredCompiler compiler)
+    {
+        CompiledLoop loop = compiler.compileLoop((WhileNode) source);
+        // compiled or not compilable: stop counting either way
+        this.compiler = null;
+        if (loop != null) compiled = loop;
+        return loop;
+    }
+}
@@ -0,0 +1,27 @@
+package norswap.sigh.interpreter.exec;
+
+import norswap.sigh.ast.SighNode;
+import norswap.sigh.interpreter.Frame;
+
+/**
+ * Writes to the non-primitive variable at the given (depth, slot) coordinate (cf. {@link Frame}),
+ * used both for variable declarations and assignments. Evaluates to the written value.
+ */
+public final class WriteExec extends ExecNode
+{
+    public final int depth, slot;
+    private final ExecNode value;
+
+    public WriteExec (SighNode source, int depth, int slot, ExecNode value) {
+        super(source);
+        this.depth = depth;
+        this.slot = slot;
+        this.value = value;
+    }
+
+    @Override public Object execute (Frame frame) {
+        Object value = this.value.execute(frame);
+        frame.set(depth, slot, value);
+        return value;
+    }
+}
@@ -64,6 +64,10 @@ public final class RootScope extends Scope
         reactor.set(_false, "type",       BoolType.INSTANCE);
         reactor.set(_null,  "type",       NullType.INSTANCE);
 
+        reactor.set(_true,  "slot",       allocateSlot());
+        reactor.set(_false, "slot",       allocateSlot());
+        reactor.set(_null,  "slot",       allocateSlot());
+
         reactor.set(print,  "type", new FunType(StringType.INSTANCE, StringType.INSTANCE));
     }
 
@@ -1,5 +1,6 @@
 package norswap.sigh.scopes;
 
+import norswap.sigh.ast.BlockNode;
 import norswap.sigh.ast.DeclarationNode;
 import norswap.sigh.ast.SighNode;
 import java.util.HashMap;
@@ -21,15 +22,34 @@ public class Scope
      */
     public final Scope parent;
 
+    /**
+     * The lexical nesting depth of this scope: 0 for the root scope, and one more than the depth
+     * of the parent otherwise.
+     */
+    public final int depth;
+
+    /**
+     * The scope whose runtime frame holds the variables of this scope: the scope itself, except
+     * for blocks, which do not get a frame of their own. The variables of a block are allocated
+     * in the frame scope of its parent instead (see {@link #allocateSlot()}), so that a function
+     * call needs a single frame.
+     */
+    public final Scope frame;
+
     // ---------------------------------------------------------------------------------------------
 
     public final HashMap<String, DeclarationNode> declarations = new HashMap<>();
 
+    /** Number of variable slots allocated in this scope, see {@link #allocateSlot()}. */
+    private int slotCount = 0;
+
     // ---------------------------------------------------------------------------------------------
 
     public Scope (SighNode node, Scope parent) {
         this.node = node;
         this.parent = parent;
+        this.depth = parent == null ? 0 : parent.depth + 1;
+        this.frame = node instanceof BlockNode && parent != null ? parent.frame : this;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -43,6 +63,28 @@ public class Scope
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Reserves a new variable slot in the {@link #frame} scope of this scope and returns its index.
+     * Together with the depth of the frame scope, this index forms the coordinate under which the
+     * variable is stored at runtime.
+     */
+    public int allocateSlot () {
+        return frame == this ? slotCount++ : frame.allocateSlot();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of variable slots allocated in this scope, including those of the blocks
+     * it is the {@link #frame} scope of, i.e. the size of the frame needed to hold its variables at
+     * runtime. Always 0 for blocks.
+     */
+    public int slotCount () {
+        return slotCount;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Looks up the name in the scope and its parents, returning a context comprising the
      * found declaration and the scope in which it occurs, or null if not found.
@@ -7,6 +7,7 @@ import norswap.sigh.SemanticAnalysis;
 import norswap.sigh.SighGrammar;
 import norswap.sigh.ast.*;
 import norswap.sigh.interpreter.Interpreter;
+import norswap.sigh.interpreter.InterpreterException;
 import norswap.sigh.interpreter.Null;
 import norswap.uranium.Reactor;
 import norswap.uranium.SemanticError;
@@ -39,15 +40,8 @@ public final class ArrayInterpreterTests extends TestFixture {
         return new IntLiteralNode(null, i);
     }
 
-    private static FloatLiteralNode floatlit (double d) {
-        return new FloatLiteralNode(null, d);
-    }
-
     private static TemplateTypeNode templit (String t) { return  new TemplateTypeNode(null,t);}
 
-    private static StringLiteralNode stringlit( String s) { return  new StringLiteralNode(null, s);}
-
-    private static ReferenceNode boollit( boolean b) {return  new ReferenceNode(null,String.valueOf(b));}
 
 
 
@@ -126,31 +120,31 @@ public final class ArrayInterpreterTests extends TestFixture {
 
     @Test
     public void testNumericBinary () {
-        checkExpr("[1]@(+)[2]",  new ArrayLiteralNode(null, asList(intlit(3))));
-        checkExpr("[1]@(-)[2]",  new ArrayLiteralNode(null, asList(intlit(-1))));
-        checkExpr("[1]@(*)[2]",  new ArrayLiteralNode(null, asList(intlit(2))));
-        checkExpr("[1]@(/)[2]",  new ArrayLiteralNode(null, asList(intlit(0))));
-        checkExpr("[1]@(%)[2]",  new ArrayLiteralNode(null, asList(intlit(1))));
-        checkExpr("[1]@(>)[2]",  new ArrayLiteralNode(null, asList(new ReferenceNode(null, "false"))));
-        checkExpr("[1]@(>=)[2]",  new ArrayLiteralNode(null, asList(new ReferenceNode(null, "false"))));
-        checkExpr("[1]@(<)[2]",  new ArrayLiteralNode(null, asList(new ReferenceNode(null, "true"))));
-        checkExpr("[1]@(<=)[2]",  new ArrayLiteralNode(null, asList(new ReferenceNode(null, "true"))));
-        checkExpr("[1]@(==)[2]",  new ArrayLiteralNode(null, asList(new ReferenceNode(null, "false"))));
-        checkExpr("[1]@(!=)[2]",  new ArrayLiteralNode(null, asList(new ReferenceNode(null, "true"))));
+        checkExpr("[1]@(+)[2]",  new long[]{3});
+        checkExpr("[1]@(-)[2]",  new long[]{-1});
+        checkExpr("[1]@(*)[2]",  new long[]{2});
+        checkExpr("[1]@(/)[2]",  new long[]{0});
+        checkExpr("[1]@(%)[2]",  new long[]{1});
+        checkExpr("[1]@(>)[2]",  new boolean[]{false});
+        checkExpr("[1]@(>=)[2]",  new boolean[]{false});
+        checkExpr("[1]@(<)[2]",  new boolean[]{true});
+        checkExpr("[1]@(<=)[2]",  new boolean[]{true});
+        checkExpr("[1]@(==)[2]",  new boolean[]{false});
+        checkExpr("[1]@(!=)[2]",  new boolean[]{true});
         checkThrows("[1]@(&&)[2]",  Error.class);
         checkThrows("[1]@(||)[2]",  Error.class);
 
-        checkExpr("[1.0]@(+)[2.0]",  new ArrayLiteralNode(null, asList(floatlit(3))));
-        checkExpr("[1.0]@(-)[2.0]",  new ArrayLiteralNode(null, asList(floatlit(-1))));
-        checkExpr("[1.0]@(*)[2.0]",  new ArrayLiteralNode(null, asList(floatlit(2))));
-        checkExpr("[1.0]@(/)[2.0]",  new ArrayLiteralNode(null, asList(floatlit(0.5))));
-        checkExpr("[1.0]@(%)[2.0]",  new ArrayLiteralNode(null, asList(floatlit(1))));
-        checkExpr("[1.0]@(>)[2.0]",  new ArrayLiteralNode(null, asList(new ReferenceNode(null, "false"))));
-        checkExpr("[1.0]@(>=)[2.0]",  new ArrayLiteralNode(null, asList(new ReferenceNode(null, "false"))));
-        checkExpr("[1.0]@(<)[2.0]",  new ArrayLiteralNode(null, asList(new ReferenceNode(null, "true"))));
-        checkExpr("[1.0]@(<=)[2.0]",  new ArrayLiteralNode(null, asList(new ReferenceNode(null, "true"))));
-        checkExpr("[1.0]@(==)[2.0]",  new ArrayLiteralNode(null, asList(new ReferenceNode(null, "false"))));
-        checkExpr("[1.0]@(!=)[2.0]",  new ArrayLiteralNode(null, asList(new ReferenceNode(null, "true"))));
+        checkExpr("[1.0]@(+)[2.0]",  new double[]{3.0});
+        checkExpr("[1.0]@(-)[2.0]",  new double[]{-1.0});
+        checkExpr("[1.0]@(*)[2.0]",  new double[]{2.0});
+        checkExpr("[1.0]@(/)[2.0]",  new double[]{0.5});
+        checkExpr("[1.0]@(%)[2.0]",  new double[]{1.0});
+        checkExpr("[1.0]@(>)[2.0]",  new boolean[]{false});
+        checkExpr("[1.0]@(>=)[2.0]",  new boolean[]{false});
+        checkExpr("[1.0]@(<)[2.0]",  new boolean[]{true});
+        checkExpr("[1.0]@(<=)[2.0]",  new boolean[]{true});
+        checkExpr("[1.0]@(==)[2.0]",  new boolean[]{false});
+        checkExpr("[1.0]@(!=)[2.0]",  new boolean[]{true});
         checkThrows("[1.0]@(&&)[2.0]",  Error.class);
         checkThrows("[1.0]@(||)[2.0]",  Error.class);
 
@@ -166,16 +160,16 @@ public final class ArrayInterpreterTests extends TestFixture {
         checkThrows("[true]@(<=)[false]",  Error.class);
         checkThrows("[true]@(==)[false]",  Error.class);
         checkThrows("[true]@(!=)[false]",  Error.class);
-        checkExpr("[true]@(||)[false]", new ArrayLiteralNode(null,asList(boollit(true))));
-        checkExpr("[true]@(&&)[false]", new ArrayLiteralNode(null,asList(boollit(false))));
-
-        checkExpr("[\"hel\"]@(+)[\"lo\"]",new ArrayLiteralNode(null, asList(stringlit("hello"))));
-        checkExpr("[\"hel\"]@(>)[\"lo\"]",new ArrayLiteralNode(null, asList(boollit(false))));
-        checkExpr("[\"hel\"]@(>=)[\"lo\"]",new ArrayLiteralNode(null, asList(boollit(false))));
-        checkExpr("[\"hel\"]@(<)[\"lo\"]",new ArrayLiteralNode(null, asList(boollit(true))));
-        checkExpr("[\"hel\"]@(<=)[\"lo\"]",new ArrayLiteralNode(null, asList(boollit(true))));
-        checkExpr("[\"hel\"]@(==)[\"lo\"]",new ArrayLiteralNode(null, asList(boollit(false))));
-        checkExpr("[\"hel\"]@(!=)[\"lo\"]",new ArrayLiteralNode(null, asList(boollit(true))));
+        checkExpr("[true]@(||)[false]", new boolean[]{true});
+        checkExpr("[true]@(&&)[false]", new boolean[]{false});
+
+        checkExpr("[\"hel\"]@(+)[\"lo\"]",new Object[]{"hello"});
+        checkExpr("[\"hel\"]@(>)[\"lo\"]",new boolean[]{false});
+        checkExpr("[\"hel\"]@(>=)[\"lo\"]",new boolean[]{false});
+        checkExpr("[\"hel\"]@(<)[\"lo\"]",new boolean[]{true});
+        checkExpr("[\"hel\"]@(<=)[\"lo\"]",new boolean[]{true});
+        checkExpr("[\"hel\"]@(==)[\"lo\"]",new boolean[]{false});
+        checkExpr("[\"hel\"]@(!=)[\"lo\"]",new boolean[]{true});
         checkThrows("[\"hel\"]@(-)[\"lo\"]",Error.class);
         checkThrows("[\"hel\"]@(*)[\"lo\"]",Error.class);
         checkThrows("[\"hel\"]@(%)[\"lo\"]",Error.class);
@@ -190,18 +184,18 @@ public final class ArrayInterpreterTests extends TestFixture {
     @Test
     public void testVarDecl () {
         check("var x: Int[] = [1]@(+)[2]; return x",
-            new ArrayLiteralNode(null,asList(intlit(3))));
+            new long[]{3});
         check("var x: Float[] = [1.0]@(+)[2]; return x",
-            new ArrayLiteralNode(null,asList(floatlit(3.0))));
+            new double[]{3.0});
         check("var x: String[] = []; return [\"h\"]@(+)[\"ello\"]",
-            new ArrayLiteralNode(null,asList(stringlit("hello"))));
+            new Object[]{"hello"});
 
         check("var x: Template[] = []; return [\"h\"]@(+)[\"ello\"]",
-            new ArrayLiteralNode(null,asList(stringlit("hello"))));
+            new Object[]{"hello"});
         check("var x: Template[] = []; return [1]@(+)[1]",
-            new ArrayLiteralNode(null,asList(intlit(2))));
+            new long[]{2});
         check("var x: Template[] = [];  var a: Template[]= [1,2.0,\"hel\"]; var b: Template[] =[1,2.0,\"lo\"]; return x=a@(+)b",
-            new ArrayLiteralNode(null,asList(intlit(2),floatlit(4.0),stringlit("hello"))));
+            new Object[]{2L,4.0,"hello"});
         checkThrows("var x: Template[]; return x = [1,\"hel\"]@(+)[2,\"lo\"]",Error.class);
         checkThrows("var x: Template[]; var a: Template[]=[1,2.0]; var b: Template[] =[2,\"lo\"]; return x = a@(+)b",Error.class);
 
@@ -221,69 +215,69 @@ public final class ArrayInterpreterTests extends TestFixture {
         check(
             "fun add (a: Int[], b: Int[]): Int[] { return a@(+)b } " +
                 "return add([4], [7])",
-            new ArrayLiteralNode(null, asList(intlit(11))));
+            new long[]{11});
         check(
             "fun add (a: Int[], b: Int[]): Int[] { return a@(-)b } " +
                 "return add([4], [7])",
-            new ArrayLiteralNode(null, asList(intlit(-3))));
+            new long[]{-3});
         check(
             "fun add (a: Int[], b: Int[]): Int[] { return a@(*)b } " +
                 "return add([4], [7])",
-            new ArrayLiteralNode(null, asList(intlit(28))));
+            new long[]{28});
         check(
             "fun add (a: Int[], b: Int[]): Int[] { return a@(/)b } " +
                 "return add([4], [7])",
-            new ArrayLiteralNode(null, asList(intlit(0))));
+            new long[]{0});
         check(
             "fun add (a: Int[], b: Int[]): Int[] { return a@(%)b } " +
                 "return add([4], [7])",
-            new ArrayLiteralNode(null, asList(intlit(4))));
+            new long[]{4});
         check(
             "fun add (a: Int[], b: Int[]): Bool[] { return a@(>)b } " +
                 "return add([4], [7])",
-            new ArrayLiteralNode(null, asList(new ReferenceNode(null, "false"))));
+            new boolean[]{false});
         check(
             "fun add (a: Int[], b: Int[]): Bool[] { return a@(<)b } " +
                 "return add([4], [7])",
-            new ArrayLiteralNode(null, asList(new ReferenceNode(null, "true"))));
+            new boolean[]{true});
         check(
             "fun add (a: String[], b: String[]): Bool[] { return a@(>=)b } " +
                 "return add([\"h\"], [\"ello\"])",
-            new ArrayLiteralNode(null, asList(new ReferenceNode(null, "true"))));
+            new boolean[]{true});
         check(
             "fun add (a: Int[], b: Int[]): Bool[] { return a@(<=)b } " +
                 "return add([4], [7])",
-            new ArrayLiteralNode(null, asList(new ReferenceNode(null, "true"))));
+            new boolean[]{true});
         check(
             "fun add (a: Int[], b: Int[]): Bool[] { return a@(==)b } " +
                 "return add([4], [7])",
-            new ArrayLiteralNode(null, asList(new ReferenceNode(null, "false"))));
+            new boolean[]{false});
         check(
             "fun add (a: Float[], b: Int[]): Bool[] { return a@(!=)b } " +
                 "return add([4.0], [7])",
-            new ArrayLiteralNode(null, asList(new ReferenceNode(null, "true"))));
+            new boolean[]{true});
 
         check(
             "fun add (a: Bool[], b: Bool[]): Bool[] { return a@(||)b } " +
                 "return add([true], [false])",
-            new ArrayLiteralNode(null, asList(boollit(true))));
+            new boolean[]{true});
 
         check(
             "fun add (a: Bool[], b: Bool[]): Bool[] { return a@(&&)b } " +
                 "return add([true], [false])",
-            new ArrayLiteralNode(null, asList(boollit(false))));
+            new boolean[]{false});
 
         check(
             "fun add (a: Template[], b: Template[]): Template[] { return a@(+)b } " +
                 "var a : Template[] = [4.0,\"h\"]; var b: Template[] =[2,\"ello\"]"+
                 "return add(a,b)",
-            new ArrayLiteralNode(null, asList(floatlit(6.0),stringlit("hello"))));
+            new Object[]{6.0,"hello"});
 
         check(
             "fun add (a: Template[], b: Template[]): Template[] { return a@(>)b } " +
                 "var a : Template[] = [4.0,\"h\"]; var b: Template[] =[2,\"ello\"]"+
                 "return add(a,b)",
-            new ArrayLiteralNode(null,asList( boollit(true), boollit(true))));
+            new Object[]{true, true});
 
         checkThrows(
             "fun add (a: Template[], b: Template[]): Template[] { return a@(-)b } " +
@@ -299,7 +293,7 @@ public final class ArrayInterpreterTests extends TestFixture {
         /*check(
             "template <typename T, typename T1> fun add (a: T[], b: T1[]): Template[] { return a@(+)b } " +
                 "return add<Template,Template>([4.0,\"h\"], [5,\"ello\"])",
-            new ArrayLiteralNode(null, asList(floatlit(9.0),stringlit("hello")))
+            new Object[]{9.0,"hello"})
         );*/
 
 
@@ -307,6 +301,65 @@ public final class ArrayInterpreterTests extends TestFixture {
 
     // ---------------------------------------------------------------------------------------------
 
+    @Test
+    public void testArrayOpOnComputedArrays () {
+        rule = grammar.root;
+        check("fun f (n: Int): Int[] { return [n, n + 1] } return f(1) @(*) f(3)",
+            new long[]{3, 8});
+        check("var a: Int[] = [1, 2]; var b: Float[] = [0.5, 1.5]; return (a @(+) a) @(<) b",
+            new boolean[]{false, false});
+        check("var a: Float[] = [1.0, 2.0]; a = a @(+) a; return a @(*) [2, 3]",
+            new double[]{4.0, 12.0});
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test
+    public void testFusedArrayOperations () {
+        rule = grammar.root;
+        checkExpr("[1, 2] @(*) [3, 4] @(+) [5, 6] @(*) [1, 2]", new long[]{8, 28});
+        checkExpr("[1, 2] @(*) ([3, 4] @(+) [5, 6])", new long[]{8, 20});
+        checkExpr("[1, 2] @(+) [1, 1] @(*) [0.5, 0.5]", new double[]{1.0, 1.5});
+        checkExpr("[0.5, 1.5] @(-) ([1, 2] @(+) [1, 1])", new double[]{-1.5, -1.5});
+        checkExpr("[1, 2] @(+) [3, 4] @(>) [3.5, 6.5]", new boolean[]{true, false});
+        checkExpr("([1, 5] @(<) [2, 2]) @(&&) ([1.0, 1.0] @(<=) [2, 0])",
+            new boolean[]{true, false});
+        checkExpr("[true, false] @(||) [false, false] @(&&) [true, true]",
+            new boolean[]{true, false});
+        check("var a: Int[] = [1, 2]; var b: Int[] = a @(*) a @(-) a; return b @(+) a @(*) a",
+            new long[]{1, 8});
+
+        // operands are evaluated from left to right, their lengths checked as they are
+        check("fun f (s: String): Int[] { print(s) ; return [1] } "
+            + "return f(\"a\") @(+) f(\"b\") @(*) f(\"c\")", new long[]{2}, "a\nb\nc\n");
+        checkThrows("[1, 2] @(+) [1] @(*) [1, 2]", Error.class);
+        checkThrows("[1, 2] @(+) [1, 2] @(*) [1]", Error.class);
+        checkThrows("var z: Int[] = [0]; return [1] @(/) z @(+) [1]", InterpreterException.class);
+
+        // several chunks (cf. ArrayChain.CHUNK)
+        int n = 3000;
+        StringBuilder ints = new StringBuilder("[1");
+        StringBuilder floats = new StringBuilder("[1.5");
+        for (int i = 2; i <= n; ++i) {
+            ints.append(", ").append(i);
+            floats.append(", ").append(i + 0.5);
+        }
+        ints.append("]");
+        floats.append("]");
+        long[] expectedInts = new long[n];
+        double[] expectedFloats = new double[n];
+        for (int i = 1; i <= n; ++i) {
+            expectedInts[i - 1] = (long) i * i - i + 1;
+            expectedFloats[i - 1] = (double) ((long) i * i - i) * (i + 0.5);
+        }
+        check("var a: Int[] = " + ints + "; return a @(*) a @(-) a @(+) (a @(/) a)",
+            expectedInts);
+        check("var a: Int[] = " + ints + "; var b: Float[] = " + floats + "; "
+            + "return a @(*) a @(-) a @(*) b", expectedFloats);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Test
     public void testArrayStructAccess () {
         rule=grammar.root;
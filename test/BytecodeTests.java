@@ -1,19 +1,30 @@
 import norswap.autumn.Autumn;
 import norswap.autumn.ParseOptions;
 import norswap.autumn.ParseResult;
+import norswap.sigh.ParallelArrays;
 import norswap.sigh.SemanticAnalysis;
 import norswap.sigh.SighGrammar;
+import norswap.sigh.ast.BinaryOperator;
 import norswap.sigh.ast.SighNode;
 import norswap.sigh.bytecode.ByteArrayClassLoader;
 import norswap.sigh.bytecode.BytecodeCompiler;
 import norswap.sigh.bytecode.CompilationResult;
+import norswap.sigh.bytecode.NumericKernels;
+import norswap.sigh.bytecode.ScalarKernels;
+import norswap.sigh.bytecode.SighRuntime;
+import norswap.sigh.interpreter.Interpreter;
 import norswap.uranium.Reactor;
 import norswap.utils.IO;
 import norswap.utils.visitors.Walker;
 import org.testng.annotations.Test;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
 
 import static norswap.utils.Util.cast;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertThrows;
 
 @SuppressWarnings("FieldCanBeLocal")
 public class BytecodeTests
@@ -220,6 +231,120 @@ public class BytecodeTests
 
         check("var x: Float[] = [1.0, 2.0]; x[0] = 3.0; print(\"\" + x[0])", "3.0");
         check("var x: Float[] = [1.0, 2.0]; x[0] = 3; print(\"\" + x[0])", "3.0");
+        // Int arrays stored in Float array locations are copies, as in the interpreter
+        check("var a: Int[] = [1] ; var f: Float[] = a ; f[0] = 0.5 ; " +
+            "print(\"\" + a[0] + \" \" + f[0])", "1 0.5");
+        check("fun set (x: Float[]) { x[0] = 0.5 } ; var a: Int[] = [1] ; set(a) ; " +
+            "print(\"\" + a)", "[1]");
+        check("fun ints (): Int[] { return [3] } ; fun floats (): Float[] { return ints() } ; " +
+            "print(\"\" + floats())", "[3.0]");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testArrayOperations() {
+        checkExpr("[1, 2, 3] @(+) [4, 5, 6]", "[5, 7, 9]");
+        checkExpr("[7, 8] @(%) [2, 3]", "[1, 2]");
+        checkExpr("[1.5, 2.0] @(*) [2.0, 0.5]", "[3.0, 1.0]");
+        checkExpr("[1, 2] @(+) [0.5, 0.5]", "[1.5, 2.5]");
+        checkExpr("[1, 5] @(<) [2, 2]", "[true, false]");
+        checkExpr("[1.0, 2.0] @(==) [1, 3]", "[true, false]");
+        checkExpr("[\"a\", \"b\"] @(+) [\"c\", \"d\"]", "[ac, bd]");
+        checkExpr("[\"a\", \"b\"] @(>=) [\"a\", \"c\"]", "[true, false]");
+        checkExpr("[true, false] @(&&) [true, true]", "[true, false]");
+        checkExpr("[true, false] @(||) [false, false]", "[true, false]");
+        check("var x: Int[] = [1, 2]; var y: Int[] = x @(*) x; print(\"\" + (y @(-) x)[1])", "2");
+        checkExpr("[1.5, 2.0] @(>) [1, 3]", "[true, false]");
+        checkExpr("[1, 2] @(/) [2.0, 4.0]", "[0.5, 0.5]");
+        checkExpr("[1, 2] @(!=) [1, 3]", "[false, true]");
+        checkExpr("[\"a\", \"b\"] @(<) [\"b\", \"b\"]", "[true, false]");
+        assertThrows(() -> checkExpr("[1, 2] @(+) [1]", ""));
+        assertThrows(() -> checkExpr("[1] @(/) [0]", ""));
+        // rejected, as by the interpreter
+        assertThrows(() -> checkExpr("[true, true] @(==) [false, true]", ""));
+        assertThrows(() -> checkExpr("[true, true] @(!=) [false, true]", ""));
+        assertThrows(() -> checkExpr("([1, 2] @(<) [2, 2]) @(==) [false, true]", ""));
+
+        // arrays of at least the parallel threshold are handed to SighRuntime
+        int threshold = ParallelArrays.threshold();
+        ParallelArrays.setThreshold(2);
+        try {
+            checkExpr("[1, 2, 3] @(+) [4, 5, 6]", "[5, 7, 9]");
+            checkExpr("[1, 2] @(+) [0.5, 0.5]", "[1.5, 2.5]");
+            checkExpr("[0.5, 0.5] @(<) [1, 0]", "[true, false]");
+            checkExpr("[\"a\", \"b\"] @(+) [\"c\", \"d\"]", "[ac, bd]");
+            checkExpr("[true, false] @(&&) [true, true]", "[true, false]");
+            checkExpr("[1] @(+) [2]", "[3]");
+        } finally {
+            ParallelArrays.setThreshold(threshold);
+        }
+
+        // fused chains
+        checkExpr("[1, 2] @(*) [3, 4] @(+) [5, 6] @(*) [1, 2]", "[8, 28]");
+        checkExpr("[1, 2] @(*) ([3, 4] @(+) [5, 6])", "[8, 20]");
+        checkExpr("[1, 2] @(+) [1, 1] @(*) [0.5, 0.5]", "[1.0, 1.5]");
+        checkExpr("[0.5, 1.5] @(-) ([1, 2] @(+) [1, 1])", "[-1.5, -1.5]");
+        checkExpr("([1, 5] @(<) [2, 2]) @(&&) ([1.0, 1.0] @(<=) [2, 0])", "[true, false]");
+        checkExpr("[\"a\", \"b\"] @(+) [\"c\", \"d\"] @(<) [\"ad\", \"ba\"]", "[true, false]");
+        check("fun f (s: String): Int[] { print(s) ; return [1] } "
+            + "print(\"\" + (f(\"a\") @(+) f(\"b\") @(*) f(\"c\")))", "a\nb\nc\n[2]");
+        assertThrows(() -> checkExpr("[1, 2] @(+) [1] @(*) [1, 2]", ""));
+        assertThrows(() -> checkExpr("[1, 2] @(+) [1, 2] @(*) [1]", ""));
+        ParallelArrays.setThreshold(2);
+        try {
+            checkExpr("[1, 2] @(*) [3, 4] @(+) [5, 6] @(*) [1, 2]", "[8, 28]");
+            checkExpr("[1, 2] @(+) [1, 1] @(*) [0.5, 0.5] @(>) [1, 1]", "[false, true]");
+        } finally {
+            ParallelArrays.setThreshold(threshold);
+        }
+
+        // long enough for full vectors and a tail, if the operator is vectorized
+        checkExpr("[1, 2, 3, 4, 5, 6, 7, 8, 9] @(*) [9, 8, 7, 6, 5, 4, 3, 2, 1]",
+            "[9, 16, 21, 24, 25, 24, 21, 16, 9]");
+        checkExpr("[1, 2, 3, 4, 5, 6, 7, 8, 9] @(>=) [9, 8, 7, 6, 5, 4, 3, 2, 1]",
+            "[false, false, false, false, true, true, true, true, true]");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testNumericKernels()
+    {
+        // the detected kernels (SIMD if available) must agree with the scalar loops
+        NumericKernels kernels = SighRuntime.KERNELS;
+        ScalarKernels scalar = ScalarKernels.INSTANCE;
+        int n = 37; // not a multiple of any vector length
+        long[] a = new long[n], b = new long[n];
+        double[] x = new double[n], y = new double[n];
+        for (int i = 0; i < n; ++i) {
+            a[i] = i * 7 - 100;
+            b[i] = i % 5 == 0 ? a[i] : 2 * i - 13; // never zero
+            x[i] = a[i] / 3.0;
+            y[i] = i % 5 == 0 ? x[i] : i % 7 == 0 ? Double.NaN : b[i] * 0.25;
+        }
+
+        for (BinaryOperator op: BinaryOperator.values()) {
+            for (int[] range: new int[][] {{0, n}, {3, n}, {5, 9}}) {
+                int from = range[0], to = range[1];
+                if (op.compareTo(BinaryOperator.SUBTRACT) <= 0) { // arithmetic
+                    long[] r1 = new long[n], r2 = new long[n];
+                    kernels.arithmetic(a, b, r1, op, from, to);
+                    scalar.arithmetic(a, b, r2, op, from, to);
+                    assertEquals(r1, r2, op + " on Int");
+                    double[] s1 = new double[n], s2 = new double[n];
+                    kernels.arithmetic(x, y, s1, op, from, to);
+                    scalar.arithmetic(x, y, s2, op, from, to);
+                    assertEquals(s1, s2, op + " on Float");
+                } else if (op.compareTo(BinaryOperator.LOWER_EQUAL) <= 0) { // comparison
+                    boolean[] r1 = new boolean[n], r2 = new boolean[n];
+                    kernels.comparison(a, b, r1, op, from, to);
+                    scalar.comparison(a, b, r2, op, from, to);
+                    assertEquals(r1, r2, op + " on Int");
+                    kernels.comparison(x, y, r1, op, from, to);
+                    scalar.comparison(x, y, r2, op, from, to);
+                    assertEquals(r1, r2, op + " on Float");
+                }
+            }
+        }
     }
 
     private final String printa = "print(\"a\")";
@@ -262,6 +387,153 @@ public class BytecodeTests
         "struct Pair { var x: Int ; var y: Float }" +
         "var x: Pair = $Pair(1, 2.0) ;";
 
+    @Test public void testTailCalls() {
+        // deep enough to overflow the stack without tail call elimination
+        check("fun count(n: Int, acc: Int): Int { if (n == 0) return acc ; " +
+            "return count(n - 1, acc + 1) } ; print(\"\" + count(1000000, 0))", "1000000");
+        check("fun swap(a: Int, b: Int, n: Int): Int { if (n == 0) return a * 10 + b ; " +
+            "return swap(b, a, n - 1) } ; print(\"\" + swap(1, 2, 3))", "21");
+        check("fun f(x: Float, n: Int): Float { if (n == 0) return x ; return f(x / 2, n - 1) } ; " +
+            "print(\"\" + f(8, 3))", "1.0");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testFunctionValues() {
+        check("fun id(x: Int): Int { return x } ; print(\"\" + (id)(4))", "4");
+        check("fun f(x: Int): Float { return x / 2.0 } ; fun g(x: Int): Float { return x * 2.0 } ; " +
+            "print(\"\" + [f, g][0](3) + \" \" + [f, g][1](3))", "1.5 6.0");
+        check("print(\"\" + (print)(\"a\"))", "a\na");
+        check("struct P { var x: Int } ; print(\"\" + ($P)(5).x)", "5");
+        // implicit conversion of the arguments
+        check("fun half(x: Float): Float { return x / 2 } ; print(\"\" + (half)(3))", "1.5");
+        // converted to strings as in the interpreter
+        check("fun f(x: Int): Int { return x } ; print(\"\" + f + \" \" + [f][0])", "f f");
+        check("fun f(x: Int): Int { fun g(): Int { return x } print(\"\" + g) ; return x } ; " +
+            "f(1)", "g");
+        check("struct P { var x: Int } ; print(\"\" + $P)", "$P");
+        check("print(\"\" + print)", "SyntheticDeclaration(print)");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testClosures() {
+        // captured by value
+        check("var k: Int = 5 ; fun f(x: Int): Int { return x * k } ; print(\"\" + f(2))", "10");
+        check("fun f(x: Int): Int { fun g(): Int { fun h(): Int { return x + 1 } return h() } " +
+            "return (g)() } ; print(\"\" + f(1))", "2");
+        check("var base: Float = 0.5 ; fun f(x: Int): Float { return base + x } ; " +
+            "print(\"\" + [f][0](2))", "2.5");
+        // captured in a cell
+        check("var n: Int = 0 ; fun inc() { n = n + 1 } ; inc() ; inc() ; print(\"\" + n)", "2");
+        check("fun f(x: Int): Int { fun g() { x = x * 10 } (g)() g() return x } ; " +
+            "print(\"\" + f(3))", "300");
+        check("var b: Bool = false ; fun flip() { b = !b } ; flip() ; print(\"\" + b)", "true");
+        check("var s: String = \"\" ; fun add(x: String) { s = s + x } ; add(\"a\") ; add(\"b\") ; " +
+            "print(s)", "ab");
+        check("var i: Int = 0 ; var sum: Int = 0 ; fun add() { sum = sum + i } ; " +
+            "while (i < 4) { add() ; i = i + 1 } ; print(\"\" + sum)", "6");
+        // passed along by the functions that refer to the capturing function
+        check("var t: Int = 1 ; " +
+            "fun even(x: Int): Bool { if (x == 0) return true else return odd(x - t) } ; " +
+            "fun odd(x: Int): Bool { if (x == 0) return false else return even(x - t) } ; " +
+            "print(\"\" + even(10))", "true");
+        // tail calls
+        check("var k: Int = 2 ; fun count(n: Int, acc: Int): Int { if (n == 0) return acc ; " +
+            "return count(n - 1, acc + k) } ; print(\"\" + count(1000000, 0))", "2000000");
+        check("fun count(n: Int, acc: Int): Int { fun done(): Bool { return n == 0 } " +
+            "if (done()) return acc ; return count(n - 1, acc + 1) } ; " +
+            "print(\"\" + count(100000, 0))", "100000");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testTemplates() {
+        String twice = "template <typename T> fun twice (x: T): T { return x + x } ; ";
+        check(twice + "print(\"\" + twice<Int>(3) + \" \" + twice<Float>(1.25))", "6 2.5");
+        check(twice + "print(twice<String>(\"ab\"))", "abab");
+        // implicit conversion of the arguments
+        check(twice + "print(\"\" + twice<Float>(2))", "4.0");
+        // numeric loop, with local variables of the template type
+        check("template <typename T> fun sum (x: T, n: Int): T { var y: T = x * 0 ; " +
+            "var i: Int = 0 ; while (i < n) { y = y + x ; i = i + 1 } return y } ; " +
+            "print(\"\" + sum<Int>(3, 4) + \" \" + sum<Float>(0.5, 3))", "12 1.5");
+        check("template <typename T, typename T1> fun max (a: T, b: T1): Float { " +
+            "if (a > b) return a else return b } ; " +
+            "print(\"\" + max<Float, Int>(2.5, 3) + \" \" + max<Int, Float>(4, 1.5))", "3.0 4.0");
+        check("template <typename T> fun show (x: T) { print(x) } ; " +
+            "show<Int>(1) ; show<Bool>(true) ; show<String>(\"s\")", "1\ntrue\ns");
+        check("template <typename T> fun first (a: T[]): T { return a[0] } ; " +
+            "print(\"\" + first<Float>([1.5, 2.5]) + \" \" + first<Int>([7]))", "1.5 7");
+        // self tail calls of a specialization
+        check("template <typename T> fun count (x: T, n: Int): T { if (n == 0) return x ; " +
+            "return count<Int>(x, n - 1) } ; print(\"\" + count<Int>(7, 1000000))", "7");
+        // functions nested in template functions, emitted with each specialization
+        check("template <typename T> fun two (x: T): Int { var n: Int = 1 ; " +
+            "fun one (): Int { return n } return one() + one() } ; " +
+            "print(\"\" + two<Int>(3) + two<Float>(1.5))", "22");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testErasedTemplates() {
+        check("var a: Template[] = [1.0, \"Hello\"] ; var b: Template[] = [2, \" everybody\"] ; " +
+            "print(\"\" + (a @(>) b) + (a @(+) b))", "[false, true][3.0, Hello everybody]");
+        // Template argument: arrays are converted to Template[] by copy
+        check("template <typename T> fun mul (a: T[], b: T[]): T[] { var d: Template[] = [3, 5] ; " +
+            "var c: Template[] = a @(*) d ; return c } ; var l: Int[] = [2, 4] ; " +
+            "print(\"\" + mul<Template>(l, l))", "[6, 20]");
+        check("template <typename T> fun add (a: Template[], b: T[]): Template[] { " +
+            "return a @(+) b } ; var a: Template[] = [1, 2.5] ; " +
+            "print(\"\" + add<Template>(a, [2, 3]))", "[3.0, 5.5]");
+        // element types not handled by compiled loops are rejected as by the interpreter
+        assertThrows(() -> check("struct P { var x: Int } ; var p: P = $P(1) ; " +
+            "print(\"\" + ([p] @(==) [p]))", ""));
+        assertThrows(() -> checkExpr("[[1]] @(==) [[1]]", ""));
+        check("var l: Int[] = [2, 3] ; var t: Template[] = l ; t[0] = \"x\" ; " +
+            "print(\"\" + t + l)", "[x, 3][2, 3]");
+        // unboxing
+        check("var t: Template[] = [1, 2.5] ; var f: Float[] = t ; var i: Int = t[0] ; " +
+            "print(\"\" + f + i)", "[1.0, 2.5]1");
+        // template structures
+        check("template <typename T> struct Pair { var a: T ; var b: T } ; " +
+            "var p: Pair = $Pair<Int>(4, 5) ; p.a = 6 ; var c: Int = p.a ; " +
+            "print(\"\" + (p.a + p.b) + c) ; while (p.a < 8) { p.a = p.a + 1 } ; print(\"\" + p.a)",
+            "116\n8");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testTemplateExample() throws IOException {
+        // the example's last line is ill-typed
+        List<String> lines = Files.readAllLines(Paths.get("examples/template.si"));
+        String input = String.join("\n", lines.subList(0, lines.size() - 1));
+        SighNode tree = cast(Autumn.parse(new SighGrammar().root, input, ParseOptions.get())
+            .topValue());
+        Reactor reactor = new Reactor();
+        SemanticAnalysis.createWalker(reactor).walk(tree);
+        reactor.run();
+        String expected = IO.captureStdout(() -> new Interpreter(reactor).interpret(tree)).a;
+        check(input, expected.substring(0, expected.length() - 1));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testStringAppends() {
+        check("var s: String = \"\" ; var i: Int = 0 ; " +
+            "while (i < 5) { s = s + i + \",\" ; i = i + 1 } ; print(s)", "0,1,2,3,4,");
+        // the previous value is not affected by later appends
+        check("var s: String = \"a\" ; var t: String = s ; s = s + \"b\" ; t = t + \"c\" ; " +
+            "s = s + 1.5 ; print(s + \":\" + t)", "ab1.5:ac");
+        check("var s: String = null ; s = s + true ; print(s)", "nulltrue");
+        check("var s: String = \"a\" ; print(s = s + \"b\") ; s = \"c\" ; s = s + s ; print(s)",
+            "ab\ncc");
+        check("fun f(n: Int): String { var s: String = \"\" ; var i: Int = 0 ; " +
+            "while (i < n) { s = s + \"x\" ; i = i + 1 } ; return s } ; print(f(3))", "xxx");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Test public void testStructs() {
         check(makePair + "print(\"\" + x.x + \":\" + x.y)", "1:2.0");
         check(makePair + "x.x = 3; print(\"\" + x.x)", "3");
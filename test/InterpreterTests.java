@@ -3,11 +3,15 @@ import norswap.autumn.Grammar;
 import norswap.autumn.Grammar.rule;
 import norswap.autumn.ParseResult;
 import norswap.autumn.positions.LineMapString;
+import norswap.sigh.FrozenAttributes;
 import norswap.sigh.SemanticAnalysis;
 import norswap.sigh.SighGrammar;
+import norswap.sigh.ast.RootNode;
 import norswap.sigh.ast.SighNode;
+import norswap.sigh.ast.WhileNode;
 import norswap.sigh.interpreter.Interpreter;
 import norswap.sigh.interpreter.Null;
+import norswap.sigh.interpreter.TieredCompiler;
 import norswap.uranium.Reactor;
 import norswap.uranium.SemanticError;
 import norswap.utils.IO;
@@ -15,10 +19,19 @@ import norswap.utils.TestFixture;
 import norswap.utils.data.wrappers.Pair;
 import norswap.utils.visitors.Walker;
 import org.testng.annotations.Test;
-import java.util.HashMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertThrows;
 
 public final class InterpreterTests extends TestFixture {
@@ -39,6 +52,12 @@ public final class InterpreterTests extends TestFixture {
 
     private Grammar.rule rule;
 
+    /** Threshold passed to the interpreter, positive to enable the tiered mode. */
+    private int tierThreshold = 0;
+
+    /** Maximum call depth passed to the interpreter, positive to enable the explicit-stack mode. */
+    private int maxDepth = 0;
+
     // ---------------------------------------------------------------------------------------------
 
     private void check (String input, Object expectedReturn) {
@@ -66,7 +85,7 @@ public final class InterpreterTests extends TestFixture {
 
         Reactor reactor = new Reactor();
         Walker<SighNode> walker = SemanticAnalysis.createWalker(reactor);
-        Interpreter interpreter = new Interpreter(reactor);
+        Interpreter interpreter = new Interpreter(reactor, tierThreshold, maxDepth);
         walker.walk(root);
         reactor.run();
         Set<SemanticError> errors = reactor.errors();
@@ -114,7 +133,7 @@ public final class InterpreterTests extends TestFixture {
         checkExpr("42.0", 42.0d);
         checkExpr("\"hello\"", "hello");
         checkExpr("(42)", 42L);
-        checkExpr("[1, 2, 3]", new Object[]{1L, 2L, 3L});
+        checkExpr("[1, 2, 3]", new long[]{1, 2, 3});
         checkExpr("true", true);
         checkExpr("false", false);
         checkExpr("null", Null.INSTANCE);
@@ -251,14 +270,10 @@ public final class InterpreterTests extends TestFixture {
                 "return add(4, 7)",
             11L);
 
-        HashMap<String, Object> point = new HashMap<>();
-        point.put("x", 1L);
-        point.put("y", 2L);
-
         check(
             "struct Point { var x: Int; var y: Int }" +
-                "return $Point(1, 2)",
-            point);
+                "return \"\" + $Point(1, 2)",
+            "{x=1, y=2}");
 
         check("var str: String = null; return print(str + 1)", "null1", "null1\n");
     }
@@ -284,6 +299,28 @@ public final class InterpreterTests extends TestFixture {
         check("var x: Int[] = [0, 1]; x[0] = 3; return x[0]", 3L);
         checkThrows("var x: Int[] = []; x[0] = 3; return x[0]",
             ArrayIndexOutOfBoundsException.class);
+        check("var x: Float[] = [0.5, 1]; x[0] = 2; return x", new double[]{2.0, 1.0});
+        // Int arrays stored in Float array locations
+        check("var f: Float[] = [1, 2] ; f[0] = 3 ; print(\"\" + f[0] + \" \" + f[1])",
+            null, "3.0 2.0\n");
+        // the Float array is a copy: writes through either array do not affect the other
+        check("var a: Int[] = [1] ; var f: Float[] = a ; f = a ; f[0] = 0.5 ; " +
+            "print(\"\" + a[0] + \" \" + f[0])", null, "1 0.5\n");
+        check("fun set (x: Float[]) { x[0] = 0.5 } ; var a: Int[] = [1] ; set(a) ; return a",
+            new long[]{1});
+        check("var a: Int[] = [1] ; var f: Float[] = a ; a[0] = 2 ; return f", new double[]{1.0});
+        check("fun sum (x: Float[]): Float { return x[0] + x[1] } ; return sum([1, 2])", 3.0);
+        check("fun half (x: Float[][]): Float[][] { x[0][0] = x[0][0] / 2 ; return x } ; " +
+            "return half([[1]])[0]", new double[]{0.5});
+        check("fun ints (): Int[] { return [3] } ; fun floats (): Float[] { return ints() } ; " +
+            "return floats()", new double[]{3.0});
+        check("struct S { var x: Float[] } ; return $S([1]).x", new double[]{1.0});
+        check("struct S { var x: Float[] } ; var s: S = $S([1]) ; s.x = [2] ; return s.x",
+            new double[]{2.0});
+        check("var m: Float[][] = [[1], [2.5]] ; m[0] = [3] ; return m[0][0] + m[1][0]", 5.5);
+        check("var x: Bool[] = [true]; x[0] = !x[0]; return x", new boolean[]{false});
+        check("var x: Int[][] = [[1], [2, 3]]; x[1][0] = 4; return x[1]", new long[]{4, 3});
+        check("var x: Int[] = [1, 2]; return \"\" + x", "[1, 2]");
         /*checkThrows("var x: Int[] = null; x[0] = 3",
             NullPointerException.class);*/
 
@@ -350,5 +387,359 @@ public final class InterpreterTests extends TestFixture {
 
     // ---------------------------------------------------------------------------------------------
 
+    @Test public void testReturnFromNestedStatements()
+    {
+        check("fun f(): Int { var i: Int = 0; while (true) { if (i == 3) { return i } i = i + 1 } " +
+            "return -1 } ; return f()", 3L);
+        check("fun f() { print(\"a\") ; if (true) { return } print(\"b\") } ; f() ; return 1", 1L, "a\n");
+        check("fun f(x: Int): Int { return x } ; var y: Int = f(1) + f(2) ; return y", 3L);
+        check("var i: Int = 0; while (i < 10) { if (i == 2) return i ; i = i + 1 } return -1", 2L);
+        check("fun g(): Int { print(\"g\") ; return 1 } ; fun f(x: Int): Int { return x + x } ; " +
+            "return f(g())", 2L, "g\n");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testCallTargets()
+    {
+        // call prepared before the declaration of the callee
+        check("fun f(): Int { return g() + 1 } ; fun g(): Int { return 1 } ; return f()", 2L);
+        // nested function, and mutual recursion
+        check("fun f(x: Int): Int { fun g(y: Int): Int { return y * 2 } return g(x) } ; " +
+            "return f(3)", 6L);
+        check("fun even(x: Int): Bool { if (x == 0) return true else return odd(x - 1) } ; " +
+            "fun odd(x: Int): Bool { if (x == 0) return false else return even(x - 1) } ; " +
+            "return even(10)", true);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testTailCalls()
+    {
+        // deep enough to overflow the stack without tail call elimination
+        check("fun count(n: Int, acc: Int): Int { if (n == 0) return acc ; " +
+            "return count(n - 1, acc + 1) } ; return count(1000000, 0)", 1000000L);
+        check("fun count(n: Int): Int { while (true) { if (n == 0) { return 42 } " +
+            "return count(n - 1) } return 0 } ; return count(1000000)", 42L);
+        // all arguments are evaluated before the parameters are overwritten
+        check("fun swap(a: Int, b: Int, n: Int): Int { if (n == 0) return a * 10 + b ; " +
+            "return swap(b, a, n - 1) } ; return swap(1, 2, 3)", 21L);
+        check("fun f(x: Float, n: Int): Float { if (n == 0) return x ; return f(x / 2, n - 1) } ; " +
+            "return f(8, 3)", 1.0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testStringAppends()
+    {
+        rule = grammar.root;
+        check("var s: String = \"\" ; var i: Int = 0 ; " +
+            "while (i < 5) { s = s + i + \",\" ; i = i + 1 } ; return s", "0,1,2,3,4,");
+        // the previous value is not affected by later appends
+        check("var s: String = \"a\" ; var t: String = s ; s = s + \"b\" ; t = t + \"c\" ; " +
+            "s = s + 1.5 ; return s + \":\" + t", "ab1.5:ac");
+        check("var s: String = null ; s = s + true ; return s", "nulltrue");
+        check("var s: String = \"a\" ; print(s = s + \"b\") ; s = \"c\" ; s = s + s ; return s",
+            "cc", "ab\n");
+        // appending to a top-level variable from a function
+        check("var s: String = \"\" ; fun f(x: Int) { s = s + x } ; f(1) ; f(2) ; return s", "12");
+        check("var s: String = \"a\" ; s = s + [1, 2] ; return s == \"a[1, 2]\"", true);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testBlockVariables()
+    {
+        rule = grammar.root;
+        // block variables are reinitialized on each iteration
+        check("var x: Int = 1 ; var t: Int = 0 ; var i: Int = 0 ; " +
+            "while (i < 3) { var z: Int = i * 10 ; { var y: Int = z + 1 ; t = t + y } ; " +
+            "i = i + 1 } ; return t + x", 34L);
+        // each recursive call keeps its own block variables
+        check("fun f(n: Int): Int { if (n == 0) return 0 ; { var m: Int = n * 2 ; " +
+            "var r: Int = f(n - 1) ; return m + r } } ; return f(4)", 20L);
+        // functions declared in blocks
+        check("var t: Int = 0 ; { var k: Int = 3 ; fun g(x: Int): Int { var y: Int = x + 1 ; " +
+            "return y } ; t = g(k) + g(k) } ; return t", 8L);
+        // reused after a tail call
+        check("fun loop(n: Int, acc: String): String { if (n == 0) return acc ; " +
+            "{ var s: String = acc + n ; return loop(n - 1, s) } } ; return loop(3, \"\")", "321");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testTemplateConversions()
+    {
+        rule = grammar.root;
+        // Int values stored in locations whose type is a template parameter bound to Float
+        check("template<typename T, typename T1> fun assign(a: T, b: T1) " +
+            "{ a = 3 ; a = a + 1 ; print(a) } ; " +
+            "assign<Int, Float>(2, 3.0) ; assign<Float, Int>(4.0, 5)", null, "4\n4.0\n");
+        check("template<typename T> fun f(a: T) { var c: T = 3 ; print(c) } ; " +
+            "f<Float>(4.0) ; f<Int>(4)", null, "3.0\n3\n");
+        check("template<typename T> fun f(a: T): T { return 3 } ; " +
+            "return \"\" + f<Float>(1.0) + \" \" + f<Int>(1)", "3.0 3");
+        check("template<typename T> fun f(a: T) { print(a) } ; f<Float>(4) ; f<Int>(4)",
+            null, "4.0\n4\n");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testSuperinstructions()
+    {
+        rule = grammar.root;
+        // increments, comparisons between variables, element loads and additions
+        check("var a: Int[] = [1, 2, 3, 4] ; var n: Int = 4 ; var i: Int = 0 ; var t: Int = 0 ; " +
+            "while (i < n) { t = t + a[i] ; i = i + 1 } ; i = 2 + i ; i = i - 3 ; " +
+            "return \"\" + t + \" \" + i + \" \" + (i = i + 1) + \" \" + a[i - 1]", "10 3 4 4");
+        check("var a: Float[] = [0.5, 1.5] ; var b: Int[] = [1, 2] ; var x: Float = 0 ; " +
+            "var i: Int = 1 ; x = x + a[i] ; x = x + b[i] ; return x", 3.5);
+        check("var a: Bool[] = [false, true] ; var s: String[] = [\"x\", \"y\"] ; var i: Int = 1 ; " +
+            "if (a[i]) return s[i] ; return \"\"", "y");
+        // the load quickens for Float arrays, then sees an Int array
+        check("fun get(a: Float[], i: Int): Float { return a[i] } ; var b: Int[] = [1, 2] ; " +
+            "return get([0.5, 1.5], 1) + get(b, 0)", 2.5);
+        // errors are unchanged
+        checkThrows("var a: Int[] = [1] ; var i: Int = 1 ; return a[i]",
+            ArrayIndexOutOfBoundsException.class);
+        checkThrows("var a: Int[] = [1] ; var i: Int = 1 ; var t: Int = 0 ; t = t + a[i] ; return t",
+            ArrayIndexOutOfBoundsException.class);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testTieredExecution()
+    {
+        rule = grammar.root;
+        tierThreshold = 3;
+        try {
+            // compiled after a few calls, then called through the compiled code
+            check("fun fib(n: Int): Int { if (n < 2) return n ; return fib(n - 1) + fib(n - 2) } ; " +
+                "return fib(20)", 6765L);
+            // compiled because of its loop, with boxed float arguments and return value
+            check("fun sum(n: Int, x: Float): Float { var s: Float = 0 ; var i: Int = 0 ; " +
+                "while (i < n) { s = s + x ; i = i + 1 } ; return s } ; " +
+                "var t: Float = 0 ; var i: Int = 0 ; " +
+                "while (i < 5) { t = t + sum(10, 1) ; i = i + 1 } ; return t", 50.0);
+            // strings, booleans, and callees compiled along with the caller
+            check("fun neg(b: Bool): Bool { return !b } ; " +
+                "fun show(b: Bool): String { return \"\" + neg(neg(b)) } ; " +
+                "var s: String = \"\" ; var i: Int = 0 ; " +
+                "while (i < 5) { s = s + show(i % 2 == 0) ; i = i + 1 } ; return s",
+                "truefalsetruefalsetrue");
+            // void functions that print
+            check("fun say(x: Int) { print(\"\" + x) } ; var i: Int = 0 ; " +
+                "while (i < 5) { say(i) ; i = i + 1 }", null, "0\n1\n2\n3\n4\n");
+            // Int returned from a Float function: converted in both tiers
+            check("fun half(x: Int): Float { return x / 2 } ; var i: Int = 0 ; " +
+                "while (i < 5) { print(\"\" + half(i)) ; i = i + 1 }",
+                null, "0.0\n0.0\n1.0\n1.0\n2.0\n");
+            // uses a top-level variable: stays interpreted
+            check("var k: Int = 2 ; fun f(x: Int): Int { return x * k } ; var i: Int = 0 ; " +
+                "var t: Int = 0 ; while (i < 5) { t = t + f(i) ; i = i + 1 } ; return t", 20L);
+            // uses arrays: stays interpreted
+            check("fun f(x: Int): Int { var a: Int[] = [x, x] ; return a[0] + a[1] } ; " +
+                "var i: Int = 0 ; var t: Int = 0 ; " +
+                "while (i < 5) { t = t + f(i) ; i = i + 1 } ; return t", 20L);
+        } finally {
+            tierThreshold = 0;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testOnStackReplacement()
+    {
+        rule = grammar.root;
+        tierThreshold = 3;
+        try {
+            // variables of each kind move into the compiled loop and back
+            check("var i: Int = 0 ; var x: Float = 0.5 ; var b: Bool = false ; var s: String = \"\" ; " +
+                "while (i < 10) { x = x * 2 ; b = !b ; s = s + i ; i = i + 1 } ; " +
+                "return \"\" + i + \" \" + x + \" \" + b + \" \" + s",
+                "10 512.0 false 0123456789");
+            // a nested loop gets compiled first, then runs compiled on each outer iteration
+            check("var t: Int = 0 ; var i: Int = 0 ; " +
+                "while (i < 10) { var j: Int = 0 ; while (j < i) { t = t + j ; j = j + 1 } ; " +
+                "i = i + 1 } ; return t", 120L);
+            // calls and prints from the compiled loop, null strings
+            check("fun sq(x: Int): Int { return x * x } ; var s: String = null ; var i: Int = 0 ; " +
+                "while (i < 6) { print(\"\" + sq(i)) ; i = i + 1 } ; return s",
+                Null.INSTANCE, "0\n1\n4\n9\n16\n25\n");
+            // returns from the loop: stays interpreted
+            check("var i: Int = 0 ; while (true) { if (i == 7) return i ; i = i + 1 }", 7L);
+        } finally {
+            tierThreshold = 0;
+        }
+
+        autumnFixture.rule = grammar.root;
+        RootNode root = autumnFixture.success(
+            "var i: Int = 0 ; while (i < 3) { i = i + 1 } ; " +
+            "var a: Int[] = [1] ; while (i < 6) { a[0] = i ; i = i + 1 } ; " +
+            "while (i < 9) { if (i == 8) return i ; i = i + 1 }").topValue();
+        Reactor reactor = new Reactor();
+        SemanticAnalysis.createWalker(reactor).walk(root);
+        reactor.run();
+        TieredCompiler compiler = new TieredCompiler(FrozenAttributes.freeze(reactor), 1);
+        assertNotNull(compiler.compileLoop((WhileNode) root.statements.get(1)));
+        assertNull(compiler.compileLoop((WhileNode) root.statements.get(3)));
+        assertNull(compiler.compileLoop((WhileNode) root.statements.get(4)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testExplicitStack()
+    {
+        rule = grammar.root;
+        maxDepth = 200_000;
+        try {
+            // deep enough to overflow the Java stack in tree mode
+            check("fun sum(n: Int): Int { if (n == 0) return 0 ; return n + sum(n - 1) } ; " +
+                "return sum(100000)", 5000050000L);
+            check("fun even(x: Int): Bool { if (x == 0) return true else return odd(x - 1) } ; " +
+                "fun odd(x: Int): Bool { if (x == 0) return false else return even(x - 1) } ; " +
+                "return even(100001)", false);
+            // calls in conditions, short-circuits, array and field operands, dynamic calls
+            check("fun id(x: Int): Int { return x } ; fun t(): Bool { print(\"t\") ; return true } ; " +
+                "var i: Int = 0 ; while (id(i) < 3) { i = id(i) + 1 } ; " +
+                "if (false && t()) return 0 ; if (true || t()) print(\"ok\") ; " +
+                "var a: Int[] = [0, 0] ; a[id(1)] = id(i) + a[id(0)] ; " +
+                "struct P { var x: Int } ; var p: P = $P(id(1)) ; p.x = p.x + id(2) ; " +
+                "return \"\" + a + \" \" + p.x + \" \" + (id)(4) + \" \" + ($P)(5).x",
+                "[0, 3] 3 4 5", "ok\n");
+            // operands before a call are evaluated before it
+            check("var k: Int = 1 ; fun bump(): Int { k = k + 1 ; return k } ; " +
+                "return \"\" + k + bump() + (k + bump())", "125");
+
+            testIfWhile();
+            testCalls();
+            testArrayStructAccess();
+            testUnconditionalReturn();
+            testReturnFromNestedStatements();
+            testCallTargets();
+            testTailCalls();
+            testStringAppends();
+            testBlockVariables();
+            testTemplateConversions();
+
+            maxDepth = 1000;
+            checkThrows("fun f(n: Int): Int { if (n == 0) return 0 ; return 1 + f(n - 1) } ; " +
+                "return f(1000)", StackOverflowError.class);
+            check("fun f(n: Int): Int { if (n == 0) return 0 ; return 1 + f(n - 1) } ; " +
+                "return f(999)", 999L);
+        } finally {
+            maxDepth = 0;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testCheckpoints() throws IOException
+    {
+        String init =
+            "struct P { var x: Int ; var next: P } ; " +
+            "var squares: Int[] = [0, 0, 0, 0] ; var i: Int = 0 ; " +
+            "while (i < 4) { squares[i] = i * i ; i = i + 1 } ; " +
+            "var weights: Float[] = [0.5, 1.5] ; var flags: Bool[] = [true, false] ; " +
+            "var names: String[] = [\"a\", null] ; " +
+            "var p: P = $P(1, null) ; p.next = p ; var ps: P[] = [p, p] ; " +
+            "var s: String = \"\" ; s = s + \"x\" ; s = s + i ; var t: Type = P ; " +
+            "{ var local: Float = 2.5 ; weights[0] = local } ; print(\"init\") ; ";
+        int statements = 16;
+        String rest =
+            "ps[0].x = 7 ; var late: Int = 1 ; " +
+            "return \"\" + squares + \" \" + weights + \" \" + flags + \" \" + names[0] + " +
+            "names[1] + \" \" + p.next.next.x + \" \" + s + \" \" + t + \" \" + late";
+        String expected = "[0, 1, 4, 9] [2.5, 1.5] [true, false] anull 7 x4 P 1";
+
+        Reactor reactor = new Reactor();
+        RootNode root = analyze(init + rest, reactor);
+        assertEquals(root.statements.get(statements).getClass().getSimpleName(),
+            "ExpressionStatementNode"); // ps[0].x = 7
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Pair<String, Object> written = IO.captureStdout(() -> {
+            try {
+                new Interpreter(reactor).checkpoint(root, statements, out);
+                return null;
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        assertEquals(written.a, "init\n");
+
+        // restored for a fresh parse and analysis of the same program, without initialization
+        Reactor reactor2 = new Reactor();
+        RootNode root2 = analyze(init + rest, reactor2);
+        Pair<String, Object> resumed = IO.captureStdout(() -> {
+            try {
+                return new Interpreter(reactor2).resume(root2, new ByteArrayInputStream(out.toByteArray()));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        assertEquals(resumed.a, "");
+        assertEquals(resumed.b, expected);
+
+        // same result as an uninterrupted run
+        rule = grammar.root;
+        check(init + rest, expected, "init\n");
+
+        // rejected for another program
+        Reactor reactor3 = new Reactor();
+        RootNode root3 = analyze(init + "var other: Int = 0 ; " + rest, reactor3);
+        assertThrows(IOException.class, () -> new Interpreter(reactor3)
+            .resume(root3, new ByteArrayInputStream(out.toByteArray())));
+
+        // rejected for the same declarations with an edited statement
+        Reactor reactor4 = new Reactor();
+        RootNode root4 = analyze(init.replace("i * i", "i * 2") + rest, reactor4);
+        assertThrows(IOException.class, () -> new Interpreter(reactor4)
+            .resume(root4, new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private RootNode analyze (String input, Reactor reactor)
+    {
+        autumnFixture.rule = grammar.root;
+        RootNode root = autumnFixture.success(input).topValue();
+        SemanticAnalysis.createWalker(reactor).walk(root);
+        reactor.run();
+        assertEquals(reactor.errors(), Collections.emptySet());
+        return root;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testConcurrentExecutions() throws Exception
+    {
+        autumnFixture.rule = grammar.root;
+        SighNode root = autumnFixture.success(
+            "fun fib(n: Int): Int { if (n < 2) return n ; return fib(n - 1) + fib(n - 2) } ; " +
+            "var total: Int = 0 ; var i: Int = 0 ; " +
+            "while (i < 10) { total = total + fib(i) ; i = i + 1 } ; return total").topValue();
+        Reactor reactor = new Reactor();
+        SemanticAnalysis.createWalker(reactor).walk(root);
+        reactor.run();
+
+        // the same program, run by several threads at once, including through the compiled code
+        for (int threshold: new int[] { 0, 50 }) {
+            Interpreter interpreter = new Interpreter(reactor, threshold);
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<Object>> results = new ArrayList<>();
+                for (int j = 0; j < 16; ++j)
+                    results.add(pool.submit(() -> interpreter.interpret(root)));
+                for (Future<Object> result: results)
+                    assertEquals(result.get(), 88L);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     // NOTE(norswap): Not incredibly complete, but should cover the basics.
 }
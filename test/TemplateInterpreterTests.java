@@ -120,6 +120,7 @@ public final class TemplateInterpreterTests extends TestFixture {
         check("template <typename T, typename T1> fun f1 (x: T, y: T1) : T1 {return 2} ; return f1<String, Int> (\"hey\",1)", 2L);
         check("template <typename T, typename T1> fun f2 (x: T, y: T1) : T1 {return y} ; return f2<String, Int> (\"hey\",2)", 2L);
         check("template <typename T, typename T1> fun f3 (x: T, y: T1, z:Int) : T {return x} ; return f3<String, Int> (\"hey\",1, 7)", "hey");
+        check("template <typename T, typename T1> fun max (a: T, b: T1): Float { if (a > b) return a else return b } ; return max<Float, Int>(2.5, 3)", 3.0);
 
 
 
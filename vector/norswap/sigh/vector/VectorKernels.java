@@ -0,0 +1,112 @@
+package norswap.sigh.vector;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorSpecies;
+import norswap.sigh.ast.BinaryOperator;
+import norswap.sigh.bytecode.NumericKernels;
+import norswap.sigh.bytecode.ScalarKernels;
+
+import static norswap.sigh.ast.BinaryOperator.MULTIPLY;
+
+/**
+ * SIMD implementation of {@link NumericKernels}, using the incubating Vector API. Loaded
+ * reflectively by {@link NumericKernels#detect()}, which requires the JVM to run with {@code
+ * --add-modules jdk.incubator.vector}.
+ *
+ * <p>Only multiplication is vectorized, for {@code Int} and {@code Float} arrays: it is the only
+ * operator for which the vector loop measured faster than the scalar one (cf. {@code
+ * VectorKernelBenchmark}), the others being at parity or slower. The elements past the last full
+ * vector, and the other operators, are handled by {@link ScalarKernels}. Comparisons are not
+ * vectorized either: on JDK 17, storing a comparison mask to a {@code boolean[]} is not compiled
+ * to SIMD instructions, which makes the vector loop about twice as slow as the scalar one.
+ *
+ * <p>The constructor throws {@link UnsupportedOperationException} if the preferred vector shape of
+ * the hardware does not hold at least two 64-bit lanes, in which case the scalar loops are
+ * faster.
+ */
+public final class VectorKernels implements NumericKernels
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final VectorSpecies<Long>   LONGS   = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    private static final ScalarKernels SCALAR = ScalarKernels.INSTANCE;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public VectorKernels ()
+    {
+        if (LONGS.length() < 2 || DOUBLES.length() < 2)
+            throw new UnsupportedOperationException("no SIMD support for 64-bit lanes");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override
+    public void arithmetic (long[] left, long[] right, long[] result, BinaryOperator op,
+                            int from, int to)
+    {
+        int i = op == MULTIPLY
+            ? mul(left, right, result, from, from + LONGS.loopBound(to - from))
+            : from; // not vectorized
+        SCALAR.arithmetic(left, right, result, op, i, to);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override
+    public void arithmetic (double[] left, double[] right, double[] result, BinaryOperator op,
+                            int from, int to)
+    {
+        int i = op == MULTIPLY
+            ? mul(left, right, result, from, from + DOUBLES.loopBound(to - from))
+            : from; // not vectorized
+        SCALAR.arithmetic(left, right, result, op, i, to);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override
+    public void comparison (long[] left, long[] right, boolean[] result, BinaryOperator op,
+                            int from, int to)
+    {
+        SCALAR.comparison(left, right, result, op, from, to);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override
+    public void comparison (double[] left, double[] right, boolean[] result, BinaryOperator op,
+                            int from, int to)
+    {
+        SCALAR.comparison(left, right, result, op, from, to);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Each loop is a separate method, so that the JIT inlines the whole of the Vector API calls
+    // (which it must for them to be turned into SIMD instructions) without exceeding its inlining
+    // budget. They return the index of the first element that was not processed.
+    // ---------------------------------------------------------------------------------------------
+
+    private static int mul (long[] left, long[] right, long[] result, int i, int bound)
+    {
+        for (; i < bound; i += LONGS.length())
+            LongVector.fromArray(LONGS, left, i)
+                .mul(LongVector.fromArray(LONGS, right, i))
+                .intoArray(result, i);
+        return i;
+    }
+
+    private static int mul (double[] left, double[] right, double[] result, int i, int bound)
+    {
+        for (; i < bound; i += DOUBLES.length())
+            DoubleVector.fromArray(DOUBLES, left, i)
+                .mul(DoubleVector.fromArray(DOUBLES, right, i))
+                .intoArray(result, i);
+        return i;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}